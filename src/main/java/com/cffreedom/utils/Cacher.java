@@ -1,12 +1,26 @@
 package com.cffreedom.utils;
 
+import java.time.Duration;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
+import java.util.Collection;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.cffreedom.exceptions.FileSystemException;
+import com.cffreedom.exceptions.ProcessingException;
+import com.cffreedom.utils.cache.BulkCacheLoader;
+import com.cffreedom.utils.cache.CacheClock;
+import com.cffreedom.utils.cache.CacheLoader;
+import com.cffreedom.utils.cache.CacheStats;
+import com.cffreedom.utils.cache.EvictionPolicy;
+import com.cffreedom.utils.cache.InvalidationChannel;
+import com.cffreedom.utils.cache.OffHeapStore;
+import com.cffreedom.utils.cache.RemovalListener;
+import com.cffreedom.utils.cache.TypedCacher;
+import com.cffreedom.utils.cache.ValueSerializer;
+import com.cffreedom.utils.cache.Weigher;
 
 /**
  * Original Class: com.cffreedom.utils.Cacher
@@ -25,32 +39,148 @@ import java.util.Set;
  * 2014-04-28 	MarkJacobsen.net 	Created
  * 2015-10-27   MarkJacobsen.net 	Added maintainOrder option
  * 2017-01-12 	MarkJacobsen.net 	More aggressive cleanup of expired items
+ * 2026-10-17 	MarkJacobsen.net 	Thread safe (ConcurrentHashMap) with expiration driven by a TimerWheel
+ * 									instead of sweeping the whole cache on every call
+ * 2026-10-17 	MarkJacobsen.net 	Added maximum size/weight with pluggable EvictionPolicy and RemovalListeners
+ * 2026-10-17 	MarkJacobsen.net 	Added get(key, CacheLoader) with single flight loading and refresh ahead
+ * 2026-10-17 	MarkJacobsen.net 	CachedObject tracks primitive millis instead of Calendars and time comes from a CacheClock
+ * 2026-10-17 	MarkJacobsen.net 	Added getStats() and registerMBean()
+ * 2026-10-17 	MarkJacobsen.net 	Added optional OffHeapStore tier that size evictions spill to
+ * 2026-10-17 	MarkJacobsen.net 	Added saveSnapshot() and restoreSnapshot() for warm starts
+ * 2026-10-17 	MarkJacobsen.net 	Default cache time is per instance (was static), added Duration based 
+ * 									time to live down to the millisecond and time to idle
+ * 2026-10-17 	MarkJacobsen.net 	Internals moved to com.cffreedom.utils.cache.TypedCacher
+ * 2026-10-17 	MarkJacobsen.net 	Added getAll(), putAll() and invalidateAll()
+ * 2026-10-17 	MarkJacobsen.net 	Added setInvalidationChannel()
  */
 public class Cacher {
 	public static final int DEFAULT_CACHE_MIN = 60;
-	private static int defaultCacheMin = DEFAULT_CACHE_MIN;
-	private boolean maintainOrder = false;
-	private Map<String, CachedObject> cache = new HashMap<>();
+	private final TypedCacher<String, Object> cache;
 	
-	public Cacher(){}
+	public Cacher() { this(DEFAULT_CACHE_MIN); }
 	public Cacher(int defaultCacheMinutes) { this(defaultCacheMinutes, false); }
 	public Cacher(int defaultCacheMinutes, boolean maintainOrder) { 
-		defaultCacheMin = defaultCacheMinutes;
-		this.maintainOrder = maintainOrder;
-		if (maintainOrder == true) {
-			cache = new LinkedHashMap<>();
-		} else {
-			cache = new HashMap<>();
-		}
+		this.cache = new TypedCacher<>(Duration.ofMinutes(defaultCacheMinutes), maintainOrder);
 	}
 	
+	/**
+	 * Limit the number of entries in the cache evicting the least recently used
+	 * entries once the limit is reached
+	 * @param maxEntries Maximum entries (-1 for unbounded)
+	 */
+	public void setMaximumSize(long maxEntries) { this.cache.setMaximumSize(maxEntries); }
+	
+	/**
+	 * Limit the number of entries in the cache using the EvictionPolicy passed in
+	 * to choose what to evict once the limit is reached
+	 * @param maxEntries Maximum entries (-1 for unbounded)
+	 * @param policy ex: LruEvictionPolicy, LfuEvictionPolicy, WTinyLfuEvictionPolicy
+	 */
+	public void setMaximumSize(long maxEntries, EvictionPolicy<String> policy) { this.cache.setMaximumSize(maxEntries, policy); }
+	
+	/**
+	 * Limit the combined weight of the entries in the cache
+	 * @param maxWeight Maximum total weight (-1 for unbounded)
+	 * @param weigher Used to calculate the weight of each entry as it is put
+	 */
+	public void setMaximumWeight(long maxWeight, Weigher<String, Object> weigher) { this.cache.setMaximumWeight(maxWeight, weigher); }
+	
+	public void setEvictionPolicy(EvictionPolicy<String> policy) { this.cache.setEvictionPolicy(policy); }
+	
+	/**
+	 * Get notified when an entry is removed, replaced, expires or is evicted
+	 * @param listener
+	 */
+	public void addRemovalListener(RemovalListener<String, Object> listener) { this.cache.addRemovalListener(listener); }
+	
+	/**
+	 * When an item fetched via get(key, loader) is within the number of milliseconds
+	 * passed in of expiring, reload it in the background so readers never wait on it
+	 * @param refreshAheadMillis Milliseconds before expiration to refresh (0 to disable)
+	 */
+	public void setRefreshAhead(long refreshAheadMillis) { this.cache.setRefreshAhead(refreshAheadMillis); }
+	public void setRefreshAhead(long refreshAheadMillis, Executor executor) { this.cache.setRefreshAhead(refreshAheadMillis, executor); }
+	
+	/**
+	 * Use a different source of time (ex: a fake clock for tests). Should be set
+	 * before anything is put in the cache.
+	 * @param clock
+	 */
+	public void setClock(CacheClock clock) { this.cache.setClock(clock); }
+	
+	/**
+	 * @return Snapshot of the hit/miss/load/eviction counters
+	 */
+	public CacheStats getStats() { return this.cache.getStats(); }
+	
+	/**
+	 * Expose this cache's size and statistics via JMX as
+	 * com.cffreedom.utils:type=Cacher,name={name}
+	 * @param name Unique name for this cache
+	 * @throws ProcessingException
+	 */
+	public void registerMBean(String name) throws ProcessingException { this.cache.registerMBean(name); }
+	public void unregisterMBean() { this.cache.unregisterMBean(); }
+	
+	/**
+	 * Add a second tier outside the Java heap. Entries evicted to keep the cache within
+	 * its maximum size/weight are serialized into the store instead of being dropped, and
+	 * are moved back onto the heap the next time they are requested.
+	 * @param store ex: new OffHeapStore&lt;String&gt;(2L * 1024 * 1024 * 1024)
+	 * @param serializer Used to convert values to bytes (default is Java serialization)
+	 */
+	public void setOffHeapTier(OffHeapStore<String> store, ValueSerializer<?> serializer) { this.cache.setOffHeapTier(store, serializer); }
+	public void setOffHeapTier(OffHeapStore<String> store) { this.cache.setOffHeapTier(store); }
+	public int offHeapSize() { return this.cache.offHeapSize(); }
+	
+	/**
+	 * Write everything currently cached on heap (with its remaining time to live) to a
+	 * snapshot file that restoreSnapshot() can warm a new cache from
+	 * @param file
+	 * @return Number of entries written
+	 * @throws FileSystemException
+	 */
+	public int saveSnapshot(String file) throws FileSystemException { return this.saveSnapshot(file, null); }
+	public int saveSnapshot(String file, ValueSerializer<?> serializer) throws FileSystemException {
+		return this.cache.saveSnapshot(file, serializer, Function.identity());
+	}
+	
+	/**
+	 * Warm the cache from a file written by saveSnapshot(). Only the snapshot's index is
+	 * read up front, each value is read from the file the first time its key is requested.
+	 * @param file
+	 * @return Number of entries available to restore
+	 * @throws FileSystemException
+	 */
+	public int restoreSnapshot(String file) throws FileSystemException { return this.restoreSnapshot(file, null, false); }
+	public int restoreSnapshot(String file, ValueSerializer<?> serializer, boolean warmInBackground) throws FileSystemException {
+		return this.cache.restoreSnapshot(file, serializer, Function.identity(), warmInBackground);
+	}
+	
+	/**
+	 * Keep this cache coherent with the caches on other nodes. Calls to remove(),
+	 * invalidateAll() and clear() are broadcast on the channel and invalidations from
+	 * other nodes are applied here. put() is not broadcast so remove() a key when the
+	 * data behind it changes.
+	 * @param channel ex: new MulticastInvalidationChannel() (null to stop)
+	 */
+	public void setInvalidationChannel(InvalidationChannel channel) { this.cache.setInvalidationChannel(channel, Function.identity(), Function.identity()); }
+	
+	public void setDefaultTimeToLive(Duration ttl) { this.cache.setDefaultTimeToLive(ttl); }
+	public Duration getDefaultTimeToLive() { return this.cache.getDefaultTimeToLive(); }
+	public void setDefaultTimeToIdle(Duration tti) { this.cache.setDefaultTimeToIdle(tti); }
+	public Duration getDefaultTimeToIdle() { return this.cache.getDefaultTimeToIdle(); }
+	public long getMaximumSize() { return this.cache.getMaximumSize(); }
+	public long getMaximumWeight() { return this.cache.getMaximumWeight(); }
+	public long getWeight() { return this.cache.getWeight(); }
+	
 	/**
 	 * Put an item into the cache (with the default cache minutes)
 	 * @param key
 	 * @param obj
 	 */
 	public void put(String key, Object obj) {
-		this.put(key, obj, defaultCacheMin);
+		this.cache.put(key, obj);
 	}
 	
 	/**
@@ -60,9 +190,29 @@ public class Cacher {
 	 * @param cacheMinutes
 	 */
 	public void put(String key, Object obj, int cacheMinutes) {
-		CachedObject newObj = new CachedObject(obj, cacheMinutes);
-		cache.put(key, newObj);
-		this.cleanupExpiredItems();
+		this.cache.put(key, obj, Duration.ofMinutes(cacheMinutes));
+	}
+	
+	/**
+	 * Put an item into the cache (with the specified time to live)
+	 * @param key
+	 * @param obj
+	 * @param ttl ex: Duration.ofSeconds(30)
+	 */
+	public void put(String key, Object obj, Duration ttl) {
+		this.cache.put(key, obj, ttl);
+	}
+	
+	/**
+	 * Put an item into the cache that expires when either its time to live runs out 
+	 * or it hasn't been read for the time to idle, whichever comes first
+	 * @param key
+	 * @param obj
+	 * @param ttl
+	 * @param tti Time to idle (null or zero for none)
+	 */
+	public void put(String key, Object obj, Duration ttl, Duration tti) {
+		this.cache.put(key, obj, ttl, tti);
 	}
 	
 	/**
@@ -70,31 +220,72 @@ public class Cacher {
 	 * @param key
 	 * @return
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Object> T get(String key)	{
-		this.cleanupExpiredItems();
-		CachedObject obj = cache.get(key);
-		
-		if (obj == null) {
-			return null;
-		} else {
-			return (T)obj.getObj();
-		}
+		return (T)this.cache.get(key);
+	}
+	
+	/**
+	 * Get an object from the cache, loading (and caching) it if it isn't there. Concurrent
+	 * misses for the same key wait on a single call to the loader instead of each
+	 * running it.
+	 * @param key
+	 * @param loader Called with the key on a miss
+	 * @return The cached or loaded value (null if the loader returned null)
+	 * @throws ProcessingException If the loader failed
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Object> T get(String key, CacheLoader<String, ?> loader) throws ProcessingException {
+		return (T)this.cache.get(key, loader);
+	}
+	
+	/**
+	 * Get several objects from the cache checking for expired items once for the batch
+	 * @param keys
+	 * @return The cached values in the order of the keys passed in (keys that aren't cached are left out)
+	 */
+	public Map<String, Object> getAll(Collection<String> keys) {
+		return this.cache.getAll(keys);
+	}
+	
+	/**
+	 * Get several objects from the cache handing all of the misses to the loader in
+	 * one call (ex: a single IN (...) query built with DbUtils.toInClause())
+	 * @param keys
+	 * @param loader Called once with the keys that weren't cached
+	 * @return The cached or loaded values in the order of the keys passed in
+	 * @throws ProcessingException If the loader failed
+	 */
+	public Map<String, Object> getAll(Collection<String> keys, BulkCacheLoader<String, ?> loader) throws ProcessingException {
+		return this.cache.getAll(keys, loader);
+	}
+	
+	/**
+	 * Put several items into the cache (with the default cache minutes) checking for
+	 * expired items and enforcing the maximum size once for the batch
+	 * @param items
+	 */
+	public void putAll(Map<String, ?> items) {
+		this.cache.putAll(items);
+	}
+	
+	/**
+	 * Remove several items from the cache
+	 * @param keys
+	 */
+	public void invalidateAll(Collection<String> keys) {
+		this.cache.invalidateAll(keys);
 	}
 	
 	public int size() {
-		this.cleanupExpiredItems();
-		return cache.size();
+		return this.cache.size();
 	}
 	
 	/**
 	 * Clear all cached items
 	 */
 	public void clear()	{
-		if (maintainOrder) {
-			cache = new LinkedHashMap<>();
-		} else {
-			cache = new HashMap<>();
-		}
+		this.cache.clear();
 	}
 	
 	/**
@@ -102,11 +293,11 @@ public class Cacher {
 	 * @param key
 	 */
 	public void remove(String key) {
-		cache.remove(key);
+		this.cache.remove(key);
 	}
 	
 	public Set<String> keySet() {
-		return cache.keySet();
+		return this.cache.keySet();
 	}
 	
 	/**
@@ -115,42 +306,14 @@ public class Cacher {
 	 * @return
 	 */
 	public boolean containsKey(String key) {
-		// Note: Using call to cache.get() instead of directly calling containsKey()
-		// because the call to get() will expire the item if necessary
-		if (cache.get(key) == null) {
-			return false;
-		} else {
-			return true;
-		}
+		return this.cache.containsKey(key);
 	}
 	
 	/**
 	 * Cleanup (remove) any expired cached objects
 	 */
 	public void cleanupExpiredItems() {
-		// Done as a 2 step process to eliminate concurrency issues
-		//List<String> removeKeys = new ArrayList<>();
-		
-		try {
-			Iterator<Map.Entry<String, CachedObject>> it = cache.entrySet().iterator();
-			while (it.hasNext()) {
-				Entry<String, CachedObject> entry = it.next();
-				if (entry.getValue().isExpired()) {
-					it.remove();
-				}
-			}
-			/*
-			for (String key : cache.keySet()) {
-				if (cache.get(key).isExpired()) {
-					removeKeys.add(key);
-				}
-			}
-			
-			for (String key : removeKeys) {
-				this.remove(key);
-			}
-			*/
-		} catch (Exception e) { /* ignore */ }
+		this.cache.cleanupExpiredItems();
 	}
 	
 	/**
@@ -160,45 +323,20 @@ public class Cacher {
 	 * @return
 	 */
 	public Calendar getCachedTime(String key) {
-		if (this.containsKey(key) == true) {
-			return cache.get(key).getCacheTime();
-		} else {
-			return null;
-		}
+		return this.cache.getCachedTime(key);
 	}
 	
 	/**
 	 * Print out information about the cache
 	 */
 	public void printCache() {
-		for (String key : cache.keySet()) {
-			CachedObject obj = cache.get(key);
-			Utils.output(key + " - cached: " + Format.date(Format.DATE_TIMESTAMP, Convert.toDate(obj.getCacheTime())) + " - Cache minutes: " + obj.getCacheMinutes());
-		}
-	}
-	
-	class CachedObject {
-		private Object obj = null;
-		private Calendar cached = Calendar.getInstance();
-		private int cacheMinutes = 0;
-		
-		public CachedObject(Object obj, int cacheMinutes) {
-			this.obj = obj;
-			this.cached = Calendar.getInstance();
-			this.cacheMinutes = cacheMinutes;
-		}
-		
-		public Object getObj() { return this.obj; }
-		public Calendar getCacheTime() { return this.cached; }
-		public int getCacheMinutes() { return this.cacheMinutes; }
-		
-		public boolean isExpired() {
-			boolean expired = false;
-			try {
-				Calendar testDate = DateTimeUtils.dateAdd(Calendar.getInstance(), this.cacheMinutes * -1, DateTimeUtils.DATE_PART_MINUTE);
-				expired = this.cached.before(testDate);
-			} catch (Exception e) {}
-			return expired;
-		}
+		this.cache.printCache();
+	}
+	
+	/**
+	 * @return The typed cache behind this one
+	 */
+	public TypedCacher<String, Object> getTypedCacher() {
+		return this.cache;
 	}
 }
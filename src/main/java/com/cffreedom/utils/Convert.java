@@ -6,7 +6,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
@@ -24,6 +23,8 @@ import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.cffreedom.utils.security.HashUtils;
+
 /**
  * Original Class: com.cffreedom.utils.Convert
  * @author markjacobsen.net (http://mjg2.net/code)
@@ -56,6 +57,7 @@ import org.slf4j.LoggerFactory;
  * 2013-12-13 	MarkJacobsen.net 	Added toString(boolean val)
  * 2014-11-25 	MarkJacobsen.net 	Added toStringList(List<String>, delimiter)
  * 2015-05-07 	MarkJacobsen.net 	Added toSqlDate(Calendar)
+ * 2026-10-17 	MarkJacobsen.net 	toMd5() and toSHA512() use HashUtils (cached digests, table based hex)
  */
 public class Convert {
 	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.Convert");
@@ -65,40 +67,11 @@ public class Convert {
 	}
 	
 	public static String toSHA512(String val, String salt) throws NoSuchAlgorithmException {
-	    MessageDigest md = MessageDigest.getInstance("SHA-512");
-        md.update(salt.getBytes());
-        byte[] bytes = md.digest(val.getBytes());
-        StringBuilder sb = new StringBuilder();
-        for(int i=0; i< bytes.length; i++) {
-            sb.append(Integer.toString((bytes[i] & 0xff) + 0x100, 16).substring(1));
-        }
-        return sb.toString();
+		return HashUtils.toHex(HashUtils.hash(HashUtils.Algorithm.SHA512, salt.getBytes(), val.getBytes()));
 	}
 
 	public static String toMd5(String val) throws NoSuchAlgorithmException {
-		MessageDigest md = MessageDigest.getInstance("MD5");
-		md.update(val.getBytes());
-
-		byte byteData[] = md.digest();
-
-		// convert the byte to hex format method 1
-		StringBuffer sb = new StringBuffer();
-		for (int i = 0; i < byteData.length; i++) {
-			sb.append(Integer.toString((byteData[i] & 0xff) + 0x100, 16).substring(1));
-		}
-
-		logger.debug("Digest(in hex format):: {}", sb.toString());
-
-		// convert the byte to hex format method 2
-		StringBuffer hexString = new StringBuffer();
-		for (int i = 0; i < byteData.length; i++) {
-			String hex = Integer.toHexString(0xff & byteData[i]);
-			if (hex.length() == 1)
-				hexString.append('0');
-			hexString.append(hex);
-		}
-
-		return hexString.toString();
+		return HashUtils.toHex(HashUtils.hash(HashUtils.Algorithm.MD5, val.getBytes()));
 	}
 	
 	public static String toDelimitedString(String[] vals, String delimiter) {
@@ -1,21 +1,57 @@
 package com.cffreedom.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cffreedom.exceptions.FileSystemException;
+import com.cffreedom.utils.cache.BinaryValueSerializer;
+import com.cffreedom.utils.cache.ValueSerializer;
 import com.cffreedom.utils.file.FileUtils;
+import com.cffreedom.utils.file.InterProcessLock;
+import com.cffreedom.utils.file.KeyValueLog;
 import com.cffreedom.utils.security.SecurityCipher;
 
 /**
  * Simple java based serializable key/value pair manager with the option to
  * encrypt the values.
  * 
+ * By default the whole map is written to the file on every change. Passing an
+ * FsyncPolicy to the constructor stores it in an append only KeyValueLog instead
+ * so each change only appends a record (the two formats are not interchangeable).
+ * 
+ * Safe to share between threads and between processes using the same file. In the
+ * default mode changes are made while holding an InterProcessLock on file + ".lock"
+ * after reloading the file if another process changed it. Every save bumps a change
+ * count kept in the lock file's mapped header, so reads only compare it to the count
+ * last loaded (a memory read, no system call) to know whether to reload.
+ * 
+ * Values are converted to bytes by a ValueSerializer (BinaryValueSerializer unless
+ * another, ex: a CompressingValueSerializer, is passed in). Files written with Java
+ * serialization by older versions are still read and are rewritten in the new format
+ * on the next change or by migrate().
+ * 
+ * Call begin() to start a transaction for the current thread. Changes made until
+ * commit() are only visible to that thread and are then written all at once (one
+ * appended batch or one rewrite of the file), or thrown away by rollback().
+ * 
  * Original Class: com.cffreedom.utils.KeyValueFileMgr
  * @author markjacobsen.net (http://mjg2.net/code)
  * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
@@ -30,21 +66,55 @@ import com.cffreedom.utils.security.SecurityCipher;
  * 
  * Changes:
  * 2013-07-15	markjacobsen.net 	Added getKeys()
+ * 2026-10-17 	MarkJacobsen.net 	Added optional append only KeyValueLog storage, updateEntry() only saves once
+ * 2026-10-17 	MarkJacobsen.net 	Added mapped option to read values lazily through an on disk index
+ * 2026-10-17 	MarkJacobsen.net 	Thread and process safe, addEntry() and updateEntry() check and change atomically
+ * 2026-10-17 	MarkJacobsen.net 	Added begin(), commit() and rollback()
+ * 2026-10-17 	MarkJacobsen.net 	Values written with a ValueSerializer instead of Java serialization, added migrate()
+ * 2026-10-18 	MarkJacobsen.net 	Detect changes by other processes with a change count in the lock file instead of stat calls
  */
-public class KeyValueFileMgr
+public class KeyValueFileMgr implements Closeable
 {
 	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.KeyValueFileMgr");
+	public static final int MAGIC = 0x43464B4D;
+	public static final short VERSION = 1;
+	private static final int FILE_HEADER_BYTES = 6;
+	// Lock file header: long change count
+	private static final int LOCK_HEADER_BYTES = 8;
+	// Marks a key removed in a transaction
+	private static final Object REMOVED = new Object();
 	
 	private String file = null;
 	private Map<String, Object> map = null;
 	private SecurityCipher cipher = null;
+	private ValueSerializer<Object> codec = null;
+	private KeyValueLog log = null;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private InterProcessLock processLock = null;
+	private volatile long loadedChangeCount = -1;
+	private final ThreadLocal<Map<String, Object>> transaction = new ThreadLocal<Map<String, Object>>();
 	
-	public KeyValueFileMgr(String file)
+	public KeyValueFileMgr(String file) { this(file, new BinaryValueSerializer()); }
+	
+	/**
+	 * @param file
+	 * @param codec Converts the entries to bytes (the same codec must be used every time the file is opened)
+	 */
+	public KeyValueFileMgr(String file, ValueSerializer<Object> codec)
 	{
 		try
 		{
 			this.file = file;
-			this.map = this.loadFile(file);
+			this.codec = codec;
+			try
+			{
+				this.processLock = new InterProcessLock(file + ".lock", LOCK_HEADER_BYTES);
+			}
+			catch (IOException e)
+			{
+				logger.warn("Unable to use lock file for {} so changes by other processes won't be seen", file, e);
+			}
+			this.reload();
 		}
 		catch (Exception e)
 		{
@@ -52,6 +122,39 @@ public class KeyValueFileMgr
 		}
 	}
 	
+	/**
+	 * Store the entries in an append only log (see KeyValueLog) so each change costs
+	 * one record instead of rewriting the whole file
+	 * @param file
+	 * @param fsyncPolicy When changes are forced to disk
+	 * @throws FileSystemException
+	 */
+	public KeyValueFileMgr(String file, KeyValueLog.FsyncPolicy fsyncPolicy) throws FileSystemException { this(file, fsyncPolicy, false); }
+	
+	/**
+	 * @param file
+	 * @param fsyncPolicy When changes are forced to disk
+	 * @param mapped True to read values lazily from the file through an on disk index
+	 * (fast to open and low memory for very large files) instead of loading them all
+	 * @throws FileSystemException
+	 */
+	public KeyValueFileMgr(String file, KeyValueLog.FsyncPolicy fsyncPolicy, boolean mapped) throws FileSystemException { this(file, fsyncPolicy, mapped, new BinaryValueSerializer()); }
+	
+	/**
+	 * @param file
+	 * @param fsyncPolicy When changes are forced to disk
+	 * @param mapped True to read values lazily from the file through an on disk index
+	 * @param codec Converts values to bytes (the same codec must be used every time the file is opened)
+	 * @throws FileSystemException
+	 */
+	public KeyValueFileMgr(String file, KeyValueLog.FsyncPolicy fsyncPolicy, boolean mapped, ValueSerializer<Object> codec) throws FileSystemException
+	{
+		this.file = file;
+		this.codec = codec;
+		this.log = new KeyValueLog(file, codec, mapped);
+		this.log.setFsyncPolicy(fsyncPolicy);
+	}
+	
 	private boolean encryptVals()
 	{
 		if (this.cipher == null){
@@ -67,14 +170,14 @@ public class KeyValueFileMgr
 	{
 		Utils.output(header);
 		Utils.output("======================");
-		if ((this.map != null) && (this.map.size() > 0))
+		Set<String> keys = ((this.log != null) || (this.map != null)) ? this.getKeys() : null;
+		if ((keys != null) && (keys.size() > 0))
 		{
-			for(Map.Entry<String,Object> entry : this.map.entrySet())
+			for(String key : keys)
 			{
-				  String key = entry.getKey();
 				  if ((printValues == true) && (this.encryptVals() == false))
 				  {
-					  String value = (String)entry.getValue();
+					  String value = (String)this.getEntry(key);
 					  Utils.output(key + " - " + value);
 				  }
 				  else
@@ -87,17 +190,113 @@ public class KeyValueFileMgr
 	
 	public boolean keyExists(String key)
 	{
-		return this.map.containsKey(key);
+		Map<String, Object> changes = this.transaction.get();
+		if ((changes != null) && (changes.containsKey(key) == true))
+		{
+			return changes.get(key) != REMOVED;
+		}
+		if (this.log != null)
+		{
+			try
+			{
+				return this.log.containsKey(key);
+			}
+			catch (FileSystemException e)
+			{
+				logger.error("Unable to check for key: {}", key, e);
+				return false;
+			}
+		}
+		this.reloadIfChanged();
+		this.lock.readLock().lock();
+		try
+		{
+			return this.map.containsKey(key);
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
 	}
 	
 	public Set<String> getKeys()
 	{
-		return this.map.keySet();
+		Map<String, Object> changes = this.transaction.get();
+		if (changes != null)
+		{
+			Set<String> keys = new TreeSet<String>(this.getStoredKeys());
+			for (Map.Entry<String, Object> change : changes.entrySet())
+			{
+				if (change.getValue() == REMOVED)
+				{
+					keys.remove(change.getKey());
+				}
+				else
+				{
+					keys.add(change.getKey());
+				}
+			}
+			return Collections.unmodifiableSet(keys);
+		}
+		return this.getStoredKeys();
+	}
+	
+	private Set<String> getStoredKeys()
+	{
+		if (this.log != null)
+		{
+			try
+			{
+				return this.log.keySet();
+			}
+			catch (FileSystemException e)
+			{
+				logger.error("Unable to read keys from: {}", this.file, e);
+				return Collections.<String>emptySet();
+			}
+		}
+		this.reloadIfChanged();
+		this.lock.readLock().lock();
+		try
+		{
+			return Collections.unmodifiableSet(new TreeSet<String>(this.map.keySet()));
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
 	}
 	
 	public Object getEntry(String key)
 	{
-		return this.map.get(key);
+		Map<String, Object> changes = this.transaction.get();
+		if ((changes != null) && (changes.containsKey(key) == true))
+		{
+			Object value = changes.get(key);
+			return (value == REMOVED) ? null : value;
+		}
+		if (this.log != null)
+		{
+			try
+			{
+				return this.log.get(key);
+			}
+			catch (FileSystemException e)
+			{
+				logger.error("Unable to read key: {}", key, e);
+				return null;
+			}
+		}
+		this.reloadIfChanged();
+		this.lock.readLock().lock();
+		try
+		{
+			return this.map.get(key);
+		}
+		finally
+		{
+			this.lock.readLock().unlock();
+		}
 	}
 	
 	public String getEntryAsString(String key)
@@ -110,18 +309,30 @@ public class KeyValueFileMgr
 		return val;
 	}
 		
-	public boolean addEntry(String key, Object value) throws FileSystemException
+	public boolean addEntry(final String key, final Object value) throws FileSystemException
 	{
-		if (this.keyExists(key) == false)
+		Map<String, Object> changes = this.transaction.get();
+		if (changes != null)
 		{
-			this.map.put(key, value);
-			saveFile();
+			if (this.keyExists(key) == true)
+			{
+				return false;
+			}
+			changes.put(key, value);
 			return true;
 		}
-		else
+		if (this.log != null)
 		{
-			return false;
+			return this.log.putIfAbsent(key, value);
 		}
+		return this.changeMap(m -> {
+			if (m.containsKey(key) == true)
+			{
+				return false;
+			}
+			m.put(key, value);
+			return true;
+		});
 	}
 	
 	public boolean addEntry(String key, String value) throws FileSystemException
@@ -133,63 +344,380 @@ public class KeyValueFileMgr
 		return this.addEntry(key, (Object)value);
 	}
 	
-	public boolean updateEntry(String key, Object value) throws FileSystemException
+	public boolean updateEntry(final String key, final Object value) throws FileSystemException
 	{
-		if (this.keyExists(key) == true)
+		Map<String, Object> changes = this.transaction.get();
+		if (changes != null)
 		{
-			this.removeEntry(key);
-			return this.addEntry(key, value);
+			if (this.keyExists(key) == false)
+			{
+				return false;
+			}
+			changes.put(key, value);
+			return true;
 		}
-		else
+		if (this.log != null)
 		{
-			return false;
+			return this.log.replace(key, value);
 		}
+		return this.changeMap(m -> {
+			if (m.containsKey(key) == false)
+			{
+				return false;
+			}
+			m.put(key, value);
+			return true;
+		});
 	}
 	
 	public boolean updateEntry(String key, String value) throws FileSystemException
 	{
-		if (this.keyExists(key) == true)
+		if (this.encryptVals() == true)
 		{
-			this.removeEntry(key);
-			return this.addEntry(key, value);
+			value = this.cipher.encrypt(value);
 		}
-		else
+		return this.updateEntry(key, (Object)value);
+	}
+	
+	public boolean removeEntry(final String key) throws FileSystemException
+	{
+		Map<String, Object> changes = this.transaction.get();
+		if (changes != null)
 		{
-			return false;
+			if (this.keyExists(key) == false)
+			{
+				return false;
+			}
+			changes.put(key, REMOVED);
+			return true;
+		}
+		if (this.log != null)
+		{
+			return this.log.remove(key);
 		}
+		return this.changeMap(m -> {
+			if (m.containsKey(key) == false)
+			{
+				return false;
+			}
+			m.remove(key);
+			return true;
+		});
 	}
 	
-	public boolean removeEntry(String key) throws FileSystemException
+	/**
+	 * Start collecting this thread's changes so they can be written all at once by
+	 * commit() (ex: when importing many entries)
+	 */
+	public void begin()
 	{
-		if (this.keyExists(key) == true)
+		if (this.transaction.get() != null)
 		{
-			this.map.remove(key);
-			saveFile();
-			return true;
+			throw new IllegalStateException("A transaction is already in progress");
+		}
+		this.transaction.set(new LinkedHashMap<String, Object>());
+	}
+	
+	public boolean isInTransaction() { return this.transaction.get() != null; }
+	
+	/**
+	 * Atomically write every change made since begin() with a single write. If it
+	 * fails none of the changes are applied. The checks done by addEntry() and
+	 * updateEntry() are not repeated so changes made by others since then are overwritten.
+	 * @throws FileSystemException
+	 */
+	public void commit() throws FileSystemException
+	{
+		final Map<String, Object> changes = this.transaction.get();
+		if (changes == null)
+		{
+			throw new IllegalStateException("No transaction in progress");
+		}
+		this.transaction.remove();
+		if (changes.isEmpty() == true)
+		{
+			return;
+		}
+		if (this.log != null)
+		{
+			KeyValueLog.Batch batch = new KeyValueLog.Batch();
+			for (Map.Entry<String, Object> change : changes.entrySet())
+			{
+				if (change.getValue() == REMOVED)
+				{
+					batch.remove(change.getKey());
+				}
+				else
+				{
+					batch.put(change.getKey(), change.getValue());
+				}
+			}
+			this.log.commit(batch);
 		}
 		else
 		{
-			return false;
+			this.changeMap(m -> {
+				for (Map.Entry<String, Object> change : changes.entrySet())
+				{
+					if (change.getValue() == REMOVED)
+					{
+						m.remove(change.getKey());
+					}
+					else
+					{
+						m.put(change.getKey(), change.getValue());
+					}
+				}
+				return true;
+			});
+		}
+	}
+	
+	/**
+	 * Throw away every change made since begin()
+	 */
+	public void rollback()
+	{
+		this.transaction.remove();
+	}
+	
+	/**
+	 * Release the file
+	 */
+	public void close() throws IOException
+	{
+		if (this.log != null)
+		{
+			this.log.close();
+		}
+		if (this.processLock != null)
+		{
+			this.processLock.close();
+		}
+	}
+	
+	private interface MapChange
+	{
+		/**
+		 * @return True if the map was changed and needs to be saved
+		 */
+		boolean apply(Map<String, Object> map);
+	}
+	
+	/**
+	 * Apply a change to the latest contents of the file and save it while holding
+	 * the write lock and (if available) the lock file
+	 */
+	private boolean changeMap(MapChange change) throws FileSystemException
+	{
+		this.lock.writeLock().lock();
+		try
+		{
+			if (this.processLock != null)
+			{
+				this.processLock.lock();
+			}
+			try
+			{
+				this.reload();
+				if (change.apply(this.map) == false)
+				{
+					return false;
+				}
+				try
+				{
+					this.saveFile();
+				}
+				catch (FileSystemException e)
+				{
+					// Throw away the change by reloading what is on disk next time
+					this.loadedChangeCount = -1;
+					throw e;
+				}
+				return true;
+			}
+			finally
+			{
+				if (this.processLock != null)
+				{
+					this.processLock.unlock();
+				}
+			}
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			throw new FileSystemException("Unable to update: " + this.file, e);
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return Number of times the file has been saved (0 if there's no lock file to keep count in)
+	 */
+	private long getChangeCount()
+	{
+		return (this.processLock != null) ? this.processLock.getLong(0) : 0;
+	}
+	
+	/**
+	 * Reload the map if another process saved the file since we last loaded or saved it
+	 */
+	private void reloadIfChanged()
+	{
+		if (this.getChangeCount() == this.loadedChangeCount)
+		{
+			return;
+		}
+		this.lock.writeLock().lock();
+		try
+		{
+			this.reload();
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			logger.error("Unable to reload: {}", this.file, e);
+		}
+		finally
+		{
+			this.lock.writeLock().unlock();
 		}
 	}
 	
+	private void reload() throws IOException, ClassNotFoundException
+	{
+		// Read the count first so a save that lands while loading is picked up next time
+		long changeCount = this.getChangeCount();
+		if (changeCount != this.loadedChangeCount)
+		{
+			this.map = this.loadFile(this.file);
+			this.loadedChangeCount = changeCount;
+		}
+	}
+	
+	/**
+	 * Save the map and bump the change count (caller holds the lock file)
+	 */
 	private void saveFile() throws FileSystemException
 	{
 		logger.debug("Saving to file: {}", this.file);
-		FileUtils.writeObjectToFile(this.file, this.map);
+		writeMapFile(this.file, this.map, this.codec);
+		if (this.processLock != null)
+		{
+			long changeCount = this.getChangeCount() + 1;
+			this.processLock.putLong(0, changeCount);
+			this.loadedChangeCount = changeCount;
+		}
 	}
 	
-	@SuppressWarnings("unchecked")
 	private Map<String, Object> loadFile(String infile) throws IOException, ClassNotFoundException
 	{
 		if (FileUtils.fileExists(infile) == true)
 		{
 			logger.debug("Loading: {}", infile);
-			return (Map<String, Object>)FileUtils.readObjectFromFile(infile);
+			return readMapFile(infile, this.codec);
 		}
 		else
 		{
 			return new TreeMap<String, Object>();
 		}
     }
+	
+	/**
+	 * Rewrite a file saved with Java serialization by an older version in the
+	 * current format using a BinaryValueSerializer
+	 * @param file
+	 * @return True if the file was rewritten, false if it was already in the current format
+	 * @throws FileSystemException
+	 */
+	public static boolean migrate(String file) throws FileSystemException { return migrate(file, new BinaryValueSerializer()); }
+	
+	public static boolean migrate(String file, ValueSerializer<Object> codec) throws FileSystemException
+	{
+		try (InterProcessLock lock = new InterProcessLock(file + ".lock"))
+		{
+			lock.lock();
+			try
+			{
+				if ((FileUtils.fileExists(file) == false) || (isLegacyFile(file) == false))
+				{
+					return false;
+				}
+				logger.info("Migrating {} from Java serialization", file);
+				writeMapFile(file, readMapFile(file, codec), codec);
+				return true;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			throw new FileSystemException("Unable to migrate: " + file, e);
+		}
+	}
+	
+	private static boolean isLegacyFile(String file) throws IOException
+	{
+		byte[] start = new byte[2];
+		try (FileInputStream in = new FileInputStream(file))
+		{
+			return (in.read(start) == 2) && (BinaryValueSerializer.isJavaSerialized(start) == true);
+		}
+	}
+	
+	/**
+	 * Write the map to a temp file and atomically rename it into place so readers
+	 * never see part of a file
+	 */
+	private static void writeMapFile(String file, Map<String, Object> map, ValueSerializer<Object> codec) throws FileSystemException
+	{
+		File tmp = new File(file + ".tmp");
+		try
+		{
+			byte[] body = codec.serialize(map);
+			ByteBuffer buf = ByteBuffer.allocate(FILE_HEADER_BYTES + body.length);
+			buf.putInt(MAGIC);
+			buf.putShort(VERSION);
+			buf.put(body);
+			Files.write(tmp.toPath(), buf.array());
+			Files.move(tmp.toPath(), new File(file).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			tmp.delete();
+			throw new FileSystemException("Unable to save: " + file, e);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> readMapFile(String file, ValueSerializer<Object> codec) throws IOException, ClassNotFoundException
+	{
+		byte[] bytes = Files.readAllBytes(new File(file).toPath());
+		Object value;
+		if (BinaryValueSerializer.isJavaSerialized(bytes) == true)
+		{
+			try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+			{
+				value = ois.readObject();
+			}
+		}
+		else
+		{
+			ByteBuffer buf = ByteBuffer.wrap(bytes);
+			if ((bytes.length < FILE_HEADER_BYTES) || (buf.getInt() != MAGIC) || (buf.getShort() != VERSION))
+			{
+				throw new IOException("Not a key/value file: " + file);
+			}
+			value = codec.deserialize(Arrays.copyOfRange(bytes, FILE_HEADER_BYTES, bytes.length));
+		}
+		if (value instanceof TreeMap)
+		{
+			return (Map<String, Object>)value;
+		}
+		return new TreeMap<String, Object>((Map<String, Object>)value);
+	}
 }
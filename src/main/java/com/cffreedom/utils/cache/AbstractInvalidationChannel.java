@@ -0,0 +1,221 @@
+package com.cffreedom.utils.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Batching, sequencing and duplicate/gap detection shared by the InvalidationChannel
+ * implementations. Subclasses only need to send() bytes to the other nodes and hand
+ * whatever they receive to receive().
+ *
+ * With a batch window keys passed to invalidate() are held for up to that many
+ * milliseconds (or until MAX_BATCH_KEYS are waiting) and sent as one message.
+ *
+ * Original Class: com.cffreedom.utils.cache.AbstractInvalidationChannel
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public abstract class AbstractInvalidationChannel implements InvalidationChannel {
+	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.cache.AbstractInvalidationChannel");
+	public static final int MAX_BATCH_KEYS = 256;
+	
+	private final String nodeId;
+	private final long epoch = System.currentTimeMillis();
+	private long sequence = 0;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger(0);
+	private final ScheduledExecutorService flusher;
+	// Node id -> { epoch, last sequence } of what we've received
+	private final Map<String, long[]> lastSeen = new HashMap<>();
+	
+	/**
+	 * @param nodeId Unique id for this node (null for a random one)
+	 * @param batchMillis How long invalidate() can hold a key to batch it with others (0 to send right away)
+	 */
+	protected AbstractInvalidationChannel(String nodeId, long batchMillis) {
+		this.nodeId = (nodeId == null) ? UUID.randomUUID().toString() : nodeId;
+		if (batchMillis > 0) {
+			this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "InvalidationChannel-flush-" + this.nodeId);
+				t.setDaemon(true);
+				return t;
+			});
+			this.flusher.scheduleWithFixedDelay(this::flush, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+		} else {
+			this.flusher = null;
+		}
+	}
+	
+	/**
+	 * Deliver a message to the other nodes
+	 * @param message
+	 * @throws IOException
+	 */
+	protected abstract void send(byte[] message) throws IOException;
+	
+	/**
+	 * @return Largest message send() can handle, batches are split to fit
+	 */
+	protected int getMaxMessageBytes() { return Integer.MAX_VALUE; }
+	
+	public String getNodeId() { return this.nodeId; }
+	public void addListener(Listener listener) { this.listeners.add(listener); }
+	public void removeListener(Listener listener) { this.listeners.remove(listener); }
+	
+	public void invalidate(String key) {
+		if (this.flusher == null) {
+			this.publish(Collections.singletonList(key), false);
+		} else {
+			this.pending.add(key);
+			if (this.pendingCount.incrementAndGet() >= MAX_BATCH_KEYS) {
+				this.flush();
+			}
+		}
+	}
+	
+	public void invalidateAll(Collection<String> keys) {
+		if (keys.isEmpty() == false) {
+			this.publish(keys, false);
+		}
+	}
+	
+	public void invalidateAll() {
+		// Anything waiting is covered by this so don't bother sending it
+		this.drainPending();
+		this.publish(Collections.<String>emptyList(), true);
+	}
+	
+	public void flush() {
+		List<String> keys = this.drainPending();
+		if (keys.isEmpty() == false) {
+			this.publish(keys, false);
+		}
+	}
+	
+	private List<String> drainPending() {
+		List<String> keys = new ArrayList<>();
+		String key;
+		while ((key = this.pending.poll()) != null) {
+			this.pendingCount.decrementAndGet();
+			keys.add(key);
+		}
+		return keys;
+	}
+	
+	/**
+	 * Split the keys into messages that fit and send them. Synchronized so sequence
+	 * numbers go out in order.
+	 */
+	private synchronized void publish(Collection<String> keys, boolean all) {
+		int max = this.getMaxMessageBytes();
+		int header = InvalidationMessage.headerBytes(this.nodeId);
+		List<String> batch = new ArrayList<>();
+		int size = header;
+		for (String key : keys) {
+			int keySize = InvalidationMessage.keyBytes(key);
+			if ((batch.isEmpty() == false) && ((size + keySize > max) || (batch.size() >= MAX_BATCH_KEYS))) {
+				this.sendMessage(batch, false);
+				batch = new ArrayList<>();
+				size = header;
+			}
+			batch.add(key);
+			size += keySize;
+		}
+		if ((batch.isEmpty() == false) || (all == true)) {
+			this.sendMessage(batch, all);
+		}
+	}
+	
+	private void sendMessage(List<String> keys, boolean all) {
+		InvalidationMessage msg = new InvalidationMessage(this.nodeId, this.epoch, ++this.sequence, all, keys);
+		try {
+			this.send(msg.encode());
+		} catch (IOException | RuntimeException e) {
+			// The sequence number was used so the other nodes will see a gap and invalidate everything
+			logger.warn("Unable to send invalidation of {} keys: {}", keys.size(), e.getMessage());
+		}
+	}
+	
+	/**
+	 * Called by subclasses with a message from another node
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	protected void receive(byte[] data, int offset, int length) {
+		InvalidationMessage msg;
+		try {
+			msg = InvalidationMessage.decode(data, offset, length);
+		} catch (IOException e) {
+			logger.debug("Ignoring invalid message: {}", e.getMessage());
+			return;
+		}
+		if (msg.nodeId.equals(this.nodeId) && (msg.epoch == this.epoch)) {
+			return;
+		}
+		
+		boolean gap = false;
+		synchronized (this.lastSeen) {
+			long[] last = this.lastSeen.get(msg.nodeId);
+			if ((last == null) || (last[0] != msg.epoch)) {
+				// First message from this node (or it restarted) so there's nothing to compare to
+				this.lastSeen.put(msg.nodeId, new long[] { msg.epoch, msg.sequence });
+			} else if (msg.sequence <= last[1]) {
+				return;
+			} else {
+				gap = (msg.sequence > last[1] + 1);
+				last[1] = msg.sequence;
+			}
+		}
+		
+		if (gap == true) {
+			logger.warn("Missed invalidations from node {} so invalidating everything", msg.nodeId);
+		}
+		for (Listener listener : this.listeners) {
+			try {
+				if ((gap == true) || (msg.all == true)) {
+					listener.onInvalidateAll();
+				} else {
+					listener.onInvalidate(msg.keys);
+				}
+			} catch (Exception e) {
+				logger.warn("Invalidation listener failed: {}", e.getMessage());
+			}
+		}
+	}
+	
+	public void close() throws IOException {
+		if (this.flusher != null) {
+			this.flusher.shutdown();
+		}
+		this.flush();
+	}
+}
@@ -0,0 +1,403 @@
+package com.cffreedom.utils.cache;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compact tagged binary ValueSerializer. Strings, boxed primitives, byte arrays,
+ * BigDecimal/BigInteger, Dates and ArrayLists, HashSets, LinkedHashSets, HashMaps,
+ * LinkedHashMaps and TreeMaps of them are written as a one byte tag followed by the
+ * value (integers as zig-zag varints) so they are a fraction of the size of Java
+ * serialization and are read without reflection. Anything else that is Serializable
+ * falls back to Java serialization inside the value.
+ *
+ * Only those exact classes get a tag so a value always comes back as the class it
+ * was written as. Other collections (ex: Vector, Hashtable, subclasses, TreeMaps with
+ * a Comparator) are Java serialized.
+ *
+ * Bytes written by JavaValueSerializer are recognized by their stream header and
+ * still deserialized, so this can replace it for data that is already stored.
+ *
+ * Original Class: com.cffreedom.utils.cache.BinaryValueSerializer
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ * 2026-10-18 	MarkJacobsen.net 	Only tag the exact collection classes that are read back, added HashMap and HashSet
+ */
+public class BinaryValueSerializer implements ValueSerializer<Object> {
+	private static final byte NULL = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+	private static final byte INT = 3;
+	private static final byte LONG = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte FLOAT = 6;
+	private static final byte SHORT = 7;
+	private static final byte BYTE = 8;
+	private static final byte CHAR = 9;
+	private static final byte STRING = 10;
+	private static final byte BYTES = 11;
+	private static final byte LIST = 12;
+	private static final byte SET = 13;
+	private static final byte MAP = 14;
+	private static final byte SORTED_MAP = 15;
+	private static final byte BIG_INTEGER = 16;
+	private static final byte BIG_DECIMAL = 17;
+	private static final byte DATE = 18;
+	private static final byte JAVA = 19;
+	private static final byte HASH_MAP = 20;
+	private static final byte HASH_SET = 21;
+	// First two bytes of a Java serialization stream
+	private static final byte JAVA_MAGIC_0 = (byte)0xAC;
+	private static final byte JAVA_MAGIC_1 = (byte)0xED;
+
+	private final JavaValueSerializer java = new JavaValueSerializer();
+
+	@Override
+	public byte[] serialize(Object value) throws IOException {
+		Out out = new Out(64);
+		this.write(out, value);
+		return out.toByteArray();
+	}
+
+	@Override
+	public Object deserialize(byte[] bytes) throws IOException {
+		if (isJavaSerialized(bytes) == true) {
+			return this.java.deserialize(bytes);
+		}
+		In in = new In(bytes, 0, bytes.length);
+		Object value = this.read(in);
+		if (in.pos != bytes.length) {
+			throw new IOException("Unexpected data after value");
+		}
+		return value;
+	}
+
+	/**
+	 * @return True if the bytes start with a Java serialization stream header
+	 */
+	public static boolean isJavaSerialized(byte[] bytes) {
+		return (bytes.length >= 2) && (bytes[0] == JAVA_MAGIC_0) && (bytes[1] == JAVA_MAGIC_1);
+	}
+
+	private void write(Out out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			byte[] bytes = ((String)value).getBytes(StandardCharsets.UTF_8);
+			out.writeByte(STRING);
+			out.writeVarLong(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		} else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeVarLong(zigZag((Integer)value));
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeVarLong(zigZag((Long)value));
+		} else if (value instanceof Boolean) {
+			out.writeByte(((Boolean)value) ? TRUE : FALSE);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeLong(Double.doubleToRawLongBits((Double)value));
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeInt(Float.floatToRawIntBits((Float)value));
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeVarLong(zigZag((Short)value));
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte)value);
+		} else if (value instanceof Character) {
+			out.writeByte(CHAR);
+			out.writeVarLong((Character)value);
+		} else if (value instanceof byte[]) {
+			byte[] bytes = (byte[])value;
+			out.writeByte(BYTES);
+			out.writeVarLong(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		} else if (value.getClass() == ArrayList.class) {
+			out.writeByte(LIST);
+			this.writeCollection(out, (List<?>)value);
+		} else if (value.getClass() == HashMap.class) {
+			out.writeByte(HASH_MAP);
+			this.writeMap(out, (Map<?, ?>)value);
+		} else if (value.getClass() == LinkedHashMap.class) {
+			out.writeByte(MAP);
+			this.writeMap(out, (Map<?, ?>)value);
+		} else if ((value.getClass() == TreeMap.class) && (((TreeMap<?, ?>)value).comparator() == null)) {
+			out.writeByte(SORTED_MAP);
+			this.writeMap(out, (Map<?, ?>)value);
+		} else if (value.getClass() == HashSet.class) {
+			out.writeByte(HASH_SET);
+			this.writeCollection(out, (Set<?>)value);
+		} else if (value.getClass() == LinkedHashSet.class) {
+			out.writeByte(SET);
+			this.writeCollection(out, (Set<?>)value);
+		} else if (value.getClass() == BigInteger.class) {
+			byte[] bytes = ((BigInteger)value).toByteArray();
+			out.writeByte(BIG_INTEGER);
+			out.writeVarLong(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		} else if (value.getClass() == BigDecimal.class) {
+			BigDecimal decimal = (BigDecimal)value;
+			byte[] bytes = decimal.unscaledValue().toByteArray();
+			out.writeByte(BIG_DECIMAL);
+			out.writeVarLong(zigZag(decimal.scale()));
+			out.writeVarLong(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		} else if (value.getClass() == Date.class) {
+			// Subclasses like java.sql.Timestamp carry more than the millis
+			out.writeByte(DATE);
+			out.writeVarLong(zigZag(((Date)value).getTime()));
+		} else if (value instanceof Serializable) {
+			byte[] bytes = this.java.serialize(value);
+			out.writeByte(JAVA);
+			out.writeVarLong(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		} else {
+			throw new NotSerializableException(value.getClass().getName());
+		}
+	}
+
+	private void writeMap(Out out, Map<?, ?> map) throws IOException {
+		out.writeVarLong(map.size());
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			this.write(out, entry.getKey());
+			this.write(out, entry.getValue());
+		}
+	}
+
+	private void writeCollection(Out out, Collection<?> values) throws IOException {
+		out.writeVarLong(values.size());
+		for (Object value : values) {
+			this.write(out, value);
+		}
+	}
+
+	private Object read(In in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+			case NULL: return null;
+			case TRUE: return Boolean.TRUE;
+			case FALSE: return Boolean.FALSE;
+			case INT: return (int)unZigZag(in.readVarLong());
+			case LONG: return unZigZag(in.readVarLong());
+			case DOUBLE: return Double.longBitsToDouble(in.readLong());
+			case FLOAT: return Float.intBitsToFloat(in.readInt());
+			case SHORT: return (short)unZigZag(in.readVarLong());
+			case BYTE: return in.readByte();
+			case CHAR: return (char)in.readVarLong();
+			case STRING: {
+				int length = in.readLength();
+				String value = new String(in.buf, in.pos, length, StandardCharsets.UTF_8);
+				in.pos += length;
+				return value;
+			}
+			case BYTES: return in.readBytes(in.readLength());
+			case LIST: {
+				int size = in.readLength();
+				List<Object> list = new ArrayList<Object>(size);
+				for (int x = 0; x < size; x++) {
+					list.add(this.read(in));
+				}
+				return list;
+			}
+			case SET:
+			case HASH_SET: {
+				int size = in.readLength();
+				Set<Object> set = (tag == SET) ? new LinkedHashSet<Object>(capacity(size)) : new HashSet<Object>(capacity(size));
+				for (int x = 0; x < size; x++) {
+					set.add(this.read(in));
+				}
+				return set;
+			}
+			case MAP:
+			case HASH_MAP:
+			case SORTED_MAP: {
+				int size = in.readLength();
+				Map<Object, Object> map;
+				if (tag == MAP) {
+					map = new LinkedHashMap<Object, Object>(capacity(size));
+				} else if (tag == HASH_MAP) {
+					map = new HashMap<Object, Object>(capacity(size));
+				} else {
+					map = new TreeMap<Object, Object>();
+				}
+				for (int x = 0; x < size; x++) {
+					Object key = this.read(in);
+					map.put(key, this.read(in));
+				}
+				return map;
+			}
+			case BIG_INTEGER: return new BigInteger(in.readBytes(in.readLength()));
+			case BIG_DECIMAL: {
+				int scale = (int)unZigZag(in.readVarLong());
+				return new BigDecimal(new BigInteger(in.readBytes(in.readLength())), scale);
+			}
+			case DATE: return new Date(unZigZag(in.readVarLong()));
+			case JAVA: return this.java.deserialize(in.readBytes(in.readLength()));
+			default: throw new IOException("Unknown value tag: " + tag);
+		}
+	}
+
+	private static int capacity(int size) {
+		return (int)Math.min((size / 0.75f) + 1, 1 << 16);
+	}
+
+	private static long zigZag(long value) { return (value << 1) ^ (value >> 63); }
+	private static long unZigZag(long value) { return (value >>> 1) ^ -(value & 1); }
+
+	private static final class Out {
+		private byte[] buf;
+		private int length = 0;
+
+		Out(int capacity) { this.buf = new byte[capacity]; }
+
+		private void ensure(int bytes) {
+			if (this.length + bytes > this.buf.length) {
+				byte[] bigger = new byte[Math.max(this.buf.length * 2, this.length + bytes)];
+				System.arraycopy(this.buf, 0, bigger, 0, this.length);
+				this.buf = bigger;
+			}
+		}
+
+		void writeByte(byte b) {
+			this.ensure(1);
+			this.buf[this.length++] = b;
+		}
+
+		void write(byte[] bytes, int offset, int len) {
+			this.ensure(len);
+			System.arraycopy(bytes, offset, this.buf, this.length, len);
+			this.length += len;
+		}
+
+		void writeVarLong(long value) {
+			this.ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				this.buf[this.length++] = (byte)((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.buf[this.length++] = (byte)value;
+		}
+
+		void writeLong(long value) {
+			this.ensure(8);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				this.buf[this.length++] = (byte)(value >>> shift);
+			}
+		}
+
+		void writeInt(int value) {
+			this.ensure(4);
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				this.buf[this.length++] = (byte)(value >>> shift);
+			}
+		}
+
+		byte[] toByteArray() {
+			byte[] ret = new byte[this.length];
+			System.arraycopy(this.buf, 0, ret, 0, this.length);
+			return ret;
+		}
+	}
+
+	private static final class In {
+		private final byte[] buf;
+		private final int end;
+		private int pos;
+
+		In(byte[] buf, int offset, int length) {
+			this.buf = buf;
+			this.pos = offset;
+			this.end = offset + length;
+		}
+
+		private void need(int bytes) throws EOFException {
+			if ((bytes < 0) || (this.end - this.pos < bytes)) {
+				throw new EOFException("Truncated value");
+			}
+		}
+
+		byte readByte() throws EOFException {
+			this.need(1);
+			return this.buf[this.pos++];
+		}
+
+		long readVarLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = this.readByte();
+				value |= (long)(b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		long readLong() throws EOFException {
+			this.need(8);
+			long value = 0;
+			for (int x = 0; x < 8; x++) {
+				value = (value << 8) | (this.buf[this.pos++] & 0xFF);
+			}
+			return value;
+		}
+
+		int readInt() throws EOFException {
+			this.need(4);
+			int value = 0;
+			for (int x = 0; x < 4; x++) {
+				value = (value << 8) | (this.buf[this.pos++] & 0xFF);
+			}
+			return value;
+		}
+
+		/**
+		 * Read a length/count and check that it could fit in what is left
+		 */
+		int readLength() throws IOException {
+			long length = this.readVarLong();
+			if ((length < 0) || (length > this.end - this.pos)) {
+				throw new EOFException("Truncated value");
+			}
+			return (int)length;
+		}
+
+		byte[] readBytes(int length) throws EOFException {
+			this.need(length);
+			byte[] ret = new byte[length];
+			System.arraycopy(this.buf, this.pos, ret, 0, length);
+			this.pos += length;
+			return ret;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package com.cffreedom.utils.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Computes the values for a batch of keys that aren't cached so they can be
+ * filled with one round trip instead of one per key. Used by getAll() on the
+ * caches. ex: for a page of person ids
+ * <pre>
+ * cache.getAll(ids, keys -&gt; {
+ *     String sql = "select id, name from person where id in (" + DbUtils.toInClause(new ArrayList&lt;&gt;(keys), true) + ")";
+ *     ...
+ * });
+ * </pre>
+ * Note: DbUtils.toInClause() quotes but does not escape values so only build
+ * SQL from keys you trust (ex: ids you generated).
+ *
+ * Original Class: com.cffreedom.utils.cache.BulkCacheLoader
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface BulkCacheLoader<K, V> {
+	/**
+	 * @param keys Keys that were not in the cache
+	 * @return Values for the keys that have one (keys left out or mapped to null are not cached)
+	 * @throws Exception
+	 */
+	Map<K, V> loadAll(Collection<K> keys) throws Exception;
+}
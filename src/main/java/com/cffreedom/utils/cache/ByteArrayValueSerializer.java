@@ -0,0 +1,31 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * Pass through ValueSerializer for values that are already byte arrays
+ *
+ * Original Class: com.cffreedom.utils.cache.ByteArrayValueSerializer
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class ByteArrayValueSerializer implements ValueSerializer<byte[]> {
+	@Override
+	public byte[] serialize(byte[] value) {
+		return value;
+	}
+	
+	@Override
+	public byte[] deserialize(byte[] bytes) {
+		return bytes;
+	}
+}
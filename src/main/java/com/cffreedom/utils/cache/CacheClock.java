@@ -0,0 +1,33 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * Source of the current time for cache expiration. Swap in your own to make
+ * time based behavior deterministic (ex: in tests).
+ *
+ * Original Class: com.cffreedom.utils.cache.CacheClock
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface CacheClock {
+	/** Wall clock time from System.currentTimeMillis() */
+	CacheClock SYSTEM = new CacheClock() {
+		@Override
+		public long currentTimeMillis() { return System.currentTimeMillis(); }
+	};
+	
+	/**
+	 * @return Milliseconds since the epoch
+	 */
+	long currentTimeMillis();
+}
@@ -0,0 +1,29 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * Computes a value for a key that isn't cached. Used by the loading get() on
+ * the caches so concurrent misses for the same key only load once.
+ *
+ * Original Class: com.cffreedom.utils.cache.CacheLoader
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface CacheLoader<K, V> {
+	/**
+	 * @param key
+	 * @return The value for the key or null if there isn't one (null is not cached)
+	 * @throws Exception
+	 */
+	V load(K key) throws Exception;
+}
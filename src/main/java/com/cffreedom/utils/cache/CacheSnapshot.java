@@ -0,0 +1,275 @@
+package com.cffreedom.utils.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary file holding the contents of a cache so it can be warmed back
+ * up after a restart.
+ * 
+ * Layout:
+ *   header  - magic (int), version (int), snapshot time millis (long)
+ *   values  - raw value bytes written one after another as they are streamed in
+ *   index   - count (int) then per entry: key (UTF), age millis (long), remaining ttl millis (long),
+ *             ttl millis (long), idle millis (long), value offset (long), value length (int)
+ *             (version 1 files have cache minutes (int) in place of ttl and idle millis)
+ *   trailer - index offset (long), magic (int)
+ * 
+ * Keeping the index at the end means a reader only has to seek to the trailer and
+ * read the index to know everything that's in the file. Values are read on demand.
+ *
+ * Original Class: com.cffreedom.utils.cache.CacheSnapshot
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ * 2026-10-17 	MarkJacobsen.net 	Version 2 stores ttl and idle millis instead of cache minutes
+ * 2026-10-18 	MarkJacobsen.net 	Writer syncs the temp file before moving it into place
+ */
+public class CacheSnapshot implements Closeable {
+	public static final int MAGIC = 0x43464353; // CFCS
+	public static final int VERSION = 2;
+	private static final int HEADER_BYTES = 16;
+	private static final int TRAILER_BYTES = 12;
+	
+	private final RandomAccessFile file;
+	private final long snapshotMillis;
+	private final Map<String, Entry> entries;
+	
+	private CacheSnapshot(RandomAccessFile file, long snapshotMillis, Map<String, Entry> entries) {
+		this.file = file;
+		this.snapshotMillis = snapshotMillis;
+		this.entries = entries;
+	}
+	
+	/**
+	 * Open a snapshot reading only its header and index
+	 * @param file
+	 * @return
+	 * @throws IOException If the file is missing or isn't a valid snapshot
+	 */
+	public static CacheSnapshot open(String file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if (length < HEADER_BYTES + TRAILER_BYTES) {
+				throw new IOException("Not a cache snapshot (too short): " + file);
+			}
+			int version = 0;
+			if ((raf.readInt() != MAGIC) || ((version = raf.readInt()) > VERSION) || (version < 1)) {
+				throw new IOException("Not a cache snapshot (bad header): " + file);
+			}
+			long snapshotMillis = raf.readLong();
+			
+			raf.seek(length - TRAILER_BYTES);
+			long indexOffset = raf.readLong();
+			if ((raf.readInt() != MAGIC) || (indexOffset < HEADER_BYTES) || (indexOffset > length - TRAILER_BYTES)) {
+				throw new IOException("Not a cache snapshot (bad trailer, possibly incomplete): " + file);
+			}
+			
+			FileChannel channel = raf.getChannel();
+			channel.position(indexOffset);
+			InputStream in = Channels.newInputStream(channel);
+			DataInputStream index = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+			int count = index.readInt();
+			Map<String, Entry> entries = new LinkedHashMap<>(Math.max(16, count * 4 / 3 + 1));
+			for (int x = 0; x < count; x++) {
+				String key = index.readUTF();
+				long age = index.readLong();
+				long remaining = index.readLong();
+				long ttl;
+				long idle = 0;
+				if (version == 1) {
+					ttl = index.readInt() * 60L * 1000L;
+				} else {
+					ttl = index.readLong();
+					idle = index.readLong();
+				}
+				Entry entry = new Entry(key, age, remaining, ttl, idle, index.readLong(), index.readInt());
+				entries.put(entry.key, entry);
+			}
+			return new CacheSnapshot(raf, snapshotMillis, Collections.unmodifiableMap(entries));
+		} catch (IOException | RuntimeException e) {
+			raf.close();
+			throw e;
+		}
+	}
+	
+	public long getSnapshotMillis() { return this.snapshotMillis; }
+	
+	/**
+	 * @return Entries in the order they were written
+	 */
+	public Map<String, Entry> getEntries() { return this.entries; }
+	
+	/**
+	 * Read the value bytes for an entry. Safe to call from multiple threads.
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] readValue(Entry entry) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(entry.length);
+		FileChannel channel = this.file.getChannel();
+		long pos = entry.offset;
+		while (buf.hasRemaining()) {
+			int read = channel.read(buf, pos);
+			if (read < 0) {
+				throw new IOException("Unexpected end of snapshot reading: " + entry.key);
+			}
+			pos += read;
+		}
+		return buf.array();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		this.file.close();
+	}
+	
+	/**
+	 * Metadata for one cached value in a snapshot. Times are relative to when
+	 * the snapshot was taken.
+	 */
+	public static final class Entry {
+		private final String key;
+		private final long ageMillis;
+		private final long remainingMillis;
+		private final long ttlMillis;
+		private final long idleMillis;
+		private final long offset;
+		private final int length;
+		
+		Entry(String key, long ageMillis, long remainingMillis, long ttlMillis, long idleMillis, long offset, int length) {
+			this.key = key;
+			this.ageMillis = ageMillis;
+			this.remainingMillis = remainingMillis;
+			this.ttlMillis = ttlMillis;
+			this.idleMillis = idleMillis;
+			this.offset = offset;
+			this.length = length;
+		}
+		
+		public String getKey() { return this.key; }
+		/** How long it had been cached when the snapshot was taken */
+		public long getAgeMillis() { return this.ageMillis; }
+		/** How long it had left to live when the snapshot was taken */
+		public long getRemainingMillis() { return this.remainingMillis; }
+		public long getTtlMillis() { return this.ttlMillis; }
+		public long getIdleMillis() { return this.idleMillis; }
+		public int getLength() { return this.length; }
+	}
+	
+	/**
+	 * Streams values to a temp file as they are added, forces it to disk and then
+	 * atomically moves it into place when closed, so a crash mid write never leaves a
+	 * half written snapshot where the reader expects a good one.
+	 */
+	public static class Writer implements Closeable {
+		private final File target;
+		private final File temp;
+		private final FileOutputStream tempOut;
+		private final DataOutputStream out;
+		private final long snapshotMillis;
+		private final List<Entry> index = new ArrayList<>();
+		private long position = HEADER_BYTES;
+		private boolean closed = false;
+		
+		public Writer(String file, long snapshotMillis) throws IOException {
+			this.target = new File(file);
+			this.temp = new File(file + ".tmp");
+			this.snapshotMillis = snapshotMillis;
+			this.tempOut = new FileOutputStream(this.temp);
+			this.out = new DataOutputStream(new BufferedOutputStream(this.tempOut, 64 * 1024));
+			this.out.writeInt(MAGIC);
+			this.out.writeInt(VERSION);
+			this.out.writeLong(snapshotMillis);
+		}
+		
+		/**
+		 * @param key
+		 * @param cachedMillis When the value was cached
+		 * @param expireMillis When the value expires
+		 * @param ttlMillis Time to live the value was cached with
+		 * @param idleMillis Time to idle the value was cached with (0 for none)
+		 * @param value Serialized value
+		 * @throws IOException
+		 */
+		public void add(String key, long cachedMillis, long expireMillis, long ttlMillis, long idleMillis, byte[] value) throws IOException {
+			this.out.write(value);
+			this.index.add(new Entry(key, this.snapshotMillis - cachedMillis, expireMillis - this.snapshotMillis, ttlMillis, idleMillis, this.position, value.length));
+			this.position += value.length;
+		}
+		
+		public int size() { return this.index.size(); }
+		
+		/**
+		 * Give up on the snapshot leaving any existing file in place
+		 */
+		public void abort() {
+			if (this.closed == false) {
+				this.closed = true;
+				try { this.out.close(); } catch (IOException e) { /* ignore */ }
+			}
+			this.temp.delete();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			
+			long indexOffset = this.position;
+			this.out.writeInt(this.index.size());
+			for (Entry entry : this.index) {
+				this.out.writeUTF(entry.key);
+				this.out.writeLong(entry.ageMillis);
+				this.out.writeLong(entry.remainingMillis);
+				this.out.writeLong(entry.ttlMillis);
+				this.out.writeLong(entry.idleMillis);
+				this.out.writeLong(entry.offset);
+				this.out.writeInt(entry.length);
+			}
+			this.out.writeLong(indexOffset);
+			this.out.writeInt(MAGIC);
+			try {
+				this.out.flush();
+				// Otherwise the move could reach the disk before the data it points at
+				this.tempOut.getFD().sync();
+			} finally {
+				this.out.close();
+			}
+			
+			Files.move(this.temp.toPath(), this.target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+}
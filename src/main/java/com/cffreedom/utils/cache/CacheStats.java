@@ -0,0 +1,96 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * Immutable point in time snapshot of a cache's statistics
+ *
+ * Original Class: com.cffreedom.utils.cache.CacheStats
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class CacheStats {
+	private final long hitCount;
+	private final long missCount;
+	private final long loadSuccessCount;
+	private final long loadFailureCount;
+	private final long totalLoadTimeNanos;
+	private final long evictionCount;
+	private final long expirationCount;
+	
+	public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+			long totalLoadTimeNanos, long evictionCount, long expirationCount) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadSuccessCount = loadSuccessCount;
+		this.loadFailureCount = loadFailureCount;
+		this.totalLoadTimeNanos = totalLoadTimeNanos;
+		this.evictionCount = evictionCount;
+		this.expirationCount = expirationCount;
+	}
+	
+	public long getHitCount() { return this.hitCount; }
+	public long getMissCount() { return this.missCount; }
+	public long getLoadSuccessCount() { return this.loadSuccessCount; }
+	public long getLoadFailureCount() { return this.loadFailureCount; }
+	public long getTotalLoadTimeNanos() { return this.totalLoadTimeNanos; }
+	/** Entries removed to stay within the maximum size or weight */
+	public long getEvictionCount() { return this.evictionCount; }
+	/** Entries removed because their time to live ran out */
+	public long getExpirationCount() { return this.expirationCount; }
+	
+	public long getRequestCount() { return this.hitCount + this.missCount; }
+	public long getLoadCount() { return this.loadSuccessCount + this.loadFailureCount; }
+	
+	/**
+	 * @return Hits / requests (1.0 if there haven't been any requests)
+	 */
+	public double getHitRate() {
+		long requests = this.getRequestCount();
+		return (requests == 0) ? 1.0 : (double)this.hitCount / requests;
+	}
+	
+	public double getMissRate() {
+		long requests = this.getRequestCount();
+		return (requests == 0) ? 0.0 : (double)this.missCount / requests;
+	}
+	
+	/**
+	 * @return Average nanoseconds spent per load (success or failure)
+	 */
+	public double getAverageLoadPenaltyNanos() {
+		long loads = this.getLoadCount();
+		return (loads == 0) ? 0.0 : (double)this.totalLoadTimeNanos / loads;
+	}
+	
+	/**
+	 * @param other An earlier snapshot
+	 * @return The activity between the earlier snapshot and this one
+	 */
+	public CacheStats minus(CacheStats other) {
+		return new CacheStats(Math.max(0, this.hitCount - other.hitCount),
+							Math.max(0, this.missCount - other.missCount),
+							Math.max(0, this.loadSuccessCount - other.loadSuccessCount),
+							Math.max(0, this.loadFailureCount - other.loadFailureCount),
+							Math.max(0, this.totalLoadTimeNanos - other.totalLoadTimeNanos),
+							Math.max(0, this.evictionCount - other.evictionCount),
+							Math.max(0, this.expirationCount - other.expirationCount));
+	}
+	
+	@Override
+	public String toString() {
+		return "CacheStats[hits=" + this.hitCount + ", misses=" + this.missCount + 
+				", loadSuccesses=" + this.loadSuccessCount + ", loadFailures=" + this.loadFailureCount +
+				", totalLoadTimeNanos=" + this.totalLoadTimeNanos + ", evictions=" + this.evictionCount +
+				", expirations=" + this.expirationCount + "]";
+	}
+}
@@ -0,0 +1,77 @@
+package com.cffreedom.utils.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe recorder behind CacheStats. Uses striped LongAdders so recording
+ * from many threads at once doesn't contend on a single counter.
+ *
+ * Original Class: com.cffreedom.utils.cache.CacheStatsCounter
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class CacheStatsCounter {
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder loadSuccessCount = new LongAdder();
+	private final LongAdder loadFailureCount = new LongAdder();
+	private final LongAdder totalLoadTime = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder expirationCount = new LongAdder();
+	
+	public void recordHits(int count) { this.hitCount.add(count); }
+	public void recordMisses(int count) { this.missCount.add(count); }
+	
+	public void recordLoadSuccess(long loadTimeNanos) {
+		this.loadSuccessCount.increment();
+		this.totalLoadTime.add(loadTimeNanos);
+	}
+	
+	public void recordLoadFailure(long loadTimeNanos) {
+		this.loadFailureCount.increment();
+		this.totalLoadTime.add(loadTimeNanos);
+	}
+	
+	/**
+	 * Count a removal if it was one the cache made on its own
+	 * @param cause
+	 */
+	public void recordRemoval(RemovalCause cause) {
+		if (cause == RemovalCause.SIZE) {
+			this.evictionCount.increment();
+		} else if (cause == RemovalCause.EXPIRED) {
+			this.expirationCount.increment();
+		}
+	}
+	
+	/**
+	 * @return The current values. Counters are read one at a time so the
+	 * snapshot isn't atomic across counters while recording is going on.
+	 */
+	public CacheStats snapshot() {
+		return new CacheStats(this.hitCount.sum(), this.missCount.sum(), this.loadSuccessCount.sum(), 
+							this.loadFailureCount.sum(), this.totalLoadTime.sum(), this.evictionCount.sum(), 
+							this.expirationCount.sum());
+	}
+	
+	public void reset() {
+		this.hitCount.reset();
+		this.missCount.reset();
+		this.loadSuccessCount.reset();
+		this.loadFailureCount.reset();
+		this.totalLoadTime.reset();
+		this.evictionCount.reset();
+		this.expirationCount.reset();
+	}
+}
@@ -0,0 +1,37 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * JMX view of a cache's size and statistics
+ *
+ * Original Class: com.cffreedom.utils.cache.CacheStatsMXBean
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface CacheStatsMXBean {
+	long getSize();
+	long getWeight();
+	long getMaximumSize();
+	long getMaximumWeight();
+	long getHitCount();
+	long getMissCount();
+	double getHitRate();
+	long getLoadSuccessCount();
+	long getLoadFailureCount();
+	double getAverageLoadPenaltyNanos();
+	long getEvictionCount();
+	long getExpirationCount();
+	
+	/** Zero out the counters */
+	void resetStats();
+}
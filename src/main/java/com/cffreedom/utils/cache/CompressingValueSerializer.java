@@ -0,0 +1,127 @@
+package com.cffreedom.utils.cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Wraps another ValueSerializer and deflates values that are at least minBytes
+ * long when that makes them smaller. Each value starts with a flag byte saying
+ * whether it was compressed. Values that start with anything else (ex: written
+ * before compression was turned on) are handed to the wrapped serializer as is.
+ *
+ * Deflaters and Inflaters are reused per thread since creating them allocates
+ * native memory.
+ *
+ * Original Class: com.cffreedom.utils.cache.CompressingValueSerializer
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class CompressingValueSerializer<V> implements ValueSerializer<V> {
+	public static final int DEFAULT_MIN_BYTES = 256;
+	private static final byte STORED = (byte)0xF0;
+	private static final byte DEFLATED = (byte)0xF1;
+	// Flag byte and uncompressed length
+	private static final int HEADER_BYTES = 5;
+
+	private final ValueSerializer<V> serializer;
+	private final int minBytes;
+	private final ThreadLocal<Deflater> deflater;
+	private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+
+	public CompressingValueSerializer(ValueSerializer<V> serializer) { this(serializer, DEFAULT_MIN_BYTES, Deflater.BEST_SPEED); }
+
+	/**
+	 * @param serializer Turns the values into bytes
+	 * @param minBytes Values smaller than this are stored without trying to compress them
+	 * @param level Deflater compression level (ex: Deflater.BEST_SPEED)
+	 */
+	public CompressingValueSerializer(ValueSerializer<V> serializer, int minBytes, final int level) {
+		this.serializer = serializer;
+		this.minBytes = minBytes;
+		this.deflater = ThreadLocal.withInitial(() -> new Deflater(level));
+	}
+
+	@Override
+	public byte[] serialize(V value) throws IOException {
+		byte[] bytes = this.serializer.serialize(value);
+		if ((bytes.length >= this.minBytes) && (bytes.length > HEADER_BYTES)) {
+			Deflater deflater = this.deflater.get();
+			deflater.reset();
+			deflater.setInput(bytes);
+			deflater.finish();
+			// Only worth it if it saves something, so never write more than the original
+			byte[] out = new byte[bytes.length];
+			out[0] = DEFLATED;
+			putInt(out, 1, bytes.length);
+			int length = HEADER_BYTES;
+			while ((deflater.finished() == false) && (length < out.length)) {
+				length += deflater.deflate(out, length, out.length - length);
+			}
+			if (deflater.finished() == true) {
+				return Arrays.copyOf(out, length);
+			}
+		}
+		byte[] out = new byte[bytes.length + 1];
+		out[0] = STORED;
+		System.arraycopy(bytes, 0, out, 1, bytes.length);
+		return out;
+	}
+
+	@Override
+	public V deserialize(byte[] bytes) throws IOException {
+		if ((bytes.length >= 1) && (bytes[0] == STORED)) {
+			return this.serializer.deserialize(Arrays.copyOfRange(bytes, 1, bytes.length));
+		} else if ((bytes.length >= HEADER_BYTES) && (bytes[0] == DEFLATED)) {
+			int length = getInt(bytes, 1);
+			if (length < 0) {
+				throw new IOException("Corrupt compressed value");
+			}
+			Inflater inflater = this.inflater.get();
+			inflater.reset();
+			inflater.setInput(bytes, HEADER_BYTES, bytes.length - HEADER_BYTES);
+			byte[] out = new byte[length];
+			try {
+				int read = 0;
+				while ((read < length) && (inflater.finished() == false)) {
+					int n = inflater.inflate(out, read, length - read);
+					if ((n == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					read += n;
+				}
+				if ((read != length) || (inflater.finished() == false)) {
+					throw new IOException("Corrupt compressed value");
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt compressed value", e);
+			}
+			return this.serializer.deserialize(out);
+		}
+		return this.serializer.deserialize(bytes);
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte)(value >>> 24);
+		bytes[offset + 1] = (byte)(value >>> 16);
+		bytes[offset + 2] = (byte)(value >>> 8);
+		bytes[offset + 3] = (byte)value;
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+	}
+}
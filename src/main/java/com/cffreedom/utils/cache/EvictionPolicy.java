@@ -0,0 +1,54 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * Decides which entry a size bounded cache gives up when it is full. The cache
+ * tells the policy about writes and removals, hands it reads in batches (some may
+ * be dropped when the cache is busy) and asks for a victim whenever it goes over
+ * its maximum. Implementations must be thread safe but are never called on the
+ * cache's read path.
+ *
+ * Original Class: com.cffreedom.utils.cache.EvictionPolicy
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ * 2026-10-18 	MarkJacobsen.net 	onAccess() is only called for cached keys, from a buffer drained on writes
+ */
+public interface EvictionPolicy<K> {
+	/**
+	 * A cached key was read (buffered so this may be called some time after the read)
+	 * @param key
+	 */
+	void onAccess(K key);
+	
+	/**
+	 * A key was added or updated
+	 * @param key
+	 */
+	void onWrite(K key);
+	
+	/**
+	 * A key left the cache for any reason
+	 * @param key
+	 */
+	void onRemove(K key);
+	
+	/**
+	 * @return The key that should be evicted next or null if the policy isn't tracking anything
+	 */
+	K victim();
+	
+	/**
+	 * Forget everything
+	 */
+	void clear();
+}
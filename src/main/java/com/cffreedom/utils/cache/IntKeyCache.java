@@ -0,0 +1,45 @@
+package com.cffreedom.utils.cache;
+
+import java.time.Duration;
+
+/**
+ * Thread safe cache keyed by primitive ints. The keys are widened to longs and
+ * stored in a LongKeyCache so lookups never box the key or hash a String.
+ *
+ * Original Class: com.cffreedom.utils.cache.IntKeyCache
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class IntKeyCache<V> {
+	private final LongKeyCache<V> cache;
+
+	public IntKeyCache() { this(TypedCacher.DEFAULT_TIME_TO_LIVE); }
+	public IntKeyCache(Duration defaultTtl) { this(defaultTtl, LongKeyCache.DEFAULT_INITIAL_CAPACITY); }
+	public IntKeyCache(Duration defaultTtl, int initialCapacity) {
+		this.cache = new LongKeyCache<>(defaultTtl, initialCapacity);
+	}
+
+	public void setDefaultTimeToLive(Duration ttl) { this.cache.setDefaultTimeToLive(ttl); }
+	public Duration getDefaultTimeToLive() { return this.cache.getDefaultTimeToLive(); }
+	public void setClock(CacheClock clock) { this.cache.setClock(clock); }
+
+	public void put(int key, V value) { this.cache.put(key, value); }
+	public void put(int key, V value, Duration ttl) { this.cache.put(key, value, ttl); }
+	public V get(int key) { return this.cache.get(key); }
+	public boolean containsKey(int key) { return this.cache.containsKey(key); }
+	public V remove(int key) { return this.cache.remove(key); }
+	public int size() { return this.cache.size(); }
+	public void clear() { this.cache.clear(); }
+	public int cleanupExpiredItems() { return this.cache.cleanupExpiredItems(); }
+}
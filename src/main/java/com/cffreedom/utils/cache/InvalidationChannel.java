@@ -0,0 +1,65 @@
+package com.cffreedom.utils.cache;
+
+import java.io.Closeable;
+import java.util.Collection;
+
+/**
+ * Broadcasts key invalidations between caches on different nodes so a remove()
+ * on one node doesn't leave stale copies on the others. Use one channel per
+ * cache (ex: a different multicast port) since keys are not namespaced.
+ *
+ * Messages carry the sending node's id and a sequence number. Duplicates and
+ * messages that arrive late are dropped and if a receiver sees a gap in a node's
+ * sequence (ex: a lost datagram) it invalidates everything rather than risk
+ * serving something stale.
+ *
+ * Original Class: com.cffreedom.utils.cache.InvalidationChannel
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface InvalidationChannel extends Closeable {
+	/**
+	 * Called with invalidations that came from other nodes
+	 */
+	public interface Listener {
+		void onInvalidate(Collection<String> keys);
+		void onInvalidateAll();
+	}
+	
+	String getNodeId();
+	void addListener(Listener listener);
+	void removeListener(Listener listener);
+	
+	/**
+	 * Tell the other nodes to drop a key. May be held briefly and sent with other keys.
+	 * @param key
+	 */
+	void invalidate(String key);
+	
+	/**
+	 * Tell the other nodes to drop several keys (sent right away as one batch)
+	 * @param keys
+	 */
+	void invalidateAll(Collection<String> keys);
+	
+	/**
+	 * Tell the other nodes to drop everything
+	 */
+	void invalidateAll();
+	
+	/**
+	 * Send anything being held for batching now
+	 */
+	void flush();
+}
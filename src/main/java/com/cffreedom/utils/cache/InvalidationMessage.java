@@ -0,0 +1,105 @@
+package com.cffreedom.utils.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Wire format for an invalidation: magic, version, node id, node epoch, sequence,
+ * flags and the keys (each as modified UTF-8 like DataOutput.writeUTF)
+ *
+ * Original Class: com.cffreedom.utils.cache.InvalidationMessage
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+final class InvalidationMessage {
+	static final int MAGIC = 0x43464956;
+	static final byte VERSION = 1;
+	private static final byte FLAG_ALL = 1;
+	
+	final String nodeId;
+	final long epoch;
+	final long sequence;
+	final boolean all;
+	final List<String> keys;
+	
+	InvalidationMessage(String nodeId, long epoch, long sequence, boolean all, List<String> keys) {
+		this.nodeId = nodeId;
+		this.epoch = epoch;
+		this.sequence = sequence;
+		this.all = all;
+		this.keys = (keys == null) ? Collections.<String>emptyList() : keys;
+	}
+	
+	/**
+	 * @return Bytes taken by everything but the keys
+	 */
+	static int headerBytes(String nodeId) {
+		return 4 + 1 + keyBytes(nodeId) + 8 + 8 + 1 + 4;
+	}
+	
+	/**
+	 * @return Bytes a key takes in a message (close enough to writeUTF() for sizing)
+	 */
+	static int keyBytes(String key) {
+		return 2 + key.getBytes(StandardCharsets.UTF_8).length;
+	}
+	
+	byte[] encode() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(headerBytes(this.nodeId) + (this.keys.size() * 16));
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeUTF(this.nodeId);
+		out.writeLong(this.epoch);
+		out.writeLong(this.sequence);
+		out.writeByte(this.all ? FLAG_ALL : 0);
+		out.writeInt(this.keys.size());
+		for (String key : this.keys) {
+			out.writeUTF(key);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	static InvalidationMessage decode(byte[] data, int offset, int length) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not an invalidation message");
+		}
+		byte version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported invalidation message version: " + version);
+		}
+		String nodeId = in.readUTF();
+		long epoch = in.readLong();
+		long sequence = in.readLong();
+		boolean all = (in.readByte() & FLAG_ALL) != 0;
+		int count = in.readInt();
+		if ((count < 0) || (count > length)) {
+			throw new IOException("Invalid key count: " + count);
+		}
+		List<String> keys = new ArrayList<>(count);
+		for (int x = 0; x < count; x++) {
+			keys.add(in.readUTF());
+		}
+		return new InvalidationMessage(nodeId, epoch, sequence, all, keys);
+	}
+}
@@ -0,0 +1,94 @@
+package com.cffreedom.utils.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Least frequently used eviction. Ties are broken by evicting the entry that
+ * reached that frequency first.
+ *
+ * Original Class: com.cffreedom.utils.cache.LfuEvictionPolicy
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class LfuEvictionPolicy<K> implements EvictionPolicy<K> {
+	private final Map<K, Integer> counts = new HashMap<>();
+	private final TreeMap<Integer, LinkedHashSet<K>> buckets = new TreeMap<>();
+	
+	@Override
+	public synchronized void onAccess(K key) {
+		Integer count = this.counts.get(key);
+		if (count != null) {
+			this.move(key, count, count + 1);
+		}
+	}
+	
+	@Override
+	public synchronized void onWrite(K key) {
+		Integer count = this.counts.get(key);
+		if (count == null) {
+			this.move(key, null, 1);
+		} else {
+			this.move(key, count, count + 1);
+		}
+	}
+	
+	@Override
+	public synchronized void onRemove(K key) {
+		Integer count = this.counts.remove(key);
+		if (count != null) {
+			this.unlink(key, count);
+		}
+	}
+	
+	@Override
+	public synchronized K victim() {
+		Map.Entry<Integer, LinkedHashSet<K>> lowest = this.buckets.firstEntry();
+		if (lowest == null) {
+			return null;
+		}
+		return lowest.getValue().iterator().next();
+	}
+	
+	@Override
+	public synchronized void clear() {
+		this.counts.clear();
+		this.buckets.clear();
+	}
+	
+	private void move(K key, Integer from, int to) {
+		if (from != null) {
+			this.unlink(key, from);
+		}
+		this.counts.put(key, to);
+		LinkedHashSet<K> bucket = this.buckets.get(to);
+		if (bucket == null) {
+			bucket = new LinkedHashSet<>();
+			this.buckets.put(to, bucket);
+		}
+		bucket.add(key);
+	}
+	
+	private void unlink(K key, int count) {
+		LinkedHashSet<K> bucket = this.buckets.get(count);
+		if (bucket != null) {
+			bucket.remove(key);
+			if (bucket.isEmpty()) {
+				this.buckets.remove(count);
+			}
+		}
+	}
+}
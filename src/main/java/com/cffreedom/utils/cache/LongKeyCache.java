@@ -0,0 +1,344 @@
+package com.cffreedom.utils.cache;
+
+import java.time.Duration;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread safe cache keyed by primitive longs (ex: database ids). Keys, values and
+ * expiration times live in parallel arrays using open addressing with linear probing
+ * so a lookup never boxes the key or hashes a String.
+ *
+ * Reads are optimistic (no locking unless a write happens at the same time) and
+ * expired entries are skipped on read. They are removed by cleanupExpiredItems()
+ * or when the table fills up, which purges them before deciding whether it needs
+ * to grow, so churning through keys doesn't grow the table without bound. There
+ * is no maximum size, eviction policy or statistics here, use TypedCacher when
+ * those are needed.
+ *
+ * Original Class: com.cffreedom.utils.cache.LongKeyCache
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ * 2026-10-18 	MarkJacobsen.net 	resize() sizes the table from the live entries
+ */
+public class LongKeyCache<V> {
+	public static final int DEFAULT_INITIAL_CAPACITY = 64;
+	private final StampedLock lock = new StampedLock();
+	private volatile Table table;
+	private int size = 0;
+	private volatile long defaultTtlMillis = TypedCacher.DEFAULT_TIME_TO_LIVE.toMillis();
+	private volatile CacheClock clock = CacheClock.SYSTEM;
+
+	public LongKeyCache() { this(TypedCacher.DEFAULT_TIME_TO_LIVE); }
+	public LongKeyCache(Duration defaultTtl) { this(defaultTtl, DEFAULT_INITIAL_CAPACITY); }
+	public LongKeyCache(Duration defaultTtl, int initialCapacity) {
+		this.setDefaultTimeToLive(defaultTtl);
+		int capacity = 8;
+		while (capacity < initialCapacity * 2) { capacity <<= 1; }
+		this.table = new Table(capacity);
+	}
+
+	public void setDefaultTimeToLive(Duration ttl) {
+		if ((ttl == null) || (ttl.isNegative() == true) || (ttl.isZero() == true)) {
+			throw new IllegalArgumentException("Time to live must be > 0");
+		}
+		this.defaultTtlMillis = ttl.toMillis();
+	}
+
+	public Duration getDefaultTimeToLive() { return Duration.ofMillis(this.defaultTtlMillis); }
+
+	/**
+	 * Use a different source of time (ex: a fake clock for tests)
+	 * @param clock
+	 */
+	public void setClock(CacheClock clock) { this.clock = (clock == null) ? CacheClock.SYSTEM : clock; }
+
+	/**
+	 * Put an item into the cache (with the default time to live)
+	 * @param key
+	 * @param value null removes the key
+	 */
+	public void put(long key, V value) {
+		this.put(key, value, this.defaultTtlMillis);
+	}
+
+	/**
+	 * Put an item into the cache (with the specified time to live)
+	 * @param key
+	 * @param value null removes the key
+	 * @param ttl
+	 */
+	public void put(long key, V value, Duration ttl) {
+		this.put(key, value, ttl.toMillis());
+	}
+
+	private void put(long key, V value, long ttlMillis) {
+		if (value == null) {
+			this.remove(key);
+			return;
+		}
+		long expire = this.clock.currentTimeMillis() + ttlMillis;
+		long stamp = this.lock.writeLock();
+		try {
+			Table t = this.table;
+			int idx = t.indexOf(key);
+			if (idx >= 0) {
+				t.values[idx] = value;
+				t.expires[idx] = expire;
+				return;
+			}
+			if ((this.size + 1) * 2 > t.keys.length) {
+				t = this.resize();
+			}
+			int slot = t.home(key);
+			while (t.values[slot] != null) { slot = (slot + 1) & t.mask; }
+			t.keys[slot] = key;
+			t.expires[slot] = expire;
+			t.values[slot] = value;
+			this.size++;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Get an object from the cache
+	 * @param key
+	 * @return The value or null if it isn't cached or has expired
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		long now = this.clock.currentTimeMillis();
+		long stamp = this.lock.tryOptimisticRead();
+		Object value = this.find(key, now);
+		if (this.lock.validate(stamp) == false) {
+			stamp = this.lock.readLock();
+			try {
+				value = this.find(key, now);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+		return (V)value;
+	}
+
+	private Object find(long key, long now) {
+		Table t = this.table;
+		int slot = t.home(key);
+		for (int probes = 0; probes < t.keys.length; probes++) {
+			Object value = t.values[slot];
+			if (value == null) {
+				return null;
+			}
+			if (t.keys[slot] == key) {
+				return (t.expires[slot] > now) ? value : null;
+			}
+			slot = (slot + 1) & t.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Say if the cache contains an unexpired item with the specified key
+	 * @param key
+	 * @return
+	 */
+	public boolean containsKey(long key) {
+		return this.get(key) != null;
+	}
+
+	/**
+	 * Remove a specific item from the cache
+	 * @param key
+	 * @return The value that was removed (null if there wasn't one or it had expired)
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		long now = this.clock.currentTimeMillis();
+		long stamp = this.lock.writeLock();
+		try {
+			Table t = this.table;
+			int idx = t.indexOf(key);
+			if (idx < 0) {
+				return null;
+			}
+			Object value = t.values[idx];
+			boolean expired = t.expires[idx] <= now;
+			this.delete(t, idx);
+			return expired ? null : (V)value;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @return Number of entries held (including expired ones not yet cleaned up)
+	 */
+	public int size() {
+		long stamp = this.lock.readLock();
+		try {
+			return this.size;
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Clear all cached items
+	 */
+	public void clear() {
+		long stamp = this.lock.writeLock();
+		try {
+			this.table = new Table(this.table.keys.length);
+			this.size = 0;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Cleanup (remove) any expired cached objects
+	 * @return Number of items removed
+	 */
+	public int cleanupExpiredItems() {
+		long now = this.clock.currentTimeMillis();
+		int removed = 0;
+		long stamp = this.lock.writeLock();
+		try {
+			Table t = this.table;
+			int slot = 0;
+			while (slot < t.keys.length) {
+				if ((t.values[slot] != null) && (t.expires[slot] <= now)) {
+					// Deleting can shift a later entry into this slot so check it again
+					this.delete(t, slot);
+					removed++;
+				} else {
+					slot++;
+				}
+			}
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+		return removed;
+	}
+
+	/**
+	 * Remove the entry at idx then shift back any following entries in the same probe
+	 * run that would otherwise become unreachable (no tombstones needed)
+	 */
+	private void delete(Table t, int idx) {
+		int gap = idx;
+		int slot = idx;
+		while (true) {
+			slot = (slot + 1) & t.mask;
+			if (t.values[slot] == null) {
+				break;
+			}
+			int home = t.home(t.keys[slot]);
+			// Move the entry into the gap unless its home lies cyclically in (gap, slot]
+			boolean between = (gap <= slot) ? ((home > gap) && (home <= slot)) : ((home > gap) || (home <= slot));
+			if (between == false) {
+				t.keys[gap] = t.keys[slot];
+				t.expires[gap] = t.expires[slot];
+				t.values[gap] = t.values[slot];
+				gap = slot;
+			}
+		}
+		t.values[gap] = null;
+		this.size--;
+	}
+
+	/**
+	 * Rebuild the table dropping anything that has expired along the way. It only
+	 * doubles if the live entries would still leave it over a quarter full, so each
+	 * rebuild is followed by enough puts to pay for it.
+	 */
+	private Table resize() {
+		long now = this.clock.currentTimeMillis();
+		Table old = this.table;
+		int live = 0;
+		for (int x = 0; x < old.keys.length; x++) {
+			if ((old.values[x] != null) && (old.expires[x] > now)) { live++; }
+		}
+		int capacity = old.keys.length;
+		while ((live + 1) * 4 > capacity) { capacity <<= 1; }
+		Table t = new Table(capacity);
+		int count = 0;
+		for (int x = 0; x < old.keys.length; x++) {
+			if ((old.values[x] != null) && (old.expires[x] > now)) {
+				int slot = t.home(old.keys[x]);
+				while (t.values[slot] != null) { slot = (slot + 1) & t.mask; }
+				t.keys[slot] = old.keys[x];
+				t.expires[slot] = old.expires[x];
+				t.values[slot] = old.values[x];
+				count++;
+			}
+		}
+		this.size = count;
+		this.table = t;
+		return t;
+	}
+
+	/**
+	 * @return Number of slots in the table
+	 */
+	int capacity() {
+		return this.table.keys.length;
+	}
+
+	/**
+	 * Spread the bits of the key so sequential ids don't cluster (murmur3 finalizer)
+	 */
+	static int mix(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int)h;
+	}
+
+	/**
+	 * The arrays are swapped as a unit on resize so an optimistic reader never sees
+	 * keys from one table and values from another
+	 */
+	private static final class Table {
+		final long[] keys;
+		final long[] expires;
+		final Object[] values;
+		final int mask;
+
+		Table(int capacity) {
+			this.keys = new long[capacity];
+			this.expires = new long[capacity];
+			this.values = new Object[capacity];
+			this.mask = capacity - 1;
+		}
+
+		int home(long key) {
+			return mix(key) & this.mask;
+		}
+
+		int indexOf(long key) {
+			int slot = this.home(key);
+			while (this.values[slot] != null) {
+				if (this.keys[slot] == key) {
+					return slot;
+				}
+				slot = (slot + 1) & this.mask;
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.cffreedom.utils.cache;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * InvalidationChannel that delivers to the other channels created with the same
+ * group name in this JVM. Useful for tests and for several caches in one process
+ * that need to stay in sync.
+ *
+ * Original Class: com.cffreedom.utils.cache.LoopbackInvalidationChannel
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class LoopbackInvalidationChannel extends AbstractInvalidationChannel {
+	private static final Map<String, List<LoopbackInvalidationChannel>> groups = new ConcurrentHashMap<>();
+	private final String group;
+	
+	public LoopbackInvalidationChannel(String group) { this(group, null, 0); }
+	
+	/**
+	 * @param group Channels with the same group name see each other's invalidations
+	 * @param nodeId Unique id for this node (null for a random one)
+	 * @param batchMillis How long invalidate() can hold a key to batch it with others (0 to send right away)
+	 */
+	public LoopbackInvalidationChannel(String group, String nodeId, long batchMillis) {
+		super(nodeId, batchMillis);
+		this.group = group;
+		groups.computeIfAbsent(group, g -> new CopyOnWriteArrayList<>()).add(this);
+	}
+	
+	@Override
+	protected void send(byte[] message) throws IOException {
+		for (LoopbackInvalidationChannel channel : groups.get(this.group)) {
+			if (channel != this) {
+				channel.receive(message, 0, message.length);
+			}
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		super.close();
+		groups.computeIfPresent(this.group, (g, members) -> {
+			members.remove(this);
+			return members.isEmpty() ? null : members;
+		});
+	}
+}
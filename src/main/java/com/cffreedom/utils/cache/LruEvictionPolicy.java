@@ -0,0 +1,54 @@
+package com.cffreedom.utils.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used eviction
+ *
+ * Original Class: com.cffreedom.utils.cache.LruEvictionPolicy
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class LruEvictionPolicy<K> implements EvictionPolicy<K> {
+	// access ordered so the eldest entry is always the least recently used
+	private final Map<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+	
+	@Override
+	public synchronized void onAccess(K key) {
+		this.order.get(key);
+	}
+	
+	@Override
+	public synchronized void onWrite(K key) {
+		this.order.put(key, Boolean.TRUE);
+	}
+	
+	@Override
+	public synchronized void onRemove(K key) {
+		this.order.remove(key);
+	}
+	
+	@Override
+	public synchronized K victim() {
+		Iterator<K> it = this.order.keySet().iterator();
+		return it.hasNext() ? it.next() : null;
+	}
+	
+	@Override
+	public synchronized void clear() {
+		this.order.clear();
+	}
+}
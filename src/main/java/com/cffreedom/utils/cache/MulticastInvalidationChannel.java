@@ -0,0 +1,114 @@
+package com.cffreedom.utils.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * InvalidationChannel that sends batches of invalidations as UDP multicast datagrams
+ * so every node on the network (or the same box) listening on the group and port
+ * gets them without a central server. Datagrams that get lost show up as a gap in
+ * the sender's sequence and make the receivers invalidate everything.
+ *
+ * Original Class: com.cffreedom.utils.cache.MulticastInvalidationChannel
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class MulticastInvalidationChannel extends AbstractInvalidationChannel {
+	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.cache.MulticastInvalidationChannel");
+	public static final String DEFAULT_GROUP = "239.255.67.70";
+	public static final int DEFAULT_PORT = 4670;
+	public static final long DEFAULT_BATCH_MILLIS = 10;
+	// Stay under a typical ethernet MTU so datagrams aren't fragmented
+	public static final int MAX_DATAGRAM_BYTES = 1400;
+	
+	private final MulticastSocket socket;
+	private final InetAddress group;
+	private final int port;
+	private final Thread receiver;
+	private volatile boolean open = true;
+	
+	public MulticastInvalidationChannel() throws IOException { this(DEFAULT_GROUP, DEFAULT_PORT); }
+	public MulticastInvalidationChannel(String group, int port) throws IOException { this(group, port, null, DEFAULT_BATCH_MILLIS); }
+	
+	/**
+	 * @param group Multicast address ex: 239.255.67.70
+	 * @param port
+	 * @param nodeId Unique id for this node (null for a random one)
+	 * @param batchMillis How long invalidate() can hold a key to batch it with others (0 to send right away)
+	 * @throws IOException
+	 */
+	@SuppressWarnings("deprecation")
+	public MulticastInvalidationChannel(String group, int port, String nodeId, long batchMillis) throws IOException {
+		super(nodeId, batchMillis);
+		this.group = InetAddress.getByName(group);
+		this.port = port;
+		this.socket = new MulticastSocket(port);
+		try {
+			this.socket.setTimeToLive(1);
+			// false enables loopback so nodes on the same box hear each other
+			this.socket.setLoopbackMode(false);
+			this.socket.joinGroup(this.group);
+		} catch (IOException e) {
+			this.socket.close();
+			throw e;
+		}
+		
+		this.receiver = new Thread(this::receiveLoop, "InvalidationChannel-receive-" + this.getNodeId());
+		this.receiver.setDaemon(true);
+		this.receiver.start();
+	}
+	
+	private void receiveLoop() {
+		byte[] buf = new byte[65535];
+		while (this.open == true) {
+			DatagramPacket packet = new DatagramPacket(buf, buf.length);
+			try {
+				this.socket.receive(packet);
+				this.receive(packet.getData(), packet.getOffset(), packet.getLength());
+			} catch (SocketException e) {
+				if (this.open == true) {
+					logger.warn("Invalidation socket failed: {}", e.getMessage());
+				}
+				return;
+			} catch (IOException e) {
+				logger.warn("Error receiving invalidation: {}", e.getMessage());
+			}
+		}
+	}
+	
+	@Override
+	protected int getMaxMessageBytes() { return MAX_DATAGRAM_BYTES; }
+	
+	@Override
+	protected void send(byte[] message) throws IOException {
+		this.socket.send(new DatagramPacket(message, message.length, this.group, this.port));
+	}
+	
+	@Override
+	@SuppressWarnings("deprecation")
+	public void close() throws IOException {
+		super.close();
+		this.open = false;
+		try {
+			this.socket.leaveGroup(this.group);
+		} catch (IOException e) { /* closing anyway */ }
+		this.socket.close();
+	}
+}
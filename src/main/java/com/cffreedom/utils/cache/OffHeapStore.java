@@ -0,0 +1,234 @@
+package com.cffreedom.utils.cache;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Byte store kept outside the Java heap, either in direct ByteBuffers or in a
+ * memory mapped file, so large cached values don't add to GC pressure.
+ * 
+ * Space is split into fixed size segments that are written in order like a
+ * ring. When the ring wraps, the oldest segment is recycled and everything
+ * still in it is dropped, so the store behaves as a FIFO once it fills. Only
+ * the small per key index lives on the heap.
+ *
+ * Original Class: com.cffreedom.utils.cache.OffHeapStore
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class OffHeapStore<K> {
+	public static final int DEFAULT_SEGMENTS = 16;
+	
+	private final ByteBuffer[] segments;
+	private final int segmentSize;
+	// Bumped each time a segment is recycled so readers can tell their slot went stale
+	private final AtomicLongArray generations;
+	private final List<List<K>> segmentKeys = new ArrayList<>();
+	private final Map<K, Slot> index = new ConcurrentHashMap<>();
+	private final RandomAccessFile file;
+	private int writeSegment = 0;
+	private int writePosition = 0;
+	
+	/**
+	 * Store backed by direct ByteBuffers
+	 * @param capacityBytes Total bytes to allocate
+	 */
+	public OffHeapStore(long capacityBytes) {
+		this(capacityBytes, DEFAULT_SEGMENTS);
+	}
+	
+	public OffHeapStore(long capacityBytes, int segmentCount) {
+		this.segmentSize = segmentSize(capacityBytes, segmentCount);
+		this.segments = new ByteBuffer[segmentCount];
+		for (int x = 0; x < segmentCount; x++) {
+			this.segments[x] = ByteBuffer.allocateDirect(this.segmentSize);
+		}
+		this.generations = new AtomicLongArray(segmentCount);
+		this.file = null;
+		this.initKeys(segmentCount);
+	}
+	
+	/**
+	 * Store backed by a memory mapped file. The contents are not meant to survive a
+	 * restart, the file just gives the OS somewhere to page cold data to.
+	 * @param file File to map (created or truncated)
+	 * @param capacityBytes Size of the file
+	 * @throws IOException
+	 */
+	public OffHeapStore(String file, long capacityBytes) throws IOException {
+		this(file, capacityBytes, DEFAULT_SEGMENTS);
+	}
+	
+	public OffHeapStore(String file, long capacityBytes, int segmentCount) throws IOException {
+		this.segmentSize = segmentSize(capacityBytes, segmentCount);
+		this.segments = new ByteBuffer[segmentCount];
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength((long)this.segmentSize * segmentCount);
+		FileChannel channel = this.file.getChannel();
+		for (int x = 0; x < segmentCount; x++) {
+			this.segments[x] = channel.map(FileChannel.MapMode.READ_WRITE, (long)x * this.segmentSize, this.segmentSize);
+		}
+		this.generations = new AtomicLongArray(segmentCount);
+		this.initKeys(segmentCount);
+	}
+	
+	private static int segmentSize(long capacityBytes, int segmentCount) {
+		if ((segmentCount <= 0) || (capacityBytes < segmentCount)) {
+			throw new IllegalArgumentException("capacityBytes must be at least segmentCount and segmentCount > 0");
+		}
+		return (int)Math.min(capacityBytes / segmentCount, Integer.MAX_VALUE);
+	}
+	
+	private void initKeys(int segmentCount) {
+		for (int x = 0; x < segmentCount; x++) {
+			this.segmentKeys.add(new ArrayList<K>());
+		}
+	}
+	
+	/**
+	 * @param key
+	 * @param value
+	 * @param expireMillis Epoch millis after which get() will no longer return it
+	 * @return False if the value is bigger than a segment and can't be stored
+	 */
+	public synchronized boolean put(K key, byte[] value, long expireMillis) {
+		if (value.length > this.segmentSize) {
+			return false;
+		}
+		
+		if (this.writePosition + value.length > this.segmentSize) {
+			this.writeSegment = (this.writeSegment + 1) % this.segments.length;
+			this.writePosition = 0;
+			this.recycle(this.writeSegment);
+		}
+		
+		ByteBuffer buf = this.segments[this.writeSegment].duplicate();
+		buf.position(this.writePosition);
+		buf.put(value);
+		
+		Slot slot = new Slot(this.writeSegment, this.generations.get(this.writeSegment), this.writePosition, value.length, expireMillis);
+		this.index.put(key, slot);
+		this.segmentKeys.get(this.writeSegment).add(key);
+		this.writePosition += value.length;
+		return true;
+	}
+	
+	/**
+	 * @param key
+	 * @param nowMillis Current time used to check expiration
+	 * @return The bytes or null if missing, expired or overwritten
+	 */
+	public byte[] get(K key, long nowMillis) {
+		Slot slot = this.index.get(key);
+		if (slot == null) {
+			return null;
+		}
+		if (nowMillis > slot.expireMillis) {
+			this.index.remove(key, slot);
+			return null;
+		}
+		
+		byte[] bytes = new byte[slot.length];
+		ByteBuffer buf = this.segments[slot.segment].duplicate();
+		buf.position(slot.offset);
+		buf.get(bytes);
+		
+		// If the segment got recycled while we were copying what we have is garbage
+		if (this.generations.get(slot.segment) != slot.generation) {
+			this.index.remove(key, slot);
+			return null;
+		}
+		return bytes;
+	}
+	
+	/**
+	 * @return Epoch millis the entry expires at or -1 if it isn't in the store
+	 */
+	public long getExpireMillis(K key) {
+		Slot slot = this.index.get(key);
+		return (slot == null) ? -1 : slot.expireMillis;
+	}
+	
+	public boolean containsKey(K key, long nowMillis) {
+		Slot slot = this.index.get(key);
+		return (slot != null) && (nowMillis <= slot.expireMillis) && (this.generations.get(slot.segment) == slot.generation);
+	}
+	
+	public void remove(K key) {
+		this.index.remove(key);
+	}
+	
+	public synchronized void clear() {
+		this.index.clear();
+		for (int x = 0; x < this.segments.length; x++) {
+			this.generations.incrementAndGet(x);
+			this.segmentKeys.get(x).clear();
+		}
+		this.writeSegment = 0;
+		this.writePosition = 0;
+	}
+	
+	public int size() {
+		return this.index.size();
+	}
+	
+	public long getCapacityBytes() {
+		return (long)this.segmentSize * this.segments.length;
+	}
+	
+	/**
+	 * Release the mapped file (if any). Direct buffers are released when collected.
+	 */
+	public synchronized void close() throws IOException {
+		this.clear();
+		if (this.file != null) {
+			this.file.close();
+		}
+	}
+	
+	private void recycle(int segment) {
+		long generation = this.generations.incrementAndGet(segment);
+		List<K> keys = this.segmentKeys.get(segment);
+		for (K key : keys) {
+			Slot slot = this.index.get(key);
+			if ((slot != null) && (slot.segment == segment) && (slot.generation < generation)) {
+				this.index.remove(key, slot);
+			}
+		}
+		keys.clear();
+	}
+	
+	private static final class Slot {
+		final int segment;
+		final long generation;
+		final int offset;
+		final int length;
+		final long expireMillis;
+		
+		Slot(int segment, long generation, int offset, int length, long expireMillis) {
+			this.segment = segment;
+			this.generation = generation;
+			this.offset = offset;
+			this.length = length;
+			this.expireMillis = expireMillis;
+		}
+	}
+}
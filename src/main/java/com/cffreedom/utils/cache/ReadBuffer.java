@@ -0,0 +1,105 @@
+package com.cffreedom.utils.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lossy, striped buffer of cache reads so that reads never take the eviction
+ * policy's lock. Each thread records into one of several small rings (picked by
+ * thread id so threads rarely share one) and a read is simply dropped when its
+ * ring is full. The rings are drained into the policy by whoever holds the
+ * cache's drain lock (on writes and when a ring fills up). Losing some reads only
+ * makes the recency/frequency information slightly less exact.
+ *
+ * Original Class: com.cffreedom.utils.cache.ReadBuffer
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-18 	MarkJacobsen.net 	Created
+ */
+final class ReadBuffer<E> {
+	private static final int RING_SIZE = 32;
+	private static final int RING_MASK = RING_SIZE - 1;
+
+	private final Ring<E>[] rings;
+	private final int mask;
+
+	@SuppressWarnings("unchecked")
+	ReadBuffer() {
+		int size = 1;
+		while (size < Runtime.getRuntime().availableProcessors() * 2) { size <<= 1; }
+		this.mask = size - 1;
+		this.rings = (Ring<E>[])new Ring<?>[size];
+		for (int x = 0; x < size; x++) {
+			this.rings[x] = new Ring<>();
+		}
+	}
+
+	/**
+	 * Record a read (dropped if this thread's ring is full)
+	 * @param e
+	 * @return True if the ring is full and should be drained
+	 */
+	boolean offer(E e) {
+		long id = Thread.currentThread().getId();
+		Ring<E> ring = this.rings[(int)((id * 0x9E3779B97F4A7C15L) >>> 40) & this.mask];
+		return ring.offer(e);
+	}
+
+	/**
+	 * Hand everything recorded so far to the consumer. Only one thread may drain at a time.
+	 * @param consumer
+	 */
+	void drain(Consumer<E> consumer) {
+		for (Ring<E> ring : this.rings) {
+			ring.drain(consumer);
+		}
+	}
+
+	private static final class Ring<E> {
+		private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(RING_SIZE);
+		private final AtomicLong writeCount = new AtomicLong();
+		private volatile long readCount = 0;
+
+		boolean offer(E e) {
+			long head = this.readCount;
+			long tail = this.writeCount.get();
+			if (tail - head >= RING_SIZE) {
+				return true;
+			}
+			if (this.writeCount.compareAndSet(tail, tail + 1)) {
+				this.buffer.lazySet((int)(tail & RING_MASK), e);
+				return (tail + 1 - head) >= RING_SIZE;
+			}
+			// Lost a race with another thread on this ring so just drop it
+			return false;
+		}
+
+		void drain(Consumer<E> consumer) {
+			long head = this.readCount;
+			long tail = this.writeCount.get();
+			while (head < tail) {
+				int index = (int)(head & RING_MASK);
+				E e = this.buffer.get(index);
+				if (e == null) {
+					// Slot claimed but not written yet
+					break;
+				}
+				this.buffer.lazySet(index, null);
+				consumer.accept(e);
+				head++;
+			}
+			this.readCount = head;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * Why an entry left a cache
+ *
+ * Original Class: com.cffreedom.utils.cache.RemovalCause
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public enum RemovalCause {
+	/** Removed by a call to remove(), clear(), etc */
+	EXPLICIT,
+	/** Value was overwritten by another put() */
+	REPLACED,
+	/** Time to live ran out */
+	EXPIRED,
+	/** Evicted to keep the cache within its maximum size or weight */
+	SIZE;
+	
+	/**
+	 * @return True if the cache removed the entry on its own (not a caller)
+	 */
+	public boolean wasEvicted() {
+		return (this == EXPIRED) || (this == SIZE);
+	}
+}
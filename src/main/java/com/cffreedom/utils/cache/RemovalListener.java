@@ -0,0 +1,24 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * Callback notified whenever an entry leaves a cache. Called on the thread
+ * that caused the removal so implementations should be quick.
+ *
+ * Original Class: com.cffreedom.utils.cache.RemovalListener
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface RemovalListener<K, V> {
+	void onRemoval(K key, V value, RemovalCause cause);
+}
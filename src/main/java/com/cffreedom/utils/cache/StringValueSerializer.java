@@ -0,0 +1,33 @@
+package com.cffreedom.utils.cache;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 ValueSerializer for String values
+ *
+ * Original Class: com.cffreedom.utils.cache.StringValueSerializer
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class StringValueSerializer implements ValueSerializer<String> {
+	@Override
+	public byte[] serialize(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public String deserialize(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,254 @@
+package com.cffreedom.utils.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timer wheel used to expire cache entries without walking the whole
+ * cache. There are several levels of 64 buckets each, each level's buckets 64 times
+ * wider than the one below (with the default 100ms tick: 6.4 seconds, 6.8 minutes,
+ * 7.3 hours, 19 days and 3.4 years per level). An item is dropped into the level that
+ * matches how far out its deadline is and cascades down a level each time its bucket
+ * comes around, so an item is touched at most once per level no matter how long its
+ * time to live is. Items are linked into their bucket directly so cancelling one
+ * (ex: the cache entry was replaced or removed) unlinks it right away.
+ *
+ * Original Class: com.cffreedom.utils.cache.TimerWheel
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ * 2026-10-18 	MarkJacobsen.net 	Hierarchical levels, items re-linked in place and cancel()
+ */
+public class TimerWheel<T> {
+	public static final long DEFAULT_TICK_MILLIS = 100;
+	private static final int BUCKET_BITS = 6;
+	private static final int BUCKETS = 1 << BUCKET_BITS;
+	private static final int LEVELS = 5;
+
+	private final long tickMillis;
+	private final Timeout<T>[][] wheel;
+	private final ReentrantLock lock = new ReentrantLock();
+	private long currentTick = -1;
+
+	/**
+	 * Called for every item whose deadline has passed
+	 */
+	public interface Expirer<T> {
+		void expire(Timeout<T> timeout);
+	}
+
+	/**
+	 * An item scheduled on the wheel
+	 */
+	public static final class Timeout<T> {
+		private final T item;
+		private long deadline;
+		private Timeout<T> prev;
+		private Timeout<T> next;
+
+		Timeout(T item) {
+			this.item = item;
+		}
+
+		public T getItem() { return this.item; }
+		public long getDeadlineMillis() { return this.deadline; }
+	}
+
+	public TimerWheel() { this(DEFAULT_TICK_MILLIS); }
+
+	/**
+	 * @param tickMillis Resolution of the wheel
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(long tickMillis) {
+		if (tickMillis <= 0) { throw new IllegalArgumentException("tickMillis must be > 0"); }
+		this.tickMillis = tickMillis;
+		this.wheel = (Timeout<T>[][])new Timeout<?>[LEVELS][BUCKETS];
+		for (Timeout<T>[] level : this.wheel) {
+			for (int x = 0; x < BUCKETS; x++) {
+				level[x] = newSentinel();
+			}
+		}
+	}
+
+	private static <T> Timeout<T> newSentinel() {
+		Timeout<T> sentinel = new Timeout<>(null);
+		sentinel.prev = sentinel;
+		sentinel.next = sentinel;
+		return sentinel;
+	}
+
+	/**
+	 * Schedule an item to be handed to the Expirer once the deadline passes
+	 * @param item
+	 * @param deadlineMillis
+	 * @return Handle that can be passed to cancel() or reschedule()
+	 */
+	public Timeout<T> schedule(T item, long deadlineMillis) {
+		Timeout<T> timeout = new Timeout<>(item);
+		this.reschedule(timeout, deadlineMillis);
+		return timeout;
+	}
+
+	/**
+	 * Move an item (scheduled or not) to a new deadline without allocating anything
+	 * @param timeout
+	 * @param deadlineMillis
+	 */
+	public void reschedule(Timeout<T> timeout, long deadlineMillis) {
+		this.lock.lock();
+		try {
+			unlink(timeout);
+			timeout.deadline = deadlineMillis;
+			this.link(timeout);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Stop an item from being handed to the Expirer. Does nothing if it already was.
+	 * @param timeout
+	 */
+	public void cancel(Timeout<T> timeout) {
+		if (timeout == null) {
+			return;
+		}
+		this.lock.lock();
+		try {
+			unlink(timeout);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Drop the item into the level/bucket for its deadline (caller holds the lock)
+	 */
+	private void link(Timeout<T> timeout) {
+		long tick = timeout.deadline / this.tickMillis;
+		long cur = this.currentTick;
+		// Never drop something into a bucket we've already passed
+		if ((cur >= 0) && (tick <= cur)) { tick = cur + 1; }
+		long delta = (cur >= 0) ? tick - cur : 0;
+		int level = 0;
+		while ((level < LEVELS - 1) && (delta >= (1L << (BUCKET_BITS * (level + 1))))) {
+			level++;
+		}
+		Timeout<T> sentinel = this.wheel[level][(int)((tick >>> (BUCKET_BITS * level)) & (BUCKETS - 1))];
+		timeout.prev = sentinel.prev;
+		timeout.next = sentinel;
+		sentinel.prev.next = timeout;
+		sentinel.prev = timeout;
+	}
+
+	private static <T> void unlink(Timeout<T> timeout) {
+		if (timeout.next != null) {
+			timeout.prev.next = timeout.next;
+			timeout.next.prev = timeout.prev;
+			timeout.prev = null;
+			timeout.next = null;
+		}
+	}
+
+	/**
+	 * Advance the wheel to the time passed in handing any due items to the Expirer.
+	 * Items in buckets that came around but aren't due yet cascade to a lower level.
+	 * The Expirer is called without holding the wheel's lock. If another thread is
+	 * already advancing the wheel this returns immediately.
+	 * @param nowMillis
+	 * @param expirer
+	 * @return The number of items handed to the Expirer
+	 */
+	public int advance(long nowMillis, Expirer<T> expirer) {
+		if (this.lock.tryLock() == false) {
+			return 0;
+		}
+
+		List<Timeout<T>> due = new ArrayList<>();
+		try {
+			long nowTick = nowMillis / this.tickMillis;
+			long cur = this.currentTick;
+			if (cur < 0) { cur = nowTick - 1; }
+			if (nowTick <= cur) {
+				return 0;
+			}
+			this.currentTick = nowTick;
+
+			for (int level = 0; level < LEVELS; level++) {
+				int shift = BUCKET_BITS * level;
+				long from = (cur >>> shift) + 1;
+				long to = nowTick >>> shift;
+				if (to < from) {
+					break;
+				}
+				// Anything more than a full revolution behind only needs each bucket visited once
+				from = Math.max(from, to - BUCKETS + 1);
+				for (long tick = from; tick <= to; tick++) {
+					Timeout<T> sentinel = this.wheel[level][(int)(tick & (BUCKETS - 1))];
+					if (sentinel.next == sentinel) {
+						continue;
+					}
+					Timeout<T> timeout = sentinel.next;
+					// Detach the whole bucket first since items may be re-linked into it
+					sentinel.prev.next = null;
+					sentinel.next = sentinel;
+					sentinel.prev = sentinel;
+					while (timeout != null) {
+						Timeout<T> next = timeout.next;
+						timeout.prev = null;
+						timeout.next = null;
+						if (timeout.deadline <= nowMillis) {
+							due.add(timeout);
+						} else {
+							this.link(timeout);
+						}
+						timeout = next;
+					}
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+
+		for (Timeout<T> timeout : due) {
+			expirer.expire(timeout);
+		}
+		return due.size();
+	}
+
+	/**
+	 * Drop everything that has been scheduled
+	 */
+	public void clear() {
+		this.lock.lock();
+		try {
+			for (Timeout<T>[] level : this.wheel) {
+				for (Timeout<T> sentinel : level) {
+					Timeout<T> timeout = sentinel.next;
+					while (timeout != sentinel) {
+						Timeout<T> next = timeout.next;
+						timeout.prev = null;
+						timeout.next = null;
+						timeout = next;
+					}
+					sentinel.next = sentinel;
+					sentinel.prev = sentinel;
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,1242 @@
+package com.cffreedom.utils.cache;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.cffreedom.exceptions.FileSystemException;
+import com.cffreedom.exceptions.ProcessingException;
+import com.cffreedom.utils.Convert;
+import com.cffreedom.utils.Format;
+import com.cffreedom.utils.Utils;
+/**
+ * Thread safe, typed in memory cache. This is the engine behind Cacher (which is
+ * just a TypedCacher&lt;String, Object&gt;) and can be used directly when the key
+ * and value types are known so callers don't need to cast.
+ * 
+ * Supports time to live/idle expiration (via a TimerWheel), maximum size/weight
+ * with pluggable EvictionPolicy, single flight loading with refresh ahead,
+ * statistics/JMX, an optional OffHeapStore tier and snapshots.
+ * 
+ * For long or int keys see LongKeyCache and IntKeyCache which avoid boxing.
+ * 
+ * Original Class: com.cffreedom.utils.cache.TypedCacher
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ * 
+ * Free to use, modify, redistribute.  Must keep full class header including 
+ * copyright and note your modifications.
+ * 
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ * 
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created from the internals of com.cffreedom.utils.Cacher
+ * 2026-10-17 	MarkJacobsen.net 	Added getAll(), putAll() and invalidateAll() with BulkCacheLoader support
+ * 2026-10-17 	MarkJacobsen.net 	Added setInvalidationChannel() to keep caches on several nodes coherent
+ * 2026-10-18 	MarkJacobsen.net 	Cancel an entry's expiration timer when it is replaced or removed
+ * 2026-10-18 	MarkJacobsen.net 	Reads are buffered and drained into the EvictionPolicy on writes so gets never take its lock
+ */
+public class TypedCacher<K, V> {
+	public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(60);
+	private volatile long defaultTtlMillis = DEFAULT_TIME_TO_LIVE.toMillis();
+	private volatile long defaultIdleMillis = 0;
+	private boolean maintainOrder = false;
+	private volatile Map<K, CachedObject> cache = new ConcurrentHashMap<>();
+	private final TimerWheel<ExpiryNode> expiryWheel = new TimerWheel<>();
+	private final List<RemovalListener<K, V>> removalListeners = new CopyOnWriteArrayList<>();
+	private final AtomicLong totalWeight = new AtomicLong(0);
+	private volatile EvictionPolicy<K> evictionPolicy = null;
+	private final ReadBuffer<K> readBuffer = new ReadBuffer<>();
+	private final ReentrantLock drainLock = new ReentrantLock();
+	private volatile Weigher<K, V> weigher = null;
+	private volatile long maximumSize = -1;
+	private volatile long maximumWeight = -1;
+	private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+	private volatile long refreshAheadMillis = 0;
+	private volatile Executor refreshExecutor = ForkJoinPool.commonPool();
+	private volatile CacheClock clock = CacheClock.SYSTEM;
+	private final CacheStatsCounter stats = new CacheStatsCounter();
+	private volatile ObjectName mbeanName = null;
+	private volatile OffHeapStore<K> offHeap = null;
+	private volatile ValueSerializer<V> offHeapSerializer = null;
+	private volatile PendingRestore pendingRestore = null;
+	private volatile InvalidationChannel invalidationChannel = null;
+	private volatile InvalidationChannel.Listener invalidationListener = null;
+	private volatile Function<? super K, String> invalidationKeyToString = null;
+	
+	public TypedCacher(){}
+	public TypedCacher(Duration defaultTtl) { this(defaultTtl, false); }
+	
+	/**
+	 * @param defaultTtl Time to live for entries put without one
+	 * @param maintainOrder True to keep keys in insertion order (uses a single lock instead of a ConcurrentHashMap)
+	 */
+	public TypedCacher(Duration defaultTtl, boolean maintainOrder) { 
+		this.defaultTtlMillis = defaultTtl.toMillis();
+		this.maintainOrder = maintainOrder;
+		this.cache = this.newMap();
+	}
+	
+	/**
+	 * The ordered map has to be synchronized as a whole (LinkedHashMap has no concurrent
+	 * equivalent) while the default map is a ConcurrentHashMap so reads never block
+	 */
+	private Map<K, CachedObject> newMap() {
+		if (this.maintainOrder == true) {
+			return Collections.synchronizedMap(new LinkedHashMap<K, CachedObject>());
+		} else {
+			return new ConcurrentHashMap<>();
+		}
+	}
+	
+	/**
+	 * Limit the number of entries in the cache evicting the least recently used
+	 * entries once the limit is reached
+	 * @param maxEntries Maximum entries (-1 for unbounded)
+	 */
+	public void setMaximumSize(long maxEntries) {
+		this.setMaximumSize(maxEntries, new LruEvictionPolicy<K>());
+	}
+	
+	/**
+	 * Limit the number of entries in the cache using the EvictionPolicy passed in
+	 * to choose what to evict once the limit is reached
+	 * @param maxEntries Maximum entries (-1 for unbounded)
+	 * @param policy ex: LruEvictionPolicy, LfuEvictionPolicy, WTinyLfuEvictionPolicy
+	 */
+	public void setMaximumSize(long maxEntries, EvictionPolicy<K> policy) {
+		this.maximumSize = maxEntries;
+		this.setEvictionPolicy(policy);
+	}
+	
+	/**
+	 * Limit the combined weight of the entries in the cache
+	 * @param maxWeight Maximum total weight (-1 for unbounded)
+	 * @param weigher Used to calculate the weight of each entry as it is put
+	 */
+	public void setMaximumWeight(long maxWeight, Weigher<K, V> weigher) {
+		if ((maxWeight >= 0) && (weigher == null)) {
+			throw new IllegalArgumentException("A Weigher is required when setting a maximum weight");
+		}
+		this.maximumWeight = maxWeight;
+		this.weigher = weigher;
+		if (this.evictionPolicy == null) {
+			this.setEvictionPolicy(new LruEvictionPolicy<K>());
+		}
+	}
+	
+	/**
+	 * Change the policy used to pick entries to evict when the cache is bounded.
+	 * Anything already cached is handed to the new policy as a write.
+	 * @param policy
+	 */
+	public void setEvictionPolicy(EvictionPolicy<K> policy) {
+		if (policy != null) {
+			for (K key : this.keySet()) {
+				policy.onWrite(key);
+			}
+		}
+		this.evictionPolicy = policy;
+		this.evictIfNeeded();
+	}
+	
+	/**
+	 * Get notified when an entry is removed, replaced, expires or is evicted
+	 * @param listener
+	 */
+	public void addRemovalListener(RemovalListener<K, V> listener) {
+		this.removalListeners.add(listener);
+	}
+	
+	/**
+	 * When an item fetched via get(key, loader) is within the number of milliseconds
+	 * passed in of expiring, reload it in the background so readers never wait on it
+	 * @param refreshAheadMillis Milliseconds before expiration to refresh (0 to disable)
+	 */
+	public void setRefreshAhead(long refreshAheadMillis) {
+		this.setRefreshAhead(refreshAheadMillis, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param refreshAheadMillis Milliseconds before expiration to refresh (0 to disable)
+	 * @param executor Where background reloads are run
+	 */
+	public void setRefreshAhead(long refreshAheadMillis, Executor executor) {
+		this.refreshAheadMillis = refreshAheadMillis;
+		this.refreshExecutor = executor;
+	}
+	
+	/**
+	 * Use a different source of time (ex: a fake clock for tests). Should be set
+	 * before anything is put in the cache.
+	 * @param clock
+	 */
+	public void setClock(CacheClock clock) {
+		this.clock = (clock == null) ? CacheClock.SYSTEM : clock;
+	}
+	
+	private long now() {
+		return this.clock.currentTimeMillis();
+	}
+	
+	/**
+	 * @return Snapshot of the hit/miss/load/eviction counters
+	 */
+	public CacheStats getStats() {
+		return this.stats.snapshot();
+	}
+	
+	/**
+	 * Expose this cache's size and statistics via JMX as
+	 * com.cffreedom.utils:type=Cacher,name={name}
+	 * @param name Unique name for this cache
+	 * @throws ProcessingException
+	 */
+	public void registerMBean(String name) throws ProcessingException {
+		try {
+			ObjectName objectName = new ObjectName("com.cffreedom.utils:type=Cacher,name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(new StatsMXBean(this), objectName);
+			this.mbeanName = objectName;
+		} catch (Exception e) {
+			throw new ProcessingException("Unable to register cache MBean: " + name, e);
+		}
+	}
+	
+	public void unregisterMBean() {
+		ObjectName objectName = this.mbeanName;
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) { /* already gone */ }
+			this.mbeanName = null;
+		}
+	}
+	
+	/**
+	 * Add a second tier outside the Java heap. Entries evicted to keep the cache within
+	 * its maximum size/weight are serialized into the store instead of being dropped, and
+	 * are moved back onto the heap the next time they are requested. Only makes sense
+	 * when a maximum size or weight has been set.
+	 * @param store ex: new OffHeapStore&lt;String&gt;(2L * 1024 * 1024 * 1024)
+	 * @param serializer Used to convert values to bytes (default is Java serialization)
+	 */
+	public void setOffHeapTier(OffHeapStore<K> store, ValueSerializer<?> serializer) {
+		// Values only ever come back out of the store through this same serializer
+		@SuppressWarnings("unchecked")
+		ValueSerializer<V> ser = (ValueSerializer<V>)((serializer == null) ? new JavaValueSerializer() : serializer);
+		this.offHeapSerializer = ser;
+		this.offHeap = store;
+	}
+	
+	public void setOffHeapTier(OffHeapStore<K> store) {
+		this.setOffHeapTier(store, null);
+	}
+	
+	/**
+	 * @return Number of entries currently held in the off heap tier (0 if there isn't one)
+	 */
+	public int offHeapSize() {
+		OffHeapStore<K> store = this.offHeap;
+		return (store == null) ? 0 : store.size();
+	}
+	
+	/**
+	 * Write everything currently cached on heap (with its remaining time to live) to a
+	 * snapshot file that restoreSnapshot() can warm a new cache from
+	 * @param file
+	 * @param serializer Used to convert values to bytes (default is Java serialization). 
+	 * Values it can't handle are skipped.
+	 * @param keyToString Converts keys to the Strings stored in the snapshot
+	 * @return Number of entries written
+	 * @throws FileSystemException
+	 */
+	@SuppressWarnings("unchecked")
+	public int saveSnapshot(String file, ValueSerializer<?> serializer, Function<? super K, String> keyToString) throws FileSystemException {
+		ValueSerializer<V> ser = (ValueSerializer<V>)((serializer == null) ? new JavaValueSerializer() : serializer);
+		CacheSnapshot.Writer writer = null;
+		try {
+			writer = new CacheSnapshot.Writer(file, this.now());
+			for (K key : this.keySet()) {
+				CachedObject obj = cache.get(key);
+				if ((obj == null) || obj.isExpired()) {
+					continue;
+				}
+				
+				byte[] value;
+				try {
+					value = ser.serialize(obj.getObj());
+				} catch (IOException | RuntimeException e) {
+					continue;
+				}
+				writer.add(keyToString.apply(key), obj.getCacheTimeMillis(), obj.getExpireTimeMillis(), obj.getTtlMillis(), obj.getIdleMillis(), value);
+			}
+			writer.close();
+			return writer.size();
+		} catch (IOException e) {
+			if (writer != null) {
+				writer.abort();
+			}
+			throw new FileSystemException("Error writing cache snapshot: " + file, e);
+		}
+	}
+	
+	/**
+	 * Warm the cache from a file written by saveSnapshot(). Only the snapshot's index is
+	 * read up front, each value is read from the file the first time its key is requested.
+	 * Anything that expired since the snapshot was taken is skipped.
+	 * @param file
+	 * @param serializer Must match the one the snapshot was saved with (default is Java serialization)
+	 * @param stringToKey Converts the Strings stored in the snapshot back to keys
+	 * @param warmInBackground True to also load every value on a background thread
+	 * @return Number of entries available to restore
+	 * @throws FileSystemException
+	 */
+	@SuppressWarnings("unchecked")
+	public int restoreSnapshot(String file, ValueSerializer<?> serializer, Function<String, ? extends K> stringToKey, boolean warmInBackground) throws FileSystemException {
+		ValueSerializer<V> ser = (ValueSerializer<V>)((serializer == null) ? new JavaValueSerializer() : serializer);
+		CacheSnapshot snapshot;
+		try {
+			snapshot = CacheSnapshot.open(file);
+		} catch (IOException e) {
+			throw new FileSystemException("Error reading cache snapshot: " + file, e);
+		}
+		
+		long now = this.now();
+		long elapsed = Math.max(0, now - snapshot.getSnapshotMillis());
+		Map<K, CacheSnapshot.Entry> entries = new ConcurrentHashMap<>();
+		for (CacheSnapshot.Entry entry : snapshot.getEntries().values()) {
+			K key = stringToKey.apply(entry.getKey());
+			if ((entry.getRemainingMillis() > elapsed) && (cache.containsKey(key) == false)) {
+				entries.put(key, entry);
+			}
+		}
+		
+		PendingRestore previous = this.pendingRestore;
+		final PendingRestore pending = new PendingRestore(snapshot, ser, entries, now - elapsed);
+		this.pendingRestore = pending;
+		if (previous != null) {
+			previous.close();
+		}
+		if (entries.isEmpty()) {
+			this.finishRestore(pending);
+			return 0;
+		}
+		
+		if (warmInBackground == true) {
+			Thread warmer = new Thread(() -> {
+				for (K key : pending.entries.keySet()) {
+					this.restore(key);
+				}
+			}, "Cacher-snapshot-warmer");
+			warmer.setDaemon(true);
+			warmer.start();
+		}
+		return entries.size();
+	}
+	
+	/**
+	 * Move a not yet restored snapshot entry into the cache
+	 */
+	private CachedObject restore(K key) {
+		PendingRestore pending = this.pendingRestore;
+		if (pending == null) {
+			return null;
+		}
+		CacheSnapshot.Entry entry = pending.entries.remove(key);
+		if (entry == null) {
+			return null;
+		}
+		
+		CachedObject obj = null;
+		try {
+			// Times in the snapshot are relative to when it was taken
+			long expireMillis = pending.snapshotMillis + entry.getRemainingMillis();
+			if (this.now() <= expireMillis) {
+				V val = pending.serializer.deserialize(pending.snapshot.readValue(entry));
+				obj = new CachedObject(val, entry.getTtlMillis(), entry.getIdleMillis(), pending.snapshotMillis - entry.getAgeMillis(), expireMillis);
+				// A put that happened while we were reading wins
+				if (this.storeEntry(key, obj, true) == true) {
+					this.cleanupExpiredItems();
+					this.evictIfNeeded();
+				} else {
+					obj = null;
+				}
+			}
+		} catch (IOException e) {
+			obj = null;
+		}
+		
+		if (pending.entries.isEmpty()) {
+			this.finishRestore(pending);
+		}
+		return obj;
+	}
+	
+	private void finishRestore(PendingRestore pending) {
+		if (this.pendingRestore == pending) {
+			this.pendingRestore = null;
+		}
+		pending.close();
+	}
+	
+	private void discardRestore(K key) {
+		PendingRestore pending = this.pendingRestore;
+		if (pending != null) {
+			pending.entries.remove(key);
+		}
+	}
+	
+	/**
+	 * Time to live used by put(key, obj) for this instance
+	 * @param ttl
+	 */
+	public void setDefaultTimeToLive(Duration ttl) {
+		this.defaultTtlMillis = ttl.toMillis();
+	}
+	
+	public Duration getDefaultTimeToLive() { return Duration.ofMillis(this.defaultTtlMillis); }
+	
+	/**
+	 * Expire entries put with the default settings once they haven't been read for 
+	 * the duration passed in (even if their time to live hasn't run out)
+	 * @param tti Time to idle (null or zero to disable)
+	 */
+	public void setDefaultTimeToIdle(Duration tti) {
+		this.defaultIdleMillis = (tti == null) ? 0 : tti.toMillis();
+	}
+	
+	public Duration getDefaultTimeToIdle() { return Duration.ofMillis(this.defaultIdleMillis); }
+	
+	public long getMaximumSize() { return this.maximumSize; }
+	public long getMaximumWeight() { return this.maximumWeight; }
+	public long getWeight() { return this.totalWeight.get(); }
+	
+	private boolean isBounded() {
+		return (this.evictionPolicy != null) && ((this.maximumSize >= 0) || (this.maximumWeight >= 0));
+	}
+	
+	/**
+	 * Put an item into the cache (with the default cache minutes)
+	 * @param key
+	 * @param obj
+	 */
+	public void put(K key, V obj) {
+		this.put(key, obj, this.defaultTtlMillis, this.defaultIdleMillis);
+	}
+	
+	/**
+	 * Put an item into the cache (with the specified time to live)
+	 * @param key
+	 * @param obj
+	 * @param ttl ex: Duration.ofSeconds(30)
+	 */
+	public void put(K key, V obj, Duration ttl) {
+		this.put(key, obj, ttl.toMillis(), this.defaultIdleMillis);
+	}
+	
+	/**
+	 * Put an item into the cache that expires when either its time to live runs out 
+	 * or it hasn't been read for the time to idle, whichever comes first
+	 * @param key
+	 * @param obj
+	 * @param ttl
+	 * @param tti Time to idle (null or zero for none)
+	 */
+	public void put(K key, V obj, Duration ttl, Duration tti) {
+		this.put(key, obj, ttl.toMillis(), (tti == null) ? 0 : tti.toMillis());
+	}
+	
+	private void put(K key, V obj, long ttlMillis, long idleMillis) {
+		this.discardOtherTiers(key);
+		this.putEntry(key, new CachedObject(obj, ttlMillis, idleMillis));
+	}
+	
+	/**
+	 * Put several items into the cache (with the default time to live). Expired items
+	 * are cleaned up and the maximum size/weight enforced once for the whole batch
+	 * instead of after every item.
+	 * @param items
+	 */
+	public void putAll(Map<? extends K, ? extends V> items) {
+		for (Map.Entry<? extends K, ? extends V> entry : items.entrySet()) {
+			this.discardOtherTiers(entry.getKey());
+			this.storeEntry(entry.getKey(), new CachedObject(entry.getValue(), this.defaultTtlMillis, this.defaultIdleMillis));
+		}
+		this.cleanupExpiredItems();
+		this.evictIfNeeded();
+	}
+	
+	/**
+	 * A put replaces whatever a pending snapshot restore or the off heap tier has for the key
+	 */
+	private void discardOtherTiers(K key) {
+		this.discardRestore(key);
+		OffHeapStore<K> store = this.offHeap;
+		if (store != null) {
+			store.remove(key);
+		}
+	}
+	
+	private void putEntry(K key, CachedObject newObj) {
+		this.storeEntry(key, newObj);
+		this.cleanupExpiredItems();
+		this.evictIfNeeded();
+	}
+	
+	private void storeEntry(K key, CachedObject newObj) {
+		this.storeEntry(key, newObj, false);
+	}
+	
+	/**
+	 * @param ifAbsent True to leave an existing mapping alone
+	 * @return False if ifAbsent and the key was already mapped (nothing was stored)
+	 */
+	private boolean storeEntry(K key, CachedObject newObj, boolean ifAbsent) {
+		Weigher<K, V> w = this.weigher;
+		if (w != null) {
+			newObj.weight = w.weigh(key, newObj.getObj());
+			this.totalWeight.addAndGet(newObj.weight);
+		}
+		
+		// Scheduled before it is visible so a concurrent remove always has a timer to cancel
+		newObj.timer = this.expiryWheel.schedule(new ExpiryNode(key, newObj), newObj.getDeadlineMillis());
+		CachedObject old = ifAbsent ? cache.putIfAbsent(key, newObj) : cache.put(key, newObj);
+		if (ifAbsent && (old != null)) {
+			this.expiryWheel.cancel(newObj.timer);
+			this.totalWeight.addAndGet(-newObj.weight);
+			return false;
+		}
+		EvictionPolicy<K> policy = this.evictionPolicy;
+		if (policy != null) {
+			policy.onWrite(key);
+		}
+		if (old != null) {
+			this.expiryWheel.cancel(old.timer);
+			this.totalWeight.addAndGet(-old.weight);
+			this.notifyRemoval(key, old, RemovalCause.REPLACED);
+		}
+		return true;
+	}
+	
+	/**
+	 * Get an object from the cache
+	 * @param key
+	 * @return
+	 */
+	public V get(K key)	{
+		CachedObject obj = this.lookup(key);
+		if (obj == null) {
+			this.stats.recordMisses(1);
+			return null;
+		} else {
+			this.stats.recordHits(1);
+			return obj.getObj();
+		}
+	}
+	
+	/**
+	 * Get several objects from the cache. Expired items are cleaned up once for the
+	 * whole batch instead of once per key.
+	 * @param keys
+	 * @return The cached values in the order of the keys passed in (keys that aren't cached are left out)
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys) {
+		this.cleanupExpiredItems();
+		Set<K> distinct = new LinkedHashSet<>(keys);
+		Map<K, V> found = new LinkedHashMap<>();
+		for (K key : distinct) {
+			CachedObject obj = this.lookup(key);
+			if (obj != null) {
+				found.put(key, obj.getObj());
+			}
+		}
+		this.stats.recordHits(found.size());
+		this.stats.recordMisses(distinct.size() - found.size());
+		return found;
+	}
+	
+	/**
+	 * Get several objects from the cache handing all of the misses to the loader in
+	 * one call (ex: a single IN (...) query) and caching what it returns. Misses that
+	 * another thread is already loading are waited on instead of loaded again.
+	 * @param keys
+	 * @param loader Called once with the keys that weren't cached
+	 * @return The cached or loaded values in the order of the keys passed in (keys
+	 * without a value are left out)
+	 * @throws ProcessingException If the loader failed
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys, BulkCacheLoader<K, ? extends V> loader) throws ProcessingException {
+		Set<K> distinct = new LinkedHashSet<>(keys);
+		Map<K, V> found = this.getAll(distinct);
+		
+		Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+		Map<K, CompletableFuture<V>> inFlight = new LinkedHashMap<>();
+		for (K key : distinct) {
+			if (found.containsKey(key) == false) {
+				CompletableFuture<V> future = new CompletableFuture<>();
+				CompletableFuture<V> existing = this.loading.putIfAbsent(key, future);
+				if (existing == null) {
+					owned.put(key, future);
+				} else {
+					inFlight.put(key, existing);
+				}
+			}
+		}
+		
+		if (owned.isEmpty() == false) {
+			try {
+				Map<K, ? extends V> loaded;
+				long start = System.nanoTime();
+				try {
+					loaded = loader.loadAll(Collections.unmodifiableSet(owned.keySet()));
+				} catch (Exception e) {
+					this.stats.recordLoadFailure(System.nanoTime() - start);
+					throw e;
+				}
+				this.stats.recordLoadSuccess(System.nanoTime() - start);
+				
+				Map<K, V> toCache = new LinkedHashMap<>();
+				for (K key : owned.keySet()) {
+					V val = (loaded == null) ? null : loaded.get(key);
+					if (val != null) {
+						toCache.put(key, val);
+					}
+				}
+				this.putAll(toCache);
+				found.putAll(toCache);
+				for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+					entry.getValue().complete(toCache.get(entry.getKey()));
+				}
+			} catch (Exception e) {
+				for (CompletableFuture<V> future : owned.values()) {
+					future.completeExceptionally(e);
+				}
+				throw new ProcessingException("Error loading " + owned.size() + " cache keys", e);
+			} finally {
+				for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+					this.loading.remove(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		
+		for (Map.Entry<K, CompletableFuture<V>> entry : inFlight.entrySet()) {
+			V val = this.await(entry.getKey(), entry.getValue());
+			if (val != null) {
+				found.put(entry.getKey(), val);
+			}
+		}
+		
+		Map<K, V> ordered = new LinkedHashMap<>();
+		for (K key : distinct) {
+			V val = found.get(key);
+			if (val != null) {
+				ordered.put(key, val);
+			}
+		}
+		return ordered;
+	}
+	
+	/**
+	 * @return The live entry for the key (expiring it if needed) without touching the stats
+	 */
+	private CachedObject lookup(K key) {
+		CachedObject obj = cache.get(key);
+		if (obj == null) {
+			obj = this.promote(key);
+			return (obj != null) ? obj : this.restore(key);
+		} else if (obj.isExpired()) {
+			this.removeEntry(key, obj, RemovalCause.EXPIRED);
+			return null;
+		} else {
+			obj.touch();
+			this.recordAccess(key);
+			return obj;
+		}
+	}
+	
+	/**
+	 * Buffer the read for the EvictionPolicy (dropping it if the buffer is full) and
+	 * only drain the buffer here if it filled up and nobody else is draining it
+	 */
+	private void recordAccess(K key) {
+		if ((this.evictionPolicy != null) && (this.readBuffer.offer(key) == true)) {
+			this.drainReads();
+		}
+	}
+	
+	/**
+	 * Hand buffered reads to the EvictionPolicy unless another thread already is
+	 */
+	private void drainReads() {
+		if (this.drainLock.tryLock() == false) {
+			return;
+		}
+		try {
+			EvictionPolicy<K> policy = this.evictionPolicy;
+			if (policy != null) {
+				this.readBuffer.drain(policy::onAccess);
+			}
+		} finally {
+			this.drainLock.unlock();
+		}
+	}
+	
+	/**
+	 * Move an entry from the off heap tier (if there is one) back onto the heap
+	 */
+	private CachedObject promote(K key) {
+		OffHeapStore<K> store = this.offHeap;
+		if (store == null) {
+			return null;
+		}
+		byte[] bytes = store.get(key, this.now());
+		if (bytes == null) {
+			return null;
+		}
+		store.remove(key);
+		
+		try {
+			// Header written by demote(): cached millis, expire millis, ttl millis, idle millis
+			ByteBuffer buf = ByteBuffer.wrap(bytes);
+			long cachedMillis = buf.getLong();
+			long expireMillis = buf.getLong();
+			long ttlMillis = buf.getLong();
+			long idleMillis = buf.getLong();
+			byte[] value = new byte[buf.remaining()];
+			buf.get(value);
+			
+			CachedObject obj = new CachedObject(this.offHeapSerializer.deserialize(value), ttlMillis, idleMillis, cachedMillis, expireMillis);
+			this.putEntry(key, obj);
+			return obj;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return True if the entry was written to the off heap tier
+	 */
+	private boolean demote(K key, CachedObject obj) {
+		OffHeapStore<K> store = this.offHeap;
+		if (store == null) {
+			return false;
+		}
+		try {
+			byte[] value = this.offHeapSerializer.serialize(obj.getObj());
+			ByteBuffer buf = ByteBuffer.allocate(32 + value.length);
+			buf.putLong(obj.getCacheTimeMillis());
+			buf.putLong(obj.getExpireTimeMillis());
+			buf.putLong(obj.getTtlMillis());
+			buf.putLong(obj.getIdleMillis());
+			buf.put(value);
+			return store.put(key, buf.array(), obj.getExpireTimeMillis());
+		} catch (IOException | RuntimeException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Get an object from the cache, loading (and caching) it if it isn't there. Concurrent
+	 * misses for the same key wait on a single call to the loader instead of each
+	 * running it.
+	 * @param key
+	 * @param loader Called with the key on a miss
+	 * @return The cached or loaded value (null if the loader returned null)
+	 * @throws ProcessingException If the loader failed
+	 */
+	public V get(K key, CacheLoader<? super K, ? extends V> loader) throws ProcessingException {
+		CachedObject obj = this.lookup(key);
+		if (obj != null) {
+			this.stats.recordHits(1);
+			this.refreshIfNeeded(key, obj, loader);
+			return obj.getObj();
+		}
+		this.stats.recordMisses(1);
+		
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> inFlight = this.loading.putIfAbsent(key, future);
+		if (inFlight != null) {
+			return this.await(key, inFlight);
+		}
+		
+		try {
+			// Someone may have finished loading between our miss and registering the future
+			obj = this.lookup(key);
+			V val = null;
+			if (obj != null) {
+				val = obj.getObj();
+			} else {
+				long start = System.nanoTime();
+				try {
+					val = loader.load(key);
+				} catch (Exception e) {
+					this.stats.recordLoadFailure(System.nanoTime() - start);
+					throw e;
+				}
+				this.stats.recordLoadSuccess(System.nanoTime() - start);
+				if (val != null) {
+					this.put(key, val);
+				}
+			}
+			future.complete(val);
+			return val;
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+			throw new ProcessingException("Error loading cache key: " + key, e);
+		} finally {
+			this.loading.remove(key, future);
+		}
+	}
+	
+	private V await(K key, CompletableFuture<V> future) throws ProcessingException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ProcessingException("Interrupted waiting on cache key: " + key, e);
+		} catch (ExecutionException e) {
+			throw new ProcessingException("Error loading cache key: " + key, e.getCause());
+		}
+	}
+	
+	/**
+	 * Kick off a background reload if the entry is close to expiring and nobody
+	 * else is already loading it
+	 */
+	private void refreshIfNeeded(final K key, final CachedObject obj, final CacheLoader<? super K, ? extends V> loader) {
+		long ahead = this.refreshAheadMillis;
+		if ((ahead <= 0) || (this.now() < obj.getExpireTimeMillis() - ahead)) {
+			return;
+		}
+		
+		final CompletableFuture<V> future = new CompletableFuture<>();
+		if (this.loading.putIfAbsent(key, future) != null) {
+			return;
+		}
+		
+		try {
+			this.refreshExecutor.execute(() -> {
+				long start = System.nanoTime();
+				try {
+					V val = loader.load(key);
+					this.stats.recordLoadSuccess(System.nanoTime() - start);
+					// Don't clobber something that was put or removed while we were loading
+					if ((val != null) && (cache.get(key) == obj)) {
+						this.put(key, val, obj.getTtlMillis(), obj.getIdleMillis());
+					}
+					future.complete(val);
+				} catch (Exception e) {
+					// The current value is still good until it expires so just leave it
+					this.stats.recordLoadFailure(System.nanoTime() - start);
+					future.completeExceptionally(e);
+				} finally {
+					this.loading.remove(key, future);
+				}
+			});
+		} catch (RuntimeException e) {
+			this.loading.remove(key, future);
+			future.complete(obj.getObj());
+		}
+	}
+	
+	public int size() {
+		this.cleanupExpiredItems();
+		return cache.size();
+	}
+	
+	/**
+	 * Clear all cached items (on every node if there is an InvalidationChannel)
+	 */
+	public void clear()	{
+		this.clearLocal();
+		InvalidationChannel channel = this.invalidationChannel;
+		if (channel != null) {
+			channel.invalidateAll();
+		}
+	}
+	
+	private void clearLocal() {
+		Map<K, CachedObject> old = cache;
+		cache = this.newMap();
+		this.expiryWheel.clear();
+		this.totalWeight.set(0);
+		PendingRestore pending = this.pendingRestore;
+		if (pending != null) {
+			this.finishRestore(pending);
+		}
+		OffHeapStore<K> store = this.offHeap;
+		if (store != null) {
+			store.clear();
+		}
+		EvictionPolicy<K> policy = this.evictionPolicy;
+		if (policy != null) {
+			policy.clear();
+		}
+		
+		if (this.removalListeners.isEmpty() == false) {
+			synchronized (old) {
+				for (Map.Entry<K, CachedObject> entry : old.entrySet()) {
+					this.notifyRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPLICIT);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Remove a specific item from the cache (on every node if there is an InvalidationChannel)
+	 * @param key
+	 */
+	public void remove(K key) {
+		this.removeLocal(key);
+		InvalidationChannel channel = this.invalidationChannel;
+		if (channel != null) {
+			channel.invalidate(this.invalidationKeyToString.apply(key));
+		}
+	}
+	
+	private void removeLocal(K key) {
+		this.discardRestore(key);
+		OffHeapStore<K> store = this.offHeap;
+		if (store != null) {
+			store.remove(key);
+		}
+		CachedObject obj = cache.get(key);
+		if (obj != null) {
+			this.removeEntry(key, obj, RemovalCause.EXPLICIT);
+		}
+	}
+	
+	/**
+	 * Remove several items from the cache
+	 * @param keys
+	 */
+	public void invalidateAll(Collection<? extends K> keys) {
+		for (K key : keys) {
+			this.removeLocal(key);
+		}
+		InvalidationChannel channel = this.invalidationChannel;
+		if ((channel != null) && (keys.isEmpty() == false)) {
+			List<String> names = new ArrayList<>(keys.size());
+			for (K key : keys) {
+				names.add(this.invalidationKeyToString.apply(key));
+			}
+			channel.invalidateAll(names);
+		}
+	}
+	
+	/**
+	 * Keep this cache coherent with caches on other nodes. Calls to remove(), invalidateAll()
+	 * and clear() are broadcast on the channel and invalidations from other nodes are
+	 * applied here (without being broadcast again). Note that put() is not broadcast so
+	 * when the underlying data changes remove() the key rather than just putting the new value.
+	 * @param channel ex: MulticastInvalidationChannel (null to stop)
+	 * @param keyToString Converts keys to what goes on the wire
+	 * @param stringToKey Converts what comes off the wire back to keys
+	 */
+	public void setInvalidationChannel(InvalidationChannel channel, Function<? super K, String> keyToString, final Function<String, ? extends K> stringToKey) {
+		InvalidationChannel old = this.invalidationChannel;
+		if (old != null) {
+			old.removeListener(this.invalidationListener);
+		}
+		this.invalidationChannel = null;
+		this.invalidationListener = null;
+		if (channel == null) {
+			return;
+		}
+		
+		this.invalidationKeyToString = keyToString;
+		this.invalidationListener = new InvalidationChannel.Listener() {
+			public void onInvalidate(Collection<String> keys) {
+				for (String key : keys) {
+					removeLocal(stringToKey.apply(key));
+				}
+			}
+			public void onInvalidateAll() {
+				clearLocal();
+			}
+		};
+		channel.addListener(this.invalidationListener);
+		this.invalidationChannel = channel;
+	}
+	
+	/**
+	 * Remove the mapping only if it is still the object passed in and do the
+	 * bookkeeping that goes along with it
+	 * @return True if this call removed it
+	 */
+	private boolean removeEntry(K key, CachedObject obj, RemovalCause cause) {
+		if (cache.remove(key, obj) == false) {
+			return false;
+		}
+		this.expiryWheel.cancel(obj.timer);
+		this.totalWeight.addAndGet(-obj.weight);
+		EvictionPolicy<K> policy = this.evictionPolicy;
+		if ((policy != null) && (cache.containsKey(key) == false)) {
+			policy.onRemove(key);
+		}
+		// Spilling to the off heap tier isn't a removal as far as callers are concerned
+		if ((cause == RemovalCause.SIZE) && (this.demote(key, obj) == true)) {
+			return true;
+		}
+		this.notifyRemoval(key, obj, cause);
+		return true;
+	}
+	
+	private void notifyRemoval(K key, CachedObject obj, RemovalCause cause) {
+		this.stats.recordRemoval(cause);
+		for (RemovalListener<K, V> listener : this.removalListeners) {
+			try {
+				listener.onRemoval(key, obj.getObj(), cause);
+			} catch (Exception e) { /* a bad listener shouldn't break the cache */ }
+		}
+	}
+	
+	/**
+	 * Evict entries chosen by the EvictionPolicy until we're back within the
+	 * maximum size and weight
+	 */
+	private void evictIfNeeded() {
+		if (this.isBounded() == false) {
+			return;
+		}
+		
+		this.drainReads();
+		EvictionPolicy<K> policy = this.evictionPolicy;
+		// Guard against a policy that keeps handing back keys we no longer have
+		int attempts = 0;
+		while (((this.maximumSize >= 0) && (cache.size() > this.maximumSize)) ||
+				((this.maximumWeight >= 0) && (this.totalWeight.get() > this.maximumWeight))) {
+			K victim = policy.victim();
+			if ((victim == null) || (attempts++ > cache.size() + 16)) {
+				break;
+			}
+			CachedObject obj = cache.get(victim);
+			if (obj == null) {
+				policy.onRemove(victim);
+			} else {
+				this.removeEntry(victim, obj, obj.isExpired() ? RemovalCause.EXPIRED : RemovalCause.SIZE);
+			}
+		}
+	}
+	
+	public Set<K> keySet() {
+		if (this.maintainOrder == true) {
+			// Iterating a synchronized map has to hold its lock so hand back a copy
+			Map<K, CachedObject> map = cache;
+			synchronized (map) {
+				return new LinkedHashSet<>(map.keySet());
+			}
+		} else {
+			return cache.keySet();
+		}
+	}
+	
+	/**
+	 * Say if the cache contains an item with the specified key
+	 * @param key
+	 * @return
+	 */
+	public boolean containsKey(K key) {
+		// Note: Using call to get() instead of directly calling containsKey()
+		// because the call to get() will expire the item if necessary
+		if (this.lookup(key) == null) {
+			return false;
+		} else {
+			return true;
+		}
+	}
+	
+	/**
+	 * Cleanup (remove) any expired cached objects. Only the TimerWheel buckets that
+	 * have come due are visited so this does not walk the whole cache.
+	 */
+	public void cleanupExpiredItems() {
+		this.expiryWheel.advance(this.now(), timeout -> {
+			ExpiryNode node = timeout.getItem();
+			// Only remove the mapping if it's still the object that was scheduled
+			if (node.obj.isExpired()) {
+				this.removeEntry(node.key, node.obj, RemovalCause.EXPIRED);
+			} else if (cache.get(node.key) == node.obj) {
+				// Read since it was scheduled so its idle deadline moved out
+				this.expiryWheel.reschedule(timeout, node.obj.getDeadlineMillis());
+				if (cache.get(node.key) != node.obj) {
+					// Removed while we were rescheduling
+					this.expiryWheel.cancel(timeout);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Get the Calendar representation of when an item was last cached 
+	 * (null if it has expired or does not exist)
+	 * @param key
+	 * @return
+	 */
+	public Calendar getCachedTime(K key) {
+		CachedObject obj = cache.get(key);
+		if ((obj != null) && (obj.isExpired() == false)) {
+			return obj.getCacheTime();
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * Print out information about the cache
+	 */
+	public void printCache() {
+		for (K key : this.keySet()) {
+			CachedObject obj = cache.get(key);
+			if (obj != null) {
+				Utils.output(key + " - cached: " + Format.date(Format.DATE_TIMESTAMP, Convert.toDate(obj.getCacheTime())) + " - Cache minutes: " + obj.getCacheMinutes());
+			}
+		}
+	}
+	
+	private static final class StatsMXBean implements CacheStatsMXBean {
+		private final TypedCacher<?, ?> cacher;
+		
+		StatsMXBean(TypedCacher<?, ?> cacher) {
+			this.cacher = cacher;
+		}
+		
+		public long getSize() { return this.cacher.size(); }
+		public long getWeight() { return this.cacher.getWeight(); }
+		public long getMaximumSize() { return this.cacher.getMaximumSize(); }
+		public long getMaximumWeight() { return this.cacher.getMaximumWeight(); }
+		public long getHitCount() { return this.cacher.getStats().getHitCount(); }
+		public long getMissCount() { return this.cacher.getStats().getMissCount(); }
+		public double getHitRate() { return this.cacher.getStats().getHitRate(); }
+		public long getLoadSuccessCount() { return this.cacher.getStats().getLoadSuccessCount(); }
+		public long getLoadFailureCount() { return this.cacher.getStats().getLoadFailureCount(); }
+		public double getAverageLoadPenaltyNanos() { return this.cacher.getStats().getAverageLoadPenaltyNanos(); }
+		public long getEvictionCount() { return this.cacher.getStats().getEvictionCount(); }
+		public long getExpirationCount() { return this.cacher.getStats().getExpirationCount(); }
+		public void resetStats() { this.cacher.stats.reset(); }
+	}
+	
+	private final class PendingRestore {
+		final CacheSnapshot snapshot;
+		final ValueSerializer<V> serializer;
+		final Map<K, CacheSnapshot.Entry> entries;
+		final long snapshotMillis;
+		
+		PendingRestore(CacheSnapshot snapshot, ValueSerializer<V> serializer, Map<K, CacheSnapshot.Entry> entries, long snapshotMillis) {
+			this.snapshot = snapshot;
+			this.serializer = serializer;
+			this.entries = entries;
+			this.snapshotMillis = snapshotMillis;
+		}
+		
+		void close() {
+			this.entries.clear();
+			try {
+				this.snapshot.close();
+			} catch (IOException e) { /* ignore */ }
+		}
+	}
+	
+	private final class ExpiryNode {
+		final K key;
+		final CachedObject obj;
+		
+		ExpiryNode(K key, CachedObject obj) {
+			this.key = key;
+			this.obj = obj;
+		}
+	}
+	
+	private final class CachedObject {
+		private final V obj;
+		private final long cachedMillis;
+		private final long expireMillis;
+		private final long ttlMillis;
+		private final long idleMillis;
+		private volatile long lastAccessMillis;
+		private int weight = 0;
+		private volatile TimerWheel.Timeout<ExpiryNode> timer;
+		
+		public CachedObject(V obj, long ttlMillis, long idleMillis) {
+			this(obj, ttlMillis, idleMillis, now());
+		}
+		
+		private CachedObject(V obj, long ttlMillis, long idleMillis, long cachedMillis) {
+			this(obj, ttlMillis, idleMillis, cachedMillis, cachedMillis + ttlMillis);
+		}
+		
+		public CachedObject(V obj, long ttlMillis, long idleMillis, long cachedMillis, long expireMillis) {
+			this.obj = obj;
+			this.cachedMillis = cachedMillis;
+			this.ttlMillis = ttlMillis;
+			this.idleMillis = idleMillis;
+			this.expireMillis = expireMillis;
+			this.lastAccessMillis = now();
+		}
+		
+		public V getObj() { return this.obj; }
+		public int getCacheMinutes() { return (int)(this.ttlMillis / (60L * 1000L)); }
+		public long getTtlMillis() { return this.ttlMillis; }
+		public long getIdleMillis() { return this.idleMillis; }
+		public long getCacheTimeMillis() { return this.cachedMillis; }
+		public long getExpireTimeMillis() { return this.expireMillis; }
+		
+		/**
+		 * @return The earlier of the time to live and time to idle deadlines
+		 */
+		public long getDeadlineMillis() {
+			if (this.idleMillis > 0) {
+				return Math.min(this.expireMillis, this.lastAccessMillis + this.idleMillis);
+			}
+			return this.expireMillis;
+		}
+		
+		/**
+		 * Derived from the cached millis so only callers that want a Calendar pay for one
+		 */
+		public Calendar getCacheTime() {
+			Calendar cal = Calendar.getInstance();
+			cal.setTimeInMillis(this.cachedMillis);
+			return cal;
+		}
+		
+		void touch() {
+			if (this.idleMillis > 0) {
+				this.lastAccessMillis = now();
+			}
+		}
+		
+		public boolean isExpired() {
+			return now() > this.getDeadlineMillis();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.cffreedom.utils.cache;
+
+import java.io.IOException;
+
+/**
+ * Turns cache values into bytes (and back) so they can be stored outside the
+ * Java heap or written to disk
+ *
+ * Original Class: com.cffreedom.utils.cache.ValueSerializer
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface ValueSerializer<V> {
+	byte[] serialize(V value) throws IOException;
+	V deserialize(byte[] bytes) throws IOException;
+}
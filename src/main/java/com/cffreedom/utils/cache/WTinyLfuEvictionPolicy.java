@@ -0,0 +1,222 @@
+package com.cffreedom.utils.cache;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Window TinyLFU eviction. New entries land in a small LRU window (1% of the
+ * maximum size). When the window overflows its oldest entry has to compete for
+ * a spot in the main (segmented LRU) area against the main area's victim, and
+ * the one with the lower estimated access frequency is evicted. Frequencies
+ * come from a small count-min sketch that also remembers keys that are no
+ * longer cached, so one-hit wonders can't push out a hot working set.
+ * 
+ * The policy is sized by entry count. When used with a weight bounded cache
+ * the window and protected areas are approximate.
+ *
+ * Original Class: com.cffreedom.utils.cache.WTinyLfuEvictionPolicy
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class WTinyLfuEvictionPolicy<K> implements EvictionPolicy<K> {
+	private static final double WINDOW_PERCENT = 0.01;
+	private static final double PROTECTED_PERCENT = 0.80;
+	
+	private final int maximumSize;
+	private final int windowMax;
+	private final int protectedMax;
+	private final FrequencySketch sketch;
+	private final Map<K, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<K, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<K, Boolean> protect = new LinkedHashMap<>(16, 0.75f, true);
+	
+	/**
+	 * @param maximumSize The expected maximum number of entries in the cache
+	 */
+	public WTinyLfuEvictionPolicy(long maximumSize) {
+		int max = (int)Math.min(Math.max(maximumSize, 1), Integer.MAX_VALUE);
+		this.maximumSize = max;
+		this.windowMax = Math.max(1, (int)(max * WINDOW_PERCENT));
+		this.protectedMax = Math.max(1, (int)((max - this.windowMax) * PROTECTED_PERCENT));
+		this.sketch = new FrequencySketch(max);
+	}
+	
+	@Override
+	public synchronized void onAccess(K key) {
+		this.sketch.increment(key);
+		if (this.window.containsKey(key)) {
+			this.window.get(key);
+		} else if (this.probation.remove(key) != null) {
+			// Second hit in the main area promotes it
+			this.protect.put(key, Boolean.TRUE);
+			if (this.protect.size() > this.protectedMax) {
+				K demoted = eldest(this.protect);
+				this.protect.remove(demoted);
+				this.probation.put(demoted, Boolean.TRUE);
+			}
+		} else {
+			this.protect.get(key);
+		}
+	}
+	
+	@Override
+	public synchronized void onWrite(K key) {
+		if (this.window.containsKey(key) || this.probation.containsKey(key) || this.protect.containsKey(key)) {
+			this.onAccess(key);
+		} else {
+			this.sketch.increment(key);
+			this.window.put(key, Boolean.TRUE);
+			
+			// While there's room in the main area the window just spills into it. Once
+			// full the spill has to win a frequency contest in victim()
+			int tracked = this.window.size() + this.probation.size() + this.protect.size();
+			if ((this.window.size() > this.windowMax) && (tracked <= this.maximumSize)) {
+				K spill = eldest(this.window);
+				this.window.remove(spill);
+				this.probation.put(spill, Boolean.TRUE);
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void onRemove(K key) {
+		if (this.window.remove(key) == null) {
+			if (this.probation.remove(key) == null) {
+				this.protect.remove(key);
+			}
+		}
+	}
+	
+	@Override
+	public synchronized K victim() {
+		if (this.window.size() > this.windowMax) {
+			K candidate = eldest(this.window);
+			this.window.remove(candidate);
+			
+			K mainVictim = eldest(this.probation);
+			if (mainVictim == null) { mainVictim = eldest(this.protect); }
+			
+			// Candidate is tracked in probation until the cache tells us it's gone
+			this.probation.put(candidate, Boolean.TRUE);
+			if (mainVictim == null) {
+				return candidate;
+			}
+			
+			// TinyLFU admission: keep whichever has been used more
+			if (this.sketch.frequency(candidate) > this.sketch.frequency(mainVictim)) {
+				return mainVictim;
+			} else {
+				return candidate;
+			}
+		}
+		
+		K victim = eldest(this.probation);
+		if (victim == null) { victim = eldest(this.protect); }
+		if (victim == null) { victim = eldest(this.window); }
+		return victim;
+	}
+	
+	@Override
+	public synchronized void clear() {
+		this.window.clear();
+		this.probation.clear();
+		this.protect.clear();
+		this.sketch.clear();
+	}
+	
+	private static <K> K eldest(Map<K, Boolean> map) {
+		Iterator<K> it = map.keySet().iterator();
+		return it.hasNext() ? it.next() : null;
+	}
+	
+	/**
+	 * 4 row count-min sketch with counters capped at 15. Once the number of
+	 * increments reaches 10x the cache size every counter is halved so old
+	 * popularity fades away.
+	 */
+	private static final class FrequencySketch {
+		private static final int DEPTH = 4;
+		private static final int MAX_COUNT = 15;
+		private static final int[] SEEDS = { 0x97cb3127, 0x2c1b3c6d, 0x297a2d39, 0x9e3779b9 };
+		
+		private final byte[][] table;
+		private final int mask;
+		private final int sampleSize;
+		private int additions = 0;
+		
+		FrequencySketch(int maximumSize) {
+			// 8 counters per entry per row keeps collisions low enough that a scan of
+			// new keys doesn't look as popular as the working set
+			int width = 16;
+			while ((width < 8L * maximumSize) && (width < (1 << 24))) { width <<= 1; }
+			this.table = new byte[DEPTH][width];
+			this.mask = width - 1;
+			this.sampleSize = (int)Math.min(10L * Math.max(maximumSize, 16), Integer.MAX_VALUE);
+		}
+		
+		void increment(Object key) {
+			int hash = spread(key.hashCode());
+			boolean added = false;
+			for (int row = 0; row < DEPTH; row++) {
+				int idx = index(hash, row);
+				if (this.table[row][idx] < MAX_COUNT) {
+					this.table[row][idx]++;
+					added = true;
+				}
+			}
+			if (added && (++this.additions >= this.sampleSize)) {
+				this.reset();
+			}
+		}
+		
+		int frequency(Object key) {
+			int hash = spread(key.hashCode());
+			int min = MAX_COUNT;
+			for (int row = 0; row < DEPTH; row++) {
+				min = Math.min(min, this.table[row][index(hash, row)]);
+			}
+			return min;
+		}
+		
+		void clear() {
+			for (byte[] row : this.table) {
+				Arrays.fill(row, (byte)0);
+			}
+			this.additions = 0;
+		}
+		
+		private void reset() {
+			for (byte[] row : this.table) {
+				for (int x = 0; x < row.length; x++) {
+					row[x] = (byte)(row[x] >>> 1);
+				}
+			}
+			this.additions = this.additions / 2;
+		}
+		
+		private int index(int hash, int row) {
+			int h = (hash ^ SEEDS[row]) * 0x9e3779b1;
+			return (h ^ (h >>> 16)) & this.mask;
+		}
+		
+		private static int spread(int h) {
+			h ^= (h >>> 17);
+			h *= 0xed5ad4bb;
+			h ^= (h >>> 11);
+			return h;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.cffreedom.utils.cache;
+
+/**
+ * Calculates the relative weight of a cache entry for caches bounded by
+ * maximum weight instead of entry count
+ *
+ * Original Class: com.cffreedom.utils.cache.Weigher
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface Weigher<K, V> {
+	/**
+	 * @param key
+	 * @param value
+	 * @return A weight >= 0
+	 */
+	int weigh(K key, V value);
+}
@@ -1,20 +1,37 @@
 package com.cffreedom.utils.db;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,6 +40,7 @@ import com.cffreedom.beans.DbType;
 import com.cffreedom.exceptions.DbException;
 import com.cffreedom.exceptions.FileSystemException;
 import com.cffreedom.exceptions.InfrastructureException;
+import com.cffreedom.exceptions.ProcessingException;
 import com.cffreedom.utils.Convert;
 import com.cffreedom.utils.SystemUtils;
 import com.cffreedom.utils.Utils;
@@ -55,6 +73,10 @@ import com.cffreedom.utils.security.SecurityCipher;
  * 2013-09-20	markjacobsen.net 	Updates to testConnection()
  * 2013-11-08	MarkJacobsen.net	Enhanced connection pooling
  * 2014-11-05 	MarkJacobsen.net 	Added getKeys()
+ * 2026-10-17 	MarkJacobsen.net 	Pool settings per key in dbconn.properties (PoolConfig) and hot reload of the file
+ * 2026-10-17 	MarkJacobsen.net 	Pools are held in a ConcurrentHashMap of per key holders so borrowing takes no global lock
+ * 2026-10-17 	MarkJacobsen.net 	Pool and connection source statistics (getPoolStats(), JMX) and slow borrow logging
+ * 2026-10-18 	MarkJacobsen.net 	Replica groups with read/write routing, health checks and failover
  */
 public class ConnectionManager
 {
@@ -62,9 +84,24 @@ public class ConnectionManager
 	public static final String DEFAULT_FILE = SystemUtils.getDirConfig() + SystemUtils.getPathSeparator() + PROP_FILE;
 	public static final boolean CREATE_FILE = false;
 	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.db.ConnectionManager");
-	private Map<String, DbConn> conns = new HashMap<String, DbConn>();
-	private Map<String, BasicDataSource> pools = null;
+	public static final String PROP_RELOAD_INTERVAL = "reload.intervalMillis";
+	public static final String PROP_HEALTH_CHECK_INTERVAL = "healthCheck.intervalMillis";
+	public static final long DEFAULT_SLOW_BORROW_MILLIS = 1000;
+	public static final int HEALTH_CHECK_TIMEOUT_SECONDS = 5;
+	private volatile Map<String, DbConn> conns = new ConcurrentHashMap<String, DbConn>();
+	private volatile Map<String, PoolConfig> poolConfigs = new HashMap<String, PoolConfig>();
+	private volatile PoolConfig defaultPoolConfig = new PoolConfig();
+	private volatile ConcurrentMap<String, PoolHolder> pools = null;
+	private volatile Map<String, ReplicaGroup> groups = new ConcurrentHashMap<String, ReplicaGroup>();
 	private String file = null;
+	private Properties props = new Properties();
+	private volatile long loadedModified = -1;
+	private volatile long loadedLength = -1;
+	private ScheduledExecutorService reloader = null;
+	private ScheduledExecutorService healthChecker = null;
+	private final LongAdder[] sourceCounts = newCounters(ConnectionSource.values().length);
+	private volatile long slowBorrowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_BORROW_MILLIS);
+	private volatile String mbeanName = null;
 	private SecurityCipher cipher = new SecurityCipher("abasickeyyoushouldnotchange");
 	
 	public ConnectionManager() throws FileSystemException, InfrastructureException
@@ -101,14 +138,273 @@ public class ConnectionManager
 		if (enable == true){
 			if (this.pools == null){
 				logger.info("Turning on Connection Pooling");
-				this.pools = new Hashtable<String, BasicDataSource>();
+				this.pools = new ConcurrentHashMap<String, PoolHolder>();
 			}
-		}else{
+		}else if (this.pools != null){
 			logger.info("Turning off Connection Pooling");
+			Map<String, PoolHolder> old = this.pools;
 			this.pools = null;
+			for (String key : new ArrayList<String>(old.keySet()))
+			{
+				this.drainPool(old, key);
+			}
+		}
+	}
+	
+	/**
+	 * Check the connection file for changes every intervalMillis and reload it when it
+	 * changes. Can also be turned on with the reload.intervalMillis property in the file.
+	 * @param intervalMillis How often to check, 0 or less to stop checking
+	 */
+	public synchronized void enableHotReload(long intervalMillis)
+	{
+		if (this.reloader != null)
+		{
+			this.reloader.shutdownNow();
+			this.reloader = null;
+		}
+		if (intervalMillis > 0)
+		{
+			logger.info("Checking {} for changes every {}ms", this.file, intervalMillis);
+			this.reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "ConnectionManager-reload");
+				t.setDaemon(true);
+				return t;
+			});
+			this.reloader.scheduleWithFixedDelay(() -> {
+				try
+				{
+					this.reloadIfChanged();
+				}
+				catch (RuntimeException e)
+				{
+					// Anything thrown out of here would cancel every later check
+					logger.error("Unexpected error checking {} for changes", this.file, e);
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Reload the connection file if it changed since it was last read. Errors are
+	 * logged and leave the current settings in place.
+	 * @return True if it was reloaded
+	 */
+	public boolean reloadIfChanged()
+	{
+		if (FileUtils.fileExists(this.file) == false)
+		{
+			return false;
+		}
+		File f = new File(this.file);
+		if ((f.lastModified() == this.loadedModified) && (f.length() == this.loadedLength))
+		{
+			return false;
+		}
+		try
+		{
+			return this.reload();
+		}
+		catch (FileSystemException | InfrastructureException e)
+		{
+			logger.error("Unable to reload {}, keeping current settings: {}", this.file, e.getMessage());
+			return false;
 		}
 	}
 	
+	/**
+	 * Re-read the connection file. Keys that were removed or whose connection settings
+	 * changed have their pools drained: borrowing moves to a new pool right away while
+	 * connections already out are closed as they are returned. Pools whose sizing, wait,
+	 * eviction or validation settings changed are resized in place.
+	 * @return True if the file was read
+	 * @throws FileSystemException
+	 * @throws InfrastructureException If the file has invalid values (nothing is changed)
+	 */
+	public synchronized boolean reload() throws FileSystemException, InfrastructureException
+	{
+		if (FileUtils.fileExists(this.file) == false)
+		{
+			logger.warn("No file to reload: {}", this.file);
+			return false;
+		}
+		
+		logger.info("Reloading: {}", this.file);
+		File f = new File(this.file);
+		long modified = f.lastModified();
+		long length = f.length();
+		Properties newProps = this.readProperties(this.file);
+		Map<String, DbConn> newConns = this.parseConns(newProps);
+		PoolConfig newDefault = PoolConfig.fromProperties(newProps, null);
+		Map<String, PoolConfig> newConfigs = this.parsePoolConfigs(newProps, newConns.keySet());
+		Map<String, ReplicaGroup> newGroups = ReplicaGroup.fromProperties(newProps);
+		validateGroups(newGroups, newConns);
+		for (Map.Entry<String, ReplicaGroup> entry : newGroups.entrySet())
+		{
+			// Keep what we know about which members are down
+			ReplicaGroup old = this.groups.get(entry.getKey());
+			if (entry.getValue().sameConfig(old) == true)
+			{
+				entry.setValue(old);
+			}
+		}
+		
+		Map<String, DbConn> oldConns = this.conns;
+		Map<String, PoolConfig> oldConfigs = this.poolConfigs;
+		this.props = newProps;
+		this.conns = new ConcurrentHashMap<String, DbConn>(newConns);
+		this.defaultPoolConfig = newDefault;
+		this.poolConfigs = newConfigs;
+		this.groups = new ConcurrentHashMap<String, ReplicaGroup>(newGroups);
+		this.loadedModified = modified;
+		this.loadedLength = length;
+		
+		Map<String, PoolHolder> pools = this.pools;
+		if (pools != null)
+		{
+			for (String key : new ArrayList<String>(pools.keySet()))
+			{
+				if ((newConns.containsKey(key) == false) || (connectionChanged(oldConns.get(key), newConns.get(key)) == true))
+				{
+					this.drainPool(pools, key);
+				}
+				else
+				{
+					this.applyPoolConfig(pools, key, oldConfigs.get(key), newConfigs.get(key));
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return The pool settings used for the key
+	 */
+	public PoolConfig getPoolConfig(String key)
+	{
+		return new PoolConfig(this.poolConfigFor(key));
+	}
+	
+	private PoolConfig poolConfigFor(String key)
+	{
+		PoolConfig ret = this.poolConfigs.get(key);
+		return (ret != null) ? ret : this.defaultPoolConfig;
+	}
+	
+	/**
+	 * Change the pool settings for a key, resizing or replacing its pool if it is in use.
+	 * Not saved to the file, and replaced by the file's settings if it is reloaded.
+	 * @param key
+	 * @param config
+	 */
+	public synchronized void setPoolConfig(String key, PoolConfig config)
+	{
+		PoolConfig old = this.getPoolConfig(key);
+		Map<String, PoolConfig> newConfigs = new HashMap<String, PoolConfig>(this.poolConfigs);
+		newConfigs.put(key, new PoolConfig(config));
+		this.poolConfigs = newConfigs;
+		Map<String, PoolHolder> pools = this.pools;
+		if ((pools != null) && (pools.containsKey(key) == true))
+		{
+			this.applyPoolConfig(pools, key, old, config);
+		}
+	}
+	
+	/**
+	 * The pool for the key (if any) so tests and monitoring can look at it
+	 */
+	BasicDataSource getPool(String key)
+	{
+		Map<String, PoolHolder> pools = this.pools;
+		PoolHolder holder = (pools != null) ? pools.get(key) : null;
+		return (holder != null) ? holder.peek() : null;
+	}
+	
+	private void applyPoolConfig(Map<String, PoolHolder> pools, String key, PoolConfig oldConfig, PoolConfig newConfig)
+	{
+		if (oldConfig == null) { oldConfig = this.defaultPoolConfig; }
+		if (newConfig == null) { newConfig = this.defaultPoolConfig; }
+		if (newConfig.equals(oldConfig) == true)
+		{
+			return;
+		}
+		
+		PoolHolder holder = pools.get(key);
+		BasicDataSource bds = (holder != null) ? holder.peek() : null;
+		if (bds == null)
+		{
+			return;
+		}
+		if (newConfig.requiresNewPool(oldConfig) == true)
+		{
+			this.drainPool(pools, key);
+		}
+		else
+		{
+			logger.info("Resizing pool {}: {}", key, newConfig);
+			newConfig.applyTo(bds, Utils.hasLength(bds.getValidationQuery()));
+		}
+	}
+	
+	/**
+	 * Take the pool out of use and close it. Idle connections are closed now and
+	 * connections that are in use are closed when they are returned.
+	 */
+	private void drainPool(Map<String, PoolHolder> pools, String key)
+	{
+		PoolHolder holder = pools.remove(key);
+		if (holder != null)
+		{
+			holder.close();
+		}
+	}
+	
+	private static InstrumentedDataSource createPool(String key, DbConn dbconn, PoolConfig config)
+	{
+		logger.debug("Initializing connection pool: {}", key);
+		InstrumentedDataSource bds = new InstrumentedDataSource();
+		bds.setDriverClassName(dbconn.getDriver());
+		bds.setUrl(dbconn.getUrl());
+		bds.setUsername(dbconn.getUser());
+		bds.setPassword(dbconn.getPassword());
+		
+		String validationSql = DbUtils.getTestSql(dbconn.getType());
+		if (Utils.hasLength(validationSql) == true)
+		{
+			bds.setValidationQuery(validationSql); 
+		}
+		config.applyTo(bds, Utils.hasLength(validationSql));
+		return bds;
+	}
+	
+	/**
+	 * Compares the parsed settings a pool is built from rather than the file's text,
+	 * which can differ for the same settings (ex: an encrypted password)
+	 * @return True if a pool for the old settings can't be used for the new ones
+	 */
+	static boolean connectionChanged(DbConn oldConn, DbConn newConn)
+	{
+		if ((oldConn == null) || (newConn == null))
+		{
+			return true;
+		}
+		return (Objects.equals(oldConn.getDriver(), newConn.getDriver()) == false)
+				|| (Objects.equals(oldConn.getUrl(), newConn.getUrl()) == false)
+				|| (Objects.equals(oldConn.getUser(), newConn.getUser()) == false)
+				|| (Objects.equals(oldConn.getPassword(), newConn.getPassword()) == false)
+				|| (Objects.equals(oldConn.getJndi(), newConn.getJndi()) == false);
+	}
+	
+	/**
+	 * Remember the file's modified time and size so reloadIfChanged() knows when it changes
+	 */
+	private void recordFileStamp()
+	{
+		File f = new File(this.file);
+		this.loadedModified = f.lastModified();
+		this.loadedLength = f.length();
+	}
+	
 	public void loadFile(String file) throws FileSystemException, InfrastructureException { this.loadFile(file, ConnectionManager.CREATE_FILE); }
 	@SuppressWarnings("resource")
 	public void loadFile(String file, boolean createPropFileIfNew) throws FileSystemException, InfrastructureException
@@ -129,6 +425,7 @@ public class ConnectionManager
 			if (FileUtils.fileExists(this.file) == true)
 			{
 				logger.info("Loading from passed in file: {}", this.file);
+				this.recordFileStamp();
 				inputStream = new FileInputStream(this.file);
 			}
 			else
@@ -155,49 +452,29 @@ public class ConnectionManager
 				props.load(inputStream);
 				inputStream.close();
 				
-				if (props.getProperty("keys") == null)
+				Map<String, DbConn> loaded = this.parseConns(props);
+				Map<String, DbConn> newConns = new ConcurrentHashMap<String, DbConn>(this.conns);
+				newConns.putAll(loaded);
+				Map<String, PoolConfig> newConfigs = new HashMap<String, PoolConfig>(this.poolConfigs);
+				newConfigs.putAll(this.parsePoolConfigs(props, loaded.keySet()));
+				Map<String, ReplicaGroup> newGroups = new ConcurrentHashMap<String, ReplicaGroup>(this.groups);
+				newGroups.putAll(ReplicaGroup.fromProperties(props));
+				validateGroups(newGroups, newConns);
+				this.defaultPoolConfig = PoolConfig.fromProperties(props, null);
+				this.poolConfigs = newConfigs;
+				this.conns = newConns;
+				this.groups = newGroups;
+				this.props = props;
+				
+				String interval = props.getProperty(PROP_RELOAD_INTERVAL);
+				if ((Utils.hasLength(interval) == true) && (FileUtils.fileExists(this.file) == true))
 				{
-					logger.warn("No \"keys\" property exists so nothing will be read");
+					this.enableHotReload(Convert.toLong(interval.trim()));
 				}
-				else
+				interval = props.getProperty(PROP_HEALTH_CHECK_INTERVAL);
+				if (Utils.hasLength(interval) == true)
 				{
-					String[] keys = props.getProperty("keys").split(",");
-					
-					for (String key : keys)
-					{
-						logger.trace("Loading: {}", key);
-						String type = props.getProperty(key + ".type");
-						String host = props.getProperty(key + ".host");
-						String db = props.getProperty(key + ".db");
-						String port = props.getProperty(key + ".port");
-						String user = props.getProperty(key + ".user");
-						String password = props.getProperty(key + ".password");
-						String jndi = props.getProperty(key + ".jndi");
-						
-						DbType dbType = null;
-						if (Utils.hasLength(type) == true)
-						{
-							// Make backward compatible
-							if (type.equalsIgnoreCase("DB2_JCC") == true) { type = DbType.DB2.value; }
-							else if (type.equalsIgnoreCase("DB2_APP") == true) { type = DbType.DB2.value; }
-							
-							dbType = DbType.valueOf(type);
-						}
-						if ((port == null) || (port.trim().length() == 0)) { port = "0"; }
-						
-						DbConn dbconn = new DbConn(DbUtils.getDefaultDriver(dbType),
-												DbUtils.getUrl(dbType, host, db, Convert.toInt(port)), 
-												dbType,
-												host,
-												db,
-												Convert.toInt(port));
-						
-						if (Utils.hasLength(user) == true) { dbconn.setUser(user); }
-						if (Utils.hasLength(password) == true) { dbconn.setPassword(this.cipher.decrypt(password)); }
-						if (Utils.hasLength(jndi) == true) { dbconn.setJndi(jndi); }
-		
-						this.conns.put(key, dbconn);
-					}
+					this.enableHealthChecks(Convert.toLong(interval.trim()));
 				}
 			}
 			
@@ -213,6 +490,109 @@ public class ConnectionManager
 		}
 	}
 	
+	private Properties readProperties(String file) throws FileSystemException
+	{
+		Properties ret = new Properties();
+		try (InputStream inputStream = new FileInputStream(file))
+		{
+			ret.load(inputStream);
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException("IOException", e);
+		}
+		return ret;
+	}
+	
+	private Map<String, DbConn> parseConns(Properties props) throws InfrastructureException
+	{
+		Map<String, DbConn> ret = new HashMap<String, DbConn>();
+		if (props.getProperty("keys") == null)
+		{
+			logger.warn("No \"keys\" property exists so nothing will be read");
+			return ret;
+		}
+		
+		String[] keys = props.getProperty("keys").split(",");
+		
+		for (String key : keys)
+		{
+			logger.trace("Loading: {}", key);
+			String type = props.getProperty(key + ".type");
+			String host = props.getProperty(key + ".host");
+			String db = props.getProperty(key + ".db");
+			String port = props.getProperty(key + ".port");
+			String user = props.getProperty(key + ".user");
+			String password = props.getProperty(key + ".password");
+			String jndi = props.getProperty(key + ".jndi");
+			
+			DbType dbType = null;
+			if (Utils.hasLength(type) == true)
+			{
+				// Make backward compatible
+				if (type.equalsIgnoreCase("DB2_JCC") == true) { type = DbType.DB2.value; }
+				else if (type.equalsIgnoreCase("DB2_APP") == true) { type = DbType.DB2.value; }
+				
+				try
+				{
+					dbType = DbType.valueOf(type);
+				}
+				catch (IllegalArgumentException e)
+				{
+					throw new InfrastructureException("Invalid type for " + key + ".type: " + type, e);
+				}
+			}
+			if ((port == null) || (port.trim().length() == 0)) { port = "0"; }
+			int portNum;
+			try
+			{
+				portNum = Convert.toInt(port);
+			}
+			catch (NumberFormatException e)
+			{
+				throw new InfrastructureException("Invalid number for " + key + ".port: " + port, e);
+			}
+			
+			DbConn dbconn = new DbConn(DbUtils.getDefaultDriver(dbType),
+									DbUtils.getUrl(dbType, host, db, portNum), 
+									dbType,
+									host,
+									db,
+									portNum);
+			
+			if (Utils.hasLength(user) == true) { dbconn.setUser(user); }
+			if (Utils.hasLength(password) == true) { dbconn.setPassword(this.cipher.decrypt(password)); }
+			if (Utils.hasLength(jndi) == true) { dbconn.setJndi(jndi); }
+	
+			ret.put(key, dbconn);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Make sure group names don't hide connection keys
+	 */
+	private static void validateGroups(Map<String, ReplicaGroup> groups, Map<String, DbConn> conns) throws InfrastructureException
+	{
+		for (String name : groups.keySet())
+		{
+			if (conns.containsKey(name) == true)
+			{
+				throw new InfrastructureException("Group name is also a connection key: " + name);
+			}
+		}
+	}
+	
+	private Map<String, PoolConfig> parsePoolConfigs(Properties props, Iterable<String> keys) throws InfrastructureException
+	{
+		Map<String, PoolConfig> ret = new HashMap<String, PoolConfig>();
+		for (String key : keys)
+		{
+			ret.put(key, PoolConfig.fromProperties(props, key));
+		}
+		return ret;
+	}
+	
 	private boolean save() throws FileSystemException
 	{
 		if (this.file == null)
@@ -243,6 +623,29 @@ public class ConnectionManager
 				lines.add("keys=" + Convert.toDelimitedString(this.conns.keySet(), ","));
 				lines.add("");
 				
+				// Keep the file level settings and pool defaults
+				boolean hasSettings = false;
+				for (String name : new TreeSet<String>(this.props.stringPropertyNames()))
+				{
+					if ((name.startsWith(PoolConfig.PROP_PREFIX) == true) || (name.equals(PROP_RELOAD_INTERVAL) == true) || (name.equals(PROP_HEALTH_CHECK_INTERVAL) == true))
+					{
+						lines.add(name + "=" + this.props.getProperty(name));
+						hasSettings = true;
+					}
+				}
+				if (hasSettings == true) { lines.add(""); }
+				
+				Map<String, ReplicaGroup> groups = new TreeMap<String, ReplicaGroup>(this.groups);
+				if (groups.isEmpty() == false)
+				{
+					lines.add(ReplicaGroup.PROP_GROUPS + "=" + Convert.toDelimitedString(groups.keySet(), ","));
+					for (ReplicaGroup group : groups.values())
+					{
+						lines.addAll(group.toPropertyLines());
+					}
+					lines.add("");
+				}
+				
 				for (String entry : this.conns.keySet())
 				{
 					logger.trace(entry);
@@ -254,11 +657,20 @@ public class ConnectionManager
 					lines.add(entry + ".user=" + this.getPropFileValue(conn.getUser()));
 					lines.add(entry + ".password=" + this.getPropFileValue(conn.getPassword(), true));
 					lines.add(entry + ".jndi=" + this.getPropFileValue(conn.getJndi()));
+					for (String name : new TreeSet<String>(this.props.stringPropertyNames()))
+					{
+						if (name.startsWith(entry + "." + PoolConfig.PROP_PREFIX) == true)
+						{
+							lines.add(name + "=" + this.props.getProperty(name));
+						}
+					}
 					lines.add("");
 				}
 			}
 			
 			FileUtils.writeLinesToFile(this.getConnectionFile(), lines);
+			// Our own save isn't a change that needs reloading
+			this.recordFileStamp();
 			return true;
 		}
 	}
@@ -279,25 +691,162 @@ public class ConnectionManager
 	
 	public void close()
 	{
-		if (this.cacheConnections() == true)
+		this.enableHotReload(0);
+		this.enableHealthChecks(0);
+		this.unregisterMBean();
+		Map<String, PoolHolder> pools = this.pools;
+		if (pools != null)
 		{
-			for (String key : this.pools.keySet())
+			for (String key : new ArrayList<String>(pools.keySet()))
 			{
-				BasicDataSource bds = this.pools.get(key);
-				try
-				{
-					logger.debug("Closing pool: ", key);
-					bds.close();
-					this.pools.remove(key);
-				}
-				catch (SQLException e)
+				logger.debug("Closing pool: {}", key);
+				this.drainPool(pools, key);
+			}
+		}
+	}
+	
+	/**
+	 * Borrows from a pool that take at least this long are logged as a warning and counted
+	 * @param millis
+	 */
+	public void setSlowBorrowThresholdMillis(long millis) { this.slowBorrowNanos = TimeUnit.MILLISECONDS.toNanos(millis); }
+	public long getSlowBorrowThresholdMillis() { return TimeUnit.NANOSECONDS.toMillis(this.slowBorrowNanos); }
+	
+	/**
+	 * @return Snapshot of the pool for the key or null if there isn't one. Counters start
+	 * over when a pool is replaced (ex: its connection settings changed on reload).
+	 */
+	public PoolStats getPoolStats(String key)
+	{
+		Map<String, PoolHolder> pools = this.pools;
+		PoolHolder holder = (pools != null) ? pools.get(key) : null;
+		return (holder != null) ? holder.snapshot() : null;
+	}
+	
+	/**
+	 * @return Snapshot of every pool by key
+	 */
+	public Map<String, PoolStats> getPoolStats()
+	{
+		Map<String, PoolStats> ret = new TreeMap<String, PoolStats>();
+		Map<String, PoolHolder> pools = this.pools;
+		if (pools != null)
+		{
+			for (PoolHolder holder : pools.values())
+			{
+				ret.put(holder.key, holder.snapshot());
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return How many times getConnection() got its connection each way
+	 */
+	public Map<ConnectionSource, Long> getConnectionSourceCounts()
+	{
+		Map<ConnectionSource, Long> ret = new EnumMap<ConnectionSource, Long>(ConnectionSource.class);
+		for (ConnectionSource source : ConnectionSource.values())
+		{
+			ret.put(source, this.sourceCounts[source.ordinal()].sum());
+		}
+		return ret;
+	}
+	
+	/**
+	 * Zero out the connection source counters and the counters of every pool
+	 */
+	public void resetStats()
+	{
+		for (LongAdder count : this.sourceCounts)
+		{
+			count.reset();
+		}
+		Map<String, PoolHolder> pools = this.pools;
+		if (pools != null)
+		{
+			for (PoolHolder holder : pools.values())
+			{
+				holder.stats.reset();
+			}
+		}
+	}
+	
+	/**
+	 * Expose statistics via JMX as com.cffreedom.utils:type=ConnectionManager,name={name}
+	 * and each pool as com.cffreedom.utils:type=ConnectionPool,manager={name},name={key}
+	 * (pools created later are registered as they are created)
+	 * @param name Unique name for this ConnectionManager
+	 * @throws ProcessingException
+	 */
+	public void registerMBean(String name) throws ProcessingException
+	{
+		try
+		{
+			registerMBean(managerObjectName(name), new ManagerMXBean());
+		}
+		catch (JMException e)
+		{
+			throw new ProcessingException("Unable to register ConnectionManager MBean: " + name, e);
+		}
+		this.mbeanName = name;
+		Map<String, PoolHolder> pools = this.pools;
+		if (pools != null)
+		{
+			for (PoolHolder holder : pools.values())
+			{
+				holder.registerMBean();
+			}
+		}
+	}
+	
+	public void unregisterMBean()
+	{
+		String name = this.mbeanName;
+		if (name != null)
+		{
+			this.mbeanName = null;
+			Map<String, PoolHolder> pools = this.pools;
+			if (pools != null)
+			{
+				for (PoolHolder holder : pools.values())
 				{
-					logger.error("Error closing pool: ", e.getMessage());
+					holder.unregisterMBean();
 				}
 			}
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(managerObjectName(name));
+			}
+			catch (JMException e) { /* already gone */ }
 		}
 	}
 	
+	private static ObjectName managerObjectName(String name) throws JMException
+	{
+		return new ObjectName("com.cffreedom.utils:type=ConnectionManager,name=" + ObjectName.quote(name));
+	}
+	
+	private static void registerMBean(ObjectName objectName, Object mbean) throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(objectName))
+		{
+			server.unregisterMBean(objectName);
+		}
+		server.registerMBean(mbean, objectName);
+	}
+	
+	private static LongAdder[] newCounters(int count)
+	{
+		LongAdder[] ret = new LongAdder[count];
+		for (int i = 0; i < count; i++)
+		{
+			ret[i] = new LongAdder();
+		}
+		return ret;
+	}
+	
 	public String getConnectionFile() { return this.file; }
 	
 	public boolean keyExists(String key)
@@ -319,14 +868,28 @@ public class ConnectionManager
 	 *  2) Try getting a connection from a pool if connection pooling has been enabled
 	 *  3) Try getting a connection by driver and url
 	 *  4) Try to get a connection by JNDI using the key passed in
+	 * If the key is a ReplicaGroup this gets a connection to its primary (same as getWriteConnection()).
 	 * @param key
 	 * @param user Override user in DbConn if not null
 	 * @param pass Override password in DbConn if not null
 	 * @return
 	 */
 	public Connection getConnection(String key, String user, String pass)
+	{
+		if (this.groups.containsKey(key) == true)
+		{
+			return this.getWriteConnection(key, user, pass);
+		}
+		return this.getConnection(key, user, pass, true);
+	}
+	
+	/**
+	 * @param lastDitch False to skip the last ditch JNDI lookup by key (ex: when trying replicas)
+	 */
+	private Connection getConnection(String key, String user, String pass, boolean lastDitch)
 	{
 		Connection conn = null;
+		ConnectionSource source = ConnectionSource.NONE;
 		DbConn dbconn = this.getDbConn(key);
 		
 		if (dbconn != null)
@@ -350,6 +913,7 @@ public class ConnectionManager
 			try
 			{
 				conn = DbUtils.getConnectionJNDI(dbconn.getJndi());
+				source = ConnectionSource.JNDI;
 			}
 			catch (DbException | InfrastructureException e)
 			{
@@ -358,38 +922,39 @@ public class ConnectionManager
 		}
 		
 		// Next use connection pooling if configured
-		if ((conn == null) && (this.cacheConnections() == true))
-		{
-			if (this.pools.containsKey(key) == false)
-			{
-				logger.debug("Initializing connection pool: {}", key);				
-				BasicDataSource bds = new BasicDataSource();
-			    bds.setDriverClassName(dbconn.getDriver());
-			    bds.setUrl(dbconn.getUrl());
-			    bds.setUsername(dbconn.getUser());
-			    bds.setPassword(dbconn.getPassword());
-			    bds.setPoolPreparedStatements(true);
-			    bds.setMaxOpenPreparedStatements(30);
-			    bds.setMaxWaitMillis(30 * 1000); // seconds * 1000 = milliseconds
-			    
-			    String validationSql = DbUtils.getTestSql(dbconn.getType());
-			    if (Utils.hasLength(validationSql) == true)
-			    {
-			    	bds.setValidationQuery(validationSql); 
-			    	bds.setTestOnBorrow(true);
-			    }
-				
-				this.pools.put(key, bds);
-			}
-			
-			try
-			{
-				logger.trace("Getting pooled connection: {}", key);
-				conn = this.pools.get(key).getConnection();
-			}
-			catch (SQLException e)
+		ConcurrentMap<String, PoolHolder> pools = this.pools;
+		if ((conn == null) && (pools != null) && (dbconn != null))
+		{
+			// A second try in case the pool was drained by a reload while we were getting it
+			for (int attempt = 0; (conn == null) && (attempt < 2); attempt++)
 			{
-				logger.error("Error getting pooled connection");
+				// get() first since computeIfAbsent() locks part of the map even when the key is there
+				PoolHolder holder = pools.get(key);
+				if (holder == null)
+				{
+					holder = pools.computeIfAbsent(key, PoolHolder::new);
+				}
+				BasicDataSource bds = holder.get();
+				if (bds == null)
+				{
+					continue;
+				}
+				long start = System.nanoTime();
+				try
+				{
+					logger.trace("Getting pooled connection: {}", key);
+					conn = bds.getConnection();
+					holder.recordBorrow(System.nanoTime() - start);
+					source = ConnectionSource.POOL;
+				}
+				catch (SQLException e)
+				{
+					if (bds.isClosed() == false)
+					{
+						holder.recordFailure(System.nanoTime() - start, e);
+						break;
+					}
+				}
 			}
 		}
 		
@@ -400,6 +965,7 @@ public class ConnectionManager
 			try
 			{
 				conn = DbUtils.getConnection(dbconn.getDriver(), dbconn.getUrl(), dbconn.getUser(), dbconn.getPassword());
+				source = ConnectionSource.DIRECT;
 			}
 			catch (DbException | InfrastructureException e)
 			{
@@ -408,12 +974,13 @@ public class ConnectionManager
 		}
 		
 		// Finally make a last ditch attempt to just get a jndi connection from the passed in key
-		if (conn == null)
+		if ((conn == null) && (lastDitch == true))
 		{
 			logger.warn("Making last ditch attempt to get JNDI connection: {}", key);
 			try
 			{
 				conn = DbUtils.getConnectionJNDI(key);
+				source = ConnectionSource.LAST_DITCH_JNDI;
 			}
 			catch (DbException | InfrastructureException e)
 			{
@@ -421,9 +988,217 @@ public class ConnectionManager
 			}
 		}
 		
+		this.sourceCounts[source.ordinal()].increment();
+		return conn;
+	}
+	
+	public Connection getWriteConnection(String key) { return this.getWriteConnection(key, null, null); }
+	
+	/**
+	 * Get a connection for writing: the primary if the key is a ReplicaGroup, otherwise
+	 * the same as getConnection()
+	 * @param key Group or connection key
+	 * @param user Override user in DbConn if not null
+	 * @param pass Override password in DbConn if not null
+	 * @return The connection or null if one couldn't be had
+	 */
+	public Connection getWriteConnection(String key, String user, String pass)
+	{
+		ReplicaGroup group = this.groups.get(key);
+		if (group == null)
+		{
+			return this.getConnection(key, user, pass, true);
+		}
+		Connection conn = this.getConnection(group.getPrimary(), user, pass, true);
+		if (conn == null)
+		{
+			// Writes never go to a replica, but reads should try the primary last for a while
+			logger.error("Unable to get a connection to the primary of group {}: {}", key, group.getPrimary());
+			group.markDown(group.getPrimary());
+		}
 		return conn;
 	}
 	
+	public Connection getReadConnection(String key) { return this.getReadConnection(key, null, null); }
+	
+	/**
+	 * Get a connection for reading. If the key is a ReplicaGroup a replica is picked by
+	 * the group's RoutingPolicy. If it can't be reached it is marked down and the next
+	 * replica is tried, then the primary, then replicas that were marked down.
+	 * Otherwise the same as getConnection().
+	 * @param key Group or connection key
+	 * @param user Override user in DbConn if not null
+	 * @param pass Override password in DbConn if not null
+	 * @return The connection or null if one couldn't be had
+	 */
+	public Connection getReadConnection(String key, String user, String pass)
+	{
+		ReplicaGroup group = this.groups.get(key);
+		if (group == null)
+		{
+			return this.getConnection(key, user, pass, true);
+		}
+		for (String member : group.readOrder(this::getActiveCount))
+		{
+			Connection conn = this.getConnection(member, user, pass, false);
+			if (conn != null)
+			{
+				logger.trace("Reading from {} for group {}", member, key);
+				return conn;
+			}
+			logger.warn("Unable to read from {} in group {}, failing over", member, key);
+			group.markDown(member);
+		}
+		logger.error("No member of group {} could be reached", key);
+		return null;
+	}
+	
+	/**
+	 * @return Connections in use from the key's pool (0 if it doesn't have one)
+	 */
+	private int getActiveCount(String key)
+	{
+		Map<String, PoolHolder> pools = this.pools;
+		PoolHolder holder = (pools != null) ? pools.get(key) : null;
+		BasicDataSource bds = (holder != null) ? holder.peek() : null;
+		return (bds != null) ? bds.getNumActive() : 0;
+	}
+	
+	/**
+	 * Add (or replace) a group of a primary and read replicas. Members must be
+	 * connection keys and the name must not be one.
+	 * @param group
+	 * @throws FileSystemException
+	 */
+	public void addGroup(ReplicaGroup group) throws FileSystemException
+	{
+		if (this.conns.containsKey(group.getName()) == true)
+		{
+			throw new IllegalArgumentException("Group name is also a connection key: " + group.getName());
+		}
+		for (String member : group.getMembers())
+		{
+			if (this.conns.containsKey(member) == false)
+			{
+				logger.warn("Group {} member {} is not a connection key", group.getName(), member);
+			}
+		}
+		logger.debug("Adding group: {}", group);
+		this.groups.put(group.getName(), group);
+		this.save();
+	}
+	
+	public boolean removeGroup(String name) throws FileSystemException
+	{
+		if (this.groups.remove(name) != null)
+		{
+			this.save();
+			return true;
+		}
+		return false;
+	}
+	
+	public ReplicaGroup getGroup(String name)
+	{
+		return this.groups.get(name);
+	}
+	
+	/**
+	 * Check every member of every group every intervalMillis. Members that fail are marked
+	 * down until a check passes; the time each check takes feeds LATENCY_WEIGHTED routing.
+	 * Can also be turned on with the healthCheck.intervalMillis property in the file.
+	 * @param intervalMillis How often to check, 0 or less to stop checking
+	 */
+	public synchronized void enableHealthChecks(long intervalMillis)
+	{
+		if (this.healthChecker != null)
+		{
+			this.healthChecker.shutdownNow();
+			this.healthChecker = null;
+		}
+		if (intervalMillis > 0)
+		{
+			logger.info("Checking replica group health every {}ms", intervalMillis);
+			this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "ConnectionManager-health");
+				t.setDaemon(true);
+				return t;
+			});
+			this.healthChecker.scheduleWithFixedDelay(() -> this.runHealthChecks(), 0, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Check every member of every group now
+	 */
+	public void runHealthChecks()
+	{
+		for (ReplicaGroup group : this.groups.values())
+		{
+			for (String member : group.getMembers())
+			{
+				this.checkHealth(group, member);
+			}
+		}
+	}
+	
+	/**
+	 * Open a connection to the member and run the test SQL for its database type (or ask
+	 * the driver if the connection is valid when there isn't any). The connection is a
+	 * direct one, not from the member's pool, so a busy pool isn't mistaken for a member
+	 * that is down and checks don't show up in the connection or pool statistics.
+	 * @return True if the member is up
+	 */
+	private boolean checkHealth(ReplicaGroup group, String key)
+	{
+		long start = System.nanoTime();
+		Connection conn = null;
+		try
+		{
+			DbConn dbconn = this.getDbConn(key);
+			if (dbconn == null)
+			{
+				throw new InfrastructureException("A DbConn does not exist for key: " + key);
+			}
+			if (Utils.hasLength(dbconn.getJndi()) == true)
+			{
+				conn = DbUtils.getConnectionJNDI(dbconn.getJndi());
+			}
+			else
+			{
+				conn = DbUtils.getConnection(dbconn.getDriver(), dbconn.getUrl(), dbconn.getUser(), dbconn.getPassword(), HEALTH_CHECK_TIMEOUT_SECONDS);
+			}
+			String sql = DbUtils.getTestSql(dbconn.getType());
+			if (Utils.hasLength(sql) == true)
+			{
+				try (Statement stmt = conn.createStatement())
+				{
+					stmt.setQueryTimeout(HEALTH_CHECK_TIMEOUT_SECONDS);
+					stmt.execute(sql);
+				}
+			}
+			else if (conn.isValid(HEALTH_CHECK_TIMEOUT_SECONDS) == false)
+			{
+				throw new SQLException("Connection is not valid");
+			}
+			group.markUp(key, System.nanoTime() - start);
+			return true;
+		}
+		catch (SQLException | DbException | InfrastructureException e)
+		{
+			logger.warn("Health check failed for {} in group {}: {}", key, group.getName(), e.getMessage());
+			group.markDown(key);
+			return false;
+		}
+		finally
+		{
+			if (conn != null)
+			{
+				try { conn.close(); } catch (SQLException e) { /* ignore */ }
+			}
+		}
+	}
+	
 	public boolean addConnection(String key, DbConn dbconn) throws FileSystemException
 	{
 		if (this.conns.containsKey(key) == false)
@@ -453,6 +1228,8 @@ public class ConnectionManager
 		{
 			logger.debug("Deleting: {}", key);
 			this.conns.remove(key);
+			Map<String, PoolHolder> pools = this.pools;
+			if (pools != null) { this.drainPool(pools, key); }
 			this.save();
 			return true;
 		}
@@ -538,4 +1315,214 @@ public class ConnectionManager
 		}
 		return keys;
 	}
+	
+	/**
+	 * One per pooled key, created with computeIfAbsent() so only one pool is ever built
+	 * for a key. The pool is built on first use by the holder, outside the map, so building
+	 * it doesn't hold up lookups of other keys. Also keeps the pool's statistics.
+	 */
+	private final class PoolHolder
+	{
+		private final String key;
+		private final PoolStatsCounter stats = new PoolStatsCounter();
+		private volatile InstrumentedDataSource dataSource = null;
+		private boolean closed = false;
+		private ObjectName objectName = null;
+		
+		PoolHolder(String key)
+		{
+			this.key = key;
+		}
+		
+		/**
+		 * The pool is built from the settings current when it is built (not when the
+		 * caller looked them up) so a reload that swapped them and drained the old
+		 * holder in between can't leave a new pool using the old settings.
+		 * @return The pool or null if the holder was drained or the key was removed
+		 */
+		BasicDataSource get()
+		{
+			BasicDataSource ret = this.dataSource;
+			if (ret == null)
+			{
+				synchronized (this)
+				{
+					if (this.closed == true)
+					{
+						return null;
+					}
+					ret = this.dataSource;
+					if (ret == null)
+					{
+						DbConn dbconn = ConnectionManager.this.conns.get(this.key);
+						if (dbconn == null)
+						{
+							return null;
+						}
+						this.dataSource = createPool(this.key, dbconn, ConnectionManager.this.poolConfigFor(this.key));
+						ret = this.dataSource;
+						this.registerMBean();
+					}
+				}
+			}
+			return ret;
+		}
+		
+		/**
+		 * @return The pool or null if it hasn't been built
+		 */
+		BasicDataSource peek()
+		{
+			return this.dataSource;
+		}
+		
+		PoolStats snapshot()
+		{
+			InstrumentedDataSource bds = this.dataSource;
+			return this.stats.snapshot(this.key, (bds != null) ? bds.getObjectPool() : null);
+		}
+		
+		void recordBorrow(long waitNanos)
+		{
+			boolean slow = (waitNanos >= ConnectionManager.this.slowBorrowNanos);
+			this.stats.recordBorrow(waitNanos, slow);
+			if (slow == true)
+			{
+				BasicDataSource bds = this.dataSource;
+				logger.warn("Slow borrow from pool {}: {}ms ({} active, {} idle)", this.key, TimeUnit.NANOSECONDS.toMillis(waitNanos),
+							(bds != null) ? bds.getNumActive() : 0, (bds != null) ? bds.getNumIdle() : 0);
+			}
+		}
+		
+		void recordFailure(long waitNanos, SQLException e)
+		{
+			if (e.getCause() instanceof NoSuchElementException)
+			{
+				// DBCP wraps the pool's "Timeout waiting for idle object"
+				this.stats.recordTimeout(waitNanos);
+				BasicDataSource bds = this.dataSource;
+				logger.error("Timed out after {}ms waiting for a connection from pool {} ({} active of {})", TimeUnit.NANOSECONDS.toMillis(waitNanos),
+							this.key, (bds != null) ? bds.getNumActive() : 0, (bds != null) ? bds.getMaxTotal() : 0);
+			}
+			else
+			{
+				this.stats.recordFailure(waitNanos);
+				logger.error("Error getting pooled connection from {}: {}", this.key, e.getMessage());
+			}
+		}
+		
+		/**
+		 * Register this pool's MBean if the ConnectionManager has been registered
+		 */
+		synchronized void registerMBean()
+		{
+			String managerName = ConnectionManager.this.mbeanName;
+			if ((managerName == null) || (this.dataSource == null) || (this.closed == true))
+			{
+				return;
+			}
+			try
+			{
+				ObjectName name = new ObjectName("com.cffreedom.utils:type=ConnectionPool,manager=" + ObjectName.quote(managerName) + ",name=" + ObjectName.quote(this.key));
+				ConnectionManager.registerMBean(name, new PoolMXBean(this));
+				this.objectName = name;
+			}
+			catch (JMException e)
+			{
+				logger.warn("Unable to register MBean for pool {}: {}", this.key, e.getMessage());
+			}
+		}
+		
+		synchronized void unregisterMBean()
+		{
+			if (this.objectName != null)
+			{
+				try
+				{
+					ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+				}
+				catch (JMException e) { /* already gone */ }
+				this.objectName = null;
+			}
+		}
+		
+		/**
+		 * Close the pool. Idle connections are closed now and connections that are in use
+		 * are closed when they are returned.
+		 */
+		void close()
+		{
+			BasicDataSource bds;
+			synchronized (this)
+			{
+				this.closed = true;
+				bds = this.dataSource;
+			}
+			this.unregisterMBean();
+			if (bds != null)
+			{
+				logger.info("Draining pool {} ({} connections in use)", this.key, bds.getNumActive());
+				try
+				{
+					bds.close();
+				}
+				catch (SQLException e)
+				{
+					logger.error("Error closing pool {}: {}", this.key, e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * BasicDataSource that lets us read the validation and eviction counts of its pool
+	 */
+	private static final class InstrumentedDataSource extends BasicDataSource
+	{
+		GenericObjectPool<?> getObjectPool()
+		{
+			return this.getConnectionPool();
+		}
+	}
+	
+	private final class ManagerMXBean implements ConnectionManagerMXBean
+	{
+		public long getJndiCount() { return ConnectionManager.this.sourceCounts[ConnectionSource.JNDI.ordinal()].sum(); }
+		public long getPoolCount() { return ConnectionManager.this.sourceCounts[ConnectionSource.POOL.ordinal()].sum(); }
+		public long getDirectCount() { return ConnectionManager.this.sourceCounts[ConnectionSource.DIRECT.ordinal()].sum(); }
+		public long getLastDitchJndiCount() { return ConnectionManager.this.sourceCounts[ConnectionSource.LAST_DITCH_JNDI.ordinal()].sum(); }
+		public long getFailedCount() { return ConnectionManager.this.sourceCounts[ConnectionSource.NONE.ordinal()].sum(); }
+		public List<String> getPoolKeys() { return new ArrayList<String>(ConnectionManager.this.getPoolStats().keySet()); }
+		public void resetStats() { ConnectionManager.this.resetStats(); }
+	}
+	
+	private static final class PoolMXBean implements PoolStatsMXBean
+	{
+		private final PoolHolder holder;
+		
+		PoolMXBean(PoolHolder holder)
+		{
+			this.holder = holder;
+		}
+		
+		public int getNumActive() { return this.holder.snapshot().getNumActive(); }
+		public int getNumIdle() { return this.holder.snapshot().getNumIdle(); }
+		public int getNumWaiters() { return this.holder.snapshot().getNumWaiters(); }
+		public int getMaxTotal() { return this.holder.snapshot().getMaxTotal(); }
+		public long getBorrowCount() { return this.holder.snapshot().getBorrowCount(); }
+		public long getTimeoutCount() { return this.holder.snapshot().getTimeoutCount(); }
+		public long getFailureCount() { return this.holder.snapshot().getFailureCount(); }
+		public long getSlowBorrowCount() { return this.holder.snapshot().getSlowBorrowCount(); }
+		public double getAverageBorrowWaitMillis() { return this.holder.snapshot().getAverageBorrowWaitMillis(); }
+		public double getMaxBorrowWaitMillis() { return this.holder.snapshot().getMaxBorrowWaitMillis(); }
+		public long getBorrowWait50thPercentileMillis() { return this.holder.snapshot().getBorrowWaitPercentileMillis(50); }
+		public long getBorrowWait99thPercentileMillis() { return this.holder.snapshot().getBorrowWaitPercentileMillis(99); }
+		public long[] getBorrowWaitBucketMillis() { return PoolStatsCounter.BORROW_WAIT_BUCKET_MILLIS.clone(); }
+		public long[] getBorrowWaitHistogram() { return this.holder.snapshot().getBorrowWaitHistogram(); }
+		public long getValidationFailureCount() { return this.holder.snapshot().getValidationFailureCount(); }
+		public long getEvictedCount() { return this.holder.snapshot().getEvictedCount(); }
+		public long getCreatedCount() { return this.holder.snapshot().getCreatedCount(); }
+		public long getDestroyedCount() { return this.holder.snapshot().getDestroyedCount(); }
+		public void resetStats() { this.holder.stats.reset(); }
+	}
 }
@@ -0,0 +1,34 @@
+package com.cffreedom.utils.db;
+
+import java.util.List;
+
+/**
+ * JMX view of how ConnectionManager has been getting connections
+ *
+ * Original Class: com.cffreedom.utils.db.ConnectionManagerMXBean
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface ConnectionManagerMXBean
+{
+	long getJndiCount();
+	long getPoolCount();
+	long getDirectCount();
+	long getLastDitchJndiCount();
+	long getFailedCount();
+	List<String> getPoolKeys();
+	
+	/** Zero out the counters for the manager and every pool */
+	void resetStats();
+}
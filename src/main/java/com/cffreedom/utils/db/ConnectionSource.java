@@ -0,0 +1,33 @@
+package com.cffreedom.utils.db;
+
+/**
+ * How ConnectionManager.getConnection() got a connection, in the order each is tried
+ *
+ * Original Class: com.cffreedom.utils.db.ConnectionSource
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public enum ConnectionSource
+{
+	/** From the JNDI name configured for the key */
+	JNDI,
+	/** From the key's connection pool */
+	POOL,
+	/** A new connection from the driver and url */
+	DIRECT,
+	/** From JNDI using the key as the name */
+	LAST_DITCH_JNDI,
+	/** Every way failed */
+	NONE
+}
@@ -1,8 +1,12 @@
 package com.cffreedom.utils.db;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
@@ -61,12 +65,20 @@ import com.cffreedom.utils.file.FileUtils;
  * 2013-07-06 	markjacobsen.net 	Using slf4j
  * 2013-07-20	markjacobsen.net 	Fixed getConnectionJNDI()
  * 2013-09-20 	markjacobsen.net 	testConnection() is not void and throws exceptions, getResultSet() throws exceptions
+ * 2026-10-18 	MarkJacobsen.net 	outputResultSet() streams rows to a buffered Writer instead of building one big string, added exportQuery()
+ * 2026-10-18 	MarkJacobsen.net 	Added getConnection() with a login timeout
  */
 public class DbUtils
 {
 	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.db.DbUtils");
 	
 	public static enum FORMAT {CSV,TAB,XML,RAW,NO_OUTPUT};
+	
+	/** Rows the driver is asked to fetch at a time when exporting */
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+	private static final int OUTPUT_BUFFER_CHARS = 64 * 1024;
+	// Guards DriverManager's JVM wide login timeout while it is changed for one call
+	private static final Object LOGIN_TIMEOUT_LOCK = new Object();
 
 	public final static String SQL_TEST_SQLSERVER = "SELECT getDate()";
 	public final static String SQL_TEST_DB2 = "SELECT CURRENT_TIMESTAMP FROM SYSIBM.SYSDUMMY1";
@@ -270,6 +282,7 @@ public class DbUtils
 		try
 		{
 			Statement stmt = conn.createStatement();
+			stmt.setFetchSize(DEFAULT_FETCH_SIZE);
 			logger.debug("Running: " + sql);
 			boolean hasResults = stmt.execute(sql);
 			logger.debug("Ran sql");
@@ -318,7 +331,8 @@ public class DbUtils
 	}
 	
 	/**
-	 * Output the contents of a ResultSet
+	 * Output the contents of a ResultSet. Rows are written as they are read so memory
+	 * use doesn't grow with the size of the result.
 	 * @param rs ResultSet to output
 	 * @param file Full path to write output to. Null if output to STDOUT
 	 * @param format How to show the data (delimited, xml, etc)
@@ -331,67 +345,156 @@ public class DbUtils
 	{		
 		if (rs != null)
 		{
-			StringBuffer sb = new StringBuffer();
-			ResultSetMetaData md = rs.getMetaData();
-			int cols = md.getColumnCount();
-			
-			String separator = null;
-			if (format.compareTo(DbUtils.FORMAT.CSV) == 0) { separator = ","; }
-			if (format.compareTo(DbUtils.FORMAT.TAB) == 0) { separator = "\t"; }
-			if (format.compareTo(DbUtils.FORMAT.RAW) == 0) { separator = ""; }
-			
-			// START: Output header
-			if  (
-				(format.compareTo(DbUtils.FORMAT.XML) != 0) &&
-				(format.compareTo(DbUtils.FORMAT.RAW) != 0)
-				)
+			if ((file == null) || (file.equalsIgnoreCase("STDOUT") == true) || (file.length() == 0))
+			{
+				// Don't close System.out
+				Writer out = new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER_CHARS);
+				outputResultSet(rs, out, format);
+				out.write("\n");
+				out.flush();
+			}
+			else
 			{
-				// Output column headers
-				for (int i = 1; i <= cols; i++) // ResultSet columns are 1 (not 0) based
+				Writer out;
+				try
+				{
+					out = new BufferedWriter(new FileWriter(file, false), OUTPUT_BUFFER_CHARS);
+				}
+				catch (IOException e)
+				{
+					throw new FileSystemException(e);
+				}
+				try
+				{
+					outputResultSet(rs, out, format);
+				}
+				finally
 				{
-					sb.append(md.getColumnLabel(i) + separator);
+					out.close();
 				}
-				sb.append("\n");
 			}
-			else if (format.compareTo(DbUtils.FORMAT.XML) == 0)
+		}
+	}
+	
+	/**
+	 * Write the contents of a ResultSet to a Writer one row at a time. The Writer is
+	 * not flushed or closed.
+	 * @param rs ResultSet to output
+	 * @param out Where to write (ideally buffered)
+	 * @param format How to show the data (delimited, xml, etc)
+	 * @return The number of rows written
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public static long outputResultSet(ResultSet rs, Writer out, FORMAT format) throws SQLException, IOException
+	{
+		ResultSetMetaData md = rs.getMetaData();
+		int cols = md.getColumnCount();
+		boolean xml = (format.compareTo(DbUtils.FORMAT.XML) == 0);
+		
+		String separator = null;
+		if (format.compareTo(DbUtils.FORMAT.CSV) == 0) { separator = ","; }
+		if (format.compareTo(DbUtils.FORMAT.TAB) == 0) { separator = "\t"; }
+		if (format.compareTo(DbUtils.FORMAT.RAW) == 0) { separator = ""; }
+		String sep = String.valueOf(separator);
+		
+		// Look the column labels up once instead of for every row
+		String[] labels = new String[cols + 1];
+		for (int i = 1; i <= cols; i++) // ResultSet columns are 1 (not 0) based
+		{
+			labels[i] = md.getColumnLabel(i);
+		}
+		
+		// START: Output header
+		if ((xml == false) && (format.compareTo(DbUtils.FORMAT.RAW) != 0))
+		{
+			// Output column headers
+			for (int i = 1; i <= cols; i++)
 			{
-				sb.append("<results>\n");
+				out.write(labels[i]);
+				out.write(sep);
 			}
-			// END: Output header
-			
-			// START: Output data
-			while (rs.next() == true)
+			out.write("\n");
+		}
+		else if (xml == true)
+		{
+			out.write("<results>\n");
+		}
+		// END: Output header
+		
+		// START: Output data
+		long rows = 0;
+		while (rs.next() == true)
+		{
+			rows++;
+			if (xml == true)
 			{
-				if (format.compareTo(DbUtils.FORMAT.XML) == 0) { sb.append("<result row=\"" + rs.getRow() + "\">\n"); }
-				for (int i = 1; i <= cols; i++) // ResultSet columns are 1 (not 0) based
-				{
-					if (format.compareTo(DbUtils.FORMAT.XML) == 0)
-					{
-						sb.append("    <" + md.getColumnLabel(i) + ">" + rs.getString(i) + "</" + md.getColumnLabel(i) + ">\n");
-					}
-					else
-					{
-						sb.append(rs.getString(i) + separator);
-					}
-				}
-				if (format.compareTo(DbUtils.FORMAT.XML) == 0) { sb.append("</result>"); }
-				sb.append("\n");
+				out.write("<result row=\"");
+				out.write(Long.toString(rows));
+				out.write("\">\n");
 			}
-			// END: Output data
-			
-			// Output footer
-			if (format.compareTo(DbUtils.FORMAT.XML) == 0) { sb.append("</results>\n"); }
-			
-			// Final output
-			if ((file == null) || (file.equalsIgnoreCase("STDOUT") == true) || (file.length() == 0))
+			for (int i = 1; i <= cols; i++)
 			{
-				Utils.output(sb.toString());
+				if (xml == true)
+				{
+					out.write("    <");
+					out.write(labels[i]);
+					out.write(">");
+					out.write(String.valueOf(rs.getString(i)));
+					out.write("</");
+					out.write(labels[i]);
+					out.write(">\n");
+				}
+				else
+				{
+					out.write(String.valueOf(rs.getString(i)));
+					out.write(sep);
+				}
 			}
-			else
+			if (xml == true) { out.write("</result>"); }
+			out.write("\n");
+		}
+		// END: Output data
+		
+		// Output footer
+		if (xml == true) { out.write("</results>\n"); }
+		logger.debug("Wrote {} rows", rows);
+		return rows;
+	}
+	
+	/**
+	 * Run a query and stream its results to a file. The statement is forward only and
+	 * read only with a fetch size so the driver doesn't pull the whole result into memory
+	 * (some drivers, ex: PostgreSQL, only honor the fetch size when auto commit is off).
+	 * @param conn DB Connection (not closed)
+	 * @param sql Query to run
+	 * @param file Full path to write output to. Null if output to STDOUT
+	 * @param format How to show the data (delimited, xml, etc)
+	 * @param fetchSize Rows to fetch from the database at a time
+	 * @throws DbException
+	 * @throws FileSystemException
+	 */
+	public static void exportQuery(Connection conn, String sql, String file, FORMAT format) throws DbException, FileSystemException { exportQuery(conn, sql, file, format, DEFAULT_FETCH_SIZE); }
+	public static void exportQuery(Connection conn, String sql, String file, FORMAT format, int fetchSize) throws DbException, FileSystemException
+	{
+		try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+		{
+			stmt.setFetchSize(fetchSize);
+			logger.debug("Exporting: " + sql);
+			try (ResultSet rs = stmt.executeQuery(sql))
 			{
-				FileUtils.writeStringToFile(file, sb.toString(), false);
+				rs.setFetchSize(fetchSize);
+				outputResultSet(rs, file, format);
 			}
 		}
+		catch (SQLException e)
+		{
+			throw new DbException(e);
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			throw new FileSystemException(e);
+		}
 	}
 	
 	/** 
@@ -619,6 +722,28 @@ public class DbUtils
 		}
 	}
 	
+	/**
+	 * Same as getConnection(driver, url, user, pass) but gives up logging in after
+	 * loginTimeoutSeconds. DriverManager only has a JVM wide login timeout so it is
+	 * set for the duration of the call and then put back.
+	 */
+	public static Connection getConnection(String driver, String url, String user, String pass, int loginTimeoutSeconds) throws DbException, InfrastructureException
+	{
+		synchronized (LOGIN_TIMEOUT_LOCK)
+		{
+			int previous = DriverManager.getLoginTimeout();
+			DriverManager.setLoginTimeout(loginTimeoutSeconds);
+			try
+			{
+				return getConnection(driver, url, user, pass);
+			}
+			finally
+			{
+				DriverManager.setLoginTimeout(previous);
+			}
+		}
+	}
+	
 	public static Connection getConnectionJNDI(String dsn) throws InfrastructureException, DbException { return getConnectionJNDI(dsn, "java:comp/env"); }
 	public static Connection getConnectionJNDI(String dsn, String initContext) throws InfrastructureException, DbException
 	{
@@ -0,0 +1,238 @@
+package com.cffreedom.utils.db;
+
+import java.util.Properties;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import com.cffreedom.exceptions.InfrastructureException;
+
+/**
+ * Sizing, idle eviction, validation and statement cache settings for one
+ * ConnectionManager pool. In dbconn.properties defaults for every key can be set
+ * with "pool." properties and overridden per key with "[key].pool." properties:
+ * <pre>
+ * pool.maxTotal=20
+ * mydb.pool.maxTotal=50
+ * mydb.pool.minIdle=5
+ * mydb.pool.validationIntervalMillis=30000
+ * </pre>
+ * Settings not given keep the defaults below (the same as ConnectionManager always used).
+ *
+ * Original Class: com.cffreedom.utils.db.PoolConfig
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class PoolConfig
+{
+	public static final String PROP_PREFIX = "pool.";
+	public static final int DEFAULT_MAX_TOTAL = 8;
+	public static final int DEFAULT_MAX_IDLE = 8;
+	public static final int DEFAULT_MIN_IDLE = 0;
+	public static final int DEFAULT_INITIAL_SIZE = 0;
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 30 * 1000;
+	public static final long DEFAULT_EVICTION_INTERVAL_MILLIS = -1;
+	public static final long DEFAULT_MIN_EVICTABLE_IDLE_MILLIS = 30 * 60 * 1000;
+	public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 0;
+	public static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = -1;
+	public static final int DEFAULT_MAX_OPEN_PREPARED_STATEMENTS = 30;
+
+	private int maxTotal = DEFAULT_MAX_TOTAL;
+	private int maxIdle = DEFAULT_MAX_IDLE;
+	private int minIdle = DEFAULT_MIN_IDLE;
+	private int initialSize = DEFAULT_INITIAL_SIZE;
+	private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+	private long evictionIntervalMillis = DEFAULT_EVICTION_INTERVAL_MILLIS;
+	private long minEvictableIdleMillis = DEFAULT_MIN_EVICTABLE_IDLE_MILLIS;
+	private long validationIntervalMillis = DEFAULT_VALIDATION_INTERVAL_MILLIS;
+	private int validationTimeoutSeconds = DEFAULT_VALIDATION_TIMEOUT_SECONDS;
+	private int maxOpenPreparedStatements = DEFAULT_MAX_OPEN_PREPARED_STATEMENTS;
+
+	public PoolConfig() { }
+
+	public PoolConfig(PoolConfig copy)
+	{
+		this.maxTotal = copy.maxTotal;
+		this.maxIdle = copy.maxIdle;
+		this.minIdle = copy.minIdle;
+		this.initialSize = copy.initialSize;
+		this.maxWaitMillis = copy.maxWaitMillis;
+		this.evictionIntervalMillis = copy.evictionIntervalMillis;
+		this.minEvictableIdleMillis = copy.minEvictableIdleMillis;
+		this.validationIntervalMillis = copy.validationIntervalMillis;
+		this.validationTimeoutSeconds = copy.validationTimeoutSeconds;
+		this.maxOpenPreparedStatements = copy.maxOpenPreparedStatements;
+	}
+
+	/**
+	 * Read the settings for a key, starting from the "pool." defaults in the file
+	 * @param props Contents of dbconn.properties
+	 * @param key Connection key or null for just the defaults
+	 * @return The settings
+	 * @throws InfrastructureException If a value isn't a valid number
+	 */
+	public static PoolConfig fromProperties(Properties props, String key) throws InfrastructureException
+	{
+		PoolConfig ret = new PoolConfig();
+		ret.load(props, PROP_PREFIX);
+		if (key != null)
+		{
+			ret.load(props, key + "." + PROP_PREFIX);
+		}
+		return ret;
+	}
+
+	private void load(Properties props, String prefix) throws InfrastructureException
+	{
+		this.maxTotal = (int)getNumber(props, prefix + "maxTotal", this.maxTotal);
+		this.maxIdle = (int)getNumber(props, prefix + "maxIdle", this.maxIdle);
+		this.minIdle = (int)getNumber(props, prefix + "minIdle", this.minIdle);
+		this.initialSize = (int)getNumber(props, prefix + "initialSize", this.initialSize);
+		this.maxWaitMillis = getNumber(props, prefix + "maxWaitMillis", this.maxWaitMillis);
+		this.evictionIntervalMillis = getNumber(props, prefix + "evictionIntervalMillis", this.evictionIntervalMillis);
+		this.minEvictableIdleMillis = getNumber(props, prefix + "minEvictableIdleMillis", this.minEvictableIdleMillis);
+		this.validationIntervalMillis = getNumber(props, prefix + "validationIntervalMillis", this.validationIntervalMillis);
+		this.validationTimeoutSeconds = (int)getNumber(props, prefix + "validationTimeoutSeconds", this.validationTimeoutSeconds);
+		this.maxOpenPreparedStatements = (int)getNumber(props, prefix + "maxOpenPreparedStatements", this.maxOpenPreparedStatements);
+	}
+
+	private static long getNumber(Properties props, String name, long defaultVal) throws InfrastructureException
+	{
+		String val = props.getProperty(name);
+		if ((val == null) || (val.trim().length() == 0))
+		{
+			return defaultVal;
+		}
+		try
+		{
+			return Long.parseLong(val.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			throw new InfrastructureException("Invalid number for " + name + ": " + val, e);
+		}
+	}
+
+	/**
+	 * Apply the settings to a pool. Sizing, wait, eviction and validation settings
+	 * take effect on a pool that is already in use (connections over the new limits
+	 * are closed as they are returned), the rest only when the pool is first used.
+	 * @param bds The pool
+	 * @param validate True if the pool has a validation query
+	 */
+	public void applyTo(BasicDataSource bds, boolean validate)
+	{
+		bds.setInitialSize(this.initialSize);
+		bds.setMaxTotal(this.maxTotal);
+		bds.setMaxIdle(this.maxIdle);
+		bds.setMinIdle(this.minIdle);
+		bds.setMaxWaitMillis(this.maxWaitMillis);
+		bds.setPoolPreparedStatements(this.maxOpenPreparedStatements != 0);
+		bds.setMaxOpenPreparedStatements(this.maxOpenPreparedStatements);
+		bds.setValidationQueryTimeout(this.validationTimeoutSeconds);
+		bds.setMinEvictableIdleTimeMillis(this.minEvictableIdleMillis);
+		// Each eviction run looks at every idle connection
+		bds.setNumTestsPerEvictionRun(-1);
+
+		long runMillis = this.evictionIntervalMillis;
+		if ((validate == true) && (this.validationIntervalMillis > 0))
+		{
+			// Validate idle connections in the background instead of on every borrow
+			runMillis = (runMillis > 0) ? Math.min(runMillis, this.validationIntervalMillis) : this.validationIntervalMillis;
+			bds.setTestOnBorrow(false);
+			bds.setTestWhileIdle(true);
+		}
+		else
+		{
+			bds.setTestOnBorrow(validate);
+			bds.setTestWhileIdle(false);
+		}
+		bds.setTimeBetweenEvictionRunsMillis(runMillis);
+	}
+
+	/**
+	 * @return True if changing from the other settings to these needs a new pool
+	 * (the statement cache and validation timeout are fixed once a pool is in use)
+	 */
+	public boolean requiresNewPool(PoolConfig other)
+	{
+		return (other == null)
+				|| (this.maxOpenPreparedStatements != other.maxOpenPreparedStatements)
+				|| (this.validationTimeoutSeconds != other.validationTimeoutSeconds);
+	}
+
+	public int getMaxTotal() { return this.maxTotal; }
+	public void setMaxTotal(int maxTotal) { this.maxTotal = maxTotal; }
+	public int getMaxIdle() { return this.maxIdle; }
+	public void setMaxIdle(int maxIdle) { this.maxIdle = maxIdle; }
+	public int getMinIdle() { return this.minIdle; }
+	public void setMinIdle(int minIdle) { this.minIdle = minIdle; }
+	public int getInitialSize() { return this.initialSize; }
+	public void setInitialSize(int initialSize) { this.initialSize = initialSize; }
+	public long getMaxWaitMillis() { return this.maxWaitMillis; }
+	public void setMaxWaitMillis(long maxWaitMillis) { this.maxWaitMillis = maxWaitMillis; }
+	public long getEvictionIntervalMillis() { return this.evictionIntervalMillis; }
+	public void setEvictionIntervalMillis(long evictionIntervalMillis) { this.evictionIntervalMillis = evictionIntervalMillis; }
+	public long getMinEvictableIdleMillis() { return this.minEvictableIdleMillis; }
+	public void setMinEvictableIdleMillis(long minEvictableIdleMillis) { this.minEvictableIdleMillis = minEvictableIdleMillis; }
+	public long getValidationIntervalMillis() { return this.validationIntervalMillis; }
+	public void setValidationIntervalMillis(long validationIntervalMillis) { this.validationIntervalMillis = validationIntervalMillis; }
+	public int getValidationTimeoutSeconds() { return this.validationTimeoutSeconds; }
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds) { this.validationTimeoutSeconds = validationTimeoutSeconds; }
+	public int getMaxOpenPreparedStatements() { return this.maxOpenPreparedStatements; }
+	public void setMaxOpenPreparedStatements(int maxOpenPreparedStatements) { this.maxOpenPreparedStatements = maxOpenPreparedStatements; }
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj == this)
+		{
+			return true;
+		}
+		if ((obj instanceof PoolConfig) == false)
+		{
+			return false;
+		}
+		PoolConfig other = (PoolConfig)obj;
+		return (this.maxTotal == other.maxTotal)
+				&& (this.maxIdle == other.maxIdle)
+				&& (this.minIdle == other.minIdle)
+				&& (this.initialSize == other.initialSize)
+				&& (this.maxWaitMillis == other.maxWaitMillis)
+				&& (this.evictionIntervalMillis == other.evictionIntervalMillis)
+				&& (this.minEvictableIdleMillis == other.minEvictableIdleMillis)
+				&& (this.validationIntervalMillis == other.validationIntervalMillis)
+				&& (this.validationTimeoutSeconds == other.validationTimeoutSeconds)
+				&& (this.maxOpenPreparedStatements == other.maxOpenPreparedStatements);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int ret = this.maxTotal;
+		ret = (31 * ret) + this.maxIdle;
+		ret = (31 * ret) + this.minIdle;
+		ret = (31 * ret) + (int)this.maxWaitMillis;
+		ret = (31 * ret) + (int)this.validationIntervalMillis;
+		ret = (31 * ret) + this.maxOpenPreparedStatements;
+		return ret;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "maxTotal=" + this.maxTotal + ", maxIdle=" + this.maxIdle + ", minIdle=" + this.minIdle
+				+ ", maxWaitMillis=" + this.maxWaitMillis + ", evictionIntervalMillis=" + this.evictionIntervalMillis
+				+ ", validationIntervalMillis=" + this.validationIntervalMillis + ", maxOpenPreparedStatements=" + this.maxOpenPreparedStatements;
+	}
+}
@@ -0,0 +1,149 @@
+package com.cffreedom.utils.db;
+
+import java.util.Arrays;
+
+/**
+ * Immutable point in time snapshot of a ConnectionManager pool: its current size and
+ * how long borrowing connections from it has been taking
+ *
+ * Original Class: com.cffreedom.utils.db.PoolStats
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class PoolStats
+{
+	private final String key;
+	private final int numActive;
+	private final int numIdle;
+	private final int numWaiters;
+	private final int maxTotal;
+	private final long borrowCount;
+	private final long timeoutCount;
+	private final long failureCount;
+	private final long slowBorrowCount;
+	private final long totalBorrowWaitNanos;
+	private final long maxBorrowWaitNanos;
+	private final long[] borrowWaitHistogram;
+	private final long validationFailureCount;
+	private final long evictedCount;
+	private final long createdCount;
+	private final long destroyedCount;
+	
+	public PoolStats(String key, int numActive, int numIdle, int numWaiters, int maxTotal,
+			long borrowCount, long timeoutCount, long failureCount, long slowBorrowCount,
+			long totalBorrowWaitNanos, long maxBorrowWaitNanos, long[] borrowWaitHistogram,
+			long validationFailureCount, long evictedCount, long createdCount, long destroyedCount)
+	{
+		this.key = key;
+		this.numActive = numActive;
+		this.numIdle = numIdle;
+		this.numWaiters = numWaiters;
+		this.maxTotal = maxTotal;
+		this.borrowCount = borrowCount;
+		this.timeoutCount = timeoutCount;
+		this.failureCount = failureCount;
+		this.slowBorrowCount = slowBorrowCount;
+		this.totalBorrowWaitNanos = totalBorrowWaitNanos;
+		this.maxBorrowWaitNanos = maxBorrowWaitNanos;
+		this.borrowWaitHistogram = borrowWaitHistogram.clone();
+		this.validationFailureCount = validationFailureCount;
+		this.evictedCount = evictedCount;
+		this.createdCount = createdCount;
+		this.destroyedCount = destroyedCount;
+	}
+	
+	public String getKey() { return this.key; }
+	/** Connections borrowed and not yet returned */
+	public int getNumActive() { return this.numActive; }
+	public int getNumIdle() { return this.numIdle; }
+	/** Threads waiting for a connection right now */
+	public int getNumWaiters() { return this.numWaiters; }
+	public int getMaxTotal() { return this.maxTotal; }
+	/** Connections borrowed successfully */
+	public long getBorrowCount() { return this.borrowCount; }
+	/** Borrows that gave up after waiting the maximum wait for a free connection */
+	public long getTimeoutCount() { return this.timeoutCount; }
+	/** Borrows that failed for some other reason (ex: the database couldn't be reached) */
+	public long getFailureCount() { return this.failureCount; }
+	/** Borrows that took longer than the slow borrow threshold */
+	public long getSlowBorrowCount() { return this.slowBorrowCount; }
+	public long getTotalBorrowWaitNanos() { return this.totalBorrowWaitNanos; }
+	public long getMaxBorrowWaitNanos() { return this.maxBorrowWaitNanos; }
+	/** Connections thrown away because they failed validation when borrowed */
+	public long getValidationFailureCount() { return this.validationFailureCount; }
+	/** Connections closed by the idle evictor (idle too long or failed background validation) */
+	public long getEvictedCount() { return this.evictedCount; }
+	public long getCreatedCount() { return this.createdCount; }
+	public long getDestroyedCount() { return this.destroyedCount; }
+	
+	/**
+	 * @return Count of borrow attempts by how long they waited, using the bounds in
+	 * PoolStatsCounter.BORROW_WAIT_BUCKET_MILLIS with one more bucket for longer waits
+	 */
+	public long[] getBorrowWaitHistogram() { return this.borrowWaitHistogram.clone(); }
+	
+	/**
+	 * @return Borrows, timeouts and failures
+	 */
+	public long getBorrowAttemptCount() { return this.borrowCount + this.timeoutCount + this.failureCount; }
+	
+	public double getAverageBorrowWaitMillis()
+	{
+		long attempts = this.getBorrowAttemptCount();
+		return (attempts == 0) ? 0.0 : (double)this.totalBorrowWaitNanos / attempts / 1000000.0;
+	}
+	
+	public double getMaxBorrowWaitMillis() { return this.maxBorrowWaitNanos / 1000000.0; }
+	
+	/**
+	 * Estimate a percentile from the histogram
+	 * @param percentile ex: 99 for the 99th percentile
+	 * @return The upper bound of the bucket the percentile falls in (the longest wait
+	 * seen if it is past the last bound) or 0 if nothing has been borrowed
+	 */
+	public long getBorrowWaitPercentileMillis(double percentile)
+	{
+		long attempts = 0;
+		for (long count : this.borrowWaitHistogram)
+		{
+			attempts += count;
+		}
+		if (attempts == 0)
+		{
+			return 0;
+		}
+		long target = (long)Math.ceil(attempts * (percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < PoolStatsCounter.BORROW_WAIT_BUCKET_MILLIS.length; i++)
+		{
+			seen += this.borrowWaitHistogram[i];
+			if (seen >= target)
+			{
+				return PoolStatsCounter.BORROW_WAIT_BUCKET_MILLIS[i];
+			}
+		}
+		return (long)Math.ceil(this.getMaxBorrowWaitMillis());
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "PoolStats[key=" + this.key + ", active=" + this.numActive + ", idle=" + this.numIdle +
+				", waiters=" + this.numWaiters + ", maxTotal=" + this.maxTotal + ", borrows=" + this.borrowCount +
+				", timeouts=" + this.timeoutCount + ", failures=" + this.failureCount + ", slowBorrows=" + this.slowBorrowCount +
+				", avgWaitMillis=" + this.getAverageBorrowWaitMillis() + ", maxWaitMillis=" + this.getMaxBorrowWaitMillis() +
+				", waitHistogram=" + Arrays.toString(this.borrowWaitHistogram) + ", validationFailures=" + this.validationFailureCount +
+				", evicted=" + this.evictedCount + "]";
+	}
+}
@@ -0,0 +1,132 @@
+package com.cffreedom.utils.db;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.pool2.impl.GenericObjectPool;
+
+/**
+ * Thread safe counters behind PoolStats, recorded on every borrow from a
+ * ConnectionManager pool. Uses LongAdders so borrowing threads don't contend
+ * on the counters.
+ *
+ * Original Class: com.cffreedom.utils.db.PoolStatsCounter
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class PoolStatsCounter
+{
+	/** Upper bounds of the borrow wait histogram buckets. Waits over the last go in one more bucket. */
+	public static final long[] BORROW_WAIT_BUCKET_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+	
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder failureCount = new LongAdder();
+	private final LongAdder slowBorrowCount = new LongAdder();
+	private final LongAdder totalWait = new LongAdder();
+	private final LongAccumulator maxWait = new LongAccumulator(Long::max, 0);
+	private final LongAdder[] histogram = new LongAdder[BORROW_WAIT_BUCKET_MILLIS.length + 1];
+	
+	public PoolStatsCounter()
+	{
+		for (int i = 0; i < this.histogram.length; i++)
+		{
+			this.histogram[i] = new LongAdder();
+		}
+	}
+	
+	public void recordBorrow(long waitNanos, boolean slow)
+	{
+		this.borrowCount.increment();
+		if (slow == true) { this.slowBorrowCount.increment(); }
+		this.recordWait(waitNanos);
+	}
+	
+	public void recordTimeout(long waitNanos)
+	{
+		this.timeoutCount.increment();
+		this.recordWait(waitNanos);
+	}
+	
+	public void recordFailure(long waitNanos)
+	{
+		this.failureCount.increment();
+		this.recordWait(waitNanos);
+	}
+	
+	private void recordWait(long waitNanos)
+	{
+		this.totalWait.add(waitNanos);
+		this.maxWait.accumulate(waitNanos);
+		long millis = waitNanos / 1000000;
+		int bucket = 0;
+		while ((bucket < BORROW_WAIT_BUCKET_MILLIS.length) && (millis >= BORROW_WAIT_BUCKET_MILLIS[bucket]))
+		{
+			bucket++;
+		}
+		this.histogram[bucket].increment();
+	}
+	
+	/**
+	 * @param key The pool's key
+	 * @param pool The pool to read the current size and validation counts from (null if
+	 * it hasn't been created yet)
+	 * @return The current values. Counters are read one at a time so the snapshot isn't
+	 * atomic across counters while recording is going on.
+	 */
+	public PoolStats snapshot(String key, GenericObjectPool<?> pool)
+	{
+		long[] hist = new long[this.histogram.length];
+		for (int i = 0; i < hist.length; i++)
+		{
+			hist[i] = this.histogram[i].sum();
+		}
+		int active = 0;
+		int idle = 0;
+		int waiters = 0;
+		int maxTotal = 0;
+		long validationFailures = 0;
+		long evicted = 0;
+		long created = 0;
+		long destroyed = 0;
+		if (pool != null)
+		{
+			active = pool.getNumActive();
+			idle = pool.getNumIdle();
+			waiters = pool.getNumWaiters();
+			maxTotal = pool.getMaxTotal();
+			validationFailures = pool.getDestroyedByBorrowValidationCount();
+			evicted = pool.getDestroyedByEvictorCount();
+			created = pool.getCreatedCount();
+			destroyed = pool.getDestroyedCount();
+		}
+		return new PoolStats(key, active, idle, waiters, maxTotal, this.borrowCount.sum(), this.timeoutCount.sum(),
+							this.failureCount.sum(), this.slowBorrowCount.sum(), this.totalWait.sum(), this.maxWait.get(),
+							hist, validationFailures, evicted, created, destroyed);
+	}
+	
+	public void reset()
+	{
+		this.borrowCount.reset();
+		this.timeoutCount.reset();
+		this.failureCount.reset();
+		this.slowBorrowCount.reset();
+		this.totalWait.reset();
+		this.maxWait.reset();
+		for (LongAdder bucket : this.histogram)
+		{
+			bucket.reset();
+		}
+	}
+}
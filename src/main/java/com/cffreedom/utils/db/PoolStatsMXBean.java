@@ -0,0 +1,45 @@
+package com.cffreedom.utils.db;
+
+/**
+ * JMX view of a ConnectionManager pool's state and borrow statistics
+ *
+ * Original Class: com.cffreedom.utils.db.PoolStatsMXBean
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public interface PoolStatsMXBean
+{
+	int getNumActive();
+	int getNumIdle();
+	int getNumWaiters();
+	int getMaxTotal();
+	long getBorrowCount();
+	long getTimeoutCount();
+	long getFailureCount();
+	long getSlowBorrowCount();
+	double getAverageBorrowWaitMillis();
+	double getMaxBorrowWaitMillis();
+	long getBorrowWait50thPercentileMillis();
+	long getBorrowWait99thPercentileMillis();
+	/** Upper bounds of the borrow wait histogram buckets (the last bucket has no bound) */
+	long[] getBorrowWaitBucketMillis();
+	long[] getBorrowWaitHistogram();
+	long getValidationFailureCount();
+	long getEvictedCount();
+	long getCreatedCount();
+	long getDestroyedCount();
+	
+	/** Zero out the counters */
+	void resetStats();
+}
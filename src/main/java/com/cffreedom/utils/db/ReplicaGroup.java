@@ -0,0 +1,369 @@
+package com.cffreedom.utils.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import com.cffreedom.exceptions.InfrastructureException;
+
+/**
+ * A logical ConnectionManager key made up of a primary connection key for writes
+ * and any number of replica connection keys for reads. In dbconn.properties:
+ * <pre>
+ * groups=orders
+ * orders.primary=ordersMain
+ * orders.replicas=ordersCopy1,ordersCopy2
+ * orders.policy=LEAST_ACTIVE
+ * </pre>
+ * Keeps track of which members are down. A member is skipped for retryMillis after
+ * a connection to it fails, or until a health check finds it up again.
+ *
+ * Original Class: com.cffreedom.utils.db.ReplicaGroup
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-18 	MarkJacobsen.net 	Created
+ */
+public class ReplicaGroup
+{
+	public static final String PROP_GROUPS = "groups";
+	public static final long DEFAULT_RETRY_MILLIS = 30 * 1000;
+	// Weight given to the newest health check when averaging latency
+	private static final double LATENCY_ALPHA = 0.3;
+
+	private final String name;
+	private final String primary;
+	private final List<String> replicas;
+	private final RoutingPolicy policy;
+	private final Map<String, Member> members = new LinkedHashMap<String, Member>();
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile long retryMillis = DEFAULT_RETRY_MILLIS;
+
+	public ReplicaGroup(String name, String primary, List<String> replicas) { this(name, primary, replicas, RoutingPolicy.ROUND_ROBIN); }
+
+	/**
+	 * @param name Logical key callers use
+	 * @param primary Connection key for writes (and reads when no replica can be used)
+	 * @param replicas Connection keys for reads
+	 * @param policy How reads are spread across the replicas
+	 */
+	public ReplicaGroup(String name, String primary, List<String> replicas, RoutingPolicy policy)
+	{
+		if ((name == null) || (primary == null) || (policy == null))
+		{
+			throw new IllegalArgumentException("name, primary and policy are required");
+		}
+		this.name = name;
+		this.primary = primary;
+		this.replicas = Collections.unmodifiableList(new ArrayList<String>((replicas != null) ? replicas : Collections.<String>emptyList()));
+		this.policy = policy;
+		this.members.put(primary, new Member(primary));
+		for (String replica : this.replicas)
+		{
+			this.members.put(replica, new Member(replica));
+		}
+	}
+
+	/**
+	 * Read the groups listed in the "groups" property
+	 * @param props Contents of dbconn.properties
+	 * @return The groups by name (empty if there aren't any)
+	 * @throws InfrastructureException If a group has no primary or an unknown policy
+	 */
+	public static Map<String, ReplicaGroup> fromProperties(Properties props) throws InfrastructureException
+	{
+		Map<String, ReplicaGroup> ret = new LinkedHashMap<String, ReplicaGroup>();
+		String groups = props.getProperty(PROP_GROUPS);
+		if ((groups == null) || (groups.trim().length() == 0))
+		{
+			return ret;
+		}
+		for (String name : groups.split(","))
+		{
+			name = name.trim();
+			String primary = props.getProperty(name + ".primary");
+			if ((primary == null) || (primary.trim().length() == 0))
+			{
+				throw new InfrastructureException("No primary for group: " + name);
+			}
+			List<String> replicas = new ArrayList<String>();
+			String replicaList = props.getProperty(name + ".replicas", "");
+			for (String replica : replicaList.split(","))
+			{
+				if (replica.trim().length() > 0)
+				{
+					replicas.add(replica.trim());
+				}
+			}
+			RoutingPolicy policy = RoutingPolicy.ROUND_ROBIN;
+			String policyName = props.getProperty(name + ".policy");
+			if ((policyName != null) && (policyName.trim().length() > 0))
+			{
+				try
+				{
+					policy = RoutingPolicy.valueOf(policyName.trim().toUpperCase());
+				}
+				catch (IllegalArgumentException e)
+				{
+					throw new InfrastructureException("Invalid policy for group " + name + ": " + policyName, e);
+				}
+			}
+			ReplicaGroup group = new ReplicaGroup(name, primary.trim(), replicas, policy);
+			String retry = props.getProperty(name + ".retryMillis");
+			if ((retry != null) && (retry.trim().length() > 0))
+			{
+				try
+				{
+					group.setRetryMillis(Long.parseLong(retry.trim()));
+				}
+				catch (NumberFormatException e)
+				{
+					throw new InfrastructureException("Invalid number for " + name + ".retryMillis: " + retry, e);
+				}
+			}
+			ret.put(name, group);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return Lines for dbconn.properties describing this group
+	 */
+	public List<String> toPropertyLines()
+	{
+		List<String> ret = new ArrayList<String>();
+		ret.add(this.name + ".primary=" + this.primary);
+		StringBuilder replicaList = new StringBuilder();
+		for (String replica : this.replicas)
+		{
+			if (replicaList.length() > 0) { replicaList.append(","); }
+			replicaList.append(replica);
+		}
+		ret.add(this.name + ".replicas=" + replicaList);
+		ret.add(this.name + ".policy=" + this.policy.name());
+		if (this.retryMillis != DEFAULT_RETRY_MILLIS)
+		{
+			ret.add(this.name + ".retryMillis=" + this.retryMillis);
+		}
+		return ret;
+	}
+
+	public String getName() { return this.name; }
+	public String getPrimary() { return this.primary; }
+	public List<String> getReplicas() { return this.replicas; }
+	public RoutingPolicy getPolicy() { return this.policy; }
+	public long getRetryMillis() { return this.retryMillis; }
+	/**
+	 * @param retryMillis How long a member that failed is skipped before it is tried again
+	 */
+	public void setRetryMillis(long retryMillis) { this.retryMillis = retryMillis; }
+
+	/**
+	 * @return The primary and replica keys
+	 */
+	public List<String> getMembers() { return new ArrayList<String>(this.members.keySet()); }
+
+	public boolean isUp(String key)
+	{
+		Member member = this.members.get(key);
+		return (member != null) && (member.isUp(System.currentTimeMillis()) == true);
+	}
+
+	/**
+	 * @return Average health check latency for the member in milliseconds (0 if not checked yet)
+	 */
+	public double getLatencyMillis(String key)
+	{
+		Member member = this.members.get(key);
+		return (member != null) ? member.latencyNanos / 1000000.0 : 0.0;
+	}
+
+	/**
+	 * Mark the member down so it is skipped for retryMillis
+	 */
+	public void markDown(String key)
+	{
+		Member member = this.members.get(key);
+		if (member != null)
+		{
+			member.downUntil = System.currentTimeMillis() + this.retryMillis;
+		}
+	}
+
+	/**
+	 * Mark the member up (ex: a health check passed)
+	 * @param key
+	 * @param latencyNanos How long the check took or -1 if not known
+	 */
+	public void markUp(String key, long latencyNanos)
+	{
+		Member member = this.members.get(key);
+		if (member != null)
+		{
+			member.downUntil = 0;
+			if (latencyNanos >= 0)
+			{
+				synchronized (member)
+				{
+					member.latencyNanos = (member.latencyNanos == 0) ? latencyNanos : (LATENCY_ALPHA * latencyNanos) + ((1 - LATENCY_ALPHA) * member.latencyNanos);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The order to try members in for a read: replicas that are up in the order chosen
+	 * by the policy, then the primary, then replicas that are down as a last resort.
+	 * If the primary is down too it is tried after the down replicas.
+	 * @param activeCount Connections in use by key (used by LEAST_ACTIVE)
+	 * @return Connection keys
+	 */
+	public List<String> readOrder(ToIntFunction<String> activeCount)
+	{
+		long now = System.currentTimeMillis();
+		List<Member> up = new ArrayList<Member>(this.replicas.size());
+		List<String> down = new ArrayList<String>();
+		for (String replica : this.replicas)
+		{
+			Member member = this.members.get(replica);
+			if (member.isUp(now) == true)
+			{
+				up.add(member);
+			}
+			else
+			{
+				down.add(replica);
+			}
+		}
+
+		List<String> ret = new ArrayList<String>(this.members.size());
+		if (up.isEmpty() == false)
+		{
+			// Rotate first so ties (and round robin) spread across the replicas
+			Collections.rotate(up, -Math.floorMod(this.next.getAndIncrement(), up.size()));
+			if (this.policy == RoutingPolicy.LEAST_ACTIVE)
+			{
+				final Map<String, Integer> active = new LinkedHashMap<String, Integer>();
+				for (Member member : up)
+				{
+					active.put(member.key, activeCount.applyAsInt(member.key));
+				}
+				up.sort(Comparator.comparingInt(member -> active.get(member.key)));
+			}
+			else if (this.policy == RoutingPolicy.LATENCY_WEIGHTED)
+			{
+				Member first = pickWeighted(up);
+				up.remove(first);
+				up.sort(Comparator.comparingDouble(member -> member.latencyNanos));
+				up.add(0, first);
+			}
+			for (Member member : up)
+			{
+				ret.add(member.key);
+			}
+		}
+		// A primary that is down (ex: a write to it just failed) goes with the other down members
+		boolean primaryUp = this.members.get(this.primary).isUp(now);
+		if ((primaryUp == true) && (ret.contains(this.primary) == false))
+		{
+			ret.add(this.primary);
+		}
+		for (String key : down)
+		{
+			if (ret.contains(key) == false)
+			{
+				ret.add(key);
+			}
+		}
+		if (ret.contains(this.primary) == false)
+		{
+			ret.add(this.primary);
+		}
+		return ret;
+	}
+
+	/**
+	 * Pick a member at random with odds inversely proportional to its latency. Members
+	 * that haven't been checked yet get the average latency of the others.
+	 */
+	private static Member pickWeighted(List<Member> members)
+	{
+		double known = 0;
+		int knownCount = 0;
+		for (Member member : members)
+		{
+			if (member.latencyNanos > 0)
+			{
+				known += member.latencyNanos;
+				knownCount++;
+			}
+		}
+		double fallback = (knownCount > 0) ? known / knownCount : 1.0;
+		double[] weights = new double[members.size()];
+		double total = 0;
+		for (int i = 0; i < weights.length; i++)
+		{
+			double latency = members.get(i).latencyNanos;
+			weights[i] = 1.0 / ((latency > 0) ? latency : fallback);
+			total += weights[i];
+		}
+		double pick = ThreadLocalRandom.current().nextDouble(total);
+		for (int i = 0; i < weights.length; i++)
+		{
+			pick -= weights[i];
+			if (pick < 0)
+			{
+				return members.get(i);
+			}
+		}
+		return members.get(members.size() - 1);
+	}
+
+	/**
+	 * @return True if the other group is set up the same way (same members, policy and retry time)
+	 */
+	public boolean sameConfig(ReplicaGroup other)
+	{
+		return (other != null) && this.name.equals(other.name) && this.primary.equals(other.primary)
+				&& this.replicas.equals(other.replicas) && (this.policy == other.policy) && (this.retryMillis == other.retryMillis);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ReplicaGroup[name=" + this.name + ", primary=" + this.primary + ", replicas=" + this.replicas + ", policy=" + this.policy + "]";
+	}
+
+	private static final class Member
+	{
+		private final String key;
+		private volatile long downUntil = 0;
+		private volatile double latencyNanos = 0;
+
+		Member(String key)
+		{
+			this.key = key;
+		}
+
+		boolean isUp(long now)
+		{
+			return now >= this.downUntil;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.cffreedom.utils.db;
+
+/**
+ * How ConnectionManager spreads reads across the replicas of a ReplicaGroup
+ *
+ * Original Class: com.cffreedom.utils.db.RoutingPolicy
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-18 	MarkJacobsen.net 	Created
+ */
+public enum RoutingPolicy
+{
+	/** Take turns */
+	ROUND_ROBIN,
+	/** The replica whose pool has the fewest connections in use (needs connection pooling) */
+	LEAST_ACTIVE,
+	/** Pick at random, favoring replicas that answered health checks faster */
+	LATENCY_WEIGHTED
+}
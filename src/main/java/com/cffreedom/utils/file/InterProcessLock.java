@@ -0,0 +1,159 @@
+package com.cffreedom.utils.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive lock shared by threads in this JVM and by other processes, built on a
+ * FileChannel lock of a lock file. The JVM only allows one FileLock per file so
+ * threads (and multiple instances pointing at the same file) first take an in
+ * process lock for the path. The FileLock is kept with that lock rather than with
+ * the instance, so whichever instance releases the path last releases the file.
+ *
+ * The start of the lock file can optionally be memory mapped as a small header
+ * that processes use to tell each other about changes (ex: the current end of a
+ * log) without a system call.
+ *
+ * Original Class: com.cffreedom.utils.file.InterProcessLock
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ * 2026-10-18 	MarkJacobsen.net 	FileLock shared per path along with the in process lock
+ */
+public class InterProcessLock implements Closeable
+{
+	private static final ConcurrentHashMap<String, PathLock> jvmLocks = new ConcurrentHashMap<String, PathLock>();
+
+	private final String file;
+	private final PathLock pathLock;
+	private final ReentrantLock jvmLock;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+
+	/**
+	 * One per path in this JVM. fileLock is only touched by the thread holding jvmLock.
+	 */
+	private static final class PathLock
+	{
+		final ReentrantLock jvmLock = new ReentrantLock();
+		FileLock fileLock = null;
+	}
+
+	public InterProcessLock(String file) throws IOException { this(file, 0); }
+
+	/**
+	 * @param file Lock file (created if needed, never deleted)
+	 * @param headerBytes Bytes at the start of the lock file to map (0 for none)
+	 * @throws IOException
+	 */
+	public InterProcessLock(String file, int headerBytes) throws IOException
+	{
+		File f = new File(file);
+		this.file = f.getCanonicalPath();
+		this.pathLock = jvmLocks.computeIfAbsent(this.file, k -> new PathLock());
+		this.jvmLock = this.pathLock.jvmLock;
+		this.raf = new RandomAccessFile(f, "rw");
+		try
+		{
+			this.channel = this.raf.getChannel();
+			if (headerBytes > 0)
+			{
+				// Extending the file is harmless if someone else already did
+				if (this.channel.size() < headerBytes)
+				{
+					this.lock();
+					try
+					{
+						if (this.channel.size() < headerBytes)
+						{
+							this.raf.setLength(headerBytes);
+						}
+					}
+					finally
+					{
+						this.unlock();
+					}
+				}
+				this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, headerBytes);
+			}
+			else
+			{
+				this.header = null;
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			this.raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Block until this thread holds the lock in this JVM and across processes. Reentrant.
+	 * @throws IOException
+	 */
+	public void lock() throws IOException
+	{
+		this.jvmLock.lock();
+		if (this.jvmLock.getHoldCount() > 1)
+		{
+			return;
+		}
+		try
+		{
+			this.pathLock.fileLock = this.channel.lock();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			this.jvmLock.unlock();
+			throw e;
+		}
+	}
+
+	public void unlock()
+	{
+		try
+		{
+			if ((this.jvmLock.getHoldCount() == 1) && (this.pathLock.fileLock != null))
+			{
+				FileLock fileLock = this.pathLock.fileLock;
+				this.pathLock.fileLock = null;
+				fileLock.release();
+			}
+		}
+		catch (IOException e) { /* closing the channel releases it anyway */ }
+		finally
+		{
+			this.jvmLock.unlock();
+		}
+	}
+
+	public boolean isHeldByCurrentThread() { return this.jvmLock.isHeldByCurrentThread(); }
+	public String getFile() { return this.file; }
+
+	public long getLong(int index) { return this.header.getLong(index); }
+	public void putLong(int index, long value) { this.header.putLong(index, value); }
+
+	public void close() throws IOException
+	{
+		this.raf.close();
+	}
+}
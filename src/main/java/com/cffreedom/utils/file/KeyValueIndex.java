@@ -0,0 +1,216 @@
+package com.cffreedom.utils.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * On disk index for a KeyValueLog. Holds one fixed size slot (64 bit key hash,
+ * record offset) per live key sorted by hash so a lookup is a binary search over
+ * a memory mapped file and opening it doesn't read anything but the header.
+ *
+ * File layout: int MAGIC, short VERSION, long log generation, long indexed position,
+ * long live bytes, int count then count slots of long hash, long offset.
+ *
+ * Original Class: com.cffreedom.utils.file.KeyValueIndex
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+class KeyValueIndex implements Closeable
+{
+	static final int MAGIC = 0x43464B49;
+	static final short VERSION = 1;
+	static final int HEADER_BYTES = 4 + 2 + 8 + 8 + 8 + 4;
+	static final int SLOT_BYTES = 16;
+	// A single mapping is limited to 2GB
+	static final int MAX_SLOTS = (Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES;
+
+	private final MappedByteBuffer buf;
+	final long generation;
+	final long indexedPosition;
+	final long liveBytes;
+	final int count;
+
+	private KeyValueIndex(MappedByteBuffer buf) throws IOException
+	{
+		this.buf = buf;
+		if ((buf.capacity() < HEADER_BYTES) || (buf.getInt(0) != MAGIC) || (buf.getShort(4) != VERSION))
+		{
+			throw new IOException("Not a key/value index");
+		}
+		this.generation = buf.getLong(6);
+		this.indexedPosition = buf.getLong(14);
+		this.liveBytes = buf.getLong(22);
+		this.count = buf.getInt(30);
+		if ((this.count < 0) || ((long)HEADER_BYTES + ((long)this.count * SLOT_BYTES) > buf.capacity()))
+		{
+			throw new IOException("Truncated key/value index");
+		}
+	}
+
+	/**
+	 * @return The index or null if the file doesn't exist
+	 */
+	static KeyValueIndex open(String file) throws IOException
+	{
+		File f = new File(file);
+		if ((f.exists() == false) || (f.length() > Integer.MAX_VALUE))
+		{
+			return null;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r"))
+		{
+			return new KeyValueIndex(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+		}
+	}
+
+	long hashAt(int slot) { return this.buf.getLong(HEADER_BYTES + (slot * SLOT_BYTES)); }
+	long offsetAt(int slot) { return this.buf.getLong(HEADER_BYTES + (slot * SLOT_BYTES) + 8); }
+
+	/**
+	 * @return The first slot with the hash (or where it would go)
+	 */
+	int firstSlot(long hash)
+	{
+		int low = 0;
+		int high = this.count;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (this.hashAt(mid) < hash)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	public void close()
+	{
+		// Mapped buffers are released when they are garbage collected
+	}
+
+	/**
+	 * 64 bit FNV-1a of the UTF-8 bytes. Wide enough that collisions (which are
+	 * handled by checking the key) are rare even for very large files.
+	 */
+	static long hash(String key)
+	{
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8))
+		{
+			h ^= (b & 0xff);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * Writes slots (which must be added in hash order) to a temp file that is renamed
+	 * into place by commit()
+	 */
+	static final class Writer implements Closeable
+	{
+		private final String file;
+		private final File tmp;
+		private final RandomAccessFile raf;
+		private final FileChannel channel;
+		private final ByteBuffer slots = ByteBuffer.allocate(64 * 1024);
+		private long position = HEADER_BYTES;
+		private int count = 0;
+
+		Writer(String file) throws IOException
+		{
+			this.file = file;
+			this.tmp = new File(file + ".tmp");
+			this.raf = new RandomAccessFile(this.tmp, "rw");
+			this.raf.setLength(0);
+			this.channel = this.raf.getChannel();
+		}
+
+		void add(long hash, long offset) throws IOException
+		{
+			if (this.count >= MAX_SLOTS)
+			{
+				throw new IOException("Too many keys for a key/value index");
+			}
+			if (this.slots.remaining() < SLOT_BYTES)
+			{
+				this.flushSlots();
+			}
+			this.slots.putLong(hash);
+			this.slots.putLong(offset);
+			this.count++;
+		}
+
+		int size() { return this.count; }
+
+		/**
+		 * Write the header, force the file to disk and atomically rename it into place
+		 */
+		void commit(long generation, long indexedPosition, long liveBytes) throws IOException
+		{
+			this.flushSlots();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC);
+			header.putShort(VERSION);
+			header.putLong(generation);
+			header.putLong(indexedPosition);
+			header.putLong(liveBytes);
+			header.putInt(this.count);
+			header.flip();
+			while (header.hasRemaining())
+			{
+				this.channel.write(header, header.position());
+			}
+			this.channel.force(true);
+			this.raf.close();
+			Files.move(this.tmp.toPath(), new File(this.file).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		private void flushSlots() throws IOException
+		{
+			this.slots.flip();
+			while (this.slots.hasRemaining())
+			{
+				this.position += this.channel.write(this.slots, this.position);
+			}
+			this.slots.clear();
+		}
+
+		/**
+		 * Throw away the temp file if commit() wasn't called
+		 */
+		public void close()
+		{
+			try
+			{
+				this.raf.close();
+			}
+			catch (IOException e) { /* ignore */ }
+			this.tmp.delete();
+		}
+	}
+}
@@ -0,0 +1,1283 @@
+package com.cffreedom.utils.file;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cffreedom.exceptions.FileSystemException;
+import com.cffreedom.utils.cache.BinaryValueSerializer;
+import com.cffreedom.utils.cache.ValueSerializer;
+
+/**
+ * Append only, log structured key/value file. Every put or remove appends one
+ * CRC checked record to the end of the file so a write costs O(record) instead of
+ * rewriting everything, and a crash can at worst lose the record being written
+ * (a torn or corrupt tail is truncated the next time the file is opened).
+ *
+ * Once enough of the file is taken up by overwritten/removed records it is
+ * compacted by writing the live records to a new file and atomically renaming
+ * it over the old one.
+ *
+ * By default every value is read into memory when the file is opened. In mapped
+ * mode values are instead read lazily through MappedByteBuffers and a KeyValueIndex
+ * (file + ".idx") is written on compaction, close and whenever enough new records
+ * have been appended. Opening a mapped log only reads the index header and the
+ * records written after it, so it is near instant no matter how large the file is
+ * and only the records that get read are paged in.
+ *
+ * File layout: int MAGIC, short VERSION, long generation then records of
+ * int crc, int length, byte type, int key length, key (UTF-8), value bytes
+ * where the crc covers everything after the length. Version 1 files have no
+ * generation. A Batch is written as a batch record, whose value is the number of
+ * records that follow it, and those records. They are only applied once all of them
+ * are on disk so a crash part way through leaves none of them.
+ *
+ * Safe to share between threads (reads run concurrently, writes are exclusive) and
+ * between processes. Writers take an InterProcessLock on file + ".lock" and first
+ * catch up on anything other processes appended (or reopen the file if another
+ * process compacted it). The lock file also holds the current generation and end
+ * of the log so readers can tell they are behind with a memory read instead of a
+ * system call.
+ *
+ * Original Class: com.cffreedom.utils.file.KeyValueLog
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ * 2026-10-17 	MarkJacobsen.net 	Added mapped mode with a KeyValueIndex and lazy reads, compaction
+ * 									copies records instead of re-serializing values
+ * 2026-10-17 	MarkJacobsen.net 	Thread safe with a ReadWriteLock and process safe with an InterProcessLock,
+ * 									added putIfAbsent() and replace()
+ * 2026-10-17 	MarkJacobsen.net 	Added commit(Batch) to write many changes atomically with one append
+ * 2026-10-17 	MarkJacobsen.net 	Values default to BinaryValueSerializer (which still reads Java serialized values)
+ */
+public class KeyValueLog implements Closeable
+{
+	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.file.KeyValueLog");
+	public static final int MAGIC = 0x43464B56;
+	public static final short VERSION = 2;
+	private static final int V1_FILE_HEADER_BYTES = 6;
+	private static final int FILE_HEADER_BYTES = 14;
+	private static final int RECORD_HEADER_BYTES = 8;
+	private static final byte TYPE_PUT = 1;
+	private static final byte TYPE_REMOVE = 2;
+	private static final byte TYPE_BATCH = 3;
+	private static final long CHUNK_BYTES = 1L << 30;
+	// Lock file header: long generation, long end of log
+	private static final int LOCK_HEADER_BYTES = 16;
+	public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1000;
+	public static final long DEFAULT_COMPACT_MIN_BYTES = 1024 * 1024;
+	public static final double DEFAULT_COMPACT_RATIO = 2.0;
+	public static final int DEFAULT_MAX_UNINDEXED_KEYS = 10000;
+
+	/**
+	 * When appended records are forced to disk
+	 * ALWAYS - After every write (slowest, nothing acknowledged is ever lost)
+	 * INTERVAL - On the first write after the fsync interval has passed (and on close)
+	 * NEVER - Left to the operating system (and close)
+	 */
+	public static enum FsyncPolicy { ALWAYS, INTERVAL, NEVER };
+
+	private final String file;
+	private final String indexFile;
+	private final ValueSerializer<Object> serializer;
+	private final boolean mapped;
+	// Every live key when not mapped, otherwise just what was written after the index
+	private final Map<String, Entry> map = new TreeMap<String, Entry>();
+	private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+	private InterProcessLock processLock = null;
+	private Object fileKey = null;
+	private KeyValueIndex index = null;
+	private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+	private RandomAccessFile raf = null;
+	private FileChannel channel = null;
+	private volatile long generation = 0;
+	private int headerBytes = FILE_HEADER_BYTES;
+	private volatile long position = 0;
+	private long liveBytes = 0;
+	private int count = 0;
+	private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+	private long fsyncIntervalMillis = DEFAULT_FSYNC_INTERVAL_MILLIS;
+	private long lastSyncMillis = 0;
+	private boolean dirty = false;
+	private long compactMinBytes = DEFAULT_COMPACT_MIN_BYTES;
+	private double compactRatio = DEFAULT_COMPACT_RATIO;
+	private int maxUnindexedKeys = DEFAULT_MAX_UNINDEXED_KEYS;
+
+	public KeyValueLog(String file) throws FileSystemException { this(file, new BinaryValueSerializer(), false); }
+	public KeyValueLog(String file, boolean mapped) throws FileSystemException { this(file, new BinaryValueSerializer(), mapped); }
+
+	/**
+	 * Open (or create) a log file
+	 * @param file
+	 * @param serializer Used to convert values to bytes
+	 * @param mapped True to read values lazily through an index instead of holding them all in memory
+	 * @throws FileSystemException
+	 */
+	public KeyValueLog(String file, ValueSerializer<Object> serializer, boolean mapped) throws FileSystemException
+	{
+		this.file = file;
+		this.indexFile = file + ".idx";
+		this.serializer = serializer;
+		this.mapped = mapped;
+		try
+		{
+			this.processLock = new InterProcessLock(file + ".lock", LOCK_HEADER_BYTES);
+			this.processLock.lock();
+			try
+			{
+				this.open();
+				this.publish();
+			}
+			finally
+			{
+				this.processLock.unlock();
+			}
+		}
+		catch (IOException e)
+		{
+			this.closeQuietly();
+			this.closeProcessLock();
+			throw new FileSystemException("Unable to open key/value log: " + file, e);
+		}
+	}
+
+	public void setFsyncPolicy(FsyncPolicy policy) { this.setFsyncPolicy(policy, this.fsyncIntervalMillis); }
+	public void setFsyncPolicy(FsyncPolicy policy, long intervalMillis)
+	{
+		this.fsyncPolicy = policy;
+		this.fsyncIntervalMillis = intervalMillis;
+	}
+	public FsyncPolicy getFsyncPolicy() { return this.fsyncPolicy; }
+
+	/**
+	 * Compact once the file is at least minBytes and more than ratio times the size of the live records
+	 * @param minBytes
+	 * @param ratio ex: 2.0 to compact once half the file is garbage
+	 */
+	public void setCompactThreshold(long minBytes, double ratio)
+	{
+		this.compactMinBytes = minBytes;
+		this.compactRatio = ratio;
+	}
+
+	/**
+	 * In mapped mode rewrite the index once this many keys have been written since
+	 * the last one so the keys held in memory stay bounded
+	 * @param maxKeys
+	 */
+	public void setMaxUnindexedKeys(int maxKeys) { this.maxUnindexedKeys = maxKeys; }
+
+	public String getFile() { return this.file; }
+	public boolean isMapped() { return this.mapped; }
+	public long getFileBytes() { return this.position; }
+	public long getLiveBytes() { return this.liveBytes; }
+	/**
+	 * @return Number of keys as of the last read or write from this instance
+	 */
+	public int size() { return this.count; }
+
+	public boolean containsKey(final String key) throws FileSystemException
+	{
+		return this.read(() -> this.exists(key));
+	}
+
+	private boolean exists(String key) throws IOException
+	{
+		Entry entry = this.map.get(key);
+		if (entry != null)
+		{
+			return entry.removed == false;
+		}
+		return this.indexOffset(key) >= 0;
+	}
+
+	/**
+	 * @return The keys in sorted order. In mapped mode this has to read the key of
+	 * every indexed record so use it sparingly on large files.
+	 * @throws FileSystemException
+	 */
+	public Set<String> keySet() throws FileSystemException
+	{
+		return this.read(() -> this.keys());
+	}
+
+	private Set<String> keys() throws IOException
+	{
+		Set<String> keys = new TreeSet<String>();
+		if (this.index != null)
+		{
+			for (int slot = 0; slot < this.index.count; slot++)
+			{
+				String key = this.readKey(this.index.offsetAt(slot));
+				if (this.map.containsKey(key) == false)
+				{
+					keys.add(key);
+				}
+			}
+		}
+		for (Map.Entry<String, Entry> entry : this.map.entrySet())
+		{
+			if (entry.getValue().removed == false)
+			{
+				keys.add(entry.getKey());
+			}
+		}
+		return Collections.unmodifiableSet(keys);
+	}
+
+	public Object get(final String key) throws FileSystemException
+	{
+		return this.read(() -> {
+			Entry entry = this.map.get(key);
+			if (entry != null)
+			{
+				if (entry.removed == true)
+				{
+					return null;
+				}
+				return (this.mapped == true) ? this.readValue(entry.offset) : entry.value;
+			}
+			long offset = this.indexOffset(key);
+			return (offset >= 0) ? this.readValue(offset) : null;
+		});
+	}
+
+	/**
+	 * Append a record setting the key to the value
+	 * @param key
+	 * @param value
+	 * @throws FileSystemException
+	 */
+	public void put(final String key, final Object value) throws FileSystemException
+	{
+		final byte[] bytes = this.serialize(key, value);
+		this.write(() -> {
+			this.putRecord(key, value, bytes);
+			return null;
+		});
+	}
+
+	/**
+	 * Set the key to the value only if it doesn't already exist (atomically, even
+	 * across processes)
+	 * @param key
+	 * @param value
+	 * @return True if the value was set
+	 * @throws FileSystemException
+	 */
+	public boolean putIfAbsent(final String key, final Object value) throws FileSystemException
+	{
+		final byte[] bytes = this.serialize(key, value);
+		return this.write(() -> {
+			if (this.exists(key) == true)
+			{
+				return false;
+			}
+			this.putRecord(key, value, bytes);
+			return true;
+		});
+	}
+
+	/**
+	 * Set the key to the value only if it already exists (atomically, even across processes)
+	 * @param key
+	 * @param value
+	 * @return True if the value was set
+	 * @throws FileSystemException
+	 */
+	public boolean replace(final String key, final Object value) throws FileSystemException
+	{
+		final byte[] bytes = this.serialize(key, value);
+		return this.write(() -> {
+			if (this.exists(key) == false)
+			{
+				return false;
+			}
+			this.putRecord(key, value, bytes);
+			return true;
+		});
+	}
+
+	/**
+	 * Append a record removing the key
+	 * @param key
+	 * @return True if the key existed
+	 * @throws FileSystemException
+	 */
+	public boolean remove(final String key) throws FileSystemException
+	{
+		return this.write(() -> {
+			if (this.exists(key) == false)
+			{
+				return false;
+			}
+			long offset = this.position;
+			int size = this.append(TYPE_REMOVE, key, new byte[0]);
+			this.apply(TYPE_REMOVE, key, offset, size, null);
+			this.afterWrite();
+			return true;
+		});
+	}
+
+	/**
+	 * Write all of the changes in the batch with one append. Either all of them or
+	 * (if the write fails or the process dies part way through) none of them are applied.
+	 * @param batch
+	 * @throws FileSystemException
+	 */
+	public void commit(Batch batch) throws FileSystemException
+	{
+		if (batch.ops.isEmpty() == true)
+		{
+			return;
+		}
+		final List<ByteBuffer> records = new ArrayList<ByteBuffer>(batch.ops.size() + 1);
+		records.add(encodeRecord(TYPE_BATCH, "", ByteBuffer.allocate(4).putInt(batch.ops.size()).array()));
+		long total = records.get(0).remaining();
+		for (Batch.Op op : batch.ops)
+		{
+			byte[] bytes = (op.type == TYPE_PUT) ? this.serialize(op.key, op.value) : new byte[0];
+			ByteBuffer record = encodeRecord(op.type, op.key, bytes);
+			records.add(record);
+			total += record.remaining();
+		}
+		if (total > Integer.MAX_VALUE)
+		{
+			throw new FileSystemException("Batch is too large to write at once: " + total + " bytes");
+		}
+		final ByteBuffer all = ByteBuffer.allocate((int)total);
+		for (ByteBuffer record : records)
+		{
+			all.put(record.duplicate());
+		}
+		all.flip();
+		final List<Batch.Op> ops = batch.ops;
+
+		this.write(() -> {
+			long offset = this.position + records.get(0).remaining();
+			this.appendRecords(all);
+			for (int x = 0; x < ops.size(); x++)
+			{
+				Batch.Op op = ops.get(x);
+				int size = records.get(x + 1).remaining();
+				this.apply(op.type, op.key, offset, size, op.value);
+				offset += size;
+			}
+			this.afterWrite();
+			return null;
+		});
+	}
+
+	private byte[] serialize(String key, Object value) throws FileSystemException
+	{
+		try
+		{
+			return this.serializer.serialize(value);
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException("Unable to serialize value for key: " + key, e);
+		}
+	}
+
+	private void putRecord(String key, Object value, byte[] bytes) throws FileSystemException
+	{
+		long offset = this.position;
+		int size = this.append(TYPE_PUT, key, bytes);
+		this.apply(TYPE_PUT, key, offset, size, value);
+		this.afterWrite();
+	}
+
+	/**
+	 * Run a read with the read lock held after catching up on anything written by other processes
+	 */
+	private <T> T read(LockedOp<T> op) throws FileSystemException
+	{
+		if (this.isStale() == true)
+		{
+			this.write(() -> null);
+		}
+		this.rwLock.readLock().lock();
+		try
+		{
+			if (this.channel == null)
+			{
+				throw new FileSystemException("Key/value log is closed: " + this.file);
+			}
+			return op.run();
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException("Unable to read key/value log: " + this.file, e);
+		}
+		finally
+		{
+			this.rwLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Run a write with the write lock and process lock held after catching up on
+	 * anything written by other processes, then tell them where the log ends now
+	 */
+	private <T> T write(LockedOp<T> op) throws FileSystemException
+	{
+		this.rwLock.writeLock().lock();
+		try
+		{
+			if (this.channel == null)
+			{
+				throw new FileSystemException("Key/value log is closed: " + this.file);
+			}
+			this.processLock.lock();
+			try
+			{
+				this.catchUp();
+				T ret = op.run();
+				this.publish();
+				return ret;
+			}
+			finally
+			{
+				this.processLock.unlock();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException("Unable to write key/value log: " + this.file, e);
+		}
+		finally
+		{
+			this.rwLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return True if another process has written since we last looked
+	 */
+	private boolean isStale()
+	{
+		InterProcessLock lock = this.processLock;
+		return (lock != null) && ((lock.getLong(0) != this.generation) || (lock.getLong(8) != this.position));
+	}
+
+	private void publish()
+	{
+		this.processLock.putLong(0, this.generation);
+		this.processLock.putLong(8, this.position);
+	}
+
+	/**
+	 * Pick up records other processes appended, or reopen the file if one of them
+	 * compacted it. Must hold the process lock.
+	 */
+	private void catchUp() throws IOException
+	{
+		long published = this.processLock.getLong(0);
+		boolean replaced = (published != 0) && (published != this.generation);
+		if ((replaced == false) && (this.fileKey != null))
+		{
+			replaced = (this.fileKey.equals(Files.readAttributes(Paths.get(this.file), BasicFileAttributes.class).fileKey()) == false);
+		}
+		if (replaced == true)
+		{
+			logger.debug("Reopening {} which was compacted by another process", this.file);
+			this.reopen();
+		}
+		else if (this.channel.size() > this.position)
+		{
+			this.replay(this.position);
+		}
+	}
+
+	private void reopen() throws IOException
+	{
+		this.closeQuietly();
+		this.map.clear();
+		this.generation = 0;
+		this.headerBytes = FILE_HEADER_BYTES;
+		this.position = 0;
+		this.liveBytes = 0;
+		this.count = 0;
+		this.dirty = false;
+		this.open();
+	}
+
+	/**
+	 * Force everything appended so far to disk
+	 * @throws FileSystemException
+	 */
+	public void sync() throws FileSystemException
+	{
+		try
+		{
+			this.channel.force(false);
+			this.dirty = false;
+			this.lastSyncMillis = System.currentTimeMillis();
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException("Unable to sync key/value log: " + this.file, e);
+		}
+	}
+
+	/**
+	 * Rewrite the file with only the live records (copied as is, without deserializing them)
+	 * @throws FileSystemException
+	 */
+	public void compact() throws FileSystemException
+	{
+		this.write(() -> {
+			this.compactLocked();
+			return null;
+		});
+	}
+
+	private void compactLocked() throws FileSystemException
+	{
+		File tmp = new File(this.file + ".compact");
+		long start = System.currentTimeMillis();
+		long newGeneration = Math.max(this.generation + 1, start);
+		Map<String, Entry> moved = new TreeMap<String, Entry>();
+		try (KeyValueIndex.Writer indexWriter = (this.mapped == true) ? new KeyValueIndex.Writer(this.indexFile) : null)
+		{
+			long newPosition;
+			try (RandomAccessFile out = new RandomAccessFile(tmp, "rw"))
+			{
+				out.setLength(0);
+				FileChannel outChannel = out.getChannel();
+				final long[] newPos = { writeFileHeader(outChannel, newGeneration) };
+				this.forEachLiveSlot(slot -> {
+					ByteBuffer record = this.read(slot.offset, this.recordSize(slot.offset));
+					int size = record.remaining();
+					if (indexWriter != null)
+					{
+						indexWriter.add(slot.hash, newPos[0]);
+					}
+					else
+					{
+						Entry entry = this.map.get(slot.key);
+						moved.put(slot.key, new Entry(newPos[0], size, entry.value, false));
+					}
+					newPos[0] += writeFully(outChannel, newPos[0], record);
+				});
+				newPosition = newPos[0];
+				outChannel.force(true);
+			}
+
+			if (indexWriter != null)
+			{
+				indexWriter.commit(newGeneration, newPosition, newPosition - FILE_HEADER_BYTES);
+			}
+			this.channel.close();
+			this.raf.close();
+			Files.move(tmp.toPath(), new File(this.file).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.raf = new RandomAccessFile(this.file, "rw");
+			this.channel = this.raf.getChannel();
+			this.fileKey = Files.readAttributes(Paths.get(this.file), BasicFileAttributes.class).fileKey();
+			this.chunks = new MappedByteBuffer[0];
+			this.generation = newGeneration;
+			this.headerBytes = FILE_HEADER_BYTES;
+			this.position = newPosition;
+			this.liveBytes = newPosition - FILE_HEADER_BYTES;
+			this.dirty = false;
+			this.map.clear();
+			if (this.mapped == true)
+			{
+				this.index = KeyValueIndex.open(this.indexFile);
+			}
+			else
+			{
+				this.map.putAll(moved);
+			}
+			logger.debug("Compacted {} to {} bytes in {}ms", this.file, newPosition, System.currentTimeMillis() - start);
+		}
+		catch (IOException e)
+		{
+			tmp.delete();
+			throw new FileSystemException("Unable to compact key/value log: " + this.file, e);
+		}
+	}
+
+	/**
+	 * In mapped mode write a new index covering everything appended so far
+	 * @throws FileSystemException
+	 */
+	public void writeIndex() throws FileSystemException
+	{
+		this.write(() -> {
+			this.writeIndexLocked();
+			return null;
+		});
+	}
+
+	private void writeIndexLocked() throws FileSystemException
+	{
+		if (this.mapped == false)
+		{
+			return;
+		}
+		try (KeyValueIndex.Writer indexWriter = new KeyValueIndex.Writer(this.indexFile))
+		{
+			// The index can only point at records that are on disk
+			this.channel.force(false);
+			this.dirty = false;
+			this.forEachLiveSlot(slot -> indexWriter.add(slot.hash, slot.offset));
+			indexWriter.commit(this.generation, this.position, this.liveBytes);
+			this.index = KeyValueIndex.open(this.indexFile);
+			this.map.clear();
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException("Unable to write index for key/value log: " + this.file, e);
+		}
+	}
+
+	public void close() throws IOException
+	{
+		this.rwLock.writeLock().lock();
+		try
+		{
+			if (this.channel == null)
+			{
+				return;
+			}
+			this.processLock.lock();
+			try
+			{
+				this.catchUp();
+				if ((this.mapped == true) && ((this.index == null) || (this.map.isEmpty() == false)))
+				{
+					this.writeIndexLocked();
+				}
+				else if (this.dirty == true)
+				{
+					this.channel.force(false);
+				}
+				this.publish();
+			}
+			finally
+			{
+				this.processLock.unlock();
+			}
+		}
+		catch (FileSystemException e)
+		{
+			throw new IOException(e.getMessage(), e.getCause());
+		}
+		finally
+		{
+			this.closeQuietly();
+			this.closeProcessLock();
+			this.rwLock.writeLock().unlock();
+		}
+	}
+
+	private void closeProcessLock()
+	{
+		try
+		{
+			if (this.processLock != null) { this.processLock.close(); }
+		}
+		catch (IOException e) { /* ignore */ }
+	}
+
+	private void closeQuietly()
+	{
+		try
+		{
+			if (this.raf != null) { this.raf.close(); }
+		}
+		catch (IOException e) { /* ignore */ }
+		this.raf = null;
+		this.channel = null;
+		this.chunks = new MappedByteBuffer[0];
+		this.index = null;
+	}
+
+	/**
+	 * Update the in memory state for a record that was appended (or replayed)
+	 */
+	private void apply(byte type, String key, long offset, int size, Object value) throws FileSystemException
+	{
+		Entry old = this.map.get(key);
+		boolean existed = false;
+		int oldSize = 0;
+		boolean indexed = false;
+		if (old != null)
+		{
+			existed = (old.removed == false);
+			oldSize = existed ? old.size : 0;
+		}
+		try
+		{
+			long indexOffset = this.indexOffset(key);
+			indexed = (indexOffset >= 0);
+			if ((old == null) && (indexed == true))
+			{
+				existed = true;
+				oldSize = this.recordSize(indexOffset);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException("Unable to read key/value log: " + this.file, e);
+		}
+
+		if (type == TYPE_PUT)
+		{
+			this.map.put(key, new Entry(offset, size, (this.mapped == true) ? null : value, false));
+			this.liveBytes += size - oldSize;
+			if (existed == false) { this.count++; }
+		}
+		else
+		{
+			// A key that is in the index needs a tombstone to hide it
+			if (indexed == true)
+			{
+				this.map.put(key, new Entry(offset, size, null, true));
+			}
+			else
+			{
+				this.map.remove(key);
+			}
+			this.liveBytes -= oldSize;
+			if (existed == true) { this.count--; }
+		}
+	}
+
+	private int append(byte type, String key, byte[] value) throws FileSystemException
+	{
+		return this.appendRecords(encodeRecord(type, key, value));
+	}
+
+	private int appendRecords(ByteBuffer records) throws FileSystemException
+	{
+		if (this.channel == null)
+		{
+			throw new FileSystemException("Key/value log is closed: " + this.file);
+		}
+		try
+		{
+			int size = writeFully(this.channel, this.position, records);
+			this.position += size;
+			this.dirty = true;
+			return size;
+		}
+		catch (IOException e)
+		{
+			// Drop whatever part of the records made it out so the log stays clean
+			try { this.channel.truncate(this.position); } catch (IOException e2) { /* recovered on open */ }
+			throw new FileSystemException("Unable to append to key/value log: " + this.file, e);
+		}
+	}
+
+	private void afterWrite() throws FileSystemException
+	{
+		if ((this.fsyncPolicy == FsyncPolicy.ALWAYS) ||
+			((this.fsyncPolicy == FsyncPolicy.INTERVAL) && (System.currentTimeMillis() - this.lastSyncMillis >= this.fsyncIntervalMillis)))
+		{
+			this.sync();
+		}
+
+		long dataBytes = this.position - this.headerBytes;
+		if ((this.position >= this.compactMinBytes) && (dataBytes > this.liveBytes * this.compactRatio))
+		{
+			this.compactLocked();
+		}
+		else if ((this.mapped == true) && (this.map.size() >= this.maxUnindexedKeys))
+		{
+			this.writeIndexLocked();
+		}
+	}
+
+	/**
+	 * Hand every live record to the visitor ordered by key hash. Indexed records are
+	 * streamed from the index so only the unindexed keys are held in memory.
+	 */
+	private void forEachLiveSlot(SlotVisitor visitor) throws IOException
+	{
+		List<Slot> unindexed = new ArrayList<Slot>(this.map.size());
+		for (Map.Entry<String, Entry> entry : this.map.entrySet())
+		{
+			if (entry.getValue().removed == false)
+			{
+				unindexed.add(new Slot(KeyValueIndex.hash(entry.getKey()), entry.getValue().offset, entry.getKey()));
+			}
+		}
+		Collections.sort(unindexed);
+
+		int next = 0;
+		if (this.index != null)
+		{
+			// Index slots whose key was written again since are replaced by the newer record
+			Set<Long> replaced = new HashSet<Long>();
+			for (String key : this.map.keySet())
+			{
+				long offset = this.indexOffset(key);
+				if (offset >= 0)
+				{
+					replaced.add(offset);
+				}
+			}
+
+			for (int x = 0; x < this.index.count; x++)
+			{
+				long hash = this.index.hashAt(x);
+				long offset = this.index.offsetAt(x);
+				while ((next < unindexed.size()) && (unindexed.get(next).hash < hash))
+				{
+					visitor.visit(unindexed.get(next++));
+				}
+				if (replaced.contains(offset) == false)
+				{
+					visitor.visit(new Slot(hash, offset, null));
+				}
+			}
+		}
+		while (next < unindexed.size())
+		{
+			visitor.visit(unindexed.get(next++));
+		}
+	}
+
+	/**
+	 * @return Offset of the indexed record for the key or -1
+	 */
+	private long indexOffset(String key) throws IOException
+	{
+		KeyValueIndex idx = this.index;
+		if (idx == null)
+		{
+			return -1;
+		}
+		long hash = KeyValueIndex.hash(key);
+		for (int slot = idx.firstSlot(hash); (slot < idx.count) && (idx.hashAt(slot) == hash); slot++)
+		{
+			long offset = idx.offsetAt(slot);
+			if (key.equals(this.readKey(offset)) == true)
+			{
+				return offset;
+			}
+		}
+		return -1;
+	}
+
+	private int recordSize(long offset) throws IOException
+	{
+		return RECORD_HEADER_BYTES + this.read(offset + 4, 4).getInt();
+	}
+
+	private String readKey(long offset) throws IOException
+	{
+		int keyLength = this.read(offset + RECORD_HEADER_BYTES + 1, 4).getInt();
+		ByteBuffer buf = this.read(offset + RECORD_HEADER_BYTES + 5, keyLength);
+		byte[] key = new byte[keyLength];
+		buf.get(key);
+		return new String(key, StandardCharsets.UTF_8);
+	}
+
+	private Object readValue(long offset) throws IOException
+	{
+		ByteBuffer record = this.read(offset, this.recordSize(offset));
+		int expectedCrc = record.getInt();
+		int bodyLength = record.getInt();
+		byte[] body = new byte[bodyLength];
+		record.get(body);
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, bodyLength);
+		if ((int)crc.getValue() != expectedCrc)
+		{
+			throw new IOException("Corrupt record at offset " + offset);
+		}
+		int keyLength = ByteBuffer.wrap(body, 1, 4).getInt();
+		int valueOffset = 5 + keyLength;
+		return this.serializer.deserialize(Arrays.copyOfRange(body, valueOffset, bodyLength));
+	}
+
+	/**
+	 * Read bytes from the log through the MappedByteBuffer covering them (mapping
+	 * it if needed) so only the pages holding the record are touched
+	 */
+	private ByteBuffer read(long offset, int length) throws IOException
+	{
+		if ((length < 0) || (offset + length > this.position))
+		{
+			throw new IOException("Read past end of key/value log at offset " + offset);
+		}
+		int c = (int)(offset / CHUNK_BYTES);
+		long chunkStart = c * CHUNK_BYTES;
+		if (offset + length <= chunkStart + CHUNK_BYTES)
+		{
+			MappedByteBuffer chunk = this.chunk(c, offset + length - chunkStart);
+			ByteBuffer buf = chunk.duplicate();
+			buf.position((int)(offset - chunkStart));
+			buf.limit(buf.position() + length);
+			return buf.slice();
+		}
+
+		// Straddles two mappings
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining())
+		{
+			if (this.channel.read(buf, offset + buf.position()) < 0)
+			{
+				throw new EOFException();
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private synchronized MappedByteBuffer chunk(int c, long needed) throws IOException
+	{
+		if (c >= this.chunks.length)
+		{
+			this.chunks = Arrays.copyOf(this.chunks, c + 1);
+		}
+		MappedByteBuffer chunk = this.chunks[c];
+		if ((chunk == null) || (chunk.capacity() < needed))
+		{
+			// Map what's there now, the file keeps growing so a later read may remap it
+			long chunkStart = c * CHUNK_BYTES;
+			chunk = this.channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, Math.min(CHUNK_BYTES, this.position - chunkStart));
+			this.chunks[c] = chunk;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Read the file header and replay the records (only those after the index in mapped mode)
+	 */
+	private void open() throws IOException
+	{
+		File f = new File(this.file);
+		this.raf = new RandomAccessFile(f, "rw");
+		this.channel = this.raf.getChannel();
+		this.fileKey = Files.readAttributes(f.toPath(), BasicFileAttributes.class).fileKey();
+		long length = this.channel.size();
+		if (length == 0)
+		{
+			this.generation = System.currentTimeMillis();
+			this.position = writeFileHeader(this.channel, this.generation);
+			this.channel.force(true);
+			new File(this.indexFile).delete();
+			return;
+		}
+
+		long pos = 0;
+		try (DataInputStream header = new DataInputStream(new FileInputStream(f)))
+		{
+			if ((length < V1_FILE_HEADER_BYTES) || (header.readInt() != MAGIC))
+			{
+				throw new IOException("Not a key/value log: " + this.file);
+			}
+			short version = header.readShort();
+			if (version == 1)
+			{
+				this.headerBytes = V1_FILE_HEADER_BYTES;
+			}
+			else if (version == VERSION)
+			{
+				this.generation = header.readLong();
+			}
+			else
+			{
+				throw new IOException("Unsupported key/value log version: " + version);
+			}
+		}
+		pos = this.headerBytes;
+
+		if (this.mapped == true)
+		{
+			KeyValueIndex idx = null;
+			try
+			{
+				idx = KeyValueIndex.open(this.indexFile);
+			}
+			catch (IOException e)
+			{
+				logger.warn("Ignoring unreadable index {}: {}", this.indexFile, e.getMessage());
+			}
+			if ((idx != null) && (idx.generation == this.generation) && (idx.indexedPosition <= length))
+			{
+				this.index = idx;
+				this.count = idx.count;
+				this.liveBytes = idx.liveBytes;
+				pos = idx.indexedPosition;
+			}
+		}
+		this.replay(pos);
+	}
+
+	/**
+	 * Apply the records from pos to the end of the file stopping, and truncating,
+	 * at the first one that is incomplete or fails its CRC check (or the start of
+	 * a batch it is part of)
+	 */
+	private void replay(long pos) throws IOException
+	{
+		File f = new File(this.file);
+		long length = this.channel.size();
+		this.position = length;
+		long batchStart = -1;
+		int batchRemaining = 0;
+		List<String> batchKeys = new ArrayList<String>();
+		List<Entry> batchEntries = new ArrayList<Entry>();
+		try (FileInputStream fis = new FileInputStream(f))
+		{
+			fis.getChannel().position(pos);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(fis, 64 * 1024));
+			CRC32 crc = new CRC32();
+			while (length - pos >= RECORD_HEADER_BYTES)
+			{
+				int expectedCrc = in.readInt();
+				int bodyLength = in.readInt();
+				if ((bodyLength < 5) || (bodyLength > length - pos - RECORD_HEADER_BYTES))
+				{
+					break;
+				}
+				byte[] body = new byte[bodyLength];
+				in.readFully(body);
+				crc.reset();
+				crc.update(body, 0, bodyLength);
+				if ((int)crc.getValue() != expectedCrc)
+				{
+					break;
+				}
+
+				ByteBuffer buf = ByteBuffer.wrap(body);
+				byte type = buf.get();
+				int keyLength = buf.getInt();
+				if ((keyLength < 0) || (keyLength > buf.remaining()))
+				{
+					break;
+				}
+				String key = new String(body, buf.position(), keyLength, StandardCharsets.UTF_8);
+				int valueOffset = buf.position() + keyLength;
+				int size = RECORD_HEADER_BYTES + bodyLength;
+				if (type == TYPE_BATCH)
+				{
+					if ((batchRemaining > 0) || (bodyLength - valueOffset < 4) || (buf.getInt(valueOffset) <= 0))
+					{
+						break;
+					}
+					batchStart = pos;
+					batchRemaining = buf.getInt(valueOffset);
+					pos += size;
+					continue;
+				}
+				Object value = null;
+				if ((type == TYPE_PUT) && (this.mapped == false))
+				{
+					value = this.serializer.deserialize(Arrays.copyOfRange(body, valueOffset, bodyLength));
+				}
+				batchKeys.add(key);
+				batchEntries.add(new Entry(pos, size, value, type != TYPE_PUT));
+				pos += size;
+				if (batchRemaining > 0)
+				{
+					batchRemaining--;
+				}
+				if (batchRemaining == 0)
+				{
+					this.applyReplayed(batchKeys, batchEntries);
+				}
+			}
+		}
+		catch (EOFException e) { /* torn record, handled below */ }
+
+		if (batchRemaining > 0)
+		{
+			logger.warn("Ignoring incomplete batch at {} in {}", batchStart, this.file);
+			pos = batchStart;
+		}
+		if (pos < length)
+		{
+			logger.warn("Truncating {} bytes of incomplete or corrupt records from {}", length - pos, this.file);
+			this.channel.truncate(pos);
+			this.channel.force(true);
+		}
+		this.position = pos;
+	}
+
+	private static long writeFileHeader(FileChannel channel, long generation) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(FILE_HEADER_BYTES);
+		buf.putInt(MAGIC);
+		buf.putShort(VERSION);
+		buf.putLong(generation);
+		buf.flip();
+		return writeFully(channel, 0, buf);
+	}
+
+	private void applyReplayed(List<String> keys, List<Entry> entries) throws IOException
+	{
+		try
+		{
+			for (int x = 0; x < keys.size(); x++)
+			{
+				Entry entry = entries.get(x);
+				this.apply((entry.removed == true) ? TYPE_REMOVE : TYPE_PUT, keys.get(x), entry.offset, entry.size, entry.value);
+			}
+		}
+		catch (FileSystemException e)
+		{
+			throw new IOException(e.getMessage(), e.getCause());
+		}
+		keys.clear();
+		entries.clear();
+	}
+
+	private static ByteBuffer encodeRecord(byte type, String key, byte[] value)
+	{
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int bodyLength = 1 + 4 + keyBytes.length + value.length;
+		ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER_BYTES + bodyLength);
+		buf.position(RECORD_HEADER_BYTES);
+		buf.put(type);
+		buf.putInt(keyBytes.length);
+		buf.put(keyBytes);
+		buf.put(value);
+
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), RECORD_HEADER_BYTES, bodyLength);
+		buf.putInt(0, (int)crc.getValue());
+		buf.putInt(4, bodyLength);
+		buf.flip();
+		return buf;
+	}
+
+	private static int writeFully(FileChannel channel, long position, ByteBuffer buf) throws IOException
+	{
+		int written = 0;
+		while (buf.hasRemaining())
+		{
+			written += channel.write(buf, position + written);
+		}
+		return written;
+	}
+
+	/**
+	 * Where a key's latest record is. Tombstones hide keys that are still in the index.
+	 */
+	private static final class Entry
+	{
+		final long offset;
+		final int size;
+		final Object value;
+		final boolean removed;
+
+		Entry(long offset, int size, Object value, boolean removed)
+		{
+			this.offset = offset;
+			this.size = size;
+			this.value = value;
+			this.removed = removed;
+		}
+	}
+
+	/**
+	 * Changes to write atomically with commit(Batch)
+	 */
+	public static final class Batch
+	{
+		private final List<Op> ops = new ArrayList<Op>();
+
+		public Batch put(String key, Object value)
+		{
+			this.ops.add(new Op(TYPE_PUT, key, value));
+			return this;
+		}
+
+		public Batch remove(String key)
+		{
+			this.ops.add(new Op(TYPE_REMOVE, key, null));
+			return this;
+		}
+
+		public int size() { return this.ops.size(); }
+		public boolean isEmpty() { return this.ops.isEmpty(); }
+		public void clear() { this.ops.clear(); }
+
+		private static final class Op
+		{
+			final byte type;
+			final String key;
+			final Object value;
+
+			Op(byte type, String key, Object value)
+			{
+				this.type = type;
+				this.key = key;
+				this.value = value;
+			}
+		}
+	}
+
+	private interface LockedOp<T>
+	{
+		T run() throws IOException, FileSystemException;
+	}
+
+	private interface SlotVisitor
+	{
+		void visit(Slot slot) throws IOException;
+	}
+
+	private static final class Slot implements Comparable<Slot>
+	{
+		final long hash;
+		final long offset;
+		final String key;
+
+		Slot(long hash, long offset, String key)
+		{
+			this.hash = hash;
+			this.offset = offset;
+			this.key = key;
+		}
+
+		public int compareTo(Slot other)
+		{
+			return Long.compare(this.hash, other.hash);
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package com.cffreedom.utils.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fast hashing of strings, byte arrays and files. Each thread reuses its own
+ * MessageDigest per algorithm (getInstance() does a provider lookup every time)
+ * and hex is built from a lookup table. Files are streamed through a FileChannel
+ * into a per thread direct buffer so they are never held in memory, and many
+ * files can be hashed in parallel.
+ *
+ * MD5 and SHA-1 are fine for fingerprinting/change detection but shouldn't be
+ * used for anything security related.
+ *
+ * Original Class: com.cffreedom.utils.security.HashUtils
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class HashUtils
+{
+	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.security.HashUtils");
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final int BUFFER_BYTES = 256 * 1024;
+	// Below this many strings hashAll() isn't worth splitting across threads
+	private static final int PARALLEL_THRESHOLD = 1024;
+
+	/**
+	 * Algorithms every JVM is required to support
+	 */
+	public static enum Algorithm
+	{
+		MD5("MD5"), SHA1("SHA-1"), SHA256("SHA-256"), SHA512("SHA-512");
+
+		private final String name;
+		Algorithm(String name) { this.name = name; }
+		public String getName() { return this.name; }
+	}
+
+	private static final ThreadLocal<MessageDigest[]> digests = ThreadLocal.withInitial(() -> new MessageDigest[Algorithm.values().length]);
+	private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_BYTES));
+
+	/**
+	 * @return This thread's digest for the algorithm, reset and ready to use
+	 */
+	private static MessageDigest getDigest(Algorithm algorithm)
+	{
+		MessageDigest[] cache = digests.get();
+		MessageDigest md = cache[algorithm.ordinal()];
+		if (md == null)
+		{
+			try
+			{
+				md = MessageDigest.getInstance(algorithm.getName());
+			}
+			catch (NoSuchAlgorithmException e)
+			{
+				throw new IllegalStateException("Required digest algorithm missing: " + algorithm.getName(), e);
+			}
+			cache[algorithm.ordinal()] = md;
+		}
+		md.reset();
+		return md;
+	}
+
+	/**
+	 * Hash the arrays one after the other (ex: salt then value)
+	 */
+	public static byte[] hash(Algorithm algorithm, byte[]... values)
+	{
+		MessageDigest md = getDigest(algorithm);
+		for (byte[] value : values)
+		{
+			md.update(value);
+		}
+		return md.digest();
+	}
+
+	/**
+	 * @return Lower case hex hash of the UTF-8 bytes of the value
+	 */
+	public static String hashHex(Algorithm algorithm, String value)
+	{
+		return toHex(hash(algorithm, value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Hash many strings, spread across the common ForkJoinPool when there are a lot of them
+	 * @return Lower case hex hashes in the same order
+	 */
+	public static List<String> hashAll(final Algorithm algorithm, List<String> values)
+	{
+		List<String> ret = new ArrayList<String>(values.size());
+		if (values.size() < PARALLEL_THRESHOLD)
+		{
+			for (String value : values)
+			{
+				ret.add(hashHex(algorithm, value));
+			}
+		}
+		else
+		{
+			values.parallelStream().map(value -> hashHex(algorithm, value)).forEachOrdered(ret::add);
+		}
+		return ret;
+	}
+
+	/**
+	 * Stream the file through the digest
+	 * @param algorithm
+	 * @param file
+	 * @return The hash
+	 * @throws IOException
+	 */
+	public static byte[] hashFile(Algorithm algorithm, String file) throws IOException
+	{
+		MessageDigest md = getDigest(algorithm);
+		ByteBuffer buf = buffers.get();
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ))
+		{
+			buf.clear();
+			while (channel.read(buf) >= 0)
+			{
+				buf.flip();
+				md.update(buf);
+				buf.clear();
+			}
+		}
+		return md.digest();
+	}
+
+	public static String hashFileHex(Algorithm algorithm, String file) throws IOException
+	{
+		return toHex(hashFile(algorithm, file));
+	}
+
+	/**
+	 * Hash the files in parallel on the common ForkJoinPool
+	 * @see #hashFiles(Algorithm, Collection, Executor)
+	 */
+	public static Map<String, String> hashFiles(Algorithm algorithm, Collection<String> files)
+	{
+		return hashFiles(algorithm, files, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Hash the files in parallel
+	 * @param algorithm
+	 * @param files
+	 * @param executor Runs the hashing (ex: a fixed size pool to limit how many files are read at once)
+	 * @return Lower case hex hash by file in the same order as the files passed in.
+	 * Files that couldn't be read are logged and have a null hash.
+	 */
+	public static Map<String, String> hashFiles(final Algorithm algorithm, Collection<String> files, Executor executor)
+	{
+		Map<String, CompletableFuture<String>> futures = new LinkedHashMap<String, CompletableFuture<String>>();
+		for (final String file : files)
+		{
+			futures.put(file, CompletableFuture.supplyAsync(() -> {
+				try
+				{
+					return hashFileHex(algorithm, file);
+				}
+				catch (IOException e)
+				{
+					logger.warn("Unable to hash {}: {}", file, e.getMessage());
+					return null;
+				}
+			}, executor));
+		}
+
+		Map<String, String> ret = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, CompletableFuture<String>> future : futures.entrySet())
+		{
+			try
+			{
+				ret.put(future.getKey(), future.getValue().get());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while hashing files", e);
+			}
+			catch (ExecutionException e)
+			{
+				logger.warn("Unable to hash {}: {}", future.getKey(), e.getCause().getMessage());
+				ret.put(future.getKey(), null);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return Lower case hex of the bytes
+	 */
+	public static String toHex(byte[] bytes)
+	{
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			int b = bytes[i] & 0xff;
+			chars[i * 2] = HEX[b >>> 4];
+			chars[(i * 2) + 1] = HEX[b & 0x0f];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,260 @@
+package com.cffreedom.utils.security;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Salted, deliberately slow password hashing with PBKDF2-HMAC-SHA256. Hashes are
+ * stored as $pbkdf2-sha256$iterations$salt$hash (Base64) so the cost can be raised
+ * later: verifyAndRehash() returns a new hash when a password checks out against a
+ * hash made with a lower cost (or an unsalted MD5 hash from SecurityUtils.encryptMD5())
+ * so stored hashes are upgraded as users log in.
+ *
+ * verifyAsync() runs verification on a bounded pool so a spike of logins queues up
+ * (and is rejected once the queue is full) instead of tying up CPU on every request
+ * thread. Use calibrate() to pick a cost that takes the desired time per hash on the
+ * hardware it runs on.
+ *
+ * Original Class: com.cffreedom.utils.security.PasswordHasher
+ * @author MarkJacobsen.net
+ * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
+ *
+ * Free to use, modify, redistribute.  Must keep full class header including
+ * copyright and note your modifications.
+ *
+ * If this helped you out or saved you time, please consider...
+ * 1) Donating: http://www.communicationfreedom.com/go/donate/
+ * 2) Shoutout on twitter: @MarkJacobsen or @cffreedom
+ * 3) Linking to: http://markjacobsen.net
+ *
+ * Changes:
+ * 2026-10-17 	MarkJacobsen.net 	Created
+ */
+public class PasswordHasher implements Closeable
+{
+	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.security.PasswordHasher");
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final String PREFIX = "$pbkdf2-sha256$";
+	public static final int DEFAULT_ITERATIONS = 210000;
+	public static final int DEFAULT_MAX_QUEUED = 1000;
+	private static final int MIN_ITERATIONS = 1000;
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BYTES = 32;
+	private static final SecureRandom random = new SecureRandom();
+
+	private final int iterations;
+	private final ThreadPoolExecutor executor;
+
+	public PasswordHasher() { this(DEFAULT_ITERATIONS); }
+	public PasswordHasher(int iterations) { this(iterations, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_QUEUED); }
+
+	/**
+	 * @param iterations PBKDF2 iterations for new hashes (the cost)
+	 * @param threads Most verifications run at once by verifyAsync()
+	 * @param maxQueued Most verifications waiting for a thread before new ones are rejected
+	 */
+	public PasswordHasher(int iterations, int threads, int maxQueued)
+	{
+		if (iterations < MIN_ITERATIONS)
+		{
+			throw new IllegalArgumentException("iterations must be at least " + MIN_ITERATIONS);
+		}
+		this.iterations = iterations;
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(maxQueued), r -> {
+			Thread thread = new Thread(r, "PasswordHasher-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	public int getIterations() { return this.iterations; }
+	public int getQueuedCount() { return this.executor.getQueue().size(); }
+	public int getActiveCount() { return this.executor.getActiveCount(); }
+
+	/**
+	 * @return A new salted hash of the password to store
+	 */
+	public String hash(String password)
+	{
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		byte[] hash = pbkdf2(password, salt, this.iterations);
+		return PREFIX + this.iterations + "$" + new String(Base64.encodeBase64(salt), StandardCharsets.US_ASCII) + "$" + new String(Base64.encodeBase64(hash), StandardCharsets.US_ASCII);
+	}
+
+	public boolean verify(String password, String storedHash)
+	{
+		return this.verifyAndRehash(password, storedHash).isValid();
+	}
+
+	/**
+	 * @return True if the hash wasn't made by this with the current cost
+	 */
+	public boolean needsRehash(String storedHash)
+	{
+		String[] parts = parse(storedHash);
+		return (parts == null) || (Integer.parseInt(parts[0]) < this.iterations);
+	}
+
+	/**
+	 * Check the password and, if it matches a hash made with a lower cost or an older
+	 * scheme, hash it again with the current settings
+	 * @param password
+	 * @param storedHash
+	 * @return The result (check getNewHash() for a hash to store in place of the old one)
+	 */
+	public VerifyResult verifyAndRehash(String password, String storedHash)
+	{
+		if ((password == null) || (storedHash == null))
+		{
+			return new VerifyResult(false, null);
+		}
+		boolean valid;
+		String[] parts = parse(storedHash);
+		if (parts != null)
+		{
+			byte[] salt = Base64.decodeBase64(parts[1]);
+			byte[] expected = Base64.decodeBase64(parts[2]);
+			valid = MessageDigest.isEqual(expected, pbkdf2(password, salt, Integer.parseInt(parts[0]), expected.length));
+		}
+		else if (storedHash.matches("[0-9a-f]{32}"))
+		{
+			// Unsalted MD5 from SecurityUtils.encryptMD5()
+			byte[] actual = HashUtils.toHex(HashUtils.hash(HashUtils.Algorithm.MD5, password.getBytes())).getBytes(StandardCharsets.US_ASCII);
+			valid = MessageDigest.isEqual(storedHash.getBytes(StandardCharsets.US_ASCII), actual);
+		}
+		else
+		{
+			logger.warn("Unrecognized password hash format");
+			valid = false;
+		}
+		String newHash = ((valid == true) && (this.needsRehash(storedHash) == true)) ? this.hash(password) : null;
+		return new VerifyResult(valid, newHash);
+	}
+
+	/**
+	 * verifyAndRehash() on the bounded pool
+	 * @return A future that completes with the result, or exceptionally with a
+	 * RejectedExecutionException if too many verifications are already queued
+	 */
+	public CompletableFuture<VerifyResult> verifyAsync(final String password, final String storedHash)
+	{
+		try
+		{
+			return CompletableFuture.supplyAsync(() -> this.verifyAndRehash(password, storedHash), this.executor);
+		}
+		catch (RejectedExecutionException e)
+		{
+			CompletableFuture<VerifyResult> ret = new CompletableFuture<VerifyResult>();
+			ret.completeExceptionally(e);
+			return ret;
+		}
+	}
+
+	/**
+	 * Find the number of iterations that takes about targetMillis per hash on this machine
+	 * @param targetMillis
+	 * @return The iterations (never less than the minimum allowed)
+	 */
+	public static int calibrate(long targetMillis)
+	{
+		byte[] salt = new byte[SALT_BYTES];
+		int probe = 10000;
+		pbkdf2("warm up", salt, probe);
+		long start = System.nanoTime();
+		pbkdf2("calibrate", salt, probe);
+		double nanosPerIteration = (double)(System.nanoTime() - start) / probe;
+		long iterations = (long)((targetMillis * 1000000.0) / Math.max(nanosPerIteration, 1.0));
+		int ret = (int)Math.max(MIN_ITERATIONS, Math.min(Integer.MAX_VALUE, iterations));
+		logger.debug("{} iterations take about {}ms", ret, targetMillis);
+		return ret;
+	}
+
+	/**
+	 * Stop the verification threads (queued verifications still run)
+	 */
+	public void close()
+	{
+		this.executor.shutdown();
+	}
+
+	/**
+	 * @return iterations, salt, hash or null if it isn't one of our hashes
+	 */
+	private static String[] parse(String storedHash)
+	{
+		if ((storedHash == null) || (storedHash.startsWith(PREFIX) == false))
+		{
+			return null;
+		}
+		String[] parts = storedHash.substring(PREFIX.length()).split("\\$");
+		if ((parts.length != 3) || (parts[0].matches("[0-9]{1,10}") == false) || (Long.parseLong(parts[0]) > Integer.MAX_VALUE))
+		{
+			return null;
+		}
+		return parts;
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) { return pbkdf2(password, salt, iterations, HASH_BYTES); }
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations, int bytes)
+	{
+		char[] chars = password.toCharArray();
+		PBEKeySpec spec = new PBEKeySpec(chars, salt, Math.max(1, iterations), Math.max(1, bytes) * 8);
+		try
+		{
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new IllegalStateException("Unable to hash password with " + ALGORITHM, e);
+		}
+		finally
+		{
+			spec.clearPassword();
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+	/**
+	 * Outcome of checking a password
+	 */
+	public static final class VerifyResult
+	{
+		private final boolean valid;
+		private final String newHash;
+
+		VerifyResult(boolean valid, String newHash)
+		{
+			this.valid = valid;
+			this.newHash = newHash;
+		}
+
+		public boolean isValid() { return this.valid; }
+
+		/**
+		 * @return A hash with the current settings to store in place of the old one, or
+		 * null if the password was wrong or the stored hash is up to date
+		 */
+		public String getNewHash() { return this.newHash; }
+	}
+}
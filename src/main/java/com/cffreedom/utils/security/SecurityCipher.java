@@ -1,9 +1,25 @@
 package com.cffreedom.utils.security;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -12,6 +28,9 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.DESKeySpec;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import com.cffreedom.utils.Convert;
 
@@ -20,6 +39,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Encrypts/decrypts strings and streams with a secret key. Each thread reuses its
+ * own Cipher instances (Cipher isn't thread safe and looking up the provider is
+ * expensive) so encrypting or decrypting many values, individually or with
+ * encryptAll()/decryptAll(), only pays that cost once per thread.
+ * 
+ * With Mode.AES_GCM values are encrypted with AES-256-GCM (authenticated, and hardware
+ * accelerated by the JVM on CPUs with AES instructions) using a key derived from
+ * the secret with PBKDF2. The key is derived once per salt and the most recently
+ * used keys are cached. Each value starts with a versioned header (magic, version,
+ * type, PBKDF2 iterations and salt) followed by a random 12 byte IV and the
+ * ciphertext/tag.
+ * 
+ * Streams are encrypted in chunks so files of any size can be handled without
+ * holding them in memory. Each chunk is authenticated on its own (with its position
+ * and whether it is the last one) so nothing is written out before it is verified
+ * and a truncated or reordered file is rejected.
+ * 
+ * Mode.DES (the original single DES format) is still the default so values written
+ * by existing callers stay readable by older versions. Pass Mode.AES_GCM to opt in
+ * once every reader has been upgraded. decrypt() recognizes the header so either
+ * format can always be read.
+ * 
  * Original Class: com.cffreedom.utils.security.SecurityManager
  * @author markjacobsen.net (http://mjg2.net/code)
  * Copyright: Communication Freedom, LLC - http://www.communicationfreedom.com
@@ -37,19 +78,84 @@ import org.slf4j.LoggerFactory;
  * 2013-07-16 	markjacobsen.net 	Renamed from EncryptDecryptProxy
  * 2013-07-19 	markjacobsen.net 	Renamed from SecurityManager
  * 2013-08-14 	markjacobsen.net 	More informative error handling
+ * 2026-10-17 	MarkJacobsen.net 	Reuse Cipher instances per thread, added encryptAll() and decryptAll()
+ * 2026-10-17 	MarkJacobsen.net 	AES-GCM with PBKDF2 keys and a versioned header by default, added stream
+ * 									encryption, DES values are still decrypted
+ * 2026-10-18 	MarkJacobsen.net 	DES stays the default (AES-GCM is opt in), derived keys kept in an LRU cache
  */
 public class SecurityCipher
 {
 	private static final Logger logger = LoggerFactory.getLogger("com.cffreedom.utils.security.SecurityCipher");
 	private static final String ALGORITHM = "DES";
 	private static final String CHARSET = "UTF8";
+	private static final String GCM_ALGORITHM = "AES/GCM/NoPadding";
+	private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+	public static final int DEFAULT_ITERATIONS = 210000;
+	public static final int DEFAULT_CHUNK_BYTES = 64 * 1024;
+	private static final int MIN_ITERATIONS = 1000;
+	private static final int MAX_ITERATIONS = 10000000;
+	private static final int MAX_CHUNK_BYTES = 16 * 1024 * 1024;
+	private static final int KEY_BITS = 256;
+	private static final int SALT_BYTES = 16;
+	private static final int IV_BYTES = 12;
+	private static final int TAG_BITS = 128;
+	private static final int TAG_BYTES = TAG_BITS / 8;
+	private static final int NONCE_PREFIX_BYTES = 8;
+	// Header: "CFE", version, type, int iterations, salt
+	private static final byte[] MAGIC = { 'C', 'F', 'E' };
+	private static final byte VERSION = 1;
+	private static final byte TYPE_VALUE = 1;
+	private static final byte TYPE_STREAM = 2;
+	private static final int HEADER_BYTES = MAGIC.length + 1 + 1 + 4 + SALT_BYTES;
+	// Stream header adds int chunk size and the nonce prefix
+	private static final int STREAM_HEADER_BYTES = HEADER_BYTES + 4 + NONCE_PREFIX_BYTES;
+	private static final int MAX_CACHED_KEYS = 16;
+	private static final SecureRandom random = new SecureRandom();
+	
+	/**
+	 * How encrypt() encrypts strings
+	 * AES_GCM - AES-256-GCM with a PBKDF2 derived key and versioned header
+	 * DES - The original single DES format older versions can read (default)
+	 */
+	public static enum Mode { AES_GCM, DES };
+	
 	private String secretKey = null;
 	private DESKeySpec keySpec = null;
 	private SecretKeyFactory keyFactory = null;
 	private SecretKey key = null;
+	private final ThreadLocal<Cipher> encryptCipher = new ThreadLocal<Cipher>();
+	private final ThreadLocal<Cipher> decryptCipher = new ThreadLocal<Cipher>();
+	private final ThreadLocal<Cipher> gcmCipher = new ThreadLocal<Cipher>();
+	private final char[] password;
+	private final Mode mode;
+	private final int iterations;
+	private final byte[] salt = new byte[SALT_BYTES];
+	// Most recently used derived AES keys by iterations and salt
+	private final Map<String, SecretKey> derivedKeys = Collections.synchronizedMap(new LinkedHashMap<String, SecretKey>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SecretKey> eldest)
+		{
+			return this.size() > MAX_CACHED_KEYS;
+		}
+	});
+	
+	public SecurityCipher(String secretKey) { this(secretKey, Mode.DES); }
+	public SecurityCipher(String secretKey, Mode mode) { this(secretKey, mode, DEFAULT_ITERATIONS); }
 	
-	public SecurityCipher(String secretKey)
+	/**
+	 * @param secretKey
+	 * @param mode How strings are encrypted (both formats can always be decrypted)
+	 * @param iterations PBKDF2 iterations used to derive AES keys (only paid once per
+	 * instance and once per salt found while decrypting)
+	 */
+	public SecurityCipher(String secretKey, Mode mode, int iterations)
 	{
+		this.password = secretKey.toCharArray();
+		this.mode = mode;
+		this.iterations = Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations));
+		random.nextBytes(this.salt);
 		try
 		{
 			if (secretKey.length() < 16)
@@ -69,58 +175,418 @@ public class SecurityCipher
 		}
 	}
 	
+	public Mode getMode() { return this.mode; }
+	
 	public String encrypt(String value)
 	{
+		if ((value == null) || (value.length() == 0))
+		{
+			logger.warn("No value passed in. Returning zero length string.");
+			return "";
+		}
+		if (this.mode == Mode.AES_GCM)
+		{
+			return this.encryptGcm(value);
+		}
 		try
 		{
-			if ((value == null) || (value.length() == 0))
+			return this.encrypt(this.getCipher(this.encryptCipher, Cipher.ENCRYPT_MODE), value);
+		}
+		catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException e)
+		{
+			logger.error(e.getClass().getSimpleName() + " - " + e.getMessage());
+			return null;
+		}
+	}
+	
+	public String decrypt(String value)
+	{
+		if ((value == null) || (value.length() == 0))
+		{
+			logger.warn("No value passed in. Returning zero length string.");
+			return "";
+		}
+		byte[] bytes = Base64.decodeBase64(value.getBytes());
+		if (isVersioned(bytes, TYPE_VALUE) == true)
+		{
+			String decrypted = this.decryptGcm(bytes);
+			if (decrypted != null)
 			{
-				logger.warn("No value passed in. Returning zero length string.");
-				return "";
+				return decrypted;
 			}
-			else
+			// A DES value can start with the header bytes by chance (1 in 2^40)
+		}
+		try
+		{
+			return this.decrypt(this.getCipher(this.decryptCipher, Cipher.DECRYPT_MODE), value);
+		}
+		catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException e)
+		{
+			logger.error(e.getClass().getSimpleName() + " - " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Encrypt every value reusing this thread's Cipher
+	 * @param values
+	 * @return The encrypted values in the same order (null for any that failed, "" for empty ones)
+	 */
+	public List<String> encryptAll(Collection<String> values)
+	{
+		List<String> ret = new ArrayList<String>(values.size());
+		for (String value : values)
+		{
+			ret.add(((value == null) || (value.length() == 0)) ? "" : this.encrypt(value));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Decrypt every value reusing this thread's Cipher (ex: all of the entries in a file at startup)
+	 * @param values
+	 * @return The decrypted values in the same order (null for any that failed, "" for empty ones)
+	 */
+	public List<String> decryptAll(Collection<String> values)
+	{
+		List<String> ret = new ArrayList<String>(values.size());
+		for (String value : values)
+		{
+			ret.add(((value == null) || (value.length() == 0)) ? "" : this.decrypt(value));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Encrypt everything read from in to out with AES-GCM in chunks. Neither stream is closed.
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 */
+	public void encrypt(InputStream in, OutputStream out) throws IOException { this.encrypt(in, out, DEFAULT_CHUNK_BYTES); }
+	
+	public void encrypt(InputStream in, OutputStream out, int chunkBytes) throws IOException
+	{
+		if ((chunkBytes <= 0) || (chunkBytes > MAX_CHUNK_BYTES))
+		{
+			throw new IllegalArgumentException("chunkBytes must be between 1 and " + MAX_CHUNK_BYTES);
+		}
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(STREAM_HEADER_BYTES);
+			this.putHeader(header, TYPE_STREAM, this.iterations, this.salt);
+			header.putInt(chunkBytes);
+			byte[] noncePrefix = new byte[NONCE_PREFIX_BYTES];
+			random.nextBytes(noncePrefix);
+			header.put(noncePrefix);
+			byte[] aad = header.array();
+			out.write(aad);
+	
+			SecretKey aesKey = this.getDerivedKey(this.iterations, this.salt);
+			Cipher cipher = this.getGcmCipher();
+			byte[] chunk = new byte[chunkBytes];
+			byte[] next = new byte[chunkBytes];
+			byte[] encrypted = new byte[chunkBytes + TAG_BYTES];
+			int length = readFully(in, chunk);
+			int counter = 0;
+			while (true)
 			{
-				logger.trace("Encrypting \"{}\"", value, this.key);
-				byte[] cleartext = value.getBytes(CHARSET);
-				Cipher cipher = Cipher.getInstance(ALGORITHM);
-				cipher.init(Cipher.ENCRYPT_MODE, this.key);
-				String encryptedValue = Convert.toString(Base64.encodeBase64(cipher.doFinal(cleartext)));
-				logger.trace("Encrypted value \"{}\"", encryptedValue);
-				return encryptedValue;
+				int nextLength = (length == chunkBytes) ? readFully(in, next) : 0;
+				boolean last = (nextLength == 0);
+				cipher.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(TAG_BITS, nonce(noncePrefix, counter)));
+				cipher.updateAAD(aad);
+				cipher.updateAAD(new byte[] { (byte)(last ? 1 : 0) });
+				int encryptedLength = cipher.doFinal(chunk, 0, length, encrypted, 0);
+				out.write(last ? 1 : 0);
+				out.write(ByteBuffer.allocate(4).putInt(encryptedLength).array());
+				out.write(encrypted, 0, encryptedLength);
+				if (last == true)
+				{
+					break;
+				}
+				byte[] swap = chunk;
+				chunk = next;
+				next = swap;
+				length = nextLength;
+				if (++counter == 0)
+				{
+					throw new IOException("Stream too large to encrypt");
+				}
 			}
+			out.flush();
 		}
-		catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException | BadPaddingException | 
-				IllegalBlockSizeException | UnsupportedEncodingException e)
+		catch (GeneralSecurityException e)
 		{
+			this.gcmCipher.remove();
+			throw new IOException("Unable to encrypt stream: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Decrypt a stream written by encrypt(InputStream, OutputStream). Each chunk is
+	 * verified before it is written to out.
+	 * @param in
+	 * @param out
+	 * @throws IOException If the data is corrupt, truncated or was encrypted with another key
+	 */
+	public void decrypt(InputStream in, OutputStream out) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		byte[] aad = new byte[STREAM_HEADER_BYTES];
+		try
+		{
+			data.readFully(aad);
+		}
+		catch (EOFException e)
+		{
+			throw new IOException("Not an encrypted stream");
+		}
+		if (isVersioned(aad, TYPE_STREAM) == false)
+		{
+			throw new IOException("Not an encrypted stream");
+		}
+		ByteBuffer header = ByteBuffer.wrap(aad);
+		header.position(MAGIC.length + 2);
+		int iterations = header.getInt();
+		byte[] salt = new byte[SALT_BYTES];
+		header.get(salt);
+		int chunkBytes = header.getInt();
+		byte[] noncePrefix = new byte[NONCE_PREFIX_BYTES];
+		header.get(noncePrefix);
+		if ((iterations < MIN_ITERATIONS) || (iterations > MAX_ITERATIONS) || (chunkBytes <= 0) || (chunkBytes > MAX_CHUNK_BYTES))
+		{
+			throw new IOException("Corrupt encrypted stream header");
+		}
+	
+		try
+		{
+			SecretKey aesKey = this.getDerivedKey(iterations, salt);
+			Cipher cipher = this.getGcmCipher();
+			byte[] encrypted = new byte[chunkBytes + TAG_BYTES];
+			byte[] plain = new byte[chunkBytes];
+			int counter = 0;
+			boolean last = false;
+			while (last == false)
+			{
+				int flag;
+				int encryptedLength;
+				try
+				{
+					flag = data.readUnsignedByte();
+					encryptedLength = data.readInt();
+				}
+				catch (EOFException e)
+				{
+					throw new IOException("Encrypted stream is truncated");
+				}
+				if ((flag > 1) || (encryptedLength < TAG_BYTES) || (encryptedLength > encrypted.length))
+				{
+					throw new IOException("Corrupt encrypted stream");
+				}
+				data.readFully(encrypted, 0, encryptedLength);
+				last = (flag == 1);
+				cipher.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(TAG_BITS, nonce(noncePrefix, counter++)));
+				cipher.updateAAD(aad);
+				cipher.updateAAD(new byte[] { (byte)flag });
+				int length = cipher.doFinal(encrypted, 0, encryptedLength, plain, 0);
+				out.write(plain, 0, length);
+			}
+			out.flush();
+		}
+		catch (GeneralSecurityException e)
+		{
+			this.gcmCipher.remove();
+			throw new IOException("Unable to decrypt stream (wrong key or corrupt data): " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * @return This thread's Cipher for the mode, creating and initializing it the first time
+	 */
+	private Cipher getCipher(ThreadLocal<Cipher> pool, int mode) throws InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException
+	{
+		Cipher cipher = pool.get();
+		if (cipher == null)
+		{
+			cipher = Cipher.getInstance(ALGORITHM);
+			cipher.init(mode, this.key);
+			pool.set(cipher);
+		}
+		return cipher;
+	}
+	
+	/**
+	 * @return This thread's AES-GCM Cipher (it has to be initialized with a new IV for every use)
+	 */
+	private Cipher getGcmCipher() throws NoSuchAlgorithmException, NoSuchPaddingException
+	{
+		Cipher cipher = this.gcmCipher.get();
+		if (cipher == null)
+		{
+			cipher = Cipher.getInstance(GCM_ALGORITHM);
+			this.gcmCipher.set(cipher);
+		}
+		return cipher;
+	}
+	
+	/**
+	 * PBKDF2 is deliberately slow so keys are only derived once per salt
+	 */
+	private SecretKey getDerivedKey(int iterations, byte[] salt) throws GeneralSecurityException
+	{
+		String cacheKey = iterations + ":" + Convert.toString(Base64.encodeBase64(salt));
+		SecretKey aesKey = this.derivedKeys.get(cacheKey);
+		if (aesKey == null)
+		{
+			long start = System.currentTimeMillis();
+			PBEKeySpec spec = new PBEKeySpec(this.password, salt, iterations, KEY_BITS);
+			try
+			{
+				byte[] bytes = SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded();
+				aesKey = new SecretKeySpec(bytes, "AES");
+				Arrays.fill(bytes, (byte)0);
+			}
+			finally
+			{
+				spec.clearPassword();
+			}
+			this.derivedKeys.put(cacheKey, aesKey);
+			logger.debug("Derived key in {}ms", System.currentTimeMillis() - start);
+		}
+		return aesKey;
+	}
+	
+	private String encryptGcm(String value)
+	{
+		try
+		{
+			logger.trace("Encrypting \"{}\"", value);
+			byte[] cleartext = value.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + IV_BYTES + cleartext.length + TAG_BYTES);
+			this.putHeader(buf, TYPE_VALUE, this.iterations, this.salt);
+			byte[] iv = new byte[IV_BYTES];
+			random.nextBytes(iv);
+			buf.put(iv);
+	
+			Cipher cipher = this.getGcmCipher();
+			cipher.init(Cipher.ENCRYPT_MODE, this.getDerivedKey(this.iterations, this.salt), new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(buf.array(), 0, HEADER_BYTES);
+			cipher.doFinal(cleartext, 0, cleartext.length, buf.array(), HEADER_BYTES + IV_BYTES);
+			String encryptedValue = Convert.toString(Base64.encodeBase64(buf.array()));
+			logger.trace("Encrypted value \"{}\"", encryptedValue);
+			return encryptedValue;
+		}
+		catch (GeneralSecurityException e)
+		{
+			this.gcmCipher.remove();
 			logger.error(e.getClass().getSimpleName() + " - " + e.getMessage());
 			return null;
 		}
 	}
 	
-	public String decrypt(String value)
+	private String decryptGcm(byte[] bytes)
 	{
+		if (bytes.length < HEADER_BYTES + IV_BYTES + TAG_BYTES)
+		{
+			return null;
+		}
 		try
 		{
-			if ((value == null) || (value.length() == 0))
+			ByteBuffer header = ByteBuffer.wrap(bytes);
+			header.position(MAGIC.length + 2);
+			int iterations = header.getInt();
+			if ((iterations < MIN_ITERATIONS) || (iterations > MAX_ITERATIONS))
 			{
-				logger.warn("No value passed in. Returning zero length string.");
-				return "";
+				return null;
 			}
-			else
+			byte[] salt = new byte[SALT_BYTES];
+			header.get(salt);
+	
+			Cipher cipher = this.getGcmCipher();
+			cipher.init(Cipher.DECRYPT_MODE, this.getDerivedKey(iterations, salt), new GCMParameterSpec(TAG_BITS, bytes, HEADER_BYTES, IV_BYTES));
+			cipher.updateAAD(bytes, 0, HEADER_BYTES);
+			byte[] plain = cipher.doFinal(bytes, HEADER_BYTES + IV_BYTES, bytes.length - HEADER_BYTES - IV_BYTES);
+			String decryptedValue = new String(plain, StandardCharsets.UTF_8);
+			logger.trace("Decrypted value \"{}\"", decryptedValue);
+			return decryptedValue;
+		}
+		catch (GeneralSecurityException e)
+		{
+			this.gcmCipher.remove();
+			logger.debug("Unable to decrypt AES-GCM value: {} - {}", e.getClass().getSimpleName(), e.getMessage());
+			return null;
+		}
+	}
+	
+	private void putHeader(ByteBuffer buf, byte type, int iterations, byte[] salt)
+	{
+		buf.put(MAGIC);
+		buf.put(VERSION);
+		buf.put(type);
+		buf.putInt(iterations);
+		buf.put(salt);
+	}
+	
+	private static boolean isVersioned(byte[] bytes, byte type)
+	{
+		return (bytes.length >= HEADER_BYTES) && (bytes[0] == MAGIC[0]) && (bytes[1] == MAGIC[1]) && (bytes[2] == MAGIC[2]) &&
+				(bytes[3] == VERSION) && (bytes[4] == type);
+	}
+	
+	private static byte[] nonce(byte[] prefix, int counter)
+	{
+		return ByteBuffer.allocate(IV_BYTES).put(prefix).putInt(counter).array();
+	}
+	
+	private static int readFully(InputStream in, byte[] buf) throws IOException
+	{
+		int length = 0;
+		while (length < buf.length)
+		{
+			int read = in.read(buf, length, buf.length - length);
+			if (read < 0)
 			{
-				logger.trace("Decrypting \"{}\"", value, this.key);
-				byte[] encrypedPwdBytes = Base64.decodeBase64(value.getBytes());
-				Cipher cipher = Cipher.getInstance(ALGORITHM);
-				cipher.init(Cipher.DECRYPT_MODE, this.key);
-				byte[] plainTextPwdBytes = (cipher.doFinal(encrypedPwdBytes));
-				String decryptedValue = Convert.toString(plainTextPwdBytes);
-				logger.trace("Decrypted value \"{}\"", decryptedValue);
-				return decryptedValue;
+				break;
 			}
+			length += read;
+		}
+		return length;
+	}
+	
+	private String encrypt(Cipher cipher, String value)
+	{
+		try
+		{
+			logger.trace("Encrypting \"{}\"", value, this.key);
+			byte[] cleartext = value.getBytes(CHARSET);
+			String encryptedValue = Convert.toString(Base64.encodeBase64(cipher.doFinal(cleartext)));
+			logger.trace("Encrypted value \"{}\"", encryptedValue);
+			return encryptedValue;
+		}
+		catch (BadPaddingException | IllegalBlockSizeException | UnsupportedEncodingException e)
+		{
+			// A Cipher may need to be initialized again after a failure
+			this.encryptCipher.remove();
+			logger.error(e.getClass().getSimpleName() + " - " + e.getMessage());
+			return null;
+		}
+	}
+	
+	private String decrypt(Cipher cipher, String value)
+	{
+		try
+		{
+			logger.trace("Decrypting \"{}\"", value, this.key);
+			byte[] encrypedPwdBytes = Base64.decodeBase64(value.getBytes());
+			byte[] plainTextPwdBytes = (cipher.doFinal(encrypedPwdBytes));
+			String decryptedValue = Convert.toString(plainTextPwdBytes);
+			logger.trace("Decrypted value \"{}\"", decryptedValue);
+			return decryptedValue;
 		}
-		catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException | BadPaddingException |
-				IllegalBlockSizeException e)
+		catch (BadPaddingException | IllegalBlockSizeException e)
 		{
+			// A Cipher may need to be initialized again after a failure
+			this.decryptCipher.remove();
 			logger.error(e.getClass().getSimpleName() + " - " + e.getMessage());
 			return null;
 		}
@@ -20,6 +20,7 @@ import com.cffreedom.utils.file.FileUtils;
  * 
  * Changes:
  * 2013-04-11 	markjacobsen.net 	Added savePasswordToFile() and getPasswordFromFile()
+ * 2026-10-17 	MarkJacobsen.net 	Pointed password hashing at PasswordHasher
  */
 public class SecurityUtils
 {
@@ -64,7 +65,8 @@ public class SecurityUtils
 	}
 	
 	/**
-	 * Not very secure but can do the job
+	 * Not very secure but can do the job. Use PasswordHasher for passwords, which can
+	 * also upgrade hashes made by this as users log in.
 	 * @param password
 	 * @return
 	 * @throws NoSuchAlgorithmException
@@ -75,7 +77,7 @@ public class SecurityUtils
 	}
 	
 	/**
-	 * Return very secure 1 way hash. Might also want to consider BCrypt
+	 * Return 1 way hash. A single fast hash is easy to brute force so use PasswordHasher for passwords.
 	 * @param password
 	 * @param salt
 	 * @return
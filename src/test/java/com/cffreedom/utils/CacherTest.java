@@ -6,14 +6,35 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
+import com.cffreedom.utils.cache.BulkCacheLoader;
+import com.cffreedom.utils.cache.CacheClock;
+import com.cffreedom.utils.cache.CacheLoader;
+import com.cffreedom.utils.cache.CacheStats;
+import com.cffreedom.utils.cache.OffHeapStore;
+import com.cffreedom.utils.cache.RemovalCause;
+import com.cffreedom.utils.cache.RemovalListener;
+import com.cffreedom.utils.cache.StringValueSerializer;
+import com.cffreedom.utils.cache.WTinyLfuEvictionPolicy;
+import com.cffreedom.utils.cache.Weigher;
+
 public class CacherTest 
 {
 	@Test
@@ -71,6 +92,346 @@ public class CacherTest
 		assertNull(cache.get("junk2"));
 	}
 	
+	@Test
+	public void concurrentTest() throws InterruptedException
+	{
+		final Cacher cache = new Cacher(15);
+		final int threads = 8;
+		final int perThread = 2000;
+		final AtomicInteger misses = new AtomicInteger(0);
+		List<Thread> workers = new ArrayList<Thread>();
+		
+		for (int t = 0; t < threads; t++)
+		{
+			final int offset = t * perThread;
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					for (int x = offset; x < offset + perThread; x++)
+					{
+						cache.put("key" + x, x);
+						if (cache.get("key" + x) == null) { misses.incrementAndGet(); }
+					}
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) { worker.join(); }
+		
+		assertEquals(0, misses.get());
+		assertEquals(threads * perThread, cache.size());
+	}
+	
+	@Test
+	public void expireTest() throws InterruptedException
+	{
+		Cacher cache = new Cacher(15);
+		cache.put("gone", "bye", 0);
+		cache.put("here", "hi");
+		Thread.sleep(5);
+		
+		assertNull(cache.get("gone"));
+		assertFalse(cache.containsKey("gone"));
+		assertEquals("hi", cache.get("here"));
+	}
+	
+	@Test
+	public void clockTest()
+	{
+		final AtomicLong now = new AtomicLong(1000000);
+		Cacher cache = new Cacher(15);
+		cache.setClock(new CacheClock() {
+			public long currentTimeMillis() { return now.get(); }
+		});
+		
+		cache.put("short", "hi", 1);
+		cache.put("long", "bye", 10);
+		assertEquals(1000000, cache.getCachedTime("short").getTimeInMillis());
+		
+		now.addAndGet(60 * 1000);
+		assertEquals("hi", cache.get("short"));
+		
+		now.addAndGet(1);
+		assertNull(cache.get("short"));
+		assertNull(cache.getCachedTime("short"));
+		assertEquals(1, cache.size());
+		
+		now.addAndGet(10 * 60 * 1000);
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void durationTest()
+	{
+		final AtomicLong now = new AtomicLong(1000000);
+		Cacher cache = new Cacher(15);
+		cache.setClock(new CacheClock() {
+			public long currentTimeMillis() { return now.get(); }
+		});
+		
+		cache.put("token", "abc", Duration.ofMillis(500));
+		cache.put("session", "xyz", Duration.ofHours(1), Duration.ofSeconds(30));
+		
+		now.addAndGet(501);
+		assertNull(cache.get("token"));
+		
+		// Reading it keeps it alive past the original idle deadline
+		now.addAndGet(20 * 1000);
+		assertEquals("xyz", cache.get("session"));
+		now.addAndGet(20 * 1000);
+		assertEquals("xyz", cache.get("session"));
+		
+		now.addAndGet(30 * 1000 + 1);
+		assertNull(cache.get("session"));
+	}
+	
+	@Test
+	public void defaultPerInstanceTest()
+	{
+		Cacher cache = new Cacher(15);
+		new Cacher(1);
+		assertEquals(Duration.ofMinutes(15), cache.getDefaultTimeToLive());
+	}
+	
+	@Test
+	public void maximumSizeTest()
+	{
+		Cacher cache = new Cacher(15);
+		cache.setMaximumSize(3);
+		final List<String> evicted = new ArrayList<String>();
+		cache.addRemovalListener(new RemovalListener<String, Object>() {
+			public void onRemoval(String key, Object value, RemovalCause cause) {
+				if (cause == RemovalCause.SIZE) { evicted.add(key); }
+			}
+		});
+		
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.put("c", 3);
+		cache.get("a");
+		cache.put("d", 4);
+		
+		assertEquals(3, cache.size());
+		assertEquals(1, evicted.size());
+		assertEquals("b", evicted.get(0));
+		assertNotNull(cache.get("a"));
+	}
+	
+	@Test
+	public void maximumWeightTest()
+	{
+		Cacher cache = new Cacher(15);
+		cache.setMaximumWeight(10, new Weigher<String, Object>() {
+			public int weigh(String key, Object value) { return ((String)value).length(); }
+		});
+		
+		cache.put("a", "12345");
+		cache.put("b", "12345");
+		assertEquals(10, cache.getWeight());
+		cache.put("c", "123");
+		
+		assertEquals(8, cache.getWeight());
+		assertNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+	}
+	
+	@Test
+	public void tinyLfuTest()
+	{
+		Cacher cache = new Cacher(15);
+		cache.setMaximumSize(100, new WTinyLfuEvictionPolicy<String>(100));
+		for (int x = 0; x < 100; x++)
+		{
+			cache.put("hot" + x, x);
+			for (int y = 0; y < 5; y++) { cache.get("hot" + x); }
+		}
+		
+		// A scan of one hit wonders shouldn't flush the hot set
+		for (int x = 0; x < 1000; x++)
+		{
+			cache.put("scan" + x, x);
+		}
+		
+		int hotHits = 0;
+		for (int x = 0; x < 100; x++)
+		{
+			if (cache.get("hot" + x) != null) { hotHits++; }
+		}
+		assertEquals(100, cache.size());
+		assertTrue(hotHits > 90);
+	}
+	
+	@Test
+	public void loaderTest() throws Exception
+	{
+		final Cacher cache = new Cacher(15);
+		final AtomicInteger loads = new AtomicInteger(0);
+		final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+			public String load(String key) throws Exception {
+				loads.incrementAndGet();
+				Thread.sleep(100);
+				return key.toUpperCase();
+			}
+		};
+		
+		List<Thread> workers = new ArrayList<Thread>();
+		final AtomicInteger wrong = new AtomicInteger(0);
+		for (int t = 0; t < 10; t++)
+		{
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					try {
+						String val = cache.get("slow", loader);
+						if ("SLOW".equals(val) == false) { wrong.incrementAndGet(); }
+					} catch (Exception e) { wrong.incrementAndGet(); }
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) { worker.join(); }
+		
+		assertEquals(0, wrong.get());
+		assertEquals(1, loads.get());
+		assertEquals("SLOW", cache.get("slow"));
+	}
+	
+	@Test
+	public void bulkTest() throws Exception
+	{
+		Cacher cache = new Cacher(15);
+		Map<String, Object> items = new HashMap<String, Object>();
+		for (int x = 0; x < 10; x++)
+		{
+			items.put("key" + x, "val" + x);
+		}
+		cache.putAll(items);
+		assertEquals(10, cache.size());
+		
+		cache.invalidateAll(Arrays.asList("key0", "key1"));
+		Map<String, Object> found = cache.getAll(Arrays.asList("key2", "key0", "key3"));
+		assertEquals(Arrays.asList("key2", "key3"), new ArrayList<String>(found.keySet()));
+		
+		final List<Collection<String>> batches = new ArrayList<Collection<String>>();
+		Map<String, Object> loaded = cache.getAll(Arrays.asList("key0", "key2", "key1", "none"), new BulkCacheLoader<String, String>() {
+			public Map<String, String> loadAll(Collection<String> keys) throws Exception {
+				batches.add(new ArrayList<String>(keys));
+				Map<String, String> vals = new HashMap<String, String>();
+				for (String key : keys)
+				{
+					if (key.equals("none") == false) { vals.put(key, key.toUpperCase()); }
+				}
+				return vals;
+			}
+		});
+		assertEquals(1, batches.size());
+		assertEquals(Arrays.asList("key0", "key1", "none"), batches.get(0));
+		assertEquals(Arrays.asList("key0", "key2", "key1"), new ArrayList<String>(loaded.keySet()));
+		assertEquals("KEY0", cache.get("key0"));
+		assertEquals("val2", loaded.get("key2"));
+		assertFalse(cache.containsKey("none"));
+	}
+	
+	@Test
+	public void refreshAheadTest() throws Exception
+	{
+		Cacher cache = new Cacher(15);
+		cache.setRefreshAhead(2 * 60 * 1000, new Executor() {
+			public void execute(Runnable command) { command.run(); }
+		});
+		final AtomicInteger version = new AtomicInteger(0);
+		CacheLoader<String, Integer> loader = new CacheLoader<String, Integer>() {
+			public Integer load(String key) throws Exception { return version.incrementAndGet(); }
+		};
+		
+		cache.put("val", 0, 1);
+		// Already inside the refresh window so the hit returns the old value and reloads
+		assertEquals(Integer.valueOf(0), cache.get("val", loader));
+		assertEquals(Integer.valueOf(1), cache.get("val"));
+	}
+	
+	@Test
+	public void statsTest() throws Exception
+	{
+		Cacher cache = new Cacher(15);
+		cache.setMaximumSize(1);
+		cache.put("a", "1");
+		cache.get("a");
+		cache.get("b");
+		cache.get("c", new CacheLoader<String, String>() {
+			public String load(String key) throws Exception { return "3"; }
+		});
+		
+		CacheStats stats = cache.getStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(2, stats.getMissCount());
+		assertEquals(1, stats.getLoadSuccessCount());
+		assertEquals(1, stats.getEvictionCount());
+		
+		cache.registerMBean("statsTest");
+		ObjectName name = new ObjectName("com.cffreedom.utils:type=Cacher,name=\"statsTest\"");
+		assertEquals(Long.valueOf(1), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "HitCount"));
+		cache.unregisterMBean();
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+	
+	@Test
+	public void offHeapTest()
+	{
+		Cacher cache = new Cacher(15);
+		cache.setMaximumSize(2);
+		cache.setOffHeapTier(new OffHeapStore<String>(1024 * 1024), new StringValueSerializer());
+		final AtomicInteger removals = new AtomicInteger(0);
+		cache.addRemovalListener(new RemovalListener<String, Object>() {
+			public void onRemoval(String key, Object value, RemovalCause cause) { removals.incrementAndGet(); }
+		});
+		
+		for (int x = 0; x < 5; x++)
+		{
+			cache.put("key" + x, "val" + x);
+		}
+		assertEquals(2, cache.size());
+		assertEquals(3, cache.offHeapSize());
+		assertEquals(0, removals.get());
+		
+		// Pulling a cold entry back moves it on heap and pushes another one off
+		assertEquals("val0", cache.get("key0"));
+		assertEquals(2, cache.size());
+		assertEquals(3, cache.offHeapSize());
+		
+		cache.remove("key1");
+		assertNull(cache.get("key1"));
+	}
+	
+	@Test
+	public void snapshotTest() throws Exception
+	{
+		final AtomicLong now = new AtomicLong(1000000);
+		CacheClock clock = new CacheClock() {
+			public long currentTimeMillis() { return now.get(); }
+		};
+		File file = File.createTempFile("cacher", ".snapshot");
+		file.deleteOnExit();
+		
+		Cacher cache = new Cacher(15);
+		cache.setClock(clock);
+		cache.put("short", "hi", 1);
+		cache.put("long", "bye", 10);
+		assertEquals(2, cache.saveSnapshot(file.getAbsolutePath()));
+		
+		// "Restart" 2 minutes later
+		now.addAndGet(2 * 60 * 1000);
+		Cacher restored = new Cacher(15);
+		restored.setClock(clock);
+		assertEquals(1, restored.restoreSnapshot(file.getAbsolutePath()));
+		assertNull(restored.get("short"));
+		assertEquals("bye", restored.get("long"));
+		assertEquals(1000000, restored.getCachedTime("long").getTimeInMillis());
+		
+		now.addAndGet(8 * 60 * 1000 + 1);
+		assertNull(restored.get("long"));
+	}
+	
 	/*
 	@Test
 	public void toListTest() {
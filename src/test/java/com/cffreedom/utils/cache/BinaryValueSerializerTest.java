@@ -0,0 +1,104 @@
+package com.cffreedom.utils.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import org.junit.Test;
+
+public class BinaryValueSerializerTest
+{
+	@Test
+	public void roundTripTest() throws Exception
+	{
+		BinaryValueSerializer serializer = new BinaryValueSerializer();
+		Object[] values = { "hello", "", "\u00e9\u4e2d", 0, -1, Integer.MIN_VALUE, Long.MAX_VALUE, 3.25d, 1.5f,
+				(short)-7, (byte)9, 'x', true, false, new BigDecimal("-12345.678"), new BigInteger("123456789012345678901234567890"),
+				new Date(1234567890L), new java.sql.Timestamp(5L), Arrays.asList(1, "two", null), new HashSet<Object>(Arrays.asList("a", 2L)) };
+		for (Object value : values)
+		{
+			assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+		}
+		assertNull(serializer.deserialize(serializer.serialize(null)));
+		byte[] bytes = { 1, 2, 3 };
+		assertArrayEquals(bytes, (byte[])serializer.deserialize(serializer.serialize(bytes)));
+
+		Map<String, Object> nested = new HashMap<String, Object>();
+		nested.put("list", new ArrayList<Object>(Arrays.asList("a", 1)));
+		TreeMap<String, Object> map = new TreeMap<String, Object>();
+		map.put("b", nested);
+		map.put("a", 1L);
+		Object copy = serializer.deserialize(serializer.serialize(map));
+		assertTrue(copy instanceof TreeMap);
+		assertEquals(map, copy);
+
+		// Much smaller than Java serialization
+		assertTrue(serializer.serialize(map).length * 4 < new JavaValueSerializer().serialize(map).length);
+	}
+
+	@Test
+	public void sameClassTest() throws Exception
+	{
+		BinaryValueSerializer serializer = new BinaryValueSerializer();
+		Hashtable<String, Object> table = new Hashtable<String, Object>();
+		table.put("a", 1);
+		Stack<String> stack = new Stack<String>();
+		stack.push("a");
+		Object[] values = { new ArrayList<Object>(Arrays.asList(1, 2)), new Vector<Object>(Arrays.asList(1, 2)), stack,
+				new LinkedList<Object>(Arrays.asList(1, 2)), Arrays.asList(1, 2), new HashMap<String, Object>(table),
+				new LinkedHashMap<String, Object>(table), table, new TreeMap<String, Object>(table),
+				new HashSet<Object>(Arrays.asList(1, 2)), new LinkedHashSet<Object>(Arrays.asList(1, 2)), new TreeSet<Object>(Arrays.asList(1, 2)) };
+		for (Object value : values)
+		{
+			Object copy = serializer.deserialize(serializer.serialize(value));
+			assertEquals(value, copy);
+			assertEquals(value.getClass(), copy.getClass());
+		}
+	}
+
+	@Test
+	public void javaSerializedTest() throws Exception
+	{
+		BinaryValueSerializer serializer = new BinaryValueSerializer();
+		List<String> list = new ArrayList<String>(Arrays.asList("a", "b"));
+		assertEquals(list, serializer.deserialize(new JavaValueSerializer().serialize(list)));
+	}
+
+	@Test
+	public void compressingTest() throws Exception
+	{
+		CompressingValueSerializer<Object> serializer = new CompressingValueSerializer<Object>(new BinaryValueSerializer());
+		StringBuilder big = new StringBuilder();
+		for (int x = 0; x < 1000; x++)
+		{
+			big.append("repeated text ");
+		}
+		byte[] bytes = serializer.serialize(big.toString());
+		assertTrue(bytes.length < big.length() / 10);
+		assertEquals(big.toString(), serializer.deserialize(bytes));
+		assertEquals("small", serializer.deserialize(serializer.serialize("small")));
+
+		// Values written before compression was turned on are still readable
+		assertEquals("old", serializer.deserialize(new BinaryValueSerializer().serialize("old")));
+		assertEquals("older", serializer.deserialize(new JavaValueSerializer().serialize("older")));
+	}
+}
@@ -0,0 +1,99 @@
+package com.cffreedom.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.cffreedom.utils.Cacher;
+
+public class InvalidationChannelTest
+{
+	@Test
+	public void cacherTest() throws Exception
+	{
+		LoopbackInvalidationChannel channel1 = new LoopbackInvalidationChannel("cacherTest");
+		LoopbackInvalidationChannel channel2 = new LoopbackInvalidationChannel("cacherTest");
+		Cacher node1 = new Cacher(15);
+		Cacher node2 = new Cacher(15);
+		node1.setInvalidationChannel(channel1);
+		node2.setInvalidationChannel(channel2);
+		
+		for (String key : Arrays.asList("a", "b", "c", "d"))
+		{
+			node1.put(key, key);
+			node2.put(key, key);
+		}
+		
+		node1.remove("a");
+		assertFalse(node2.containsKey("a"));
+		node2.invalidateAll(Arrays.asList("b", "c"));
+		assertFalse(node1.containsKey("b"));
+		assertFalse(node1.containsKey("c"));
+		assertTrue(node1.containsKey("d"));
+		
+		node2.clear();
+		assertEquals(0, node1.size());
+		
+		channel1.close();
+		channel2.close();
+	}
+	
+	@Test
+	public void batchTest() throws Exception
+	{
+		LoopbackInvalidationChannel sender = new LoopbackInvalidationChannel("batchTest", "sender", 60000);
+		LoopbackInvalidationChannel receiver = new LoopbackInvalidationChannel("batchTest");
+		final List<Collection<String>> batches = new ArrayList<Collection<String>>();
+		receiver.addListener(new InvalidationChannel.Listener() {
+			public void onInvalidate(Collection<String> keys) { batches.add(keys); }
+			public void onInvalidateAll() { batches.add(null); }
+		});
+		
+		sender.invalidate("a");
+		sender.invalidate("b");
+		assertEquals(0, batches.size());
+		sender.flush();
+		assertEquals(1, batches.size());
+		assertEquals(Arrays.asList("a", "b"), batches.get(0));
+		
+		sender.close();
+		receiver.close();
+	}
+	
+	@Test
+	public void sequenceTest() throws Exception
+	{
+		final AtomicInteger keys = new AtomicInteger(0);
+		final AtomicInteger all = new AtomicInteger(0);
+		LoopbackInvalidationChannel receiver = new LoopbackInvalidationChannel("sequenceTest");
+		receiver.addListener(new InvalidationChannel.Listener() {
+			public void onInvalidate(Collection<String> k) { keys.addAndGet(k.size()); }
+			public void onInvalidateAll() { all.incrementAndGet(); }
+		});
+		
+		byte[] first = new InvalidationMessage("other", 1, 1, false, Arrays.asList("a")).encode();
+		byte[] second = new InvalidationMessage("other", 1, 2, false, Arrays.asList("b")).encode();
+		byte[] fourth = new InvalidationMessage("other", 1, 4, false, Arrays.asList("d")).encode();
+		receiver.receive(first, 0, first.length);
+		receiver.receive(second, 0, second.length);
+		// Duplicates and late arrivals are dropped
+		receiver.receive(first, 0, first.length);
+		assertEquals(2, keys.get());
+		assertEquals(0, all.get());
+		
+		// Missing the 3rd message means we can't trust anything we have
+		receiver.receive(fourth, 0, fourth.length);
+		assertEquals(2, keys.get());
+		assertEquals(1, all.get());
+		
+		receiver.close();
+	}
+}
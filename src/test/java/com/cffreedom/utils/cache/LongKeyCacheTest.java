@@ -0,0 +1,107 @@
+package com.cffreedom.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class LongKeyCacheTest
+{
+	@Test
+	public void putGetRemoveTest()
+	{
+		LongKeyCache<String> cache = new LongKeyCache<String>(Duration.ofMinutes(5), 4);
+		for (long x = 0; x < 1000; x++)
+		{
+			cache.put(x * 31, "val" + x);
+		}
+		assertEquals(1000, cache.size());
+
+		// Removing every other key has to shift the rest back without losing any
+		for (long x = 0; x < 1000; x += 2)
+		{
+			assertEquals("val" + x, cache.remove(x * 31));
+		}
+		assertEquals(500, cache.size());
+		for (long x = 0; x < 1000; x++)
+		{
+			assertEquals((x % 2 == 0) ? null : "val" + x, cache.get(x * 31));
+		}
+
+		cache.put(31, "replaced");
+		assertEquals("replaced", cache.get(31));
+		assertEquals(500, cache.size());
+		cache.put(31, null);
+		assertFalse(cache.containsKey(31));
+
+		cache.put(Long.MIN_VALUE, "min");
+		cache.put(0, "zero");
+		assertEquals("min", cache.get(Long.MIN_VALUE));
+		assertEquals("zero", cache.get(0));
+	}
+
+	@Test
+	public void expireTest()
+	{
+		final AtomicLong now = new AtomicLong(1000);
+		LongKeyCache<String> cache = new LongKeyCache<String>(Duration.ofSeconds(10));
+		cache.setClock(new CacheClock() {
+			@Override
+			public long currentTimeMillis() { return now.get(); }
+		});
+
+		cache.put(1, "default");
+		cache.put(2, "short", Duration.ofMillis(500));
+		assertTrue(cache.containsKey(2));
+
+		now.addAndGet(500);
+		assertNull(cache.get(2));
+		assertEquals("default", cache.get(1));
+		assertEquals(2, cache.size());
+
+		assertEquals(1, cache.cleanupExpiredItems());
+		assertEquals(1, cache.size());
+
+		now.addAndGet(10000);
+		assertNull(cache.get(1));
+	}
+
+	@Test
+	public void churnTest()
+	{
+		final AtomicLong now = new AtomicLong(1000);
+		LongKeyCache<String> cache = new LongKeyCache<String>(Duration.ofMillis(100));
+		cache.setClock(new CacheClock() {
+			@Override
+			public long currentTimeMillis() { return now.get(); }
+		});
+		int capacity = cache.capacity();
+
+		// Never more than 10 live keys, so expired ones have to make room rather than the table growing
+		for (long x = 0; x < 10000; x++)
+		{
+			cache.put(x, "val" + x);
+			now.addAndGet(10);
+		}
+		assertEquals(capacity, cache.capacity());
+		assertEquals("val9999", cache.get(9999));
+	}
+
+	@Test
+	public void intKeyTest()
+	{
+		IntKeyCache<Integer> cache = new IntKeyCache<Integer>();
+		cache.put(-5, -5);
+		cache.put(Integer.MAX_VALUE, 7);
+		assertEquals(Integer.valueOf(-5), cache.get(-5));
+		assertEquals(Integer.valueOf(7), cache.get(Integer.MAX_VALUE));
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get(-5));
+	}
+}
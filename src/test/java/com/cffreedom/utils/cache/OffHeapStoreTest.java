@@ -0,0 +1,54 @@
+package com.cffreedom.utils.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class OffHeapStoreTest
+{
+	@Test
+	public void putGetTest()
+	{
+		OffHeapStore<String> store = new OffHeapStore<String>(1024, 4);
+		store.put("a", new byte[] { 1, 2, 3 }, Long.MAX_VALUE);
+		store.put("b", new byte[] { 4, 5 }, 10);
+		
+		assertArrayEquals(new byte[] { 1, 2, 3 }, store.get("a", 0));
+		assertArrayEquals(new byte[] { 4, 5 }, store.get("b", 10));
+		assertNull(store.get("b", 11));
+		assertNull(store.get("junk", 0));
+		assertFalse(store.put("big", new byte[300], Long.MAX_VALUE));
+	}
+	
+	@Test
+	public void recycleTest()
+	{
+		// 4 segments of 100 bytes that each hold 2 of these values
+		OffHeapStore<String> store = new OffHeapStore<String>(400, 4);
+		for (int x = 0; x < 10; x++)
+		{
+			store.put("key" + x, new byte[50], Long.MAX_VALUE);
+		}
+		
+		// Writing the 9th value wrapped around and recycled the segment holding the first 2
+		assertNull(store.get("key0", 0));
+		assertNull(store.get("key1", 0));
+		assertEquals(8, store.size());
+	}
+	
+	@Test
+	public void mappedFileTest() throws Exception
+	{
+		File file = File.createTempFile("offheap", ".dat");
+		file.deleteOnExit();
+		OffHeapStore<String> store = new OffHeapStore<String>(file.getAbsolutePath(), 4096);
+		store.put("a", "hello".getBytes("UTF-8"), Long.MAX_VALUE);
+		assertEquals("hello", new String(store.get("a", 0), "UTF-8"));
+		store.close();
+	}
+}
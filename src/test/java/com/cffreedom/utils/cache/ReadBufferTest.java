@@ -0,0 +1,40 @@
+package com.cffreedom.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReadBufferTest
+{
+	@Test
+	public void offerDrainTest()
+	{
+		ReadBuffer<Integer> buffer = new ReadBuffer<Integer>();
+		boolean full = false;
+		int offered = 0;
+		while (full == false)
+		{
+			full = buffer.offer(offered++);
+		}
+		// Once full further reads are dropped
+		assertTrue(buffer.offer(-1));
+
+		List<Integer> drained = new ArrayList<Integer>();
+		buffer.drain(drained::add);
+		assertEquals(offered, drained.size());
+		for (int x = 0; x < offered; x++)
+		{
+			assertEquals(x, drained.get(x).intValue());
+		}
+
+		assertFalse(buffer.offer(100));
+		drained.clear();
+		buffer.drain(drained::add);
+		assertEquals("[100]", drained.toString());
+	}
+}
@@ -0,0 +1,65 @@
+package com.cffreedom.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimerWheelTest
+{
+	private List<String> advance(TimerWheel<String> wheel, long now)
+	{
+		final List<String> expired = new ArrayList<String>();
+		wheel.advance(now, timeout -> expired.add(timeout.getItem()));
+		return expired;
+	}
+
+	@Test
+	public void expireTest()
+	{
+		TimerWheel<String> wheel = new TimerWheel<String>(100);
+		long start = 1000000;
+		wheel.advance(start, timeout -> { });
+		wheel.schedule("second", start + 1000);
+		wheel.schedule("hour", start + (60 * 60 * 1000));
+		wheel.schedule("week", start + (7L * 24 * 60 * 60 * 1000));
+
+		assertTrue(advance(wheel, start + 999).isEmpty());
+		assertEquals("[second]", advance(wheel, start + 1000).toString());
+
+		// Step along a minute at a time so the long deadlines cascade down the levels
+		List<String> expired = new ArrayList<String>();
+		for (long now = start; now < start + (60 * 60 * 1000); now += 60 * 1000)
+		{
+			expired.addAll(advance(wheel, now));
+		}
+		assertTrue(expired.isEmpty());
+		assertEquals("[hour]", advance(wheel, start + (60 * 60 * 1000)).toString());
+
+		// Jumping straight past a deadline still finds it
+		assertEquals("[week]", advance(wheel, start + (8L * 24 * 60 * 60 * 1000)).toString());
+	}
+
+	@Test
+	public void cancelTest()
+	{
+		TimerWheel<String> wheel = new TimerWheel<String>(100);
+		wheel.advance(0, timeout -> { });
+		TimerWheel.Timeout<String> gone = wheel.schedule("gone", 500);
+		TimerWheel.Timeout<String> moved = wheel.schedule("moved", 500);
+		wheel.schedule("here", 500);
+
+		wheel.cancel(gone);
+		wheel.cancel(gone);
+		wheel.reschedule(moved, 5000);
+		assertEquals("[here]", advance(wheel, 1000).toString());
+		assertEquals("[moved]", advance(wheel, 5000).toString());
+
+		wheel.schedule("cleared", 6000);
+		wheel.clear();
+		assertTrue(advance(wheel, 10000).isEmpty());
+	}
+}
@@ -1,6 +1,19 @@
 package com.cffreedom.utils.db;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import static org.junit.Assert.*;
 
@@ -8,6 +21,7 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.apache.commons.dbcp2.BasicDataSource;
 
 import com.cffreedom.beans.DbConn;
 import com.cffreedom.beans.DbType;
@@ -55,4 +69,380 @@ public class ConnectionManagerTest
 		assertFalse(FileUtils.fileExists(testFile));
 		
 	}
+	
+	@Test
+	public void testPoolConfig() throws Exception
+	{
+		List<String> lines = new ArrayList<String>();
+		lines.add("keys=a,b");
+		lines.add("pool.maxTotal=5");
+		lines.add("a.type=HSQLDB");
+		lines.add("a.pool.maxTotal=20");
+		lines.add("a.pool.validationIntervalMillis=60000");
+		lines.add("b.type=HSQLDB");
+		FileUtils.writeLinesToFile(testFile, lines);
+		
+		cm = new ConnectionManager(testFile);
+		assertEquals(20, cm.getPoolConfig("a").getMaxTotal());
+		assertEquals(60000, cm.getPoolConfig("a").getValidationIntervalMillis());
+		assertEquals(5, cm.getPoolConfig("b").getMaxTotal());
+		assertEquals(PoolConfig.DEFAULT_MAX_OPEN_PREPARED_STATEMENTS, cm.getPoolConfig("b").getMaxOpenPreparedStatements());
+		
+		// Change the file and reload it
+		lines.set(3, "a.pool.maxTotal=10");
+		FileUtils.writeLinesToFile(testFile, lines);
+		assertTrue(cm.reload());
+		assertEquals(10, cm.getPoolConfig("a").getMaxTotal());
+		
+		// Pool settings survive the file being rewritten, and our own save isn't seen as a change
+		cm.addConnection("c", new DbConn("jdbcDriverClass", "jdbcUrlVal", DbType.MYSQL, "hostName", "dbName", 0));
+		assertFalse(cm.reloadIfChanged());
+		cm.close();
+		cm = new ConnectionManager(testFile);
+		assertEquals(10, cm.getPoolConfig("a").getMaxTotal());
+		assertEquals(5, cm.getPoolConfig("c").getMaxTotal());
+		cm.close();
+		FileUtils.deleteFile(testFile);
+		
+		lines.add("b.pool.maxIdle=lots");
+		FileUtils.writeLinesToFile(testFile, lines);
+		try
+		{
+			new ConnectionManager(testFile);
+			fail("Expected invalid number to be rejected");
+		}
+		catch (InfrastructureException e)
+		{
+			assertTrue(e.getMessage().contains("b.pool.maxIdle"));
+		}
+		FileUtils.deleteFile(testFile);
+	}
+	
+	@Test
+	public void testHotReloadBadFile() throws Exception
+	{
+		List<String> lines = new ArrayList<String>();
+		lines.add("keys=a");
+		lines.add("a.type=HSQLDB");
+		FileUtils.writeLinesToFile(testFile, lines);
+		cm = new ConnectionManager(testFile);
+		cm.enableHotReload(50);
+		
+		// A bad value is logged and the current settings kept
+		lines.set(0, "keys=a,b");
+		lines.set(1, "a.type=HSQLDBX");
+		lines.add("b.type=HSQLDB");
+		FileUtils.writeLinesToFile(testFile, lines);
+		try
+		{
+			cm.reload();
+			fail("Expected invalid type to be rejected");
+		}
+		catch (InfrastructureException e)
+		{
+			assertTrue(e.getMessage().contains("a.type"));
+		}
+		Thread.sleep(200);
+		assertNull(cm.getDbConn("b"));
+		
+		// Checking keeps going so the fixed file is picked up
+		lines.set(1, "a.type=HSQLDB");
+		FileUtils.writeLinesToFile(testFile, lines);
+		for (int x = 0; (x < 100) && (cm.getDbConn("b") == null); x++)
+		{
+			Thread.sleep(50);
+		}
+		assertNotNull(cm.getDbConn("b"));
+		cm.close();
+		FileUtils.deleteFile(testFile);
+	}
+	
+	@Test
+	public void testConnectionChanged() throws Exception
+	{
+		DbConn a = new DbConn(FakeDriver.DRIVER, FakeDriver.URL_PREFIX + "same", DbType.HSQLDB, "hostName", "same", 0);
+		DbConn b = new DbConn(FakeDriver.DRIVER, FakeDriver.URL_PREFIX + "same", DbType.HSQLDB, "hostName", "same", 0);
+		a.setPassword("secret");
+		b.setPassword("secret");
+		assertFalse(ConnectionManager.connectionChanged(a, b));
+		
+		b.setPassword("changed");
+		assertTrue(ConnectionManager.connectionChanged(a, b));
+		assertTrue(ConnectionManager.connectionChanged(a, null));
+	}
+	
+	@Test
+	public void testPoolResize() throws Exception
+	{
+		cm = new ConnectionManager(null, false);
+		cm.enableConnectionPooling(true);
+		cm.addConnection("fake", new DbConn(FakeDriver.DRIVER, FakeDriver.URL_PREFIX + "resize", DbType.HSQLDB, "hostName", "resize", 0));
+		
+		Connection c1 = cm.getConnection("fake", null, null);
+		Connection c2 = cm.getConnection("fake", null, null);
+		assertNotNull(c1);
+		assertNotNull(c2);
+		assertEquals(2, FakeDriver.getOpenCount("resize"));
+		BasicDataSource pool = cm.getPool("fake");
+		assertEquals(PoolConfig.DEFAULT_MAX_TOTAL, pool.getMaxTotal());
+		
+		// Sizing changes are made to the pool in use
+		PoolConfig config = cm.getPoolConfig("fake");
+		config.setMaxTotal(3);
+		config.setMaxIdle(1);
+		cm.setPoolConfig("fake", config);
+		assertSame(pool, cm.getPool("fake"));
+		assertEquals(3, pool.getMaxTotal());
+		assertEquals(1, pool.getMaxIdle());
+		
+		// A new statement cache size needs a new pool, the old one is drained
+		config.setMaxOpenPreparedStatements(10);
+		cm.setPoolConfig("fake", config);
+		assertNull(cm.getPool("fake"));
+		assertTrue(pool.isClosed());
+		assertEquals(2, FakeDriver.getOpenCount("resize"));
+		c1.close();
+		c2.close();
+		assertEquals(0, FakeDriver.getOpenCount("resize"));
+		
+		Connection c3 = cm.getConnection("fake", null, null);
+		assertNotNull(c3);
+		assertEquals(10, cm.getPool("fake").getMaxOpenPreparedStatements());
+		assertEquals(3, cm.getPool("fake").getMaxTotal());
+		c3.close();
+		
+		cm.enableConnectionPooling(false);
+		assertEquals(0, FakeDriver.getOpenCount("resize"));
+	}
+	
+	@Test
+	public void testConcurrentPoolCreation() throws Exception
+	{
+		final int threads = 16;
+		cm = new ConnectionManager(null, false);
+		cm.enableConnectionPooling(true);
+		cm.addConnection("race", new DbConn(FakeDriver.DRIVER, FakeDriver.URL_PREFIX + "race", DbType.HSQLDB, "hostName", "race", 0));
+		PoolConfig config = cm.getPoolConfig("race");
+		config.setMaxTotal(threads);
+		config.setMaxIdle(threads);
+		cm.setPoolConfig("race", config);
+		
+		final CyclicBarrier barrier = new CyclicBarrier(threads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int x = 0; x < threads; x++)
+		{
+			futures.add(executor.submit(() -> {
+				barrier.await();
+				Connection conn = cm.getConnection("race", null, null);
+				boolean ret = (conn != null);
+				if (conn != null) { conn.close(); }
+				return ret;
+			}));
+		}
+		for (Future<Boolean> future : futures)
+		{
+			assertTrue(future.get());
+		}
+		executor.shutdown();
+		
+		// Every connection came from the one pool, so closing it leaves none open
+		assertTrue(FakeDriver.getOpenCount("race") > 0);
+		cm.close();
+		assertEquals(0, FakeDriver.getOpenCount("race"));
+	}
+	
+	@Test
+	public void testStats() throws Exception
+	{
+		cm = new ConnectionManager(null, false);
+		cm.enableConnectionPooling(true);
+		cm.addConnection("stats", new DbConn(FakeDriver.DRIVER, FakeDriver.URL_PREFIX + "stats", DbType.HSQLDB, "hostName", "stats", 0));
+		PoolConfig config = cm.getPoolConfig("stats");
+		config.setMaxTotal(1);
+		config.setMaxWaitMillis(50);
+		cm.setPoolConfig("stats", config);
+		cm.setSlowBorrowThresholdMillis(20);
+		cm.registerMBean("junit");
+		
+		Connection pooled = cm.getConnection("stats", null, null);
+		assertNotNull(pooled);
+		// The pool is used up so this waits, times out and falls back to a direct connection
+		Connection direct = cm.getConnection("stats", null, null);
+		assertNotNull(direct);
+		direct.close();
+		assertNull(cm.getConnection("nosuchkey", null, null));
+		
+		Map<ConnectionSource, Long> sources = cm.getConnectionSourceCounts();
+		assertEquals(Long.valueOf(1), sources.get(ConnectionSource.POOL));
+		assertEquals(Long.valueOf(1), sources.get(ConnectionSource.DIRECT));
+		assertEquals(Long.valueOf(1), sources.get(ConnectionSource.NONE));
+		assertEquals(Long.valueOf(0), sources.get(ConnectionSource.JNDI));
+		
+		PoolStats stats = cm.getPoolStats("stats");
+		assertEquals(1, stats.getBorrowCount());
+		assertEquals(1, stats.getTimeoutCount());
+		assertEquals(0, stats.getFailureCount());
+		assertEquals(1, stats.getSlowBorrowCount());
+		assertEquals(1, stats.getNumActive());
+		assertEquals(1, stats.getMaxTotal());
+		assertTrue(stats.getMaxBorrowWaitMillis() >= 50);
+		assertEquals(2, stats.getBorrowAttemptCount());
+		long[] histogram = stats.getBorrowWaitHistogram();
+		assertEquals(PoolStatsCounter.BORROW_WAIT_BUCKET_MILLIS.length + 1, histogram.length);
+		assertTrue(stats.getBorrowWaitPercentileMillis(99) >= 50);
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName poolName = new ObjectName("com.cffreedom.utils:type=ConnectionPool,manager=\"junit\",name=\"stats\"");
+		ObjectName managerName = new ObjectName("com.cffreedom.utils:type=ConnectionManager,name=\"junit\"");
+		assertEquals(1L, server.getAttribute(poolName, "TimeoutCount"));
+		assertEquals(1, server.getAttribute(poolName, "NumActive"));
+		assertEquals(1L, server.getAttribute(managerName, "PoolCount"));
+		
+		pooled.close();
+		cm.resetStats();
+		assertEquals(0, cm.getPoolStats("stats").getBorrowCount());
+		assertEquals(Long.valueOf(0), cm.getConnectionSourceCounts().get(ConnectionSource.POOL));
+		cm.close();
+		assertFalse(server.isRegistered(poolName));
+		assertFalse(server.isRegistered(managerName));
+	}
+	
+	@Test
+	public void testReplicaRouting() throws Exception
+	{
+		cm = new ConnectionManager(null, false);
+		cm.addConnection("p", new DbConn(FakeDriver.DRIVER, FakeDriver.URL_PREFIX + "rp", DbType.HSQLDB, "hostName", "rp", 0));
+		cm.addConnection("r1", new DbConn(FakeDriver.DRIVER, FakeDriver.URL_PREFIX + "rr1", DbType.HSQLDB, "hostName", "rr1", 0));
+		cm.addConnection("r2", new DbConn(FakeDriver.DRIVER, FakeDriver.URL_PREFIX + "rr2", DbType.HSQLDB, "hostName", "rr2", 0));
+		cm.addGroup(new ReplicaGroup("orders", "p", Arrays.asList("r1", "r2")));
+		ReplicaGroup group = cm.getGroup("orders");
+		
+		// Round robin across the replicas, writes to the primary
+		List<Connection> conns = new ArrayList<Connection>();
+		for (int x = 0; x < 4; x++)
+		{
+			conns.add(cm.getReadConnection("orders"));
+		}
+		assertEquals(2, FakeDriver.getOpenCount("rr1"));
+		assertEquals(2, FakeDriver.getOpenCount("rr2"));
+		assertEquals(0, FakeDriver.getOpenCount("rp"));
+		conns.add(cm.getConnection("orders", null, null));
+		conns.add(cm.getWriteConnection("orders"));
+		assertEquals(2, FakeDriver.getOpenCount("rp"));
+		closeAll(conns);
+		
+		// A replica that is down is marked down and skipped
+		FakeDriver.setDown("rr1", true);
+		conns.add(cm.getReadConnection("orders"));
+		conns.add(cm.getReadConnection("orders"));
+		assertEquals(2, FakeDriver.getOpenCount("rr2"));
+		assertFalse(group.isUp("r1"));
+		closeAll(conns);
+		
+		// With every replica down reads fail over to the primary
+		FakeDriver.setDown("rr2", true);
+		conns.add(cm.getReadConnection("orders"));
+		assertEquals(1, FakeDriver.getOpenCount("rp"));
+		closeAll(conns);
+		
+		// Health checks bring members back (without counting as borrowed connections)
+		FakeDriver.setDown("rr1", false);
+		FakeDriver.setDown("rr2", false);
+		Map<ConnectionSource, Long> sources = cm.getConnectionSourceCounts();
+		cm.runHealthChecks();
+		assertEquals(sources, cm.getConnectionSourceCounts());
+		assertTrue(group.isUp("r1"));
+		assertTrue(group.isUp("r2"));
+		assertTrue(group.getLatencyMillis("r1") > 0);
+		FakeDriver.setDown("rr2", true);
+		cm.runHealthChecks();
+		assertFalse(group.isUp("r2"));
+		FakeDriver.setDown("rr2", false);
+		cm.runHealthChecks();
+		
+		// A failed write marks the primary down so reads try it last
+		FakeDriver.setDown("rp", true);
+		assertNull(cm.getWriteConnection("orders"));
+		assertFalse(group.isUp("p"));
+		group.markDown("r1");
+		assertEquals(Arrays.asList("r2", "r1", "p"), group.readOrder(member -> 0));
+		FakeDriver.setDown("rp", false);
+		group.markUp("p", -1);
+		group.markUp("r1", -1);
+		
+		// Least active spreads held connections across the replica pools
+		cm.enableConnectionPooling(true);
+		cm.addGroup(new ReplicaGroup("busy", "p", Arrays.asList("r1", "r2"), RoutingPolicy.LEAST_ACTIVE));
+		for (int x = 0; x < 4; x++)
+		{
+			conns.add(cm.getReadConnection("busy"));
+		}
+		assertEquals(2, cm.getPoolStats("r1").getNumActive());
+		assertEquals(2, cm.getPoolStats("r2").getNumActive());
+		closeAll(conns);
+		
+		cm.addGroup(new ReplicaGroup("fast", "p", Arrays.asList("r1", "r2"), RoutingPolicy.LATENCY_WEIGHTED));
+		cm.runHealthChecks();
+		Connection conn = cm.getReadConnection("fast");
+		assertNotNull(conn);
+		conn.close();
+		
+		// Plain keys work the same through the read and write methods
+		conn = cm.getReadConnection("p");
+		assertNotNull(conn);
+		conn.close();
+		cm.close();
+	}
+	
+	@Test
+	public void testReplicaGroupFile() throws Exception
+	{
+		List<String> lines = new ArrayList<String>();
+		lines.add("keys=a,b,c");
+		lines.add("a.type=HSQLDB");
+		lines.add("b.type=HSQLDB");
+		lines.add("c.type=HSQLDB");
+		lines.add("groups=g");
+		lines.add("g.primary=a");
+		lines.add("g.replicas=b, c");
+		lines.add("g.policy=least_active");
+		FileUtils.writeLinesToFile(testFile, lines);
+		
+		cm = new ConnectionManager(testFile);
+		ReplicaGroup group = cm.getGroup("g");
+		assertEquals("a", group.getPrimary());
+		assertEquals(Arrays.asList("b", "c"), group.getReplicas());
+		assertEquals(RoutingPolicy.LEAST_ACTIVE, group.getPolicy());
+		
+		// Groups survive the file being rewritten
+		cm.addConnection("d", new DbConn("jdbcDriverClass", "jdbcUrlVal", DbType.MYSQL, "hostName", "dbName", 0));
+		cm.close();
+		cm = new ConnectionManager(testFile);
+		assertEquals(Arrays.asList("b", "c"), cm.getGroup("g").getReplicas());
+		cm.close();
+		
+		lines.add("g.policy=FASTEST");
+		FileUtils.writeLinesToFile(testFile, lines);
+		try
+		{
+			new ConnectionManager(testFile);
+			fail("Expected invalid policy to be rejected");
+		}
+		catch (InfrastructureException e)
+		{
+			assertTrue(e.getMessage().contains("FASTEST"));
+		}
+		FileUtils.deleteFile(testFile);
+	}
+	
+	private static void closeAll(List<Connection> conns) throws Exception
+	{
+		for (Connection conn : conns)
+		{
+			assertNotNull(conn);
+			conn.close();
+		}
+		conns.clear();
+	}
 }
@@ -0,0 +1,81 @@
+package com.cffreedom.utils.db;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import org.junit.Test;
+
+public class DbUtilsTest
+{
+	/**
+	 * A result set with NAME and EMAIL columns and the given number of rows
+	 */
+	private ResultSet getResultSet(final int rows)
+	{
+		final String[] labels = {null, "NAME", "EMAIL"};
+		final int[] row = {0};
+		final ResultSetMetaData md = (ResultSetMetaData)Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(), new Class<?>[] {ResultSetMetaData.class}, (proxy, method, args) -> {
+			switch (method.getName())
+			{
+				case "getColumnCount": return 2;
+				case "getColumnLabel": return labels[(Integer)args[0]];
+				default: throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+			switch (method.getName())
+			{
+				case "getMetaData": return md;
+				case "next": return (++row[0] <= rows);
+				case "getRow": return row[0];
+				case "getString": return ((Integer)args[0] == 1) ? "name" + row[0] : "email" + row[0];
+				default: throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	@Test
+	public void testOutputResultSet() throws Exception
+	{
+		StringWriter out = new StringWriter();
+		assertEquals(2, DbUtils.outputResultSet(getResultSet(2), out, DbUtils.FORMAT.CSV));
+		assertEquals("NAME,EMAIL,\nname1,email1,\nname2,email2,\n", out.toString());
+
+		out = new StringWriter();
+		assertEquals(1, DbUtils.outputResultSet(getResultSet(1), out, DbUtils.FORMAT.XML));
+		assertEquals("<results>\n<result row=\"1\">\n    <NAME>name1</NAME>\n    <EMAIL>email1</EMAIL>\n</result>\n</results>\n", out.toString());
+
+		out = new StringWriter();
+		assertEquals(0, DbUtils.outputResultSet(getResultSet(0), out, DbUtils.FORMAT.TAB));
+		assertEquals("NAME\tEMAIL\t\n", out.toString());
+	}
+
+	@Test
+	public void testOutputResultSetToFile() throws Exception
+	{
+		File file = File.createTempFile("DbUtilsTest", ".csv");
+		try
+		{
+			int rows = 50000;
+			DbUtils.outputResultSet(getResultSet(rows), file.getAbsolutePath(), DbUtils.FORMAT.RAW);
+			int lines = 0;
+			for (String line : Files.readAllLines(file.toPath(), Charset.defaultCharset()))
+			{
+				lines++;
+				assertEquals("name" + lines + "email" + lines, line);
+			}
+			assertEquals(rows, lines);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.cffreedom.utils.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for tests that hands out do nothing connections for any
+ * jdbc:fake:[name] url and counts how many are open per name. Connecting to
+ * a name passed to setDown() fails until it is brought back up.
+ */
+public class FakeDriver implements Driver
+{
+	public static final String DRIVER = FakeDriver.class.getName();
+	public static final String URL_PREFIX = "jdbc:fake:";
+	private static final Map<String, AtomicInteger> open = new ConcurrentHashMap<String, AtomicInteger>();
+	private static final Map<String, Boolean> down = new ConcurrentHashMap<String, Boolean>();
+
+	static
+	{
+		try
+		{
+			DriverManager.registerDriver(new FakeDriver());
+		}
+		catch (SQLException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static int getOpenCount(String name)
+	{
+		AtomicInteger count = open.get(name);
+		return (count != null) ? count.get() : 0;
+	}
+
+	public static void setDown(String name, boolean isDown)
+	{
+		down.put(name, isDown);
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException
+	{
+		if (acceptsURL(url) == false)
+		{
+			return null;
+		}
+		final String name = url.substring(URL_PREFIX.length());
+		if (Boolean.TRUE.equals(down.get(name)) == true)
+		{
+			throw new SQLException("Database is down: " + name);
+		}
+		final AtomicInteger count = open.computeIfAbsent(name, k -> new AtomicInteger());
+		count.incrementAndGet();
+		final boolean[] closed = {false};
+		return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+			switch (method.getName())
+			{
+				case "close":
+					if (closed[0] == false) { closed[0] = true; count.decrementAndGet(); }
+					return null;
+				case "isClosed":
+					return closed[0];
+				case "isValid":
+					return (closed[0] == false) && (Boolean.TRUE.equals(down.get(name)) == false);
+				case "toString":
+					return "FakeConnection[" + name + "]";
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				default:
+					return stub(method.getReturnType(), name);
+			}
+		});
+	}
+
+	/**
+	 * Statements, result sets, etc. that return a single row for everything
+	 */
+	private static Object stub(Class<?> type, final String name) throws SQLException
+	{
+		if (Boolean.TRUE.equals(down.get(name)) == true)
+		{
+			throw new SQLException("Database is down: " + name);
+		}
+		if (type == boolean.class) { return true; }
+		if (type == int.class) { return 0; }
+		if (type == long.class) { return 0L; }
+		if (type.isInterface() == true)
+		{
+			final boolean[] nextCalled = {false};
+			return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+				if (method.getName().equals("next") == true)
+				{
+					// One row
+					boolean ret = (nextCalled[0] == false);
+					nextCalled[0] = true;
+					return ret;
+				}
+				if (method.getName().equals("isClosed") == true) { return false; }
+				if (method.getName().equals("hashCode") == true) { return System.identityHashCode(proxy); }
+				if (method.getName().equals("equals") == true) { return proxy == args[0]; }
+				return stub(method.getReturnType(), name);
+			});
+		}
+		return null;
+	}
+
+	@Override
+	public boolean acceptsURL(String url) { return (url != null) && url.startsWith(URL_PREFIX); }
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) { return new DriverPropertyInfo[0]; }
+	@Override
+	public int getMajorVersion() { return 1; }
+	@Override
+	public int getMinorVersion() { return 0; }
+	@Override
+	public boolean jdbcCompliant() { return false; }
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException { throw new SQLFeatureNotSupportedException(); }
+}
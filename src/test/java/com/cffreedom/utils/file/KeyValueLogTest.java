@@ -0,0 +1,397 @@
+package com.cffreedom.utils.file;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.cffreedom.utils.KeyValueFileMgr;
+import com.cffreedom.utils.cache.BinaryValueSerializer;
+import com.cffreedom.utils.cache.CompressingValueSerializer;
+import com.cffreedom.utils.cache.JavaValueSerializer;
+
+public class KeyValueLogTest
+{
+	private File tempFile() throws Exception
+	{
+		File file = File.createTempFile("kvlog", ".dat");
+		file.delete();
+		file.deleteOnExit();
+		new File(file.getAbsolutePath() + ".compact").deleteOnExit();
+		new File(file.getAbsolutePath() + ".lock").deleteOnExit();
+		new File(file.getAbsolutePath() + ".idx").deleteOnExit();
+		new File(file.getAbsolutePath() + ".tmp").deleteOnExit();
+		return file;
+	}
+	
+	@Test
+	public void reopenTest() throws Exception
+	{
+		File file = tempFile();
+		KeyValueLog log = new KeyValueLog(file.getAbsolutePath());
+		log.put("a", "one");
+		log.put("b", 2);
+		log.put("a", "uno");
+		assertTrue(log.remove("b"));
+		assertFalse(log.remove("b"));
+		log.close();
+		
+		log = new KeyValueLog(file.getAbsolutePath());
+		assertEquals(1, log.size());
+		assertEquals("uno", log.get("a"));
+		assertFalse(log.containsKey("b"));
+		log.close();
+	}
+	
+	@Test
+	public void tornWriteTest() throws Exception
+	{
+		File file = tempFile();
+		KeyValueLog log = new KeyValueLog(file.getAbsolutePath());
+		log.put("a", "one");
+		long good = log.getFileBytes();
+		log.put("b", "two");
+		log.close();
+		
+		// Simulate a crash part way through writing the last record
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(raf.length() - 3);
+		}
+		log = new KeyValueLog(file.getAbsolutePath());
+		assertEquals("one", log.get("a"));
+		assertFalse(log.containsKey("b"));
+		assertEquals(good, file.length());
+		
+		// Appending after recovery picks up where the good records left off
+		log.put("c", "three");
+		log.close();
+		log = new KeyValueLog(file.getAbsolutePath());
+		assertEquals("three", log.get("c"));
+		log.close();
+	}
+	
+	@Test
+	public void compactTest() throws Exception
+	{
+		File file = tempFile();
+		KeyValueLog log = new KeyValueLog(file.getAbsolutePath());
+		log.setFsyncPolicy(KeyValueLog.FsyncPolicy.NEVER);
+		log.setCompactThreshold(4096, 2.0);
+		for (int x = 0; x < 1000; x++)
+		{
+			log.put("key" + (x % 10), "value" + x);
+		}
+		assertTrue(log.getFileBytes() < 4096 * 2);
+		log.close();
+		
+		log = new KeyValueLog(file.getAbsolutePath());
+		assertEquals(10, log.size());
+		assertEquals("value999", log.get("key9"));
+		log.close();
+	}
+	
+	@Test
+	public void mappedTest() throws Exception
+	{
+		File file = tempFile();
+		new File(file.getAbsolutePath() + ".idx").deleteOnExit();
+		KeyValueLog log = new KeyValueLog(file.getAbsolutePath(), true);
+		log.setFsyncPolicy(KeyValueLog.FsyncPolicy.NEVER);
+		log.setMaxUnindexedKeys(100);
+		for (int x = 0; x < 1000; x++)
+		{
+			log.put("key" + x, "value" + x);
+		}
+		log.close();
+		assertTrue(new File(file.getAbsolutePath() + ".idx").length() > 1000 * 16);
+		
+		// Everything but the tail comes from the index
+		log = new KeyValueLog(file.getAbsolutePath(), true);
+		assertEquals(1000, log.size());
+		assertEquals("value500", log.get("key500"));
+		assertNull(log.get("junk"));
+		log.put("key500", "changed");
+		assertTrue(log.remove("key1"));
+		assertFalse(log.containsKey("key1"));
+		assertEquals(999, log.size());
+		assertEquals(999, log.keySet().size());
+		log.compact();
+		assertEquals("changed", log.get("key500"));
+		assertEquals("value999", log.get("key999"));
+		log.remove("key2");
+		log.close();
+		
+		log = new KeyValueLog(file.getAbsolutePath(), true);
+		assertEquals(998, log.size());
+		assertEquals("changed", log.get("key500"));
+		assertFalse(log.containsKey("key1"));
+		assertFalse(log.containsKey("key2"));
+		log.close();
+		
+		// The file itself is the same format so it can still be loaded into memory
+		log = new KeyValueLog(file.getAbsolutePath());
+		assertEquals(998, log.size());
+		assertEquals("value3", log.get("key3"));
+		log.close();
+	}
+	
+	@Test
+	public void keyValueFileMgrTest() throws Exception
+	{
+		File file = tempFile();
+		KeyValueFileMgr kvfm = new KeyValueFileMgr(file.getAbsolutePath(), KeyValueLog.FsyncPolicy.ALWAYS);
+		assertTrue(kvfm.addEntry("a", "one"));
+		assertFalse(kvfm.addEntry("a", "two"));
+		assertTrue(kvfm.updateEntry("a", "two"));
+		kvfm.close();
+		
+		kvfm = new KeyValueFileMgr(file.getAbsolutePath(), KeyValueLog.FsyncPolicy.ALWAYS);
+		assertEquals("two", kvfm.getEntryAsString("a"));
+		assertTrue(kvfm.removeEntry("a"));
+		assertEquals(0, kvfm.getKeys().size());
+		kvfm.close();
+	}
+	
+	@Test
+	public void sharedFileTest() throws Exception
+	{
+		// Two instances on one file behave like two processes sharing it
+		File file = tempFile();
+		KeyValueLog one = new KeyValueLog(file.getAbsolutePath());
+		KeyValueLog two = new KeyValueLog(file.getAbsolutePath(), true);
+		one.put("a", "one");
+		assertEquals("one", two.get("a"));
+		assertFalse(two.putIfAbsent("a", "two"));
+		assertTrue(two.replace("a", "two"));
+		assertFalse(two.replace("b", "two"));
+		assertEquals("two", one.get("a"));
+		
+		// Compacting replaces the file so the other instance has to reopen it
+		one.put("b", "bee");
+		one.remove("b");
+		one.compact();
+		assertFalse(two.containsKey("b"));
+		assertTrue(two.putIfAbsent("c", "sea"));
+		assertEquals("sea", one.get("c"));
+		assertEquals(2, one.keySet().size());
+		one.close();
+		two.close();
+		
+		KeyValueLog log = new KeyValueLog(file.getAbsolutePath());
+		assertEquals(2, log.size());
+		log.close();
+	}
+	
+	@Test
+	public void concurrentTest() throws Exception
+	{
+		File file = tempFile();
+		final KeyValueLog one = new KeyValueLog(file.getAbsolutePath());
+		final KeyValueLog two = new KeyValueLog(file.getAbsolutePath());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++)
+		{
+			final int id = t;
+			final KeyValueLog log = (t % 2 == 0) ? one : two;
+			threads.add(new Thread(() -> {
+				try
+				{
+					for (int x = 0; x < 250; x++)
+					{
+						log.put("t" + id + "-" + x, x);
+						assertEquals(Integer.valueOf(x), log.get("t" + id + "-" + x));
+					}
+				}
+				catch (Throwable e)
+				{
+					failure.compareAndSet(null, e);
+				}
+			}));
+		}
+		for (Thread thread : threads) { thread.start(); }
+		for (Thread thread : threads) { thread.join(); }
+		if (failure.get() != null)
+		{
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(1000, one.keySet().size());
+		assertEquals(1000, two.keySet().size());
+		one.close();
+		two.close();
+		
+		KeyValueLog log = new KeyValueLog(file.getAbsolutePath());
+		assertEquals(1000, log.size());
+		log.close();
+	}
+	
+	@Test
+	public void sharedKeyValueFileMgrTest() throws Exception
+	{
+		File file = tempFile();
+		KeyValueFileMgr one = new KeyValueFileMgr(file.getAbsolutePath());
+		KeyValueFileMgr two = new KeyValueFileMgr(file.getAbsolutePath());
+		assertTrue(one.addEntry("a", "one"));
+		assertFalse(two.addEntry("a", "two"));
+		assertTrue(two.addEntry("b", "bee"));
+		assertEquals("bee", one.getEntryAsString("b"));
+		assertEquals(2, one.getKeys().size());
+		// Same size rewrite right after the last one is still seen
+		assertTrue(one.updateEntry("b", "BEE"));
+		assertEquals("BEE", two.getEntryAsString("b"));
+		one.close();
+		two.close();
+	}
+	
+	@Test
+	public void batchTest() throws Exception
+	{
+		File file = tempFile();
+		KeyValueLog log = new KeyValueLog(file.getAbsolutePath());
+		log.put("a", "one");
+		KeyValueLog.Batch batch = new KeyValueLog.Batch();
+		for (int x = 0; x < 100; x++)
+		{
+			batch.put("key" + x, x);
+		}
+		batch.remove("a");
+		log.commit(batch);
+		assertEquals(100, log.size());
+		assertFalse(log.containsKey("a"));
+		long good = log.getFileBytes();
+		
+		batch.clear();
+		batch.put("b", "bee").put("c", "sea");
+		log.commit(batch);
+		log.close();
+		
+		log = new KeyValueLog(file.getAbsolutePath(), true);
+		assertEquals(102, log.size());
+		assertEquals(Integer.valueOf(99), log.get("key99"));
+		log.close();
+		
+		// Losing the end of the last batch has to lose all of it
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(raf.length() - 3);
+		}
+		new File(file.getAbsolutePath() + ".idx").delete();
+		log = new KeyValueLog(file.getAbsolutePath());
+		assertEquals(100, log.size());
+		assertFalse(log.containsKey("b"));
+		assertEquals(good, file.length());
+		log.close();
+	}
+	
+	@Test
+	public void transactionTest() throws Exception
+	{
+		File file = tempFile();
+		KeyValueFileMgr kvfm = new KeyValueFileMgr(file.getAbsolutePath(), KeyValueLog.FsyncPolicy.NEVER);
+		kvfm.addEntry("a", "one");
+		kvfm.begin();
+		assertTrue(kvfm.addEntry("b", "two"));
+		assertTrue(kvfm.removeEntry("a"));
+		assertFalse(kvfm.updateEntry("a", "uno"));
+		assertEquals("two", kvfm.getEntryAsString("b"));
+		assertEquals(1, kvfm.getKeys().size());
+		kvfm.commit();
+		assertFalse(kvfm.isInTransaction());
+		kvfm.close();
+		
+		kvfm = new KeyValueFileMgr(file.getAbsolutePath(), KeyValueLog.FsyncPolicy.NEVER);
+		assertFalse(kvfm.keyExists("a"));
+		assertEquals("two", kvfm.getEntryAsString("b"));
+		kvfm.close();
+		
+		File legacy = tempFile();
+		kvfm = new KeyValueFileMgr(legacy.getAbsolutePath());
+		kvfm.addEntry("a", "one");
+		kvfm.begin();
+		kvfm.updateEntry("a", "uno");
+		kvfm.rollback();
+		assertEquals("one", kvfm.getEntryAsString("a"));
+		kvfm.begin();
+		for (int x = 0; x < 100; x++)
+		{
+			kvfm.addEntry("key" + x, "val" + x);
+		}
+		kvfm.commit();
+		kvfm.close();
+		
+		kvfm = new KeyValueFileMgr(legacy.getAbsolutePath());
+		assertEquals(101, kvfm.getKeys().size());
+		assertEquals("val50", kvfm.getEntryAsString("key50"));
+		kvfm.close();
+	}
+	
+	@Test
+	public void migrateTest() throws Exception
+	{
+		// A file written with Java serialization by an older version
+		File file = tempFile();
+		Map<String, Object> legacy = new TreeMap<String, Object>();
+		legacy.put("a", "one");
+		legacy.put("b", 2);
+		FileUtils.writeObjectToFile(file.getAbsolutePath(), legacy);
+		long legacyBytes = file.length();
+		
+		KeyValueFileMgr kvfm = new KeyValueFileMgr(file.getAbsolutePath());
+		assertEquals("one", kvfm.getEntryAsString("a"));
+		kvfm.close();
+		assertTrue(KeyValueFileMgr.migrate(file.getAbsolutePath()));
+		assertFalse(KeyValueFileMgr.migrate(file.getAbsolutePath()));
+		assertTrue(file.length() < legacyBytes);
+		
+		kvfm = new KeyValueFileMgr(file.getAbsolutePath());
+		assertEquals(2, kvfm.getEntry("b"));
+		assertTrue(kvfm.addEntry("c", "three"));
+		kvfm.close();
+		
+		File compressed = tempFile();
+		kvfm = new KeyValueFileMgr(compressed.getAbsolutePath(), new CompressingValueSerializer<Object>(new BinaryValueSerializer()));
+		kvfm.addEntry("a", "one");
+		kvfm.close();
+		kvfm = new KeyValueFileMgr(compressed.getAbsolutePath(), new CompressingValueSerializer<Object>(new BinaryValueSerializer()));
+		assertEquals("one", kvfm.getEntryAsString("a"));
+		kvfm.close();
+		
+		// Logs written with Java serialized values are still readable
+		File log = tempFile();
+		KeyValueLog javaLog = new KeyValueLog(log.getAbsolutePath(), new JavaValueSerializer(), false);
+		javaLog.put("a", "one");
+		javaLog.close();
+		javaLog = new KeyValueLog(log.getAbsolutePath());
+		assertEquals("one", javaLog.get("a"));
+		javaLog.close();
+	}
+
+	@Test
+	public void sharedLockTest() throws Exception
+	{
+		File file = tempFile();
+		InterProcessLock a = new InterProcessLock(file.getAbsolutePath());
+		InterProcessLock b = new InterProcessLock(file.getAbsolutePath());
+
+		// Unlocking in a different order than locking still releases the file
+		a.lock();
+		b.lock();
+		a.unlock();
+		b.unlock();
+		assertFalse(a.isHeldByCurrentThread());
+		b.lock();
+		b.unlock();
+		a.lock();
+		a.unlock();
+		a.close();
+		b.close();
+	}
+}
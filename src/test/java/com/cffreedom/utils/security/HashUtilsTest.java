@@ -0,0 +1,61 @@
+package com.cffreedom.utils.security;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.cffreedom.utils.Convert;
+
+public class HashUtilsTest
+{
+	@Test
+	public void testKnownValues() throws Exception
+	{
+		assertEquals("900150983cd24fb0d6963f7d28e17f72", HashUtils.hashHex(HashUtils.Algorithm.MD5, "abc"));
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HashUtils.hashHex(HashUtils.Algorithm.SHA256, "abc"));
+		assertEquals("900150983cd24fb0d6963f7d28e17f72", Convert.toMd5("abc"));
+		assertEquals(HashUtils.hashHex(HashUtils.Algorithm.SHA512, "saltvalue"), Convert.toSHA512("value", "salt"));
+		assertEquals("00ff10", HashUtils.toHex(new byte[] { 0, (byte)0xff, 0x10 }));
+	}
+	
+	@Test
+	public void testHashAll() throws Exception
+	{
+		List<String> values = new ArrayList<String>();
+		for (int x = 0; x < 5000; x++)
+		{
+			values.add("value" + x);
+		}
+		List<String> hashes = HashUtils.hashAll(HashUtils.Algorithm.SHA1, values);
+		assertEquals(values.size(), hashes.size());
+		assertEquals(HashUtils.hashHex(HashUtils.Algorithm.SHA1, "value4321"), hashes.get(4321));
+	}
+	
+	@Test
+	public void testFiles() throws Exception
+	{
+		byte[] data = new byte[600 * 1024];
+		new Random(1).nextBytes(data);
+		File big = File.createTempFile("hash", ".dat");
+		big.deleteOnExit();
+		Files.write(big.toPath(), data);
+		File empty = File.createTempFile("hash", ".dat");
+		empty.deleteOnExit();
+		
+		assertEquals(HashUtils.toHex(HashUtils.hash(HashUtils.Algorithm.SHA256, data)), HashUtils.hashFileHex(HashUtils.Algorithm.SHA256, big.getAbsolutePath()));
+		String missing = big.getAbsolutePath() + ".missing";
+		Map<String, String> hashes = HashUtils.hashFiles(HashUtils.Algorithm.MD5, Arrays.asList(big.getAbsolutePath(), empty.getAbsolutePath(), missing));
+		assertEquals(Arrays.asList(big.getAbsolutePath(), empty.getAbsolutePath(), missing), new ArrayList<String>(hashes.keySet()));
+		assertEquals(HashUtils.toHex(HashUtils.hash(HashUtils.Algorithm.MD5, data)), hashes.get(big.getAbsolutePath()));
+		assertEquals("d41d8cd98f00b204e9800998ecf8427e", hashes.get(empty.getAbsolutePath()));
+		assertNull(hashes.get(missing));
+	}
+}
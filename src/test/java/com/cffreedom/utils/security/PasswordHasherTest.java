@@ -0,0 +1,89 @@
+package com.cffreedom.utils.security;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+public class PasswordHasherTest
+{
+	private final String PASSWORD = "someRandom$va1U";
+	
+	@Test
+	public void testHashVerify()
+	{
+		PasswordHasher hasher = new PasswordHasher(1000);
+		String hash = hasher.hash(PASSWORD);
+		assertTrue(hash.startsWith("$pbkdf2-sha256$1000$"));
+		assertFalse(hash.equals(hasher.hash(PASSWORD)));
+		assertTrue(hasher.verify(PASSWORD, hash));
+		assertFalse(hasher.verify(PASSWORD + "x", hash));
+		assertFalse(hasher.verify(PASSWORD, "garbage"));
+		assertFalse(hasher.needsRehash(hash));
+		assertNull(hasher.verifyAndRehash(PASSWORD, hash).getNewHash());
+		assertTrue(new PasswordHasher(1000).verify("", new PasswordHasher(1000).hash("")));
+		hasher.close();
+	}
+	
+	@Test
+	public void testRehash() throws Exception
+	{
+		PasswordHasher weak = new PasswordHasher(1000);
+		PasswordHasher strong = new PasswordHasher(2000);
+		String hash = weak.hash(PASSWORD);
+		assertTrue(strong.needsRehash(hash));
+		PasswordHasher.VerifyResult result = strong.verifyAndRehash(PASSWORD, hash);
+		assertTrue(result.isValid());
+		assertTrue(result.getNewHash().startsWith("$pbkdf2-sha256$2000$"));
+		assertTrue(strong.verify(PASSWORD, result.getNewHash()));
+		assertNull(strong.verifyAndRehash("wrong", hash).getNewHash());
+		
+		// Old unsalted MD5 hashes are upgraded too
+		result = strong.verifyAndRehash(PASSWORD, SecurityUtils.encryptMD5(PASSWORD));
+		assertTrue(result.isValid());
+		assertTrue(strong.verify(PASSWORD, result.getNewHash()));
+		weak.close();
+		strong.close();
+	}
+	
+	@Test
+	public void testAsync() throws Exception
+	{
+		PasswordHasher hasher = new PasswordHasher(50000, 1, 2);
+		String hash = hasher.hash(PASSWORD);
+		List<CompletableFuture<PasswordHasher.VerifyResult>> futures = new ArrayList<CompletableFuture<PasswordHasher.VerifyResult>>();
+		for (int x = 0; x < 10; x++)
+		{
+			futures.add(hasher.verifyAsync(PASSWORD, hash));
+		}
+		int valid = 0;
+		int rejected = 0;
+		for (CompletableFuture<PasswordHasher.VerifyResult> future : futures)
+		{
+			try
+			{
+				if (future.get().isValid() == true) { valid++; }
+			}
+			catch (ExecutionException e)
+			{
+				assertTrue(e.getCause() instanceof RejectedExecutionException);
+				rejected++;
+			}
+		}
+		// One running and two queued at most
+		assertTrue(valid >= 1 && valid <= 3);
+		assertEquals(10, valid + rejected);
+		hasher.close();
+	}
+	
+	@Test
+	public void testCalibrate()
+	{
+		assertTrue(PasswordHasher.calibrate(50) >= 1000);
+	}
+}
@@ -1,6 +1,13 @@
 package com.cffreedom.utils.security;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
@@ -35,4 +42,101 @@ public class SecurityCipherTest
 		String encrypted = edp.encrypt(TEST_STRING);
 		Assert.assertEquals(TEST_STRING, edp.decrypt(encrypted));
 	}
+	
+	@Test
+	public void testAll() throws IOException
+	{
+		SecurityCipher edp = new SecurityCipher(KEY_16_PLUS);
+		List<String> values = new ArrayList<String>();
+		for (int x = 0; x < 100; x++)
+		{
+			values.add(TEST_STRING + x);
+		}
+		values.add("");
+		List<String> encrypted = edp.encryptAll(values);
+		Assert.assertEquals(values.size(), encrypted.size());
+		Assert.assertEquals(TEST_STRING + 5, edp.decrypt(encrypted.get(5)));
+		Assert.assertEquals(values, edp.decryptAll(encrypted));
+		
+		// A bad value doesn't break the ones after it
+		List<String> decrypted = edp.decryptAll(Arrays.asList("bm90IGVuY3J5cHRlZA==", encrypted.get(0)));
+		Assert.assertNull(decrypted.get(0));
+		Assert.assertEquals(TEST_STRING + 0, decrypted.get(1));
+	}
+	
+	@Test
+	public void testThreads() throws Exception
+	{
+		final SecurityCipher edp = new SecurityCipher(KEY_16_PLUS);
+		final AtomicInteger failures = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++)
+		{
+			threads.add(new Thread(() -> {
+				for (int x = 0; x < 500; x++)
+				{
+					String value = TEST_STRING + Thread.currentThread().getName() + x;
+					if (value.equals(edp.decrypt(edp.encrypt(value))) == false)
+					{
+						failures.incrementAndGet();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) { thread.start(); }
+		for (Thread thread : threads) { thread.join(); }
+		Assert.assertEquals(0, failures.get());
+	}
+	
+	@Test
+	public void testLegacyDes() throws IOException
+	{
+		// Values written by older versions are still readable
+		Assert.assertEquals(SecurityCipher.Mode.DES, new SecurityCipher(KEY_16_PLUS).getMode());
+		String legacy = new SecurityCipher(KEY_16_PLUS).encrypt(TEST_STRING);
+		SecurityCipher edp = new SecurityCipher(KEY_16_PLUS, SecurityCipher.Mode.AES_GCM, 1000);
+		Assert.assertEquals(TEST_STRING, edp.decrypt(legacy));
+		
+		String encrypted = edp.encrypt(TEST_STRING);
+		Assert.assertFalse(encrypted.equals(edp.encrypt(TEST_STRING)));
+		Assert.assertEquals(TEST_STRING, new SecurityCipher(KEY_16_PLUS, SecurityCipher.Mode.DES).decrypt(encrypted));
+		Assert.assertNull(new SecurityCipher(KEY_SMALL, SecurityCipher.Mode.AES_GCM, 1000).decrypt(encrypted));
+	}
+	
+	@Test
+	public void testStream() throws IOException
+	{
+		SecurityCipher edp = new SecurityCipher(KEY_16_PLUS, SecurityCipher.Mode.AES_GCM, 1000);
+		byte[] data = new byte[100000];
+		new Random(1).nextBytes(data);
+		for (int length : new int[] { 0, 1, 1024, 4096, data.length })
+		{
+			ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+			edp.encrypt(new ByteArrayInputStream(data, 0, length), encrypted, 1024);
+			ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+			new SecurityCipher(KEY_16_PLUS).decrypt(new ByteArrayInputStream(encrypted.toByteArray()), decrypted);
+			Assert.assertTrue(Arrays.equals(Arrays.copyOf(data, length), decrypted.toByteArray()));
+		}
+		
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		edp.encrypt(new ByteArrayInputStream(data), encrypted, 1024);
+		byte[] bytes = encrypted.toByteArray();
+		assertDecryptFails(edp, Arrays.copyOf(bytes, bytes.length - 2000));
+		bytes[bytes.length / 2] ^= 1;
+		assertDecryptFails(edp, bytes);
+		assertDecryptFails(new SecurityCipher(KEY_SMALL, SecurityCipher.Mode.AES_GCM, 1000), encrypted.toByteArray());
+	}
+	
+	private void assertDecryptFails(SecurityCipher edp, byte[] bytes)
+	{
+		try
+		{
+			edp.decrypt(new ByteArrayInputStream(bytes), new ByteArrayOutputStream());
+			Assert.fail("Expected decrypt to fail");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
 }